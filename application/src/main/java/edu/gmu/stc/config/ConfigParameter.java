@@ -12,9 +12,13 @@ public class ConfigParameter {
   public static final String HIBERNATE_PASS = "hibernate.connection.password";
   public static final String HIBERNATE_DIALECT = "hibernate.dialect";  //org.hibernate.dialect.PostgreSQL9Dialect
   public static final String HIBERNATE_HBM2DDL_AUTO = "hibernate.hbm2ddl.auto"; //update
+  public static final String HIBERNATE_POOL_SIZE = "hibernate.connection.pool_size"; //connections per shared session factory
+  public static final String SHAPEFILE_META_DB_BATCH_SIZE = "shapefile.meta.db.batchsize"; //rows per JDBC batch when saving metas
 
   //HDFS
   public static final String INPUT_DIR_PATH = "mapred.input.dir";
   public static final String SHAPEFILE_INDEX_TABLES = "shapefile.index.tablenames";
+  public static final String PARTITIONER_DIR_PATH = "partitioner.dir";  //saved spatial partitioners are reused from here
+  public static final String SHAPEFILE_META_INDEX_DIRS = "shapefile.meta.index.dirs";  //directories of shapefiles with .smi meta indexes, not searched recursively, used instead of the database
 
 }
@@ -14,6 +14,10 @@ public class PhysicalNameStrategyImpl implements PhysicalNamingStrategy {
     this.tableName = tableName;
   }
 
+  public String getTableName() {
+    return tableName;
+  }
+
   @Override
   public Identifier toPhysicalCatalogName(Identifier name, JdbcEnvironment jdbcEnvironment) {
     return name;
@@ -0,0 +1,186 @@
+package edu.gmu.stc.hibernate;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataBuilder;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.Environment;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.gmu.stc.config.ConfigParameter;
+
+/**
+ * Keeps one Hibernate {@link SessionFactory} per JVM for every combination of connection
+ * settings, table and mapped class, so that the driver and every executor bootstrap Hibernate
+ * and open their connection pool once instead of on every query or save.
+ *
+ * Factories are built lazily on first use, each with a connection pool bounded by
+ * ConfigParameter.HIBERNATE_POOL_SIZE, and are closed by a shutdown hook when the JVM exits.
+ * The time to build factories and to open sessions is recorded, see {@link #getMetrics()}.
+ *
+ * Created by Fei Hu on 5/5/18.
+ */
+public class SessionFactoryRegistry {
+  private static final Log LOG = LogFactory.getLog(SessionFactoryRegistry.class);
+
+  public static final String DEFAULT_POOL_SIZE = "4";
+
+  private static final Map<String, Entry> factories = new ConcurrentHashMap<String, Entry>();
+
+  private static final AtomicLong numBootstraps = new AtomicLong();
+  private static final AtomicLong bootstrapNanos = new AtomicLong();
+  private static final AtomicLong numSessions = new AtomicLong();
+  private static final AtomicLong sessionNanos = new AtomicLong();
+  private static final AtomicLong maxSessionNanos = new AtomicLong();
+
+  private static boolean shutdownHookAdded = false;
+
+  private static class Entry {
+    private final StandardServiceRegistry registry;
+    private final SessionFactory sessionFactory;
+
+    private Entry(StandardServiceRegistry registry, SessionFactory sessionFactory) {
+      this.registry = registry;
+      this.sessionFactory = sessionFactory;
+    }
+  }
+
+  private SessionFactoryRegistry() {
+  }
+
+  /**
+   * Returns the shared session factory mapping the class to the table.
+   *
+   * @param tableName the physical table name of the class, or null to keep its default name
+   */
+  public static SessionFactory getSessionFactory(Configuration conf, String tableName,
+                                                 Class<?> mappingClass) {
+    Map<String, String> settings = getSettings(conf);
+    String key = settings + "|" + tableName + "|" + mappingClass.getName();
+
+    Entry entry = factories.get(key);
+    if (entry == null) {
+      entry = createEntry(key, settings, tableName, mappingClass);
+    }
+    return entry.sessionFactory;
+  }
+
+  private static synchronized Entry createEntry(String key, Map<String, String> settings,
+                                                String tableName, Class<?> mappingClass) {
+    Entry entry = factories.get(key);
+    if (entry != null) {
+      return entry;
+    }
+
+    long start = System.nanoTime();
+    StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+        .applySettings(settings)
+        .build();
+    try {
+      MetadataSources sources = new MetadataSources(registry);
+      sources.addAnnotatedClass(mappingClass);
+      MetadataBuilder metadataBuilder = sources.getMetadataBuilder();
+      if (tableName != null) {
+        metadataBuilder.applyPhysicalNamingStrategy(new PhysicalNameStrategyImpl(tableName));
+      }
+      entry = new Entry(registry, metadataBuilder.build().buildSessionFactory());
+    } catch (RuntimeException e) {
+      StandardServiceRegistryBuilder.destroy(registry);
+      throw e;
+    }
+
+    long nanos = System.nanoTime() - start;
+    numBootstraps.incrementAndGet();
+    bootstrapNanos.addAndGet(nanos);
+    LOG.info(String.format("Built the session factory of table [%s] in %.0f ms",
+                           tableName, nanos / 1e6));
+
+    factories.put(key, entry);
+    if (!shutdownHookAdded) {
+      Runtime.getRuntime().addShutdownHook(new Thread("SessionFactoryRegistry-shutdown") {
+        @Override
+        public void run() {
+          closeAll();
+        }
+      });
+      shutdownHookAdded = true;
+    }
+    return entry;
+  }
+
+  private static Map<String, String> getSettings(Configuration conf) {
+    // Hibernate settings equivalent to hibernate.cfg.xml's properties, sorted to form the key
+    Map<String, String> settings = new TreeMap<String, String>();
+    putSetting(settings, Environment.DRIVER, conf.get(ConfigParameter.HIBERNATE_DRIEVER));
+    putSetting(settings, Environment.URL, conf.get(ConfigParameter.HIBERNATE_URL));
+    putSetting(settings, Environment.USER, conf.get(ConfigParameter.HIBERNATE_USER));
+    putSetting(settings, Environment.PASS, conf.get(ConfigParameter.HIBERNATE_PASS));
+    putSetting(settings, Environment.DIALECT, conf.get(ConfigParameter.HIBERNATE_DIALECT));
+    putSetting(settings, Environment.HBM2DDL_AUTO, conf.get(ConfigParameter.HIBERNATE_HBM2DDL_AUTO));
+    putSetting(settings, Environment.POOL_SIZE,
+               conf.get(ConfigParameter.HIBERNATE_POOL_SIZE, DEFAULT_POOL_SIZE));
+    return settings;
+  }
+
+  private static void putSetting(Map<String, String> settings, String name, String value) {
+    if (value != null) {
+      settings.put(name, value);
+    }
+  }
+
+  /**
+   * Opens a session of the factory, recording how long it takes.
+   */
+  public static Session openSession(SessionFactory sessionFactory) {
+    long start = System.nanoTime();
+    Session session = sessionFactory.openSession();
+    long nanos = System.nanoTime() - start;
+
+    numSessions.incrementAndGet();
+    sessionNanos.addAndGet(nanos);
+    long max = maxSessionNanos.get();
+    while (nanos > max && !maxSessionNanos.compareAndSet(max, nanos)) {
+      max = maxSessionNanos.get();
+    }
+    return session;
+  }
+
+  /**
+   * Returns the number of factories built and sessions opened in this JVM, with the time spent.
+   */
+  public static String getMetrics() {
+    long sessions = numSessions.get();
+    return String.format("%d session factories built in %.0f ms, %d sessions opened "
+                         + "in %.3f ms on average and %.3f ms at most",
+                         numBootstraps.get(), bootstrapNanos.get() / 1e6, sessions,
+                         sessions == 0 ? 0 : sessionNanos.get() / 1e6 / sessions,
+                         maxSessionNanos.get() / 1e6);
+  }
+
+  /**
+   * Closes all factories and their connection pools. Factories requested afterwards are built
+   * again.
+   */
+  public static synchronized void closeAll() {
+    for (Entry entry : factories.values()) {
+      try {
+        entry.sessionFactory.close();
+      } finally {
+        StandardServiceRegistryBuilder.destroy(entry.registry);
+      }
+    }
+    if (!factories.isEmpty()) {
+      LOG.info(getMetrics());
+    }
+    factories.clear();
+  }
+}
@@ -0,0 +1,186 @@
+package edu.gmu.stc.hibernate;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+
+import edu.gmu.stc.vector.shapefile.meta.ShapeFileMeta;
+
+/**
+ * Loads {@link ShapeFileMeta} rows into a table in bulk, bypassing the Hibernate session.
+ *
+ * {@link DAOImpl#insertDynamicTableObjectList} saves one entity at a time, so every row costs a
+ * round trip and session bookkeeping. This loader instead sends the rows as JDBC batches of a
+ * configurable size over a plain connection, e.g. one obtained with Session.doWork. The ids are
+ * the record indexes the metas already carry, so nothing is generated or read back. With
+ * PostgreSQL, adding reWriteBatchedInserts=true to the JDBC URL turns each batch into one
+ * multi-row insert.
+ *
+ * For offline loading, the rows can also be streamed as CSV in the column order of
+ * {@link #getCopySQL}, e.g. to be loaded with psql's \copy.
+ *
+ * Created by Fei Hu on 5/4/18.
+ */
+public class ShapeFileMetaBulkLoader {
+  private static final Log LOG = LogFactory.getLog(ShapeFileMetaBulkLoader.class);
+
+  public static final int DEFAULT_BATCH_SIZE = 10000;
+
+  /** the columns of ShapeFileMeta, in the order rows are written */
+  public static final String COLUMNS =
+      "index, typeid, shp_offset, shp_length, dbf_offset, dbf_length, minx, miny, maxx, maxy, filepath";
+
+  private final String tableName;
+  private final int batchSize;
+
+  private long numRows = 0;
+  private long elapsedNanos = 0;
+
+  public ShapeFileMetaBulkLoader(String tableName) {
+    this(tableName, DEFAULT_BATCH_SIZE);
+  }
+
+  public ShapeFileMetaBulkLoader(String tableName, int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("The batch size must be positive: " + batchSize);
+    }
+    this.tableName = tableName;
+    this.batchSize = batchSize;
+  }
+
+  public static String getInsertSQL(String tableName) {
+    return String.format("INSERT INTO %s (%s) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                         tableName, COLUMNS);
+  }
+
+  public static String getCopySQL(String tableName) {
+    return String.format("COPY %s (%s) FROM STDIN WITH (FORMAT csv)", tableName, COLUMNS);
+  }
+
+  /**
+   * Inserts the metas in batches and commits them in one transaction.
+   *
+   * @return the number of rows inserted
+   */
+  public long insert(Connection connection, Iterator<ShapeFileMeta> metas) throws SQLException {
+    long start = System.nanoTime();
+    long rows = 0;
+    boolean autoCommit = connection.getAutoCommit();
+    connection.setAutoCommit(false);
+
+    PreparedStatement statement = connection.prepareStatement(getInsertSQL(tableName));
+    try {
+      int batchRows = 0;
+      while (metas.hasNext()) {
+        ShapeFileMeta meta = metas.next();
+        statement.setLong(1, meta.getIndex());
+        statement.setInt(2, meta.getTypeID());
+        statement.setLong(3, meta.getShp_offset());
+        statement.setInt(4, meta.getShp_length());
+        statement.setLong(5, meta.getDbf_offset());
+        statement.setInt(6, meta.getDbf_length());
+        statement.setDouble(7, meta.getMinX());
+        statement.setDouble(8, meta.getMinY());
+        statement.setDouble(9, meta.getMaxX());
+        statement.setDouble(10, meta.getMaxY());
+        statement.setString(11, meta.getFilePath());
+        statement.addBatch();
+        rows++;
+
+        if (++batchRows == batchSize) {
+          statement.executeBatch();
+          batchRows = 0;
+          LOG.debug(String.format("Inserted %d rows into %s", rows, tableName));
+        }
+      }
+      if (batchRows > 0) {
+        statement.executeBatch();
+      }
+      connection.commit();
+    } catch (SQLException e) {
+      connection.rollback();
+      throw e;
+    } finally {
+      statement.close();
+      connection.setAutoCommit(autoCommit);
+    }
+
+    record(rows, System.nanoTime() - start);
+    return rows;
+  }
+
+  /**
+   * Writes the metas as CSV rows without header, in the column order of {@link #COLUMNS}.
+   *
+   * @return the number of rows written
+   */
+  public long writeCSV(Iterator<ShapeFileMeta> metas, Writer writer) throws IOException {
+    long start = System.nanoTime();
+    long rows = 0;
+    StringBuilder line = new StringBuilder(256);
+    while (metas.hasNext()) {
+      ShapeFileMeta meta = metas.next();
+      line.setLength(0);
+      line.append(meta.getIndex()).append(',')
+          .append(meta.getTypeID()).append(',')
+          .append(meta.getShp_offset()).append(',')
+          .append(meta.getShp_length()).append(',')
+          .append(meta.getDbf_offset()).append(',')
+          .append(meta.getDbf_length()).append(',')
+          .append(meta.getMinX()).append(',')
+          .append(meta.getMinY()).append(',')
+          .append(meta.getMaxX()).append(',')
+          .append(meta.getMaxY()).append(',');
+      appendQuoted(line, meta.getFilePath());
+      line.append('\n');
+      writer.append(line);
+      rows++;
+    }
+    writer.flush();
+
+    record(rows, System.nanoTime() - start);
+    return rows;
+  }
+
+  private static void appendQuoted(StringBuilder line, String value) {
+    if (value == null) {
+      return;
+    }
+    line.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"') {
+        line.append('"');
+      }
+      line.append(c);
+    }
+    line.append('"');
+  }
+
+  private void record(long rows, long nanos) {
+    numRows += rows;
+    elapsedNanos += nanos;
+    LOG.info(String.format("Loaded %d rows of %s in %.1f s, %.0f rows/s",
+                           rows, tableName, nanos / 1e9, rows * 1e9 / Math.max(nanos, 1)));
+  }
+
+  /**
+   * Returns the number of rows loaded by this loader so far.
+   */
+  public long getNumRows() {
+    return numRows;
+  }
+
+  /**
+   * Returns the average number of rows loaded per second so far.
+   */
+  public double getRowsPerSecond() {
+    return elapsedNanos == 0 ? 0 : numRows * 1e9 / elapsedNanos;
+  }
+}
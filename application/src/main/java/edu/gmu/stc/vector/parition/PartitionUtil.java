@@ -2,6 +2,11 @@ package edu.gmu.stc.vector.parition;
 
 import com.vividsolutions.jts.geom.Envelope;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.datasyslab.geospark.enums.GridType;
 import org.datasyslab.geospark.spatialPartitioning.EqualPartitioning;
 import org.datasyslab.geospark.spatialPartitioning.HilbertPartitioning;
@@ -9,6 +14,7 @@ import org.datasyslab.geospark.spatialPartitioning.KDBTree;
 import org.datasyslab.geospark.spatialPartitioning.KDBTreePartitioner;
 import org.datasyslab.geospark.spatialPartitioning.QuadtreePartitioning;
 import org.datasyslab.geospark.spatialPartitioning.SpatialPartitioner;
+import org.datasyslab.geospark.spatialPartitioning.SpatialPartitionerIO;
 import org.datasyslab.geospark.spatialPartitioning.VoronoiPartitioning;
 import org.datasyslab.geospark.spatialPartitioning.quadtree.QuadTreePartitioner;
 import org.datasyslab.geospark.spatialPartitioning.quadtree.StandardQuadTree;
@@ -27,6 +33,38 @@ import static org.datasyslab.geospark.enums.GridType.QUADTREE;
  * Created by Fei Hu on 1/26/18.
  */
 public class PartitionUtil {
+  private static final Log LOG = LogFactory.getLog(PartitionUtil.class);
+
+  /**
+   * Loads the partitioner saved at partitionerPath if it covers the samples, otherwise builds
+   * a new one from the samples and saves it there for the next run.
+   */
+  public static SpatialPartitioner spatialPartitioning(GridType gridType, int numPartitions,
+                                                       List<Envelope> samples,
+                                                       String partitionerPath,
+                                                       Configuration conf)
+      throws Exception {
+    Envelope boundary = new Envelope();
+    for (Envelope sample : samples) {
+      boundary.expandToInclude(sample);
+    }
+
+    Path path = new Path(partitionerPath);
+    FileSystem fs = path.getFileSystem(conf);
+    if (fs.exists(path)) {
+      try {
+        SpatialPartitioner partitioner = SpatialPartitionerIO.load(partitionerPath, conf, boundary);
+        LOG.info("Reuse the spatial partitioner saved at " + partitionerPath);
+        return partitioner;
+      } catch (IllegalArgumentException e) {
+        LOG.warn("Rebuild the spatial partitioner: " + e.getMessage());
+      }
+    }
+
+    SpatialPartitioner partitioner = spatialPartitioning(gridType, numPartitions, samples);
+    SpatialPartitionerIO.save(partitioner, partitionerPath, conf);
+    return partitioner;
+  }
 
   public static SpatialPartitioner spatialPartitioning(GridType gridType, int numPartitions,
                                                        List<Envelope> samples)
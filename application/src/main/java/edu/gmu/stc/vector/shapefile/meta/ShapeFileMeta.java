@@ -32,6 +32,9 @@ import javax.persistence.Id;
 public class ShapeFileMeta extends Geometry implements Serializable {
   private static final Log LOG = LogFactory.getLog(ShapeFileMeta.class);
 
+  /** shared by all metas, as millions of them are created while building an index */
+  private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
   @Id
   private Long index;
   @Column(name = "typeid")
@@ -58,13 +61,13 @@ public class ShapeFileMeta extends Geometry implements Serializable {
   private Envelope envelope = null;
 
   public ShapeFileMeta() {
-    super(new GeometryFactory());
+    super(GEOMETRY_FACTORY);
   }
 
   public ShapeFileMeta(Long index, int typeID, long shp_offset, int shp_length, long dbf_offset,
                        int dbf_length, String filePath, double minX, double minY, double maxX,
                        double maxY) {
-    super(new GeometryFactory());
+    super(GEOMETRY_FACTORY);
     this.index = index;
     this.typeID = typeID;
     this.shp_offset = shp_offset;
@@ -79,7 +82,7 @@ public class ShapeFileMeta extends Geometry implements Serializable {
   }
 
   public ShapeFileMeta(ShpMeta shpMeta, DbfMeta dbfMeta, String filePath) {
-    super(new GeometryFactory());
+    super(GEOMETRY_FACTORY);
     this.index = shpMeta.getIndex();
     this.typeID = shpMeta.getTypeID();
 
@@ -105,6 +108,16 @@ public class ShapeFileMeta extends Geometry implements Serializable {
     this.index = index;
   }
 
+  /**
+   * Returns a 64-bit id of the record: the id of its file in the high 32 bits and the index of
+   * the record in the file in the low 32 bits, which holds the index of any record since
+   * shapefiles are limited to 4GB. The ids are unique as long as the files have distinct ids,
+   * e.g. the ones of ShapeFileMetaRDD.getFileIds.
+   */
+  public long getRecordId(int fileId) {
+    return ((long) fileId << 32) | (index & 0xFFFFFFFFL);
+  }
+
   public int getTypeID() {
     return typeID;
   }
@@ -0,0 +1,389 @@
+package edu.gmu.stc.vector.shapefile.meta.index;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import edu.gmu.stc.vector.shapefile.meta.ShapeFileMeta;
+import edu.gmu.stc.vector.shapefile.reader.CoalescedRangeReader;
+
+/**
+ * A sidecar file stored next to a shapefile, e.g. buildings.smi next to buildings.shp, which
+ * holds the {@link ShapeFileMeta} of all its records together with a packed R-tree over their
+ * envelopes. It replaces the database table of metas: the records overlapping a bounding box are
+ * found by reading the file directly, from the driver or from the executors.
+ *
+ * The records are sorted with the Sort-Tile-Recursive algorithm and grouped into leaves of
+ * nodeCapacity consecutive records. Every level of the tree above groups nodeCapacity consecutive
+ * nodes of the level below, up to a single root, so the children of a node are found by
+ * arithmetic and only envelopes are stored. All numbers are big-endian:
+ *
+ * <pre>
+ *   header   magic, version, numRecords, nodeCapacity, numLevels (5 ints), 4 reserved bytes
+ *   levels   from the root down to the leaves: minX, minY, maxX, maxY (4 doubles) per node
+ *   records  index (long), typeID (int), shp_offset (long), shp_length (int),
+ *            dbf_offset (long), dbf_length (int), minX, minY, maxX, maxY (4 doubles)
+ * </pre>
+ *
+ * Created by Fei Hu on 5/3/18.
+ */
+public class ShapeFileMetaIndex implements Closeable {
+
+  public final static String SUFFIX = ".smi";
+
+  public final static int DEFAULT_NODE_CAPACITY = 16;
+
+  private final static int MAGIC = 0x534D4958;  // "SMIX"
+  private final static int VERSION = 1;
+  private final static int HEADER_LENGTH = 24;
+  private final static int NODE_LENGTH = 32;
+  private final static int RECORD_LENGTH = 68;
+
+  private final Path indexPath;
+  private final String filePath;
+  private final FSDataInputStream inputStream;
+  private final CoalescedRangeReader rangeReader = new CoalescedRangeReader();
+
+  private final int numRecords;
+  private final int nodeCapacity;
+  /** number of nodes per level, from the leaves up to the root */
+  private final int[] levelSizes;
+  /** offset of every level in the file, from the leaves up to the root */
+  private final long[] levelOffsets;
+  private final long recordsOffset;
+
+  /**
+   * Opens the index, reading only its header.
+   */
+  public ShapeFileMetaIndex(FileSystem fs, Path indexPath) throws IOException {
+    this.indexPath = indexPath;
+    this.filePath = getShapeFilePath(indexPath);
+    this.inputStream = fs.open(indexPath);
+
+    try {
+      byte[] header = new byte[HEADER_LENGTH];
+      inputStream.readFully(0, header);
+      ByteBuffer buffer = ByteBuffer.wrap(header);
+      if (buffer.getInt() != MAGIC) {
+        throw new IOException(indexPath + " is not a shapefile meta index");
+      }
+      int version = buffer.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported version " + version + " of " + indexPath);
+      }
+      numRecords = buffer.getInt();
+      nodeCapacity = buffer.getInt();
+      int numLevels = buffer.getInt();
+
+      levelSizes = getLevelSizes(numRecords, nodeCapacity);
+      if (levelSizes.length != numLevels) {
+        throw new IOException(indexPath + " is corrupted");
+      }
+      levelOffsets = new long[numLevels];
+      long offset = HEADER_LENGTH;
+      for (int level = numLevels - 1; level >= 0; level--) {
+        levelOffsets[level] = offset;
+        offset += (long) levelSizes[level] * NODE_LENGTH;
+      }
+      recordsOffset = offset;
+    } catch (IOException e) {
+      inputStream.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the path of the index of the shapefile with the given path without suffix.
+   */
+  public static Path getIndexPath(String shapeFilePath) {
+    return new Path(shapeFilePath + SUFFIX);
+  }
+
+  /**
+   * Returns the path without suffix of the shapefile an index belongs to.
+   */
+  public static String getShapeFilePath(Path indexPath) {
+    String path = indexPath.toString();
+    return path.endsWith(SUFFIX) ? path.substring(0, path.length() - SUFFIX.length()) : path;
+  }
+
+  /**
+   * Returns the number of nodes per level of the tree over numRecords records, from the leaves
+   * up to the root.
+   */
+  private static int[] getLevelSizes(int numRecords, int nodeCapacity) {
+    List<Integer> sizes = new ArrayList<Integer>();
+    int size = numRecords;
+    while (size > 0) {
+      size = (size + nodeCapacity - 1) / nodeCapacity;
+      sizes.add(size);
+      if (size == 1) {
+        break;
+      }
+    }
+
+    int[] levelSizes = new int[sizes.size()];
+    for (int i = 0; i < levelSizes.length; i++) {
+      levelSizes[i] = sizes.get(i);
+    }
+    return levelSizes;
+  }
+
+  public static void write(List<ShapeFileMeta> metas, FileSystem fs, Path indexPath)
+      throws IOException {
+    write(metas, fs, indexPath, DEFAULT_NODE_CAPACITY);
+  }
+
+  /**
+   * Writes the index of the metas of one shapefile. The list is sorted in place.
+   */
+  public static void write(List<ShapeFileMeta> metas, FileSystem fs, Path indexPath,
+                           int nodeCapacity) throws IOException {
+    sortTileRecursive(metas, nodeCapacity);
+    int[] levelSizes = getLevelSizes(metas.size(), nodeCapacity);
+
+    // envelopes of all levels, from the leaves up to the root
+    List<double[]> levels = new ArrayList<double[]>(levelSizes.length);
+    if (levelSizes.length > 0) {
+      double[] leaves = new double[4 * levelSizes[0]];
+      for (int i = 0; i < metas.size(); i++) {
+        ShapeFileMeta meta = metas.get(i);
+        expand(leaves, i / nodeCapacity, i % nodeCapacity == 0,
+               meta.getMinX(), meta.getMinY(), meta.getMaxX(), meta.getMaxY());
+      }
+      levels.add(leaves);
+    }
+    for (int level = 1; level < levelSizes.length; level++) {
+      double[] children = levels.get(level - 1);
+      double[] nodes = new double[4 * levelSizes[level]];
+      for (int i = 0; i < levelSizes[level - 1]; i++) {
+        expand(nodes, i / nodeCapacity, i % nodeCapacity == 0,
+               children[4 * i], children[4 * i + 1], children[4 * i + 2], children[4 * i + 3]);
+      }
+      levels.add(nodes);
+    }
+
+    FSDataOutputStream outputStream = fs.create(indexPath, true);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream, 1 << 16));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(metas.size());
+      out.writeInt(nodeCapacity);
+      out.writeInt(levelSizes.length);
+      out.writeInt(0);
+
+      for (int level = levels.size() - 1; level >= 0; level--) {
+        for (double value : levels.get(level)) {
+          out.writeDouble(value);
+        }
+      }
+
+      for (ShapeFileMeta meta : metas) {
+        out.writeLong(meta.getIndex());
+        out.writeInt(meta.getTypeID());
+        out.writeLong(meta.getShp_offset());
+        out.writeInt(meta.getShp_length());
+        out.writeLong(meta.getDbf_offset());
+        out.writeInt(meta.getDbf_length());
+        out.writeDouble(meta.getMinX());
+        out.writeDouble(meta.getMinY());
+        out.writeDouble(meta.getMaxX());
+        out.writeDouble(meta.getMaxY());
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private static void expand(double[] nodes, int node, boolean first,
+                             double minX, double minY, double maxX, double maxY) {
+    int i = 4 * node;
+    if (first) {
+      nodes[i] = minX;
+      nodes[i + 1] = minY;
+      nodes[i + 2] = maxX;
+      nodes[i + 3] = maxY;
+    } else {
+      nodes[i] = Math.min(nodes[i], minX);
+      nodes[i + 1] = Math.min(nodes[i + 1], minY);
+      nodes[i + 2] = Math.max(nodes[i + 2], maxX);
+      nodes[i + 3] = Math.max(nodes[i + 3], maxY);
+    }
+  }
+
+  /**
+   * Sorts the metas into vertical slices by the x of their centers, and each slice by y, so
+   * that every run of nodeCapacity metas forms a compact leaf.
+   */
+  private static void sortTileRecursive(List<ShapeFileMeta> metas, int nodeCapacity) {
+    Collections.sort(metas, new Comparator<ShapeFileMeta>() {
+      @Override
+      public int compare(ShapeFileMeta o1, ShapeFileMeta o2) {
+        return Double.compare(o1.getMinX() + o1.getMaxX(), o2.getMinX() + o2.getMaxX());
+      }
+    });
+
+    int numLeaves = (metas.size() + nodeCapacity - 1) / nodeCapacity;
+    int numSlices = (int) Math.ceil(Math.sqrt(numLeaves));
+    int sliceSize = numSlices * nodeCapacity;
+    Comparator<ShapeFileMeta> yComparator = new Comparator<ShapeFileMeta>() {
+      @Override
+      public int compare(ShapeFileMeta o1, ShapeFileMeta o2) {
+        return Double.compare(o1.getMinY() + o1.getMaxY(), o2.getMinY() + o2.getMaxY());
+      }
+    };
+    for (int start = 0; start < metas.size(); start += sliceSize) {
+      Collections.sort(metas.subList(start, Math.min(start + sliceSize, metas.size())), yComparator);
+    }
+  }
+
+  public Path getIndexPath() {
+    return indexPath;
+  }
+
+  public int getNumRecords() {
+    return numRecords;
+  }
+
+  /**
+   * Returns the ids of the leaves whose envelopes intersect the envelope, in ascending order.
+   *
+   * @param leafEnvelopes if not null, receives the envelopes of the returned leaves
+   */
+  public int[] queryLeaves(final Envelope envelope, final List<Envelope> leafEnvelopes)
+      throws IOException {
+    if (levelSizes.length == 0) {
+      return new int[0];
+    }
+
+    int[] nodes = new int[] {0};
+    for (int level = levelSizes.length - 1; level >= 0; level--) {
+      final boolean isLeafLevel = level == 0;
+      final boolean[] matches = new boolean[nodes.length];
+      long[] offsets = new long[nodes.length];
+      int[] lengths = new int[nodes.length];
+      for (int i = 0; i < nodes.length; i++) {
+        offsets[i] = levelOffsets[level] + (long) nodes[i] * NODE_LENGTH;
+        lengths[i] = NODE_LENGTH;
+      }
+      rangeReader.read(inputStream, offsets, lengths, new CoalescedRangeReader.RangeHandler() {
+        @Override
+        public void handle(int index, ByteBuffer range) {
+          Envelope node = readEnvelope(range);
+          matches[index] = node.intersects(envelope);
+          if (matches[index] && isLeafLevel && leafEnvelopes != null) {
+            leafEnvelopes.add(node);
+          }
+        }
+      });
+
+      int numMatches = 0;
+      for (boolean match : matches) {
+        if (match) {
+          numMatches++;
+        }
+      }
+      if (isLeafLevel) {
+        int[] leaves = new int[numMatches];
+        int count = 0;
+        for (int i = 0; i < nodes.length; i++) {
+          if (matches[i]) {
+            leaves[count++] = nodes[i];
+          }
+        }
+        return leaves;
+      }
+
+      int[] children = new int[numMatches * nodeCapacity];
+      int count = 0;
+      for (int i = 0; i < nodes.length; i++) {
+        if (!matches[i]) {
+          continue;
+        }
+        int end = Math.min((nodes[i] + 1) * nodeCapacity, levelSizes[level - 1]);
+        for (int child = nodes[i] * nodeCapacity; child < end; child++) {
+          children[count++] = child;
+        }
+      }
+      nodes = Arrays.copyOf(children, count);
+    }
+    return nodes;
+  }
+
+  /**
+   * Returns the metas of the records overlapping the envelope.
+   */
+  public List<ShapeFileMeta> query(Envelope envelope) throws IOException {
+    return readLeaves(queryLeaves(envelope, null), envelope);
+  }
+
+  /**
+   * Returns the metas of the records of the leaves which overlap the envelope.
+   *
+   * @param leaves ids of leaves as returned by {@link #queryLeaves}
+   */
+  public List<ShapeFileMeta> readLeaves(int[] leaves, final Envelope envelope) throws IOException {
+    long[] offsets = new long[leaves.length];
+    int[] lengths = new int[leaves.length];
+    for (int i = 0; i < leaves.length; i++) {
+      int first = leaves[i] * nodeCapacity;
+      int end = Math.min(first + nodeCapacity, numRecords);
+      offsets[i] = recordsOffset + (long) first * RECORD_LENGTH;
+      lengths[i] = (end - first) * RECORD_LENGTH;
+    }
+
+    final List<ShapeFileMeta> metas = new ArrayList<ShapeFileMeta>();
+    rangeReader.read(inputStream, offsets, lengths, new CoalescedRangeReader.RangeHandler() {
+      @Override
+      public void handle(int index, ByteBuffer range) {
+        while (range.hasRemaining()) {
+          long recordIndex = range.getLong();
+          int typeID = range.getInt();
+          long shpOffset = range.getLong();
+          int shpLength = range.getInt();
+          long dbfOffset = range.getLong();
+          int dbfLength = range.getInt();
+          double minX = range.getDouble();
+          double minY = range.getDouble();
+          double maxX = range.getDouble();
+          double maxY = range.getDouble();
+          if (minX > envelope.getMaxX() || maxX < envelope.getMinX()
+              || minY > envelope.getMaxY() || maxY < envelope.getMinY()) {
+            continue;
+          }
+          metas.add(new ShapeFileMeta(recordIndex, typeID, shpOffset, shpLength, dbfOffset,
+                                      dbfLength, filePath, minX, minY, maxX, maxY));
+        }
+      }
+    });
+    return metas;
+  }
+
+  private static Envelope readEnvelope(ByteBuffer buffer) {
+    double minX = buffer.getDouble();
+    double minY = buffer.getDouble();
+    double maxX = buffer.getDouble();
+    double maxY = buffer.getDouble();
+    return new Envelope(minX, maxX, minY, maxY);
+  }
+
+  @Override
+  public void close() throws IOException {
+    inputStream.close();
+  }
+}
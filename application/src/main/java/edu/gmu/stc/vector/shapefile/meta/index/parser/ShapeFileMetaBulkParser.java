@@ -0,0 +1,283 @@
+package edu.gmu.stc.vector.shapefile.meta.index.parser;
+
+import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.shp.ShapeFileConst;
+import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.shp.ShapeType;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.gmu.stc.vector.shapefile.meta.ShapeFileMeta;
+
+/**
+ * Extracts the {@link ShapeFileMeta} of every record of a shapefile in one sequential pass
+ * over its .shp and .dbf files.
+ *
+ * Unlike {@link ShpFileMetaParser} and {@link DbfMetaParser}, which allocate a byte array for
+ * every number they read, both files are decoded from a single reusable buffer each, switching
+ * the byte order as the format requires: big-endian record headers, little-endian shape types
+ * and bounding boxes. The only objects allocated per record are the returned metas.
+ *
+ * Records of undefined shape type are skipped together with their .dbf record, and deleted
+ * .dbf records are skipped, like in CombineShapeFileMetaIndexReader. Records left without a
+ * .dbf record are counted, so that the caller can report files whose record counts differ.
+ *
+ * Created by Fei Hu on 5/2/18.
+ */
+public class ShapeFileMetaBulkParser implements ShapeFileConst, Closeable {
+
+  private static final int BUFFER_SIZE = 1 << 20;
+  private static final int SHP_HEADER_LENGTH = 100;
+  private static final int RECORD_HEADER_LENGTH = 8;
+
+  private final String filePath;
+  private final StreamBuffer shp;
+  private final StreamBuffer dbf;
+
+  private final long shpFileLength;
+
+  private int dbfNumRecords = 0;
+  private int dbfHeaderLength = 0;
+  private int dbfRecordLength = 0;
+  private int dbfRecordsRead = 0;
+
+  private int numRecordsWithoutAttributes = 0;
+  private long firstRecordWithoutAttributes = -1;
+
+  /**
+   * @param shpInput the .shp file, positioned at its start
+   * @param dbfInput the .dbf file, positioned at its start, or null if there is none
+   * @param filePath the path of the shapefile without suffix, as stored in the metas
+   */
+  public ShapeFileMetaBulkParser(InputStream shpInput, InputStream dbfInput, String filePath)
+      throws IOException {
+    this.filePath = filePath;
+    this.shp = new StreamBuffer(shpInput);
+    this.dbf = dbfInput == null ? null : new StreamBuffer(dbfInput);
+
+    ByteBuffer buffer = shp.require(SHP_HEADER_LENGTH);
+    buffer.order(ByteOrder.BIG_ENDIAN);
+    if (buffer.getInt(buffer.position()) != EXPECT_FILE_CODE) {
+      throw new IOException(filePath + " is not a shapefile");
+    }
+    shpFileLength = 2L * buffer.getInt(buffer.position() + 24);
+    shp.skip(SHP_HEADER_LENGTH);
+
+    if (dbf != null) {
+      buffer = dbf.require(12);
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      dbfNumRecords = buffer.getInt(buffer.position() + 4);
+      dbfHeaderLength = buffer.getShort(buffer.position() + 8) & 0xffff;
+      dbfRecordLength = buffer.getShort(buffer.position() + 10) & 0xffff;
+      dbf.skip(dbfHeaderLength);
+    }
+  }
+
+  /**
+   * Parses the metas of all remaining records.
+   */
+  public List<ShapeFileMeta> parseAll() throws IOException {
+    List<ShapeFileMeta> metas = new ArrayList<ShapeFileMeta>();
+    while (parse(metas, BUFFER_SIZE) > 0) {
+      // keep going
+    }
+    return metas;
+  }
+
+  /**
+   * Appends the metas of the next records, at most maxRecords of them, to the list.
+   *
+   * @return the number of metas added, 0 once all records are parsed
+   */
+  public int parse(List<ShapeFileMeta> metas, int maxRecords) throws IOException {
+    int added = 0;
+    while (added < maxRecords && shp.position() + RECORD_HEADER_LENGTH + INT_LENGTH <= shpFileLength) {
+      ByteBuffer buffer = shp.require(RECORD_HEADER_LENGTH + INT_LENGTH);
+      buffer.order(ByteOrder.BIG_ENDIAN);
+      int recordNumber = buffer.getInt();
+      int contentLength = 2 * buffer.getInt();
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      int typeID = buffer.getInt();
+
+      long shpOffset = shp.position();
+      int shpLength = contentLength - INT_LENGTH;
+      long dbfOffset = nextDbfRecord();
+      int dbfLength = dbfOffset < 0 ? 0 : dbfRecordLength - 1;
+
+      if (typeID == ShapeType.UNDEFINED.getId()) {
+        shp.skip(shpLength);
+        continue;
+      }
+
+      double minX;
+      double minY;
+      double maxX;
+      double maxY;
+      int consumed;
+      if (typeID == ShapeType.POINT.getId()) {
+        // Points have no bounding box
+        buffer = shp.require(2 * DOUBLE_LENGTH);
+        minX = maxX = buffer.getDouble();
+        minY = maxY = buffer.getDouble();
+        consumed = 2 * DOUBLE_LENGTH;
+      } else {
+        buffer = shp.require(4 * DOUBLE_LENGTH);
+        minX = buffer.getDouble();
+        minY = buffer.getDouble();
+        maxX = buffer.getDouble();
+        maxY = buffer.getDouble();
+        consumed = 4 * DOUBLE_LENGTH;
+      }
+      shp.skip(shpLength - consumed);
+
+      if (dbf != null && dbfOffset < 0) {
+        if (numRecordsWithoutAttributes == 0) {
+          firstRecordWithoutAttributes = recordNumber;
+        }
+        numRecordsWithoutAttributes++;
+      }
+
+      metas.add(new ShapeFileMeta((long) recordNumber, typeID, shpOffset, shpLength,
+                                  Math.max(dbfOffset, 0), dbfLength, filePath,
+                                  minX, minY, maxX, maxY));
+      added++;
+    }
+    return added;
+  }
+
+  /**
+   * Returns the offset of the next .dbf record which is not deleted, right after its deletion
+   * flag, or -1 if there are no more records.
+   */
+  private long nextDbfRecord() throws IOException {
+    if (dbf == null) {
+      return -1;
+    }
+
+    while (dbfRecordsRead < dbfNumRecords) {
+      ByteBuffer buffer = dbf.require(1);
+      byte flag = buffer.get(buffer.position());
+      if (flag == FILE_END_FLAG) {
+        break;
+      }
+      dbfRecordsRead++;
+      long offset = dbf.position() + 1;
+      dbf.skip(dbfRecordLength);
+      if (flag != RECORD_DELETE_FLAG) {
+        return offset;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the number of records parsed so far which have a .dbf file but no record in it.
+   */
+  public int getNumRecordsWithoutAttributes() {
+    return numRecordsWithoutAttributes;
+  }
+
+  /**
+   * Returns the record number of the first record without a .dbf record, or -1 if there is none.
+   */
+  public long getFirstRecordWithoutAttributes() {
+    return firstRecordWithoutAttributes;
+  }
+
+  /**
+   * Skips the .dbf records left once all the records of the .shp file are parsed.
+   *
+   * @return the number of these records which are not deleted, 0 if there is no .dbf file
+   */
+  public int skipRemainingAttributes() throws IOException {
+    int remaining = 0;
+    while (nextDbfRecord() >= 0) {
+      remaining++;
+    }
+    return remaining;
+  }
+
+  /**
+   * Returns the fraction of the .shp file parsed so far.
+   */
+  public float getProgress() {
+    return shpFileLength <= SHP_HEADER_LENGTH ? 1
+        : (float) (shp.position() - SHP_HEADER_LENGTH) / (shpFileLength - SHP_HEADER_LENGTH);
+  }
+
+  @Override
+  public void close() throws IOException {
+    shp.input.close();
+    if (dbf != null) {
+      dbf.input.close();
+    }
+  }
+
+  /**
+   * A window over an input stream, refilled from the stream as it is consumed.
+   */
+  private static final class StreamBuffer {
+    private final InputStream input;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    /** position in the stream of the first byte of the buffer */
+    private long start = 0;
+
+    private StreamBuffer(InputStream input) {
+      this.input = input;
+      buffer.limit(0);
+    }
+
+    /**
+     * Returns the buffer with at least n bytes remaining after its position.
+     */
+    ByteBuffer require(int n) throws IOException {
+      if (buffer.remaining() >= n) {
+        return buffer;
+      }
+
+      start += buffer.position();
+      buffer.compact();
+      while (buffer.position() < n) {
+        int read = input.read(buffer.array(), buffer.position(), buffer.remaining());
+        if (read < 0) {
+          throw new EOFException();
+        }
+        buffer.position(buffer.position() + read);
+      }
+      buffer.flip();
+      return buffer;
+    }
+
+    void skip(long n) throws IOException {
+      if (n <= buffer.remaining()) {
+        buffer.position(buffer.position() + (int) n);
+        return;
+      }
+
+      long toSkip = n - buffer.remaining();
+      start += buffer.limit();
+      buffer.position(0);
+      buffer.limit(0);
+      while (toSkip > 0) {
+        long skipped = input.skip(toSkip);
+        if (skipped <= 0) {
+          if (input.read() < 0) {
+            throw new EOFException();
+          }
+          skipped = 1;
+        }
+        toSkip -= skipped;
+        start += skipped;
+      }
+    }
+
+    long position() {
+      return start + buffer.position();
+    }
+  }
+}
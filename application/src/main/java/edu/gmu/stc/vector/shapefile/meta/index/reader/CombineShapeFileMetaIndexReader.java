@@ -7,45 +7,33 @@
 package edu.gmu.stc.vector.shapefile.meta.index.reader;
 
 import org.apache.commons.io.FilenameUtils;
-import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
-import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.log4j.Logger;
-import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.shp.ShapeType;
-import org.datasyslab.geospark.formatMapper.shapefileParser.shapes.DbfFileReader;
-import org.datasyslab.geospark.formatMapper.shapefileParser.shapes.PrimitiveShape;
-import org.datasyslab.geospark.formatMapper.shapefileParser.shapes.ShapeFileReader;
 import org.datasyslab.geospark.formatMapper.shapefileParser.shapes.ShapeKey;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
-import edu.gmu.stc.vector.shapefile.meta.DbfMeta;
 import edu.gmu.stc.vector.shapefile.meta.ShapeFileMeta;
-import edu.gmu.stc.vector.shapefile.meta.ShpMeta;
+import edu.gmu.stc.vector.shapefile.meta.index.parser.ShapeFileMetaBulkParser;
 
+/**
+ * Reads the {@link ShapeFileMeta} of every record of a shapefile, parsing the .shp and .dbf
+ * files in batches with a {@link ShapeFileMetaBulkParser}. The .shx file is not needed, as both
+ * files are read sequentially. Once all records are read, a warning is logged if the .shp and
+ * .dbf files have different numbers of records.
+ */
 public class CombineShapeFileMetaIndexReader extends RecordReader<ShapeKey, ShapeFileMeta> {
 
-    /** id of input path of .shp file */
-    private FileSplit shpSplit = null;
-
-    /** id of input path of .shx file */
-    private FileSplit shxSplit = null;
-
-    /** id of input path of .dbf file */
-    private FileSplit dbfSplit = null;
-
-    /** RecordReader for .shp file */
-    private ShapeFileMetaReader shapeFileMetaReader = null;
-
-    /** RecordReader for .dbf file */
-    private DbfFileMetaReader dbfFileReader = null;
+    /** default number of metas parsed at once */
+    private final static int BATCH_SIZE = 4096;
 
     /** suffix of attribute file */
     private final static String DBF_SUFFIX = "dbf";
@@ -53,20 +41,47 @@ public class CombineShapeFileMetaIndexReader extends RecordReader<ShapeKey, Shap
     /** suffix of shape record file */
     private final static String SHP_SUFFIX = "shp";
 
-    /** suffix of index file */
-    private final static String SHX_SUFFIX = "shx";
+    /** parser of the .shp and .dbf files */
+    private ShapeFileMetaBulkParser parser = null;
+
+    /** number of metas parsed at once */
+    private final int batchSize;
 
-    /** flag of whether .dbf exists */
-    private boolean hasDbf = false;
+    /** metas of the current batch */
+    private final List<ShapeFileMeta> batch;
 
-    /** flag of whether having next .dbf record */
-    private boolean hasNextDbf = false;
+    /** position of the current meta in the batch */
+    private int batchIndex = -1;
+
+    /** key of the current meta, reused across records */
+    private final ShapeKey currentKey = new ShapeKey();
+
+    /** path of the shapefile without suffix */
+    private String filePath = null;
+
+    /** flag of whether the records of the .shp and .dbf files were compared */
+    private boolean recordsChecked = false;
 
     /** dubug logger */
     final static Logger logger = Logger.getLogger(CombineShapeFileMetaIndexReader.class);
 
+    public CombineShapeFileMetaIndexReader() {
+        this(BATCH_SIZE);
+    }
+
     /**
-     * cut the combined split into FileSplit for .shp, .shx and .dbf
+     * @param batchSize number of metas parsed at once
+     */
+    public CombineShapeFileMetaIndexReader(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be >= 1");
+        }
+        this.batchSize = batchSize;
+        this.batch = new ArrayList<ShapeFileMeta>(batchSize);
+    }
+
+    /**
+     * open the .shp and .dbf files of the combined split
      * @param split
      * @param context
      * @throws IOException
@@ -76,88 +91,76 @@ public class CombineShapeFileMetaIndexReader extends RecordReader<ShapeKey, Shap
             throws IOException, InterruptedException
     {
         CombineFileSplit fileSplit = (CombineFileSplit) split;
-        Path[] paths = fileSplit.getPaths();
-        for(int i = 0; i < paths.length; ++i){
-            String suffix = FilenameUtils.getExtension(paths[i].toString());
-            if(suffix.equals(SHP_SUFFIX)) shpSplit = new FileSplit(paths[i], fileSplit.getOffset(i), fileSplit.getLength(i), fileSplit.getLocations());
-            else if(suffix.equals(SHX_SUFFIX)) shxSplit = new FileSplit(paths[i], fileSplit.getOffset(i), fileSplit.getLength(i), fileSplit.getLocations());
-            else if(suffix.equals(DBF_SUFFIX)) dbfSplit = new FileSplit(paths[i], fileSplit.getOffset(i), fileSplit.getLength(i), fileSplit.getLocations());
+        Path shpPath = null;
+        Path dbfPath = null;
+        for (Path path : fileSplit.getPaths()) {
+            String suffix = FilenameUtils.getExtension(path.toString());
+            if (suffix.equals(SHP_SUFFIX)) shpPath = path;
+            else if (suffix.equals(DBF_SUFFIX)) dbfPath = path;
         }
         // if shape file doesn't exists, throw an IOException
-        if(shpSplit == null) {
-          throw new IOException("Can't find .shp file.");
+        if (shpPath == null) {
+            throw new IOException("Can't find .shp file.");
         }
-        else{
-            if(shxSplit != null){
-                // shape file exists, extract .shp with .shx
-                // first read all indexes into memory
-                Path filePath = shxSplit.getPath();
-                FileSystem fileSys = filePath.getFileSystem(context.getConfiguration());
-                FSDataInputStream shxInpuStream = fileSys.open(filePath);
-                shxInpuStream.skip(24);
-                int shxFileLength = shxInpuStream.readInt() * 2 - 100; // get length in bytes, exclude header
-                // skip following 72 bytes in header
-                shxInpuStream.skip(72);
-                byte[] bytes = new byte[shxFileLength];
-                // read all indexes into memory, skip first 50 bytes(header)
-                shxInpuStream.readFully(bytes, 0, bytes.length);
-                IntBuffer buffer = ByteBuffer.wrap(bytes).asIntBuffer();
-                int[] indexes = new int[shxFileLength / 4];
-                buffer.get(indexes);
-                shapeFileMetaReader = new ShapeFileMetaReader(indexes);
-            }else {
-              shapeFileMetaReader = new ShapeFileMetaReader(); // no index, construct with no parameter
-            }
-            shapeFileMetaReader.initialize(shpSplit, context);
+        if (dbfPath == null) {
+            logger.warn("Can't find .dbf file for " + shpPath);
         }
-        if(dbfSplit != null){
-            dbfFileReader = new DbfFileMetaReader();
-            dbfFileReader.initialize(dbfSplit, context);
-            hasDbf = true;
-        }else hasDbf = false;
 
+        FileSystem fileSys = shpPath.getFileSystem(context.getConfiguration());
+        InputStream shpInputStream = fileSys.open(shpPath);
+        InputStream dbfInputStream = dbfPath == null ? null : fileSys.open(dbfPath);
+        filePath = shpPath.toString().replace("." + SHP_SUFFIX, "");
+        parser = new ShapeFileMetaBulkParser(shpInputStream, dbfInputStream, filePath);
     }
 
     public boolean nextKeyValue() throws IOException, InterruptedException {
+        batchIndex++;
+        if (batchIndex == batch.size()) {
+            batch.clear();
+            batchIndex = 0;
+            if (parser.parse(batch, batchSize) == 0) {
+                checkRecords();
+                return false;
+            }
+        }
+        currentKey.setIndex(batch.get(batchIndex).getIndex());
+        return true;
+    }
 
-        boolean hasNextShp = shapeFileMetaReader.nextKeyValue();
-        if(hasDbf) hasNextDbf = dbfFileReader.nextKeyValue();
-        int curShapeType = shapeFileMetaReader.getCurrentValue().getTypeID();
-        while(curShapeType == ShapeType.UNDEFINED.getId()){
-            hasNextShp = shapeFileMetaReader.nextKeyValue();
-            if(hasDbf) hasNextDbf = dbfFileReader.nextKeyValue();
-            curShapeType = shapeFileMetaReader.getCurrentValue().getTypeID();
+    /**
+     * warn if shape records lose their attributes, or if the .dbf file has redundant attributes
+     * @throws IOException
+     */
+    private void checkRecords() throws IOException {
+        if (recordsChecked) {
+            return;
         }
-        // check if records match in .shp and .dbf
-        if(hasDbf){
-            if(hasNextShp && !hasNextDbf){
-                Exception e = new Exception("shape record loses attributes in .dbf file at ID=" + shapeFileMetaReader
-                    .getCurrentKey().getIndex());
-                e.printStackTrace();
-            }else if(!hasNextShp && hasNextDbf){
-                Exception e = new Exception("Redundant attributes in .dbf exists");
-                e.printStackTrace();
-            }
+        recordsChecked = true;
+        if (parser.getNumRecordsWithoutAttributes() > 0) {
+            logger.warn(parser.getNumRecordsWithoutAttributes() + " shape records of " + filePath
+                + " lose their attributes in .dbf file, from ID=" + parser.getFirstRecordWithoutAttributes());
+        }
+        int redundant = parser.skipRemainingAttributes();
+        if (redundant > 0) {
+            logger.warn(redundant + " redundant attributes exist in .dbf file of " + filePath);
         }
-        return hasNextShp;
     }
 
     public ShapeKey getCurrentKey() throws IOException, InterruptedException {
-        return shapeFileMetaReader.getCurrentKey();
+        return currentKey;
     }
 
     public ShapeFileMeta getCurrentValue() throws IOException, InterruptedException {
-        ShpMeta shpMeta = shapeFileMetaReader.getCurrentValue();
-        DbfMeta dbfMeta = dbfFileReader.getCurrentValue();
-        String filePath = shpSplit.getPath().toString().replace("." + SHP_SUFFIX, "");
-        return new ShapeFileMeta(shpMeta, dbfMeta, filePath);
+        return batch.get(batchIndex);
     }
 
     public float getProgress() throws IOException, InterruptedException {
-        return shapeFileMetaReader.getProgress();
+        return parser.getProgress();
     }
 
     public void close() throws IOException {
-        shapeFileMetaReader.close();
+        if (parser != null) {
+            parser.close();
+        }
     }
 }
@@ -0,0 +1,109 @@
+package edu.gmu.stc.vector.shapefile.reader;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Reads many small byte ranges of a file with a few large sequential reads.
+ *
+ * The ranges are sorted by offset, and neighbouring ranges are merged into one read as long as
+ * the gap between them is at most maxGap bytes and the read stays below maxReadLength bytes.
+ * Each merged read goes into a buffer which is reused across reads, and every range is handed
+ * out as a slice of that buffer, so no byte array is allocated per range. On HDFS this replaces
+ * a positioned read, i.e. a seek, per record by a handful of streaming reads.
+ *
+ * Instances are not thread-safe.
+ *
+ * Created by Fei Hu on 4/30/18.
+ */
+public class CoalescedRangeReader {
+
+  /** Gaps up to this size are read through instead of being seeked over */
+  public final static int DEFAULT_MAX_GAP = 64 * 1024;
+
+  /** Upper bound of a merged read, unless a single range is larger */
+  public final static int DEFAULT_MAX_READ_LENGTH = 8 * 1024 * 1024;
+
+  /**
+   * Receives the ranges, in offset order.
+   */
+  public interface RangeHandler {
+    /**
+     * @param index the index of the range in the arrays passed to {@link #read}
+     * @param range the bytes of the range, from its position to its limit. The buffer is only
+     *              valid during the call.
+     */
+    void handle(int index, ByteBuffer range) throws IOException;
+  }
+
+  private final int maxGap;
+  private final int maxReadLength;
+  private byte[] buffer = new byte[0];
+  private int numReads = 0;
+
+  public CoalescedRangeReader() {
+    this(DEFAULT_MAX_GAP, DEFAULT_MAX_READ_LENGTH);
+  }
+
+  public CoalescedRangeReader(int maxGap, int maxReadLength) {
+    this.maxGap = maxGap;
+    this.maxReadLength = maxReadLength;
+  }
+
+  /**
+   * Reads the ranges given by offsets and lengths and passes each of them to the handler.
+   */
+  public void read(FSDataInputStream inputStream, final long[] offsets, int[] lengths,
+                   RangeHandler handler) throws IOException {
+    Integer[] order = new Integer[offsets.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return Long.compare(offsets[o1], offsets[o2]);
+      }
+    });
+
+    int first = 0;
+    while (first < order.length) {
+      long start = offsets[order[first]];
+      long end = start + lengths[order[first]];
+      int last = first + 1;
+      while (last < order.length) {
+        long nextStart = offsets[order[last]];
+        long nextEnd = Math.max(end, nextStart + lengths[order[last]]);
+        if (nextStart - end > maxGap || nextEnd - start > maxReadLength) {
+          break;
+        }
+        end = nextEnd;
+        last++;
+      }
+
+      int readLength = (int) (end - start);
+      if (buffer.length < readLength) {
+        buffer = new byte[Math.max(readLength, Math.min(2 * buffer.length, maxReadLength))];
+      }
+      inputStream.readFully(start, buffer, 0, readLength);
+      numReads++;
+
+      for (int i = first; i < last; i++) {
+        int index = order[i];
+        handler.handle(index, ByteBuffer.wrap(buffer, (int) (offsets[index] - start), lengths[index]));
+      }
+      first = last;
+    }
+  }
+
+  /**
+   * Returns the number of reads issued so far.
+   */
+  public int getNumReads() {
+    return numReads;
+  }
+}
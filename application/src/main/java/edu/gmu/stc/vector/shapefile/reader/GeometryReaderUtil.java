@@ -11,7 +11,13 @@ import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.util.Progressable;
+import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.dbf.DbfColumnDecoder;
 import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.dbf.DbfParseUtil;
+import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.dbf.FieldDescriptor;
+import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.shp.ShapeParser;
+import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.shp.ShapeReaderFactory;
+import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.shp.ShapeType;
+import org.datasyslab.geospark.formatMapper.shapefileParser.shapes.MappedShapefile;
 import org.datasyslab.geospark.formatMapper.shapefileParser.shapes.PrimitiveShape;
 import org.datasyslab.geospark.formatMapper.shapefileParser.shapes.ShpRecord;
 import org.geotools.data.FeatureWriter;
@@ -39,10 +45,12 @@ import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -102,46 +110,188 @@ public class GeometryReaderUtil {
 
   public static List<Geometry> readGeometriesWithAttributes(List<ShapeFileMeta> shapeFileMetaList)
       throws IOException {
-    List<Geometry> geometries = new ArrayList<Geometry>();
-    if (shapeFileMetaList.isEmpty()) return geometries;
-
-    Path shpFilePath = new Path(shapeFileMetaList.get(0).getFilePath()
-                                + GeometryReaderUtil.SHP_SUFFIX);
-    Path dbfFilePath = new Path(shapeFileMetaList.get(0).getFilePath()
-                                + GeometryReaderUtil.DBF_SUFFIX);
-    FileSystem fs = shpFilePath.getFileSystem(new Configuration());
-    FSDataInputStream shpInputStream = fs.open(shpFilePath);
-    FSDataInputStream dbfInputStream = fs.open(dbfFilePath);
-    DbfParseUtil dbfParseUtil = new DbfParseUtil();
-    dbfParseUtil.parseFileHead(dbfInputStream);
-    GeometryFactory geometryFactory = new GeometryFactory();
-
-    for (ShapeFileMeta shapeFileMeta : shapeFileMetaList) {
-      geometries.add(GeometryReaderUtil.readGeometryWithAttributes(shpInputStream, dbfInputStream,
-                                                                   shapeFileMeta, dbfParseUtil,
-                                                                   geometryFactory));
-    }
-
-    return geometries;
+    return readGeometries(shapeFileMetaList, true);
   }
 
   public static List<Geometry> readGeometries(List<ShapeFileMeta> shapeFileMetaList)
       throws IOException {
-    List<Geometry> geometries = new ArrayList<Geometry>();
-    if (shapeFileMetaList.isEmpty()) return geometries;
+    return readGeometries(shapeFileMetaList, false);
+  }
 
-    Path shpFilePath = new Path(shapeFileMetaList.get(0).getFilePath()
-                                + GeometryReaderUtil.SHP_SUFFIX);
+  public static List<Geometry> readGeometries(List<ShapeFileMeta> shapeFileMetaList,
+                                              boolean withAttributes) throws IOException {
+    return readGeometries(shapeFileMetaList, withAttributes, new Configuration());
+  }
 
-    FileSystem fs = shpFilePath.getFileSystem(new Configuration());
-    FSDataInputStream shpInputStream = fs.open(shpFilePath);
-    GeometryFactory geometryFactory = new GeometryFactory();
+  /**
+   * Reads the geometries of the records, in the order of the list. Local files are memory-mapped
+   * by a {@link MappedShapefile}, unless turned off by {@link MappedShapefile#ENABLED_KEY} or one
+   * of the files to map is longer than {@link MappedShapefile#MAX_LENGTH_KEY}. The records of
+   * other files are fetched by a {@link CoalescedRangeReader}, i.e. with a few large reads
+   * instead of one positioned read per record, and parsed in place from its buffer.
+   */
+  public static List<Geometry> readGeometries(List<ShapeFileMeta> shapeFileMetaList,
+                                              boolean withAttributes, Configuration hConf)
+      throws IOException {
+    final Geometry[] geometries = new Geometry[shapeFileMetaList.size()];
+    if (geometries.length == 0) return new ArrayList<Geometry>();
+
+    Map<String, List<Integer>> fileRecords = groupRecordsByFile(shapeFileMetaList);
+
+    final GeometryFactory geometryFactory = new GeometryFactory();
+    CoalescedRangeReader rangeReader = new CoalescedRangeReader();
+    for (Map.Entry<String, List<Integer>> entry : fileRecords.entrySet()) {
+      final List<Integer> records = entry.getValue();
+      final ShapeFileMeta[] metas = new ShapeFileMeta[records.size()];
+      long[] offsets = new long[metas.length];
+      int[] lengths = new int[metas.length];
+      for (int i = 0; i < metas.length; i++) {
+        metas[i] = shapeFileMetaList.get(records.get(i));
+        offsets[i] = metas[i].getShp_offset();
+        lengths[i] = metas[i].getShp_length();
+      }
+
+      Path shpFilePath = new Path(entry.getKey() + GeometryReaderUtil.SHP_SUFFIX);
+      FileSystem fs = shpFilePath.getFileSystem(hConf);
+      String localPath = new Path(entry.getKey()).toUri().getPath();
+      if (MappedShapefile.isEnabled(hConf) && MappedShapefile.isLocal(fs)
+          && MappedShapefile.canMap(localPath, withAttributes, hConf)) {
+        // Local files are memory-mapped and decoded in place, without any reads
+        MappedShapefile shapefile = new MappedShapefile(localPath, withAttributes);
+        for (int i = 0; i < metas.length; i++) {
+          Geometry geometry = shapefile.readShape(metas[i].getShp_offset(), metas[i].getShp_length(),
+                                                  metas[i].getTypeID(), geometryFactory);
+          if (withAttributes) {
+            geometry.setUserData(shapefile.readAttributes(metas[i].getDbf_offset(),
+                                                          metas[i].getDbf_length()));
+          }
+          geometries[records.get(i)] = geometry;
+        }
+        continue;
+      }
 
-    for (ShapeFileMeta shapeFileMeta : shapeFileMetaList) {
-      geometries.add(GeometryReaderUtil.readGeometry(shpInputStream, shapeFileMeta, geometryFactory));
+      try (FSDataInputStream shpInputStream = fs.open(shpFilePath)) {
+        rangeReader.read(shpInputStream, offsets, lengths, new CoalescedRangeReader.RangeHandler() {
+          private ShapeType shapeType = null;
+          private ShapeParser parser = null;
+
+          @Override
+          public void handle(int index, ByteBuffer range) throws IOException {
+            ShapeType type = ShapeType.getType(metas[index].getTypeID());
+            if (type != shapeType) {
+              shapeType = type;
+              parser = type.getParser(geometryFactory);
+            }
+            geometries[records.get(index)] = parser.parseShape(ShapeReaderFactory.fromByteBuffer(range));
+          }
+        });
+      }
+
+      if (!withAttributes) {
+        continue;
+      }
+
+      for (int i = 0; i < metas.length; i++) {
+        offsets[i] = metas[i].getDbf_offset();
+        lengths[i] = metas[i].getDbf_length();
+      }
+
+      Path dbfFilePath = new Path(entry.getKey() + GeometryReaderUtil.DBF_SUFFIX);
+      try (FSDataInputStream dbfInputStream = fs.open(dbfFilePath)) {
+        final DbfParseUtil dbfParseUtil = new DbfParseUtil();
+        dbfParseUtil.parseFileHead(dbfInputStream);
+        rangeReader.read(dbfInputStream, offsets, lengths, new CoalescedRangeReader.RangeHandler() {
+          @Override
+          public void handle(int index, ByteBuffer range) throws IOException {
+            geometries[records.get(index)].setUserData(dbfParseUtil.primitiveToAttributes(range));
+          }
+        });
+      }
     }
 
-    return geometries;
+    return new ArrayList<Geometry>(Arrays.asList(geometries));
+  }
+
+  /**
+   * Returns the indices in the list of the records of each file.
+   */
+  private static Map<String, List<Integer>> groupRecordsByFile(List<ShapeFileMeta> shapeFileMetaList) {
+    Map<String, List<Integer>> fileRecords = new LinkedHashMap<String, List<Integer>>();
+    for (int i = 0; i < shapeFileMetaList.size(); i++) {
+      String filePath = shapeFileMetaList.get(i).getFilePath();
+      List<Integer> records = fileRecords.get(filePath);
+      if (records == null) {
+        records = new ArrayList<Integer>();
+        fileRecords.put(filePath, records);
+      }
+      records.add(i);
+    }
+    return fileRecords;
+  }
+
+  /**
+   * Receives the .dbf records read by {@link #readAttributes}.
+   */
+  public interface AttributeHandler {
+    /**
+     * @param index the index of the record in the list of metas
+     * @param decoder the decoder of the selected columns of the record's file
+     * @param record the record from its position, only valid during the call
+     */
+    void handle(int index, DbfColumnDecoder decoder, ByteBuffer record) throws IOException;
+  }
+
+  /**
+   * Reads the field descriptors from the header of the .dbf file of a shapefile.
+   *
+   * @param filePath the path of the shapefile without suffix, as in ShapeFileMeta
+   */
+  public static List<FieldDescriptor> readFieldDescriptors(String filePath, Configuration hConf)
+      throws IOException {
+    Path dbfFilePath = new Path(filePath + DBF_SUFFIX);
+    try (FSDataInputStream dbfInputStream = dbfFilePath.getFileSystem(hConf).open(dbfFilePath)) {
+      DbfParseUtil dbfParseUtil = new DbfParseUtil();
+      dbfParseUtil.parseFileHead(dbfInputStream);
+      return dbfParseUtil.getFieldDescriptors();
+    }
+  }
+
+  /**
+   * Reads the .dbf records of the metas without parsing them into tab-separated strings: each
+   * record is handed out with a {@link DbfColumnDecoder} of its file, which decodes the selected
+   * columns as typed values straight from the buffer. The field descriptors are read once per
+   * file and the records are fetched by a {@link CoalescedRangeReader}, in offset order.
+   *
+   * @param columns the names of the columns to decode, or null for all of them
+   */
+  public static void readAttributes(List<ShapeFileMeta> shapeFileMetaList, List<String> columns,
+                                    final AttributeHandler handler) throws IOException {
+    Configuration hConf = new Configuration();
+    CoalescedRangeReader rangeReader = new CoalescedRangeReader();
+    for (Map.Entry<String, List<Integer>> entry : groupRecordsByFile(shapeFileMetaList).entrySet()) {
+      final List<Integer> records = entry.getValue();
+      long[] offsets = new long[records.size()];
+      int[] lengths = new int[records.size()];
+      for (int i = 0; i < offsets.length; i++) {
+        ShapeFileMeta shapeFileMeta = shapeFileMetaList.get(records.get(i));
+        offsets[i] = shapeFileMeta.getDbf_offset();
+        lengths[i] = shapeFileMeta.getDbf_length();
+      }
+
+      Path dbfFilePath = new Path(entry.getKey() + DBF_SUFFIX);
+      try (FSDataInputStream dbfInputStream = dbfFilePath.getFileSystem(hConf).open(dbfFilePath)) {
+        DbfParseUtil dbfParseUtil = new DbfParseUtil();
+        dbfParseUtil.parseFileHead(dbfInputStream);
+        final DbfColumnDecoder decoder =
+            new DbfColumnDecoder(dbfParseUtil.getFieldDescriptors(), columns);
+        rangeReader.read(dbfInputStream, offsets, lengths, new CoalescedRangeReader.RangeHandler() {
+          @Override
+          public void handle(int index, ByteBuffer range) throws IOException {
+            handler.handle(records.get(index), decoder, range);
+          }
+        });
+      }
+    }
   }
 
   public static void saveAsShapefile(String filepath, List<Geometry> geometries, String crs)
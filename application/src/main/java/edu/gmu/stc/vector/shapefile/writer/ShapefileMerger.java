@@ -0,0 +1,308 @@
+package edu.gmu.stc.vector.shapefile.writer;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import edu.gmu.stc.vector.shapefile.reader.GeometryReaderUtil;
+
+/**
+ * Concatenates shapefiles written by {@link ShapefileWriter} into a single shapefile.
+ *
+ * Shape records are copied as they are, only their record numbers are rewritten, and the
+ * .shx offsets are shifted by the length of the preceding parts, so no geometry is parsed.
+ * DBF records are copied as well, unless a field is wider in another part, in which case
+ * the values of that field are padded to the widest one. Parts holding null shapes only don't
+ * add their bounding box, which is written as zeros, to the bounding box of the merged file.
+ *
+ * Created by Fei Hu on 4/28/18.
+ */
+public class ShapefileMerger {
+
+  private static final Log LOG = LogFactory.getLog(ShapefileMerger.class);
+
+  /**
+   * Merges the parts, given by their paths without suffix, into outputBasePath + ".shp",
+   * ".shx", ".dbf" and, if the first part has them, ".prj" and ".cpg".
+   *
+   * @return the number of records of the merged shapefile
+   */
+  public static long merge(FileSystem fs, List<Path> partBasePaths, Path outputBasePath)
+      throws IOException {
+    if (partBasePaths.isEmpty()) {
+      throw new IllegalArgumentException("No shapefiles to merge into " + outputBasePath);
+    }
+
+    List<ShpHeader> shpHeaders = new ArrayList<ShpHeader>();
+    List<DbfHeader> dbfHeaders = new ArrayList<DbfHeader>();
+    for (Path part : partBasePaths) {
+      shpHeaders.add(readShpHeader(fs, new Path(part + GeometryReaderUtil.SHP_SUFFIX)));
+      dbfHeaders.add(readDbfHeader(fs, new Path(part + GeometryReaderUtil.DBF_SUFFIX)));
+    }
+
+    int shapeType = shpHeaders.get(0).shapeType;
+    long shpLength = ShapefileWriter.SHP_HEADER_LENGTH;
+    long numRecords = 0;
+    Envelope bbox = new Envelope();
+    for (int i = 0; i < shpHeaders.size(); i++) {
+      ShpHeader header = shpHeaders.get(i);
+      if (header.shapeType != shapeType) {
+        throw new IOException("Can't merge shape type " + header.shapeType + " of "
+                              + partBasePaths.get(i) + " with shape type " + shapeType);
+      }
+      shpLength += header.fileLength - ShapefileWriter.SHP_HEADER_LENGTH;
+      numRecords += dbfHeaders.get(i).numRecords;
+      // Any other shape record is longer than a null shape record
+      if (header.fileLength > ShapefileWriter.SHP_HEADER_LENGTH
+                              + dbfHeaders.get(i).numRecords * ShapefileWriter.NULL_RECORD_LENGTH) {
+        bbox.expandToInclude(header.bbox);
+      }
+    }
+
+    if (shpLength / 2 > Integer.MAX_VALUE) {
+      throw new IOException("Merged shapefile " + outputBasePath + " would exceed the maximum size of 4GB");
+    }
+
+    mergeShp(fs, partBasePaths, shpHeaders, outputBasePath, shapeType, shpLength, bbox);
+    mergeShx(fs, partBasePaths, shpHeaders, outputBasePath, shapeType, numRecords, bbox);
+    mergeDbf(fs, partBasePaths, dbfHeaders, outputBasePath, numRecords);
+
+    for (String suffix : new String[] {ShapefileWriter.PRJ_SUFFIX, ShapefileWriter.CPG_SUFFIX}) {
+      Path source = new Path(partBasePaths.get(0) + suffix);
+      if (fs.exists(source)) {
+        try (InputStream in = fs.open(source);
+             OutputStream out = fs.create(new Path(outputBasePath + suffix), true)) {
+          ShapefileWriter.copy(in, out);
+        }
+      }
+    }
+
+    LOG.info("Merged " + partBasePaths.size() + " shapefiles with " + numRecords + " records into "
+             + outputBasePath + GeometryReaderUtil.SHP_SUFFIX);
+    return numRecords;
+  }
+
+  /**
+   * Returns the paths without suffix of the .shp files in the directory, in name order.
+   */
+  public static List<Path> listParts(FileSystem fs, Path dir) throws IOException {
+    List<Path> parts = new ArrayList<Path>();
+    for (FileStatus status : fs.listStatus(dir)) {
+      String name = status.getPath().getName();
+      if (name.endsWith(GeometryReaderUtil.SHP_SUFFIX)) {
+        parts.add(new Path(dir, name.substring(0, name.length() - GeometryReaderUtil.SHP_SUFFIX.length())));
+      }
+    }
+    Collections.sort(parts);
+    return parts;
+  }
+
+  private static void mergeShp(FileSystem fs, List<Path> parts, List<ShpHeader> headers,
+                               Path outputBasePath, int shapeType, long length, Envelope bbox)
+      throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        fs.create(new Path(outputBasePath + GeometryReaderUtil.SHP_SUFFIX), true), 1 << 16))) {
+      ShapefileWriter.writeShpHeader(out, shapeType, length, bbox);
+      byte[] buffer = new byte[1 << 16];
+      int recordNumber = 0;
+      for (int i = 0; i < parts.size(); i++) {
+        try (DataInputStream in = open(fs, new Path(parts.get(i) + GeometryReaderUtil.SHP_SUFFIX))) {
+          ShapefileWriter.skipFully(in, ShapefileWriter.SHP_HEADER_LENGTH);
+          long remaining = headers.get(i).fileLength - ShapefileWriter.SHP_HEADER_LENGTH;
+          while (remaining > 0) {
+            in.readInt();
+            int contentLength = in.readInt();
+            out.writeInt(++recordNumber);
+            out.writeInt(contentLength);
+            copyFully(in, out, contentLength * 2L, buffer);
+            remaining -= 8 + contentLength * 2L;
+          }
+        }
+      }
+    }
+  }
+
+  private static void mergeShx(FileSystem fs, List<Path> parts, List<ShpHeader> headers,
+                               Path outputBasePath, int shapeType, long numRecords, Envelope bbox)
+      throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        fs.create(new Path(outputBasePath + GeometryReaderUtil.SHX_SUFFIX), true), 1 << 16))) {
+      ShapefileWriter.writeShpHeader(out, shapeType,
+          ShapefileWriter.SHP_HEADER_LENGTH + numRecords * ShapefileWriter.SHX_RECORD_LENGTH, bbox);
+      // Offsets are in 16-bit words and relative to the start of the file
+      long shift = 0;
+      for (int i = 0; i < parts.size(); i++) {
+        Path shx = new Path(parts.get(i) + GeometryReaderUtil.SHX_SUFFIX);
+        long partRecords = (fs.getFileStatus(shx).getLen() - ShapefileWriter.SHP_HEADER_LENGTH)
+                           / ShapefileWriter.SHX_RECORD_LENGTH;
+        try (DataInputStream in = open(fs, shx)) {
+          ShapefileWriter.skipFully(in, ShapefileWriter.SHP_HEADER_LENGTH);
+          for (long j = 0; j < partRecords; j++) {
+            out.writeInt((int) (in.readInt() + shift));
+            out.writeInt(in.readInt());
+          }
+        }
+        shift += (headers.get(i).fileLength - ShapefileWriter.SHP_HEADER_LENGTH) / 2;
+      }
+    }
+  }
+
+  private static void mergeDbf(FileSystem fs, List<Path> parts, List<DbfHeader> headers,
+                               Path outputBasePath, long numRecords) throws IOException {
+    List<String> fieldNames = headers.get(0).fieldNames;
+    char[] fieldTypes = headers.get(0).fieldTypes;
+    int[] fieldDecimals = headers.get(0).fieldDecimals;
+    int[] fieldWidths = new int[fieldNames.size()];
+    for (int i = 0; i < headers.size(); i++) {
+      DbfHeader header = headers.get(i);
+      if (!header.fieldNames.equals(fieldNames) || !Arrays.equals(header.fieldTypes, fieldTypes)
+          || !Arrays.equals(header.fieldDecimals, fieldDecimals)) {
+        throw new IOException("Can't merge fields " + header.fieldNames + " of " + parts.get(i)
+                              + " with fields " + fieldNames);
+      }
+      for (int j = 0; j < fieldWidths.length; j++) {
+        fieldWidths[j] = Math.max(fieldWidths[j], header.fieldWidths[j]);
+      }
+    }
+
+    try (OutputStream out = new BufferedOutputStream(
+        fs.create(new Path(outputBasePath + GeometryReaderUtil.DBF_SUFFIX), true), 1 << 16)) {
+      ShapefileWriter.writeDbfHeader(out, numRecords, fieldNames, fieldTypes, fieldWidths,
+                                     fieldDecimals);
+      byte[] record = new byte[ShapefileWriter.recordLength(fieldWidths)];
+      for (int i = 0; i < parts.size(); i++) {
+        DbfHeader header = headers.get(i);
+        boolean samePadding = Arrays.equals(header.fieldWidths, fieldWidths);
+        byte[] partRecord = new byte[ShapefileWriter.recordLength(header.fieldWidths)];
+        try (DataInputStream in = open(fs, new Path(parts.get(i) + GeometryReaderUtil.DBF_SUFFIX))) {
+          ShapefileWriter.skipFully(in, header.headerLength);
+          for (long j = 0; j < header.numRecords; j++) {
+            in.readFully(partRecord);
+            if (samePadding) {
+              out.write(partRecord);
+              continue;
+            }
+
+            Arrays.fill(record, (byte) ' ');
+            record[0] = partRecord[0];
+            int from = 1;
+            int to = 1;
+            for (int k = 0; k < fieldWidths.length; k++) {
+              // Numbers stay right aligned
+              int padding = fieldTypes[k] == ShapefileWriter.DBF_NUMBER
+                            ? fieldWidths[k] - header.fieldWidths[k] : 0;
+              System.arraycopy(partRecord, from, record, to + padding, header.fieldWidths[k]);
+              from += header.fieldWidths[k];
+              to += fieldWidths[k];
+            }
+            out.write(record);
+          }
+        }
+      }
+      out.write(ShapefileWriter.DBF_EOF);
+    }
+  }
+
+  private static DataInputStream open(FileSystem fs, Path path) throws IOException {
+    return new DataInputStream(new BufferedInputStream(fs.open(path), 1 << 16));
+  }
+
+  private static void copyFully(InputStream in, OutputStream out, long length, byte[] buffer)
+      throws IOException {
+    while (length > 0) {
+      int read = in.read(buffer, 0, (int) Math.min(buffer.length, length));
+      if (read < 0) {
+        throw new EOFException();
+      }
+      out.write(buffer, 0, read);
+      length -= read;
+    }
+  }
+
+  private static ShpHeader readShpHeader(FileSystem fs, Path path) throws IOException {
+    byte[] bytes = new byte[ShapefileWriter.SHP_HEADER_LENGTH];
+    try (DataInputStream in = new DataInputStream(fs.open(path))) {
+      in.readFully(bytes);
+    }
+
+    ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN);
+    if (header.getInt(0) != ShapefileWriter.SHP_FILE_CODE) {
+      throw new IOException(path + " is not a shapefile");
+    }
+
+    ShpHeader result = new ShpHeader();
+    result.fileLength = 2L * header.getInt(24);
+    header.order(ByteOrder.LITTLE_ENDIAN);
+    result.shapeType = header.getInt(32);
+    result.bbox = new Envelope(header.getDouble(36), header.getDouble(52),
+                               header.getDouble(44), header.getDouble(60));
+    return result;
+  }
+
+  private static DbfHeader readDbfHeader(FileSystem fs, Path path) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(fs.open(path)))) {
+      byte[] fixed = new byte[ShapefileWriter.DBF_HEADER_LENGTH];
+      in.readFully(fixed);
+      ByteBuffer header = ByteBuffer.wrap(fixed).order(ByteOrder.LITTLE_ENDIAN);
+
+      DbfHeader result = new DbfHeader();
+      result.numRecords = header.getInt(4) & 0xffffffffL;
+      result.headerLength = header.getShort(8) & 0xffff;
+
+      int numFields = (result.headerLength - ShapefileWriter.DBF_HEADER_LENGTH - 1)
+                      / ShapefileWriter.DBF_FIELD_LENGTH;
+      result.fieldNames = new ArrayList<String>(numFields);
+      result.fieldTypes = new char[numFields];
+      result.fieldWidths = new int[numFields];
+      result.fieldDecimals = new int[numFields];
+      byte[] field = new byte[ShapefileWriter.DBF_FIELD_LENGTH];
+      for (int i = 0; i < numFields; i++) {
+        in.readFully(field);
+        int nameLength = 0;
+        while (nameLength < ShapefileWriter.DBF_FIELD_NAME_LENGTH && field[nameLength] != 0) {
+          nameLength++;
+        }
+        result.fieldNames.add(new String(field, 0, nameLength, StandardCharsets.US_ASCII));
+        result.fieldTypes[i] = (char) (field[ShapefileWriter.DBF_FIELD_NAME_LENGTH] & 0xff);
+        result.fieldWidths[i] = field[16] & 0xff;
+        result.fieldDecimals[i] = field[17] & 0xff;
+      }
+      return result;
+    }
+  }
+
+  private static class ShpHeader {
+    long fileLength;
+    int shapeType;
+    Envelope bbox;
+  }
+
+  private static class DbfHeader {
+    long numRecords;
+    int headerLength;
+    List<String> fieldNames;
+    char[] fieldTypes;
+    int[] fieldWidths;
+    int[] fieldDecimals;
+  }
+}
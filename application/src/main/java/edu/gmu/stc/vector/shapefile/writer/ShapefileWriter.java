@@ -0,0 +1,632 @@
+package edu.gmu.stc.vector.shapefile.writer;
+
+import com.vividsolutions.jts.algorithm.CGAlgorithms;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.shp.ShapeType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import edu.gmu.stc.vector.shapefile.reader.GeometryReaderUtil;
+
+/**
+ * Writes geometries as a shapefile (.shp, .shx, .dbf, .prj and .cpg) to any Hadoop FileSystem.
+ *
+ * Records are encoded straight into little-endian buffers instead of going through GeoTools
+ * features. Since the headers hold the record count and the bounding box, the records are
+ * spilled to local temporary files first and copied behind the headers once they are known,
+ * so memory use doesn't depend on the number of geometries.
+ *
+ * Named attributes are written as character fields. The values are taken from the user data of
+ * the geometries, split on tabs like the attributes read by GeometryReaderUtil. Without field
+ * names, the records get the numeric fields written by GeometryReaderUtil.saveAsShapefile, see
+ * {@link #LEGACY_FIELD_NAMES}.
+ *
+ * Created by Fei Hu on 4/28/18.
+ */
+public class ShapefileWriter implements Serializable {
+
+  private static final Log LOG = LogFactory.getLog(ShapefileWriter.class);
+
+  public final static String PRJ_SUFFIX = ".prj";
+  public final static String CPG_SUFFIX = ".cpg";
+
+  /**
+   * The fields written when no field names are given: the record number, the bounding box of the
+   * geometry and its user data converted to a number, as in GeometryReaderUtil.saveAsShapefile.
+   */
+  public final static List<String> LEGACY_FIELD_NAMES = Collections.unmodifiableList(Arrays.asList(
+      "outPolyID", "minLat", "minLon", "maxLat", "maxLon", "att"));
+
+  // The .shp file goes last, since ShapefileMerger.listParts finds the parts by their .shp files
+  private final static String[] SUFFIXES = {GeometryReaderUtil.SHX_SUFFIX, GeometryReaderUtil.DBF_SUFFIX,
+                                            CPG_SUFFIX, PRJ_SUFFIX, GeometryReaderUtil.SHP_SUFFIX};
+
+  static final int SHP_FILE_CODE = 9994;
+  static final int SHP_VERSION = 1000;
+  static final int SHP_HEADER_LENGTH = 100;
+  static final int SHX_RECORD_LENGTH = 8;
+  static final int NULL_SHAPE = 0;
+  // Record header and shape type of a null shape
+  static final int NULL_RECORD_LENGTH = 12;
+
+  static final int DBF_HEADER_LENGTH = 32;
+  static final int DBF_FIELD_LENGTH = 32;
+  static final int DBF_FIELD_NAME_LENGTH = 11;
+  static final int DBF_MAX_FIELD_WIDTH = 254;
+  static final byte DBF_HEADER_TERMINATOR = 0x0d;
+  static final byte DBF_EOF = 0x1a;
+  static final byte DBF_VALID_RECORD = 0x20;
+  static final char DBF_CHARACTER = 'C';
+  static final char DBF_NUMBER = 'N';
+  // The widths GeoTools gives to Long and Double fields
+  static final int DBF_LONG_WIDTH = 19;
+  static final int DBF_DOUBLE_WIDTH = 33;
+  static final int DBF_DOUBLE_DECIMALS = 15;
+
+  static final Charset DBF_CHARSET = StandardCharsets.UTF_8;
+
+  private final ShapeType shapeType;
+  private final List<String> fieldNames;
+  private final boolean legacyFields;
+  private final String prjWkt;
+
+  /**
+   * @param shapeType the type of the records. Geometries are reduced to the parts of this type,
+   *                  e.g. the polygons of a GeometryCollection, and written as null shapes if
+   *                  they have none.
+   * @param fieldNames the names of the tab separated values in the user data, or the name of the
+   *                   field holding the whole user data if there is a single one. If empty, the
+   *                   {@link #LEGACY_FIELD_NAMES} are written.
+   * @param prjWkt the WKT of the coordinate reference system, or null to skip the .prj file
+   */
+  public ShapefileWriter(ShapeType shapeType, List<String> fieldNames, String prjWkt) {
+    if (shapeType == ShapeType.UNDEFINED) {
+      throw new IllegalArgumentException("Can't write shapes of undefined type");
+    }
+
+    this.shapeType = shapeType;
+    this.legacyFields = fieldNames.isEmpty();
+    this.fieldNames = legacyFields ? LEGACY_FIELD_NAMES : new ArrayList<String>(fieldNames);
+    this.prjWkt = prjWkt;
+  }
+
+  /**
+   * Writes the geometries to basePath + ".shp", ".shx", ".dbf", ".prj" and ".cpg",
+   * overwriting existing files.
+   *
+   * @return the number of records written
+   */
+  public long write(Iterator<? extends Geometry> geometries, FileSystem fs, Path basePath)
+      throws IOException {
+    return write(geometries, fs, basePath, 0);
+  }
+
+  /**
+   * Writes the geometries like {@link #write(Iterator, FileSystem, Path)}, numbering the
+   * outPolyID of the {@link #LEGACY_FIELD_NAMES} from firstId, so that the parts of a shapefile
+   * can be numbered as one.
+   */
+  public long write(Iterator<? extends Geometry> geometries, FileSystem fs, Path basePath,
+                    long firstId) throws IOException {
+    File shpSpill = File.createTempFile("shp", ".spill");
+    File dbfSpill = File.createTempFile("dbf", ".spill");
+    try {
+      char[] fieldTypes = getFieldTypes();
+      int[] fieldWidths = new int[fieldNames.size()];
+      for (int i = 0; i < fieldWidths.length; i++) {
+        fieldWidths[i] = fieldTypes[i] == DBF_NUMBER
+                         ? (i == 0 ? DBF_LONG_WIDTH : DBF_DOUBLE_WIDTH) : 0;
+      }
+      Envelope bbox = new Envelope();
+      long numRecords = 0;
+      long shpLength = SHP_HEADER_LENGTH;
+
+      try (DataOutputStream shpOut = openSpill(shpSpill);
+           DataOutputStream dbfOut = openSpill(dbfSpill)) {
+        RecordEncoder encoder = new RecordEncoder(shapeType);
+        while (geometries.hasNext()) {
+          Geometry geometry = geometries.next();
+          numRecords++;
+
+          ByteBuffer content = encoder.encode(geometry, bbox);
+          shpOut.writeInt((int) numRecords);
+          shpOut.writeInt(content.limit() / 2);
+          shpOut.write(content.array(), 0, content.limit());
+          shpLength += 8 + content.limit();
+
+          writeValues(getValues(geometry, firstId + numRecords - 1), fieldWidths, dbfOut);
+        }
+      }
+
+      if (shpLength / 2 > Integer.MAX_VALUE) {
+        throw new IOException("Shapefile " + basePath + " exceeds the maximum size of 4GB");
+      }
+
+      writeShp(fs, basePath, shpSpill, shpLength, bbox);
+      writeShx(fs, basePath, shpSpill, numRecords, bbox);
+      writeDbf(fs, basePath, dbfSpill, numRecords, fieldTypes, fieldWidths);
+      writeText(fs, new Path(basePath + CPG_SUFFIX), DBF_CHARSET.name());
+      if (prjWkt != null) {
+        writeText(fs, new Path(basePath + PRJ_SUFFIX), prjWkt);
+      }
+
+      LOG.info("Wrote " + numRecords + " records to " + basePath + GeometryReaderUtil.SHP_SUFFIX);
+      return numRecords;
+    } finally {
+      shpSpill.delete();
+      dbfSpill.delete();
+    }
+  }
+
+  /**
+   * Moves the files of the shapefile written to attemptBasePath to basePath, replacing the
+   * files of another attempt, and deletes the parent directory of attemptBasePath, which is
+   * expected to hold the files of this attempt only.
+   *
+   * Attempts of the same task write the same records, so the files of a speculative attempt
+   * which commits at the same time are interchangeable with these.
+   */
+  public static void commit(FileSystem fs, Path attemptBasePath, Path basePath) throws IOException {
+    for (String suffix : SUFFIXES) {
+      Path source = new Path(attemptBasePath + suffix);
+      if (!fs.exists(source)) {
+        continue;
+      }
+
+      Path target = new Path(basePath + suffix);
+      fs.delete(target, false);
+      if (!fs.rename(source, target)) {
+        throw new IOException("Failed to rename " + source + " to " + target);
+      }
+    }
+    fs.delete(attemptBasePath.getParent(), true);
+  }
+
+  private static DataOutputStream openSpill(File file) throws IOException {
+    return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+  }
+
+  private static DataInputStream readSpill(File file) throws IOException {
+    return new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+  }
+
+  private char[] getFieldTypes() {
+    char[] fieldTypes = new char[fieldNames.size()];
+    Arrays.fill(fieldTypes, legacyFields ? DBF_NUMBER : DBF_CHARACTER);
+    return fieldTypes;
+  }
+
+  private int[] getFieldDecimals() {
+    int[] fieldDecimals = new int[fieldNames.size()];
+    if (legacyFields) {
+      Arrays.fill(fieldDecimals, 1, fieldDecimals.length, DBF_DOUBLE_DECIMALS);
+    }
+    return fieldDecimals;
+  }
+
+  /**
+   * Returns the values of the fields, which may be fewer than the fields or null if missing.
+   */
+  private String[] getValues(Geometry geometry, long id) {
+    Object userData = geometry == null ? null : geometry.getUserData();
+    if (legacyFields) {
+      String[] values = new String[LEGACY_FIELD_NAMES.size()];
+      values[0] = Long.toString(id);
+      if (geometry != null && !geometry.isEmpty()) {
+        Envelope envelope = geometry.getEnvelopeInternal();
+        values[1] = formatDouble(envelope.getMinY());
+        values[2] = formatDouble(envelope.getMinX());
+        values[3] = formatDouble(envelope.getMaxY());
+        values[4] = formatDouble(envelope.getMaxX());
+      }
+      values[5] = userData == null ? null : formatDouble(toDouble(userData));
+      return values;
+    }
+
+    if (userData == null) {
+      return new String[0];
+    } else if (fieldNames.size() == 1) {
+      return new String[] {userData.toString()};
+    } else {
+      return userData.toString().split("\t");
+    }
+  }
+
+  /**
+   * Converts the user data to a number like GeoTools does for a Double field, NaN if it isn't one.
+   */
+  private static double toDouble(Object userData) {
+    if (userData instanceof Number) {
+      return ((Number) userData).doubleValue();
+    }
+
+    try {
+      return Double.parseDouble(userData.toString().trim());
+    } catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+
+  /**
+   * Formats the value with DBF_DOUBLE_DECIMALS decimals, or fewer if it would be wider than a
+   * Double field. Returns null if it isn't finite or its integer part doesn't fit.
+   */
+  static String formatDouble(double value) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      return null;
+    }
+
+    String text = String.format(Locale.ROOT, "%." + DBF_DOUBLE_DECIMALS + "f", value);
+    if (text.length() <= DBF_DOUBLE_WIDTH) {
+      return text;
+    }
+    // The digits cut are beyond the precision of a double
+    int point = text.indexOf('.');
+    if (point + 1 < DBF_DOUBLE_WIDTH) {
+      return text.substring(0, DBF_DOUBLE_WIDTH);
+    }
+    return point <= DBF_DOUBLE_WIDTH ? text.substring(0, point) : null;
+  }
+
+  private void writeValues(String[] values, int[] fieldWidths, DataOutputStream out)
+      throws IOException {
+    for (int i = 0; i < fieldWidths.length; i++) {
+      byte[] bytes = i < values.length && values[i] != null ? encodeValue(values[i]) : new byte[0];
+      fieldWidths[i] = Math.max(fieldWidths[i], bytes.length);
+      out.writeByte(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * Encodes the value, cut to the maximum field width without splitting characters.
+   */
+  static byte[] encodeValue(String value) {
+    byte[] bytes = value.getBytes(DBF_CHARSET);
+    int end = value.length();
+    while (bytes.length > DBF_MAX_FIELD_WIDTH) {
+      end -= Math.max(1, (bytes.length - DBF_MAX_FIELD_WIDTH) / 4);
+      if (Character.isLowSurrogate(value.charAt(end))) {
+        end--;
+      }
+      bytes = value.substring(0, end).getBytes(DBF_CHARSET);
+    }
+    return bytes;
+  }
+
+  private void writeShp(FileSystem fs, Path basePath, File spill, long length, Envelope bbox)
+      throws IOException {
+    try (OutputStream out = fs.create(new Path(basePath + GeometryReaderUtil.SHP_SUFFIX), true);
+         InputStream in = new FileInputStream(spill)) {
+      writeShpHeader(out, shapeType.getId(), length, bbox);
+      copy(in, out);
+    }
+  }
+
+  private void writeShx(FileSystem fs, Path basePath, File spill, long numRecords, Envelope bbox)
+      throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        fs.create(new Path(basePath + GeometryReaderUtil.SHX_SUFFIX), true), 1 << 16));
+         DataInputStream in = readSpill(spill)) {
+      writeShpHeader(out, shapeType.getId(), SHP_HEADER_LENGTH + numRecords * SHX_RECORD_LENGTH, bbox);
+      long offset = SHP_HEADER_LENGTH;
+      for (long i = 0; i < numRecords; i++) {
+        in.readInt();
+        int contentLength = in.readInt();
+        skipFully(in, contentLength * 2L);
+        out.writeInt((int) (offset / 2));
+        out.writeInt(contentLength);
+        offset += 8 + contentLength * 2L;
+      }
+    }
+  }
+
+  private void writeDbf(FileSystem fs, Path basePath, File spill, long numRecords,
+                        char[] fieldTypes, int[] fieldWidths) throws IOException {
+    for (int i = 0; i < fieldWidths.length; i++) {
+      fieldWidths[i] = Math.max(1, fieldWidths[i]);
+    }
+
+    try (OutputStream out = new BufferedOutputStream(
+        fs.create(new Path(basePath + GeometryReaderUtil.DBF_SUFFIX), true), 1 << 16);
+         DataInputStream in = readSpill(spill)) {
+      writeDbfHeader(out, numRecords, fieldNames, fieldTypes, fieldWidths, getFieldDecimals());
+      byte[] record = new byte[recordLength(fieldWidths)];
+      for (long i = 0; i < numRecords; i++) {
+        Arrays.fill(record, (byte) ' ');
+        record[0] = DBF_VALID_RECORD;
+        int position = 1;
+        for (int j = 0; j < fieldWidths.length; j++) {
+          int length = in.readUnsignedByte();
+          // Numbers are right aligned
+          int padding = fieldTypes[j] == DBF_NUMBER ? fieldWidths[j] - length : 0;
+          in.readFully(record, position + padding, length);
+          position += fieldWidths[j];
+        }
+        out.write(record);
+      }
+      out.write(DBF_EOF);
+    }
+  }
+
+  private static void writeText(FileSystem fs, Path path, String text) throws IOException {
+    try (OutputStream out = fs.create(path, true)) {
+      out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Writes the 100 byte header shared by .shp and .shx files.
+   *
+   * @param fileLength the length of the file in bytes
+   */
+  static void writeShpHeader(OutputStream out, int shapeTypeId, long fileLength, Envelope bbox)
+      throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(SHP_HEADER_LENGTH);
+    header.order(ByteOrder.BIG_ENDIAN);
+    header.putInt(SHP_FILE_CODE);
+    header.position(24);
+    header.putInt((int) (fileLength / 2));
+
+    header.order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(SHP_VERSION);
+    header.putInt(shapeTypeId);
+    if (bbox.isNull()) {
+      header.putDouble(0).putDouble(0).putDouble(0).putDouble(0);
+    } else {
+      header.putDouble(bbox.getMinX()).putDouble(bbox.getMinY())
+          .putDouble(bbox.getMaxX()).putDouble(bbox.getMaxY());
+    }
+    // Z and M ranges stay zero
+    out.write(header.array());
+  }
+
+  static void writeDbfHeader(OutputStream out, long numRecords, List<String> fieldNames,
+                             char[] fieldTypes, int[] fieldWidths, int[] fieldDecimals)
+      throws IOException {
+    int headerLength = DBF_HEADER_LENGTH + DBF_FIELD_LENGTH * fieldNames.size() + 1;
+    ByteBuffer header = ByteBuffer.allocate(headerLength);
+    header.order(ByteOrder.LITTLE_ENDIAN);
+
+    Calendar today = Calendar.getInstance();
+    header.put((byte) 0x03);
+    header.put((byte) (today.get(Calendar.YEAR) - 1900));
+    header.put((byte) (today.get(Calendar.MONTH) + 1));
+    header.put((byte) today.get(Calendar.DAY_OF_MONTH));
+    header.putInt((int) numRecords);
+    header.putShort((short) headerLength);
+    header.putShort((short) recordLength(fieldWidths));
+
+    for (int i = 0; i < fieldNames.size(); i++) {
+      header.position(DBF_HEADER_LENGTH + DBF_FIELD_LENGTH * i);
+      byte[] name = fieldNames.get(i).getBytes(StandardCharsets.US_ASCII);
+      header.put(name, 0, Math.min(name.length, DBF_FIELD_NAME_LENGTH - 1));
+      header.position(DBF_HEADER_LENGTH + DBF_FIELD_LENGTH * i + DBF_FIELD_NAME_LENGTH);
+      header.put((byte) fieldTypes[i]);
+      header.position(header.position() + 4);
+      header.put((byte) fieldWidths[i]);
+      header.put((byte) fieldDecimals[i]);
+    }
+
+    header.position(headerLength - 1);
+    header.put(DBF_HEADER_TERMINATOR);
+    out.write(header.array());
+  }
+
+  static int recordLength(int[] fieldWidths) {
+    int length = 1;
+    for (int fieldWidth : fieldWidths) {
+      length += fieldWidth;
+    }
+    return length;
+  }
+
+  static void copy(InputStream in, OutputStream out) throws IOException {
+    byte[] buffer = new byte[1 << 16];
+    int read;
+    while ((read = in.read(buffer)) > 0) {
+      out.write(buffer, 0, read);
+    }
+  }
+
+  static void skipFully(InputStream in, long n) throws IOException {
+    while (n > 0) {
+      long skipped = in.skip(n);
+      if (skipped <= 0) {
+        if (in.read() < 0) {
+          throw new EOFException();
+        }
+        skipped = 1;
+      }
+      n -= skipped;
+    }
+  }
+
+  /**
+   * Encodes the content of shape records into a reused little-endian buffer.
+   */
+  static class RecordEncoder {
+    private final ShapeType shapeType;
+    private final List<Geometry> parts = new ArrayList<Geometry>();
+    private ByteBuffer buffer = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+
+    RecordEncoder(ShapeType shapeType) {
+      this.shapeType = shapeType;
+    }
+
+    /**
+     * Returns the record content, which is valid until the next call. The bounding box of the
+     * record, if any, is added to bbox.
+     */
+    ByteBuffer encode(Geometry geometry, Envelope bbox) {
+      parts.clear();
+      collectParts(geometry);
+      buffer.clear();
+      if (parts.isEmpty()) {
+        ensureCapacity(4);
+        buffer.putInt(NULL_SHAPE);
+        buffer.flip();
+        return buffer;
+      }
+
+      Envelope envelope = new Envelope();
+      int numPoints = 0;
+      int numParts = 0;
+      for (Geometry part : parts) {
+        envelope.expandToInclude(part.getEnvelopeInternal());
+        numPoints += part.getNumPoints();
+        numParts += part instanceof Polygon ? 1 + ((Polygon) part).getNumInteriorRing() : 1;
+      }
+      bbox.expandToInclude(envelope);
+
+      if (shapeType == ShapeType.POINT) {
+        ensureCapacity(20);
+        buffer.putInt(shapeType.getId());
+        Point point = (Point) parts.get(0);
+        buffer.putDouble(point.getX()).putDouble(point.getY());
+        buffer.flip();
+        return buffer;
+      }
+
+      boolean hasParts = shapeType != ShapeType.MULTIPOINT;
+      ensureCapacity(44 + (hasParts ? 4 + 4 * numParts : 0) + 16 * numPoints);
+      buffer.putInt(shapeType.getId());
+      buffer.putDouble(envelope.getMinX()).putDouble(envelope.getMinY())
+          .putDouble(envelope.getMaxX()).putDouble(envelope.getMaxY());
+
+      if (!hasParts) {
+        buffer.putInt(numPoints);
+        for (Geometry part : parts) {
+          Point point = (Point) part;
+          buffer.putDouble(point.getX()).putDouble(point.getY());
+        }
+        buffer.flip();
+        return buffer;
+      }
+
+      buffer.putInt(numParts);
+      buffer.putInt(numPoints);
+      int start = 0;
+      for (Geometry part : parts) {
+        if (part instanceof Polygon) {
+          Polygon polygon = (Polygon) part;
+          buffer.putInt(start);
+          start += polygon.getExteriorRing().getNumPoints();
+          for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+            buffer.putInt(start);
+            start += polygon.getInteriorRingN(i).getNumPoints();
+          }
+        } else {
+          buffer.putInt(start);
+          start += part.getNumPoints();
+        }
+      }
+
+      for (Geometry part : parts) {
+        if (part instanceof Polygon) {
+          // Shells are clockwise and holes counter-clockwise in shapefiles
+          Polygon polygon = (Polygon) part;
+          putRing(polygon.getExteriorRing().getCoordinateSequence(), false);
+          for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+            putRing(polygon.getInteriorRingN(i).getCoordinateSequence(), true);
+          }
+        } else {
+          putSequence(((LineString) part).getCoordinateSequence(), false);
+        }
+      }
+      buffer.flip();
+      return buffer;
+    }
+
+    private void collectParts(Geometry geometry) {
+      if (geometry == null || geometry.isEmpty()) {
+        return;
+      }
+
+      if (geometry instanceof GeometryCollection) {
+        for (int i = 0; i < geometry.getNumGeometries(); i++) {
+          collectParts(geometry.getGeometryN(i));
+        }
+        return;
+      }
+
+      switch (shapeType) {
+        case POINT:
+          if (geometry instanceof Point && parts.isEmpty()) {
+            parts.add(geometry);
+          }
+          break;
+        case MULTIPOINT:
+          if (geometry instanceof Point) {
+            parts.add(geometry);
+          }
+          break;
+        case POLYLINE:
+          if (geometry instanceof LineString) {
+            parts.add(geometry);
+          }
+          break;
+        case POLYGON:
+          if (geometry instanceof Polygon) {
+            parts.add(geometry);
+          }
+          break;
+        default:
+          break;
+      }
+    }
+
+    private void putRing(CoordinateSequence ring, boolean counterClockwise) {
+      putSequence(ring, CGAlgorithms.isCCW(ring.toCoordinateArray()) != counterClockwise);
+    }
+
+    private void putSequence(CoordinateSequence sequence, boolean reverse) {
+      int size = sequence.size();
+      for (int i = 0; i < size; i++) {
+        int index = reverse ? size - 1 - i : i;
+        buffer.putDouble(sequence.getOrdinate(index, CoordinateSequence.X));
+        buffer.putDouble(sequence.getOrdinate(index, CoordinateSequence.Y));
+      }
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (buffer.capacity() < capacity) {
+        buffer = ByteBuffer.allocate(Math.max(capacity, 2 * buffer.capacity()))
+            .order(ByteOrder.LITTLE_ENDIAN);
+      }
+    }
+  }
+}
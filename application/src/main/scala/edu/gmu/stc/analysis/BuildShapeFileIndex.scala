@@ -1,5 +1,6 @@
 package edu.gmu.stc.analysis
 
+import edu.gmu.stc.config.ConfigParameter
 import edu.gmu.stc.vector.rdd.ShapeFileMetaRDD
 import edu.gmu.stc.vector.serde.VectorKryoRegistrator
 import edu.gmu.stc.vector.sparkshell.STC_BuildIndexTest.logError
@@ -19,7 +20,12 @@ object BuildShapeFileIndex extends Logging{
 
     val shapeFileMetaRDD = new ShapeFileMetaRDD(sc, hConf)
     shapeFileMetaRDD.initializeShapeFileMetaRDD(sc, hConf)
-    shapeFileMetaRDD.saveShapeFileMetaToDB()
+    shapeFileMetaRDD.saveShapeFileMetaIndex()
+
+    // the database is only needed by readers which don't use the meta indexes
+    if (hConf.get(ConfigParameter.HIBERNATE_URL) != null) {
+      shapeFileMetaRDD.saveShapeFileMetaToDB()
+    }
   }
 
   def buildIndex_VA(sc: SparkContext): Unit = {
@@ -1,9 +1,8 @@
 package edu.gmu.stc.vector
 
 import com.vividsolutions.jts.geom.{Envelope, Geometry}
+import org.datasyslab.geospark.utils.CRSTransformCache
 import org.geotools.geometry.jts.JTS
-import org.geotools.referencing.CRS
-import org.opengis.referencing.crs.CoordinateReferenceSystem
 import org.opengis.referencing.operation.MathTransform
 
 /**
@@ -15,10 +14,7 @@ object VectorUtil {
                       sourceLongitudeFirst: Boolean,
                       targetCRSStr: String,
                       targetLongitudeFirst: Boolean): MathTransform = {
-
-    val sourceCRS = CRS.decode(sourceCRSStr, sourceLongitudeFirst)
-    val targetCRS = CRS.decode(targetCRSStr, targetLongitudeFirst)
-    CRS.findMathTransform(sourceCRS, targetCRS)
+    CRSTransformCache.getTransform(sourceCRSStr, sourceLongitudeFirst, targetCRSStr, targetLongitudeFirst, false)
   }
 
   def transformCRS(inputGeometry: Geometry,
@@ -27,7 +23,7 @@ object VectorUtil {
                    targetCRSStr: String,
                    targetLongitudeFirst: Boolean): Geometry = {
     val transform = getCRSTransform(sourceCRSStr, sourceLongitudeFirst, targetCRSStr, targetLongitudeFirst)
-    JTS.transform(inputGeometry, transform)
+    CRSTransformCache.transform(inputGeometry, transform)
   }
 
   def transformCRS(inputGeometry: Envelope,
@@ -5,40 +5,53 @@ import com.vividsolutions.jts.index.SpatialIndex
 import edu.gmu.stc.vector.rdd.index.IndexOperator
 import edu.gmu.stc.vector.shapefile.meta.ShapeFileMeta
 import edu.gmu.stc.vector.shapefile.reader.GeometryReaderUtil
+import edu.gmu.stc.vector.shapefile.writer.{ShapefileMerger, ShapefileWriter}
 import org.apache.hadoop.conf.Configuration
 import org.apache.hadoop.fs.{FSDataInputStream, Path}
-import org.apache.spark.SparkContext
+import org.apache.hadoop.io.compress.GzipCodec
+import org.apache.spark.{SerializableWritable, SparkContext, TaskContext}
 import org.apache.spark.internal.Logging
 import org.apache.spark.rdd.RDD
 import org.datasyslab.geospark.enums.{GridType, IndexType}
+import org.datasyslab.geospark.formatMapper.geojson.GeoJsonEncoder
+import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.shp.ShapeType
+import org.datasyslab.geospark.joinJudgement.DedupParams
 import org.datasyslab.geospark.spatialPartitioning.SpatialPartitioner
 import org.geotools.geometry.jts.JTS
 import org.geotools.referencing.CRS
-import org.wololo.geojson.{Feature, FeatureCollection}
-import org.wololo.jts2geojson.GeoJSONWriter
 
 import scala.collection.JavaConverters._
+import scala.collection.mutable.ArrayBuffer
 import scala.reflect.ClassTag
 
 /**
   * Created by Fei Hu on 1/26/18.
   */
 class GeometryRDD extends Logging{
-  private var geometryRDD: RDD[Geometry] = _
+  // Geometries keyed by their record ids, see ShapeFileMeta.getRecordId and ShapeFileMetaRDD.getFileIds
+  private var recordRDD: RDD[(Long, Geometry)] = _
   private var indexedGeometryRDD: RDD[SpatialIndex] = _
   private var partitioner: SpatialPartitioner = _
+  // Set only while the records are placed by the partitioner which provided the params
+  private var dedupParams: Option[DedupParams] = None
 
   def initialize(shapeFileMetaRDD: ShapeFileMetaRDD, hasAttribute: Boolean = false): Unit = {
-    this.geometryRDD = shapeFileMetaRDD.getShapeFileMetaRDD.mapPartitions(itor => {
+    val fileIds = shapeFileMetaRDD.getShapeFileMetaRDD.sparkContext.broadcast(shapeFileMetaRDD.getFileIds)
+    this.recordRDD = shapeFileMetaRDD.getShapeFileMetaRDD.mapPartitions(itor => {
       val shapeFileMetaList = itor.toList
-      if (hasAttribute) {
-        GeometryReaderUtil.readGeometriesWithAttributes(shapeFileMetaList.asJava).asScala.toIterator
+      val geometries = if (hasAttribute) {
+        GeometryReaderUtil.readGeometriesWithAttributes(shapeFileMetaList.asJava)
       } else {
-        GeometryReaderUtil.readGeometries(shapeFileMetaList.asJava).asScala.toIterator
+        GeometryReaderUtil.readGeometries(shapeFileMetaList.asJava)
       }
+
+      shapeFileMetaList.toIterator
+        .map(shapeFileMeta => shapeFileMeta.getRecordId(fileIds.value(shapeFileMeta.getFilePath)))
+        .zip(geometries.asScala.toIterator)
     })
 
     this.partitioner = shapeFileMetaRDD.getPartitioner
+    this.dedupParams = None
   }
 
   def transforCRS(sourceEpsgCRSCode: String,
@@ -48,12 +61,18 @@ class GeometryRDD extends Logging{
     val sourceCRS = CRS.decode(sourceEpsgCRSCode, sourceLongitudeFirst)
     val targetCRS = CRS.decode(targetEpsgCRSCode, targetLongitudeFirst)
     val transform = CRS.findMathTransform(sourceCRS, targetCRS)
-    this.geometryRDD = this.geometryRDD.map(geometry => JTS.transform(geometry, transform))
+    this.recordRDD = this.recordRDD.mapValues(geometry => JTS.transform(geometry, transform))
+    // the transformed geometries may no longer fall into the extents of their partitions
+    this.dedupParams = None
   }
 
   def partition(partition: SpatialPartitioner): Unit = {
     this.partitioner = partition
-    this.geometryRDD = this.geometryRDD.flatMap(geometry => partition.placeObject(geometry).asScala)
+    this.dedupParams = Option(partition.getDedupParams)
+    this.recordRDD = this.recordRDD
+      .flatMap({case (id, geometry) => {
+        partition.placeObject(geometry).asScala.map(tuple => (tuple._1, (id, tuple._2)))
+      }})
       .partitionBy(partition).map(_._2)
   }
 
@@ -64,95 +83,170 @@ class GeometryRDD extends Logging{
 
     joinRDD = joinRDD.cache()
 
-    this.geometryRDD = joinRDD.mapPartitions(IndexOperator.spatialIntersect)
+    this.recordRDD = GeometryRDD.assignRecordIds(joinRDD.mapPartitions(IndexOperator.spatialIntersect))
+    this.dedupParams = None
   }
 
-  def getGeometryRDD: RDD[Geometry] = this.geometryRDD
+  def getGeometryRDD: RDD[Geometry] = this.recordRDD.values
 
   def indexPartition(indexType: IndexType) = {
     val indexBuilder = new IndexOperator(indexType.toString)
-    this.indexedGeometryRDD = this.geometryRDD.mapPartitions(indexBuilder.buildIndex)
+    this.indexedGeometryRDD = this.recordRDD.mapPartitions(indexBuilder.buildRecordIndex)
   }
 
   def intersect(other: GeometryRDD): GeometryRDD = {
     val geometryRDD = new GeometryRDD
-    geometryRDD.geometryRDD = this.indexedGeometryRDD.zipPartitions(other.geometryRDD)(IndexOperator.geoSpatialIntersection)
-    geometryRDD.geometryRDD = geometryRDD.geometryRDD.filter(geometry => !geometry.isEmpty)
+    val intersectionRDD = this.indexedGeometryRDD
+      .zipPartitions(other.recordRDD)((indexes, records) => IndexOperator.geoSpatialJoinRecords(indexes, records, null))
+      .map({case ((_, g1), (_, g2)) => g1.intersection(g2)})
+      .filter(geometry => !geometry.isEmpty)
+    geometryRDD.recordRDD = GeometryRDD.assignRecordIds(intersectionRDD)
     geometryRDD
   }
 
-  def spatialJoin(other: GeometryRDD): RDD[(Geometry, Iterable[Geometry])] = {
-    val pairedRDD= this.indexedGeometryRDD
-      .zipPartitions(other.geometryRDD)(IndexOperator.geoSpatialJoin)
-      .map{
-        case (g1, g2) => {
-          (g1.hashCode() + "" + g2.hashCode(), (g1, g2))
-        }
-      }.reduceByKey({
-      case (tuple1, tuple2) => tuple1
-    }).map(tuple => tuple._2)
+  /**
+    * Returns each pair of records whose geometries intersect exactly once.
+    *
+    * If both RDDs are placed by the same partitioner which supports de-dup, duplicate pairs are
+    * dropped inside each partition by the reference point rule. Otherwise, they are dropped by
+    * a shuffle keyed by the record ids of the pair.
+    */
+  private def joinRecords(other: GeometryRDD): RDD[((Long, Geometry), (Long, Geometry))] = {
+    val dedupParams = if (this.partitioner eq other.partitioner) {
+      this.dedupParams.filter(_ => other.dedupParams.isDefined).orNull
+    } else {
+      null
+    }
+
+    val pairedRDD = this.indexedGeometryRDD
+      .zipPartitions(other.recordRDD)((indexes, records) => IndexOperator.geoSpatialJoinRecords(indexes, records, dedupParams))
+
+    if (dedupParams != null) {
+      pairedRDD
+    } else {
+      pairedRDD
+        .map({case pair@((id1, _), (id2, _)) => ((id1, id2), pair)})
+        .reduceByKey((pair1, pair2) => pair1)
+        .values
+    }
+  }
 
-    //TODO: is there any other efficient way
-    pairedRDD.groupByKey()
+  def spatialJoin(other: GeometryRDD): RDD[(Geometry, Iterable[Geometry])] = {
+    joinRecords(other)
+      .map({case ((id1, g1), (_, g2)) => (id1, (g1, g2))})
+      .combineByKey[(Geometry, ArrayBuffer[Geometry])](
+        pair => (pair._1, ArrayBuffer(pair._2)),
+        (group, pair) => {
+          group._2 += pair._2
+          group
+        },
+        (group1, group2) => {
+          group1._2 ++= group2._2
+          group1
+        })
+      .map({case (_, (g1, geometries)) => (g1, geometries: Iterable[Geometry])})
   }
 
   def intersectV2(other: GeometryRDD, partitionNum: Int): GeometryRDD = {
     val geometryRDD = new GeometryRDD
-    val pairedRDD= this.indexedGeometryRDD.zipPartitions(other.geometryRDD)(IndexOperator.geoSpatialJoin)
-
-    geometryRDD.geometryRDD = pairedRDD
-      .map({case (g1, g2) => {
-        (g1.hashCode() + "_" + g2.hashCode(), (g1, g2))
-      }})
-      .reduceByKey((v1, v2) => v1)
-        .map(tuple => tuple._2)
+    val intersectionRDD = joinRecords(other)
       .repartition(partitionNum)
-      .map({case(g1, g2) => {
-        g1.intersection(g2)
-      }})
+      .map({case ((_, g1), (_, g2)) => g1.intersection(g2)})
       .filter(g => !g.isEmpty)
-      .map(g => (g.hashCode(), g))
-      .reduceByKey({
-        case (g1, g2) => g1
-      }).map(_._2)
-
+    geometryRDD.recordRDD = GeometryRDD.assignRecordIds(intersectionRDD)
     geometryRDD
   }
 
   def cache(): Unit = {
-    this.geometryRDD = this.geometryRDD.cache()
+    this.recordRDD = this.recordRDD.cache()
   }
 
   def uncache(blocking: Boolean = true): Unit = {
-    this.geometryRDD.unpersist(blocking)
+    this.recordRDD.unpersist(blocking)
   }
 
-  def saveAsGeoJSON(outputLocation: String): Unit = {
-    this.geometryRDD.mapPartitions(iterator => {
-      val geoJSONWriter = new GeoJSONWriter
-      val featureList = iterator.map(geometry => {
-        if (geometry.getUserData != null) {
-          val userData = Map("UserData" -> geometry.getUserData)
-          new Feature(geoJSONWriter.write(geometry), userData.asJava)
-        } else {
-          new Feature(geoJSONWriter.write(geometry), null)
-        }
-      }).toList
-
-      val featureCollection = new FeatureCollection(featureList.toArray[Feature])
-      List[String](featureCollection.toString).toIterator
-    }).saveAsTextFile(outputLocation)
+  /**
+    * Writes one FeatureCollection per partition, or one feature per line if lineDelimited is set.
+    * Features are encoded one at a time, so memory use doesn't grow with the partition size.
+    */
+  def saveAsGeoJSON(outputLocation: String, lineDelimited: Boolean = false, gzip: Boolean = false): Unit = {
+    val lines = this.getGeometryRDD.mapPartitions(iterator => GeoJsonEncoder.encode(iterator.asJava, lineDelimited).asScala)
+    if (gzip) {
+      lines.saveAsTextFile(outputLocation, classOf[GzipCodec])
+    } else {
+      lines.saveAsTextFile(outputLocation)
+    }
   }
 
   def getPartitioner: SpatialPartitioner = this.partitioner
 
-  def saveAsShapefile(filepath: String, crs: String): Unit = {
-    val geometries = this.geometryRDD.collect().toList.asJava
-    GeometryReaderUtil.saveAsShapefile(filepath, geometries, crs)
+  /**
+    * Writes one shapefile per partition straight from the executors, named part-00000.shp etc.
+    * Every task attempt writes its part to a temporary directory and moves it in place when done.
+    * With merge set, the parts are written to a temporary directory next to filepath and then
+    * concatenated into filepath, otherwise they are written to the directory filepath without
+    * the .shp suffix.
+    *
+    * @param fieldNames names of the tab separated values in the user data of the geometries,
+    *                   or of the field holding the whole user data if there is a single one.
+    *                   If empty, the fields of GeometryReaderUtil.saveAsShapefile are written:
+    *                   outPolyID numbering the records from 0, the bounding box of the geometry
+    *                   and the user data as a number, see ShapefileWriter.LEGACY_FIELD_NAMES.
+    */
+  def saveAsShapefile(filepath: String,
+                      crs: String,
+                      shapeType: ShapeType = ShapeType.POLYGON,
+                      fieldNames: Seq[String] = Nil,
+                      merge: Boolean = true): Unit = {
+    val sc = this.recordRDD.sparkContext
+    val basePath = new Path(filepath.stripSuffix(GeometryReaderUtil.SHP_SUFFIX))
+    val partsDir = if (merge) basePath.suffix("_parts") else basePath
+    val fs = basePath.getFileSystem(sc.hadoopConfiguration)
+    fs.delete(partsDir, true)
+
+    val writer = new ShapefileWriter(shapeType, fieldNames.asJava, CRS.decode(crs).toWKT)
+    // The records of each part are numbered from the number of records of the parts before it
+    val firstIds = if (fieldNames.isEmpty) {
+      this.getGeometryRDD.mapPartitions(iterator => Iterator(iterator.size.toLong))
+        .collect().scanLeft(0L)(_ + _)
+    } else {
+      Array.fill(this.getGeometryRDD.partitions.length)(0L)
+    }
+    val hConf = new SerializableWritable(sc.hadoopConfiguration)
+    val partsDirName = partsDir.toString
+    this.getGeometryRDD.foreachPartition(iterator => {
+      // Each attempt writes to its own directory and renames its files once they are complete,
+      // so failed or speculative attempts never leave partial files under the final names
+      val context = TaskContext.get()
+      val partName = "part-%05d".format(context.partitionId())
+      val attemptBasePath = new Path(partsDirName,
+        "%s/attempt-%d/%s".format(GeometryRDD.TEMPORARY_DIR, context.taskAttemptId(), partName))
+      val partFs = attemptBasePath.getFileSystem(hConf.value)
+      writer.write(iterator.asJava, partFs, attemptBasePath, firstIds(context.partitionId()))
+      ShapefileWriter.commit(partFs, attemptBasePath, new Path(partsDirName, partName))
+    })
+    fs.delete(new Path(partsDir, GeometryRDD.TEMPORARY_DIR), true)
+
+    if (merge) {
+      ShapefileMerger.merge(fs, ShapefileMerger.listParts(fs, partsDir), basePath)
+      fs.delete(partsDir, true)
+    }
   }
 }
 
 object GeometryRDD {
+  // Directory of the files written by the task attempts of saveAsShapefile
+  private val TEMPORARY_DIR = "_temporary"
+
+  /**
+    * Ids for geometries which are not read from shapefiles, e.g. the results of an overlay.
+    * They are unique within the returned RDD only, while the ids of records read from
+    * shapefiles are given by ShapeFileMeta.getRecordId.
+    */
+  private def assignRecordIds(geometryRDD: RDD[Geometry]): RDD[(Long, Geometry)] = {
+    geometryRDD.zipWithUniqueId().map(_.swap)
+  }
+
   def apply(sc: SparkContext, hadoopConfig: Configuration,
             tableName: String,
             gridTypeString: String, indexTypeString: String,
@@ -1,27 +1,43 @@
 package edu.gmu.stc.vector.rdd
 
-import com.vividsolutions.jts.geom.Geometry
+import com.vividsolutions.jts.geom.{Envelope, Geometry}
+import edu.gmu.stc.config.ConfigParameter
 import com.vividsolutions.jts.index.SpatialIndex
-import edu.gmu.stc.hibernate.{DAOImpl, HibernateUtil, PhysicalNameStrategyImpl}
+import edu.gmu.stc.hibernate.{HibernateUtil, PhysicalNameStrategyImpl, SessionFactoryRegistry, ShapeFileMetaBulkLoader}
 import edu.gmu.stc.vector.operation.OperationUtil
 import edu.gmu.stc.vector.parition.PartitionUtil
 import edu.gmu.stc.vector.rdd.index.IndexOperator
 import edu.gmu.stc.vector.shapefile.meta.ShapeFileMeta
-import edu.gmu.stc.vector.shapefile.meta.index.ShapeFileMetaIndexInputFormat
+import edu.gmu.stc.vector.shapefile.meta.index.{ShapeFileMetaIndex, ShapeFileMetaIndexInputFormat}
+import edu.gmu.stc.vector.shapefile.reader.GeometryReaderUtil
 import org.apache.commons.io.FilenameUtils
 import org.apache.spark.{Partition, SerializableWritable, SparkContext, TaskContext}
 import org.apache.spark.rdd.RDD
 import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.{Path, PathFilter}
 import org.apache.spark.rdd.NewHadoopRDD
 import org.apache.hadoop.mapreduce.InputFormat
 import org.apache.log4j.Logger
 import org.apache.spark.internal.Logging
+import org.apache.spark.sql.{DataFrame, Row, SparkSession}
+import org.apache.spark.sql.types._
+import org.apache.spark.storage.StorageLevel
 import org.datasyslab.geospark.enums.{GridType, IndexType}
+import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.dbf.DbfColumnDecoder
 import org.datasyslab.geospark.formatMapper.shapefileParser.shapes.ShapeKey
 import org.datasyslab.geospark.spatialPartitioning.SpatialPartitioner
 import org.hibernate.Session
+import org.hibernate.jdbc.Work
+
+import java.io.{BufferedWriter, OutputStreamWriter}
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.sql.{Connection, Date}
+import java.time.LocalDate
 
 import scala.collection.JavaConverters._
+import scala.collection.mutable.ArrayBuffer
+import scala.util.Random
 
 
 
@@ -38,6 +54,9 @@ class ShapeFileMetaRDD (sc: SparkContext, @transient conf: Configuration) extend
 
   private val confBroadcast = sc.broadcast(new SerializableWritable(conf))
 
+  /** number of envelopes sampled from the database to build a partitioner */
+  private val envelopeSampleSize = 100000
+
   def getConf: Configuration = {
     val conf: Configuration = confBroadcast.value.value
     conf
@@ -56,31 +75,12 @@ class ShapeFileMetaRDD (sc: SparkContext, @transient conf: Configuration) extend
                                  gridType: GridType,
                                  partitionNum: Int, minX: Double, minY: Double,
                                  maxX: Double, maxY: Double): Unit = {
-    val physicalNameStrategy = new PhysicalNameStrategyImpl(tableName)
-    val hibernateUtil = new HibernateUtil
-    hibernateUtil
-      .createSessionFactoryWithPhysicalNamingStrategy(sc.hadoopConfiguration, physicalNameStrategy,
-        classOf[ShapeFileMeta])
-    val session = hibernateUtil.getSession
-    val dao = new DAOImpl[ShapeFileMeta]()
-    dao.setSession(session)
-    val hql = ShapeFileMeta.getSQLForOverlappedRows(tableName, minX, minY, maxX, maxY)
-
-    val shapeFileMetaList = dao.findByQuery(hql, classOf[ShapeFileMeta]).asScala
-    val envelopes = shapeFileMetaList.map(shapeFileMeta => shapeFileMeta.getEnvelopeInternal)
-
-    logInfo("Number of queried shapefile metas is : " + envelopes.size)
-
-    session.close()
-    hibernateUtil.closeSessionFactory()
+    val (metaRDD, envelopes) = loadShapeFileMetas(sc, tableName, partitionNum, minX, minY, maxX, maxY)
 
     //initialize the partitioner
-    this.partitioner = PartitionUtil.spatialPartitioning(gridType, partitionNum, envelopes.asJava)
+    this.partitioner = createPartitioner(sc, tableName, gridType, partitionNum, envelopes())
 
-    shapeFileMetaRDD = sc.parallelize(shapeFileMetaList, partitionNum)
-      .flatMap(shapefileMeta => partitioner.placeObject(shapefileMeta).asScala)
-      .partitionBy(partitioner)
-      .map(tuple => tuple._2)
+    shapeFileMetaRDD = partitionMetas(metaRDD)
   }
 
   def initializeShapeFileMetaRDDAndPartitioner(sc: SparkContext,
@@ -88,83 +88,181 @@ class ShapeFileMetaRDD (sc: SparkContext, @transient conf: Configuration) extend
                                                gridType: GridType,
                                                partitionNum: Int, minX: Double, minY: Double,
                                                maxX: Double, maxY: Double): Unit = {
-    val physicalNameStrategy = new PhysicalNameStrategyImpl(tableName)
-    val hibernateUtil = new HibernateUtil
-    hibernateUtil
-      .createSessionFactoryWithPhysicalNamingStrategy(sc.hadoopConfiguration, physicalNameStrategy,
-        classOf[ShapeFileMeta])
-    val session = hibernateUtil.getSession
-    val dao = new DAOImpl[ShapeFileMeta]()
-    dao.setSession(session)
-    val hql = ShapeFileMeta.getSQLForOverlappedRows(tableName, minX, minY, maxX, maxY)
-
-    val shapeFileMetaList = dao.findByQuery(hql, classOf[ShapeFileMeta]).asScala
-    logInfo("**** Number of shapeFile meta is %d".format(shapeFileMetaList.size))
-    val envelopes = shapeFileMetaList.map(shapeFileMeta => shapeFileMeta.getEnvelopeInternal)
-
-    logInfo("Number of queried shapefile metas is : " + envelopes.size)
-
-    session.close()
-    hibernateUtil.closeSessionFactory()
+    val (metaRDD, envelopes) = loadShapeFileMetas(sc, tableName, partitionNum, minX, minY, maxX, maxY)
 
     //initialize the partitioner
-    this.partitioner = PartitionUtil.spatialPartitioning(gridType, partitionNum, envelopes.asJava)
+    this.partitioner = createPartitioner(sc, tableName, gridType, partitionNum, envelopes())
 
-    session.close()
-    hibernateUtil.closeSessionFactory()
-
-    this.shapeFileMetaRDD = sc.parallelize(shapeFileMetaList, partitionNum)
+    this.shapeFileMetaRDD = metaRDD
   }
 
   def initializeShapeFileMetaRDDWithoutPartition(sc: SparkContext,
                                                  tableName: String,
                                                  partitionNum: Int, minX: Double, minY: Double,
                                                  maxX: Double, maxY: Double): Unit = {
-    val physicalNameStrategy = new PhysicalNameStrategyImpl(tableName)
-    val hibernateUtil = new HibernateUtil
-    hibernateUtil
-      .createSessionFactoryWithPhysicalNamingStrategy(sc.hadoopConfiguration, physicalNameStrategy,
-        classOf[ShapeFileMeta])
-    val session = hibernateUtil.getSession
-    val dao = new DAOImpl[ShapeFileMeta]()
-    dao.setSession(session)
-    val hql = ShapeFileMeta.getSQLForOverlappedRows(tableName, minX, minY, maxX, maxY)
+    val (metaRDD, _) = loadShapeFileMetas(sc, tableName, partitionNum, minX, minY, maxX, maxY)
+    this.shapeFileMetaRDD = metaRDD
+  }
 
-    val shapeFileMetaList = dao.findByQuery(hql, classOf[ShapeFileMeta]).asScala
+  def initializeShapeFileMetaRDD(sc: SparkContext, partitioner: SpatialPartitioner,
+                                 tableName: String, partitionNum: Int,
+                                 minX: Double, minY: Double, maxX: Double, maxY: Double) = {
+    val (metaRDD, _) = loadShapeFileMetas(sc, tableName, partitionNum, minX, minY, maxX, maxY)
 
-    logInfo("Number of queried shapefile metas is : " + shapeFileMetaList.size)
+    this.partitioner = partitioner
 
-    session.close()
-    hibernateUtil.closeSessionFactory()
+    shapeFileMetaRDD = partitionMetas(metaRDD)
+  }
 
-    session.close()
-    hibernateUtil.closeSessionFactory()
+  /**
+    * Places the metas into the partitions of the partitioner. If the metas were persisted to
+    * sample them, the shuffle is run right away and they are unpersisted: later jobs read the
+    * shuffle output instead.
+    */
+  private def partitionMetas(metaRDD: RDD[ShapeFileMeta]): RDD[ShapeFileMeta] = {
+    val partitioner = this.partitioner
+    val partitionedRDD = metaRDD
+      .flatMap(shapefileMeta => partitioner.placeObject(shapefileMeta).asScala)
+      .partitionBy(partitioner)
+    if (metaRDD.getStorageLevel != StorageLevel.NONE) {
+      partitionedRDD.foreachPartition(_ => ())
+      metaRDD.unpersist(blocking = false)
+    }
+    partitionedRDD.map(tuple => tuple._2)
+  }
 
-    this.shapeFileMetaRDD = sc.parallelize(shapeFileMetaList, partitionNum)
+  /**
+    * Loads the metas of the table which overlap the bounding box, with a function returning the
+    * envelopes to build a partitioner from. If one of the directories of
+    * ConfigParameter.SHAPEFILE_META_INDEX_DIRS holds a meta index for the table, the executors
+    * read the metas from it and the envelopes are those of the overlapping index leaves.
+    * Otherwise the executors query the database for a tile of the bounding box each, see
+    * ShapeFileMetaTileRDD, and the envelopes are sampled from the metas, which are persisted
+    * when they are sampled so that the database is only queried once.
+    */
+  private def loadShapeFileMetas(sc: SparkContext, tableName: String, partitionNum: Int,
+                                 minX: Double, minY: Double, maxX: Double, maxY: Double)
+  : (RDD[ShapeFileMeta], () => java.util.List[Envelope]) = {
+    findShapeFileMetaIndex(sc.hadoopConfiguration, tableName) match {
+      case Some(indexPath) =>
+        val (metaRDD, leafEnvelopes) =
+          readShapeFileMetaIndex(sc, indexPath, partitionNum, new Envelope(minX, maxX, minY, maxY))
+        (metaRDD, () => leafEnvelopes)
+      case None =>
+        val metaRDD = new ShapeFileMetaTileRDD(sc, new SerializableWritable(sc.hadoopConfiguration),
+          tableName, partitionNum, minX, minY, maxX, maxY)
+        (metaRDD, () => {
+          metaRDD.persist(StorageLevel.MEMORY_AND_DISK)
+          sampleEnvelopes(metaRDD)
+        })
+    }
   }
 
-  def initializeShapeFileMetaRDD(sc: SparkContext, partitioner: SpatialPartitioner,
-                                 tableName: String, partitionNum: Int,
-                                 minX: Double, minY: Double, maxX: Double, maxY: Double) = {
-    val physicalNameStrategy = new PhysicalNameStrategyImpl(tableName)
-    val hibernateUtil = new HibernateUtil
-    hibernateUtil.createSessionFactoryWithPhysicalNamingStrategy(sc.hadoopConfiguration, physicalNameStrategy,
-        classOf[ShapeFileMeta])
-    val session = hibernateUtil.getSession
-    val dao = new DAOImpl[ShapeFileMeta]()
-    dao.setSession(session)
-    val hql = ShapeFileMeta.getSQLForOverlappedRows(tableName, minX, minY, maxX, maxY)
-
-    val shapeFileMetaList = dao.findByQuery(hql, classOf[ShapeFileMeta]).asScala.toList
-    session.close()
-    hibernateUtil.closeSessionFactory()
+  /**
+    * Samples about envelopeSampleSize envelopes of the persisted metas. The metas of every
+    * partition are counted first, and every partition then samples its share of
+    * envelopeSampleSize, in proportion to its number of metas, so that the driver receives at
+    * most envelopeSampleSize envelopes plus one per partition, however many metas there are.
+    */
+  private def sampleEnvelopes(metaRDD: RDD[ShapeFileMeta]): java.util.List[Envelope] = {
+    val counts = metaRDD.mapPartitions(itor => Iterator(itor.size.toLong)).collect()
+    val total = math.max(counts.sum, 1L)
+    logInfo("Number of queried shapefile metas is : " + total)
+
+    val shares = counts.map(count => math.ceil(envelopeSampleSize.toDouble * count / total).toInt)
+    metaRDD.mapPartitionsWithIndex((partitionIndex, itor) => {
+      val share = shares(partitionIndex)
+      val random = new Random(partitionIndex)
+      val reservoir = new ArrayBuffer[Envelope](share)
+      var count = 0L
+      itor.foreach(shapeFileMeta => {
+        count += 1
+        if (reservoir.size < share) {
+          reservoir += shapeFileMeta.getEnvelopeInternal
+        } else {
+          val i = (random.nextDouble() * count).toLong
+          if (i < share) reservoir(i.toInt) = shapeFileMeta.getEnvelopeInternal
+        }
+      })
+      reservoir.iterator
+    }).collect().toList.asJava
+  }
 
-    this.partitioner = partitioner
+  /**
+    * Finds the meta index of the table, named after the table like the shapefile it was built
+    * from, directly in one of the directories of ConfigParameter.SHAPEFILE_META_INDEX_DIRS, i.e.
+    * the directories of the shapefiles. Subdirectories aren't searched. The table names are often
+    * lower-cased, so if no index has the exact name, the directory's own entries are matched
+    * ignoring case.
+    */
+  private def findShapeFileMetaIndex(conf: Configuration, tableName: String): Option[Path] = {
+    val indexDirs = conf.get(ConfigParameter.SHAPEFILE_META_INDEX_DIRS)
+    if (indexDirs == null) {
+      None
+    } else {
+      val indexName = tableName + ShapeFileMetaIndex.SUFFIX
+      indexDirs.split(",").map(dir => dir.trim).filter(dir => dir.nonEmpty).toStream
+        .flatMap(dir => {
+          val dirPath = new Path(dir)
+          val fs = dirPath.getFileSystem(conf)
+          val indexPath = new Path(dirPath, indexName)
+          if (fs.exists(indexPath)) {
+            Some(indexPath)
+          } else if (fs.isDirectory(dirPath)) {
+            fs.listStatus(dirPath, new PathFilter {
+              override def accept(path: Path): Boolean = path.getName.equalsIgnoreCase(indexName)
+            }).headOption.map(status => status.getPath)
+          } else {
+            None
+          }
+        })
+        .headOption
+    }
+  }
 
-    shapeFileMetaRDD = sc.parallelize(shapeFileMetaList, partitionNum)
-      .flatMap(shapefileMeta => this.partitioner.placeObject(shapefileMeta).asScala)
-      .partitionBy(this.partitioner)
-      .map(tuple => tuple._2)
+  /**
+    * Finds the index leaves overlapping the envelope on the driver, and reads their metas on the
+    * executors. The leaf ids are sorted, so every partition reads a contiguous part of the index.
+    */
+  private def readShapeFileMetaIndex(sc: SparkContext, indexPath: Path, partitionNum: Int,
+                                     envelope: Envelope): (RDD[ShapeFileMeta], java.util.List[Envelope]) = {
+    val index = new ShapeFileMetaIndex(indexPath.getFileSystem(sc.hadoopConfiguration), indexPath)
+    val leafEnvelopes = new java.util.ArrayList[Envelope]()
+    val leaves = try {
+      index.queryLeaves(envelope, leafEnvelopes)
+    } finally {
+      index.close()
+    }
+    logInfo("Number of queried leaves of %s is : %d".format(indexPath, leaves.length))
+
+    val indexPathName = indexPath.toString
+    val metaRDD = sc.parallelize(leaves, partitionNum).mapPartitions(itor => {
+      val path = new Path(indexPathName)
+      val partitionIndex = new ShapeFileMetaIndex(path.getFileSystem(getConf), path)
+      try {
+        partitionIndex.readLeaves(itor.toArray, envelope).asScala.iterator
+      } finally {
+        partitionIndex.close()
+      }
+    })
+
+    (metaRDD, leafEnvelopes)
+  }
+
+  /**
+    * Writes a meta index next to every shapefile, see ShapeFileMetaIndex. Expects the RDD built by
+    * initializeShapeFileMetaRDD(sc, conf), whose partitions hold whole shapefiles.
+    */
+  def saveShapeFileMetaIndex(): Unit = {
+    shapeFileMetaRDD.foreachPartition(itor => {
+      itor.toList.groupBy(shapeFileMeta => shapeFileMeta.getFilePath).foreach {
+        case (filePath, shapeFileMetas) =>
+          val indexPath = ShapeFileMetaIndex.getIndexPath(filePath)
+          logInfo("******* Save the meta index [%s]".format(indexPath))
+          ShapeFileMetaIndex.write(new java.util.ArrayList[ShapeFileMeta](shapeFileMetas.asJava),
+            indexPath.getFileSystem(getConf), indexPath)
+      }
+    })
   }
 
   def saveShapeFileMetaToDB(conf: Configuration, tableName: String): Unit = {
@@ -173,11 +271,8 @@ class ShapeFileMetaRDD (sc: SparkContext, @transient conf: Configuration) extend
       val hibernateUtil = new HibernateUtil
       hibernateUtil.createSessionFactoryWithPhysicalNamingStrategy(conf, physicalNameStrategy,
                                                         classOf[ShapeFileMeta])
-      val session = hibernateUtil.getSession
-      val dao = new DAOImpl[ShapeFileMeta]()
-      dao.setSession(session)
-      dao.insertDynamicTableObjectList(tableName, itor.asJava)
-      session.close()
+      bulkInsert(hibernateUtil.getSession, tableName, conf, itor)
+      hibernateUtil.closeSession()
       hibernateUtil.closeSessionFactory()
     })
   }
@@ -195,16 +290,196 @@ class ShapeFileMetaRDD (sc: SparkContext, @transient conf: Configuration) extend
       val hibernateUtil = new HibernateUtil
       hibernateUtil.createSessionFactoryWithPhysicalNamingStrategy(getConf, physicalNameStrategy, classOf[ShapeFileMeta])
 
-      val session = hibernateUtil.getSession
-      val dao = new DAOImpl[ShapeFileMeta]()
-      dao.setSession(session)
-      dao.insertDynamicTableObjectList(tableName, shapeFileMetaList.asJava.iterator())
+      bulkInsert(hibernateUtil.getSession, tableName, getConf, shapeFileMetaList.iterator)
       hibernateUtil.closeSession()
       hibernateUtil.closeSessionFactory()
     })
 
   }
 
+  /**
+    * Inserts the metas over the JDBC connection of the session, in batches of
+    * ConfigParameter.SHAPEFILE_META_DB_BATCH_SIZE rows. The session factory has already created
+    * the table.
+    */
+  private def bulkInsert(session: Session, tableName: String, conf: Configuration,
+                         itor: Iterator[ShapeFileMeta]): Unit = {
+    val batchSize = conf.getInt(ConfigParameter.SHAPEFILE_META_DB_BATCH_SIZE,
+      ShapeFileMetaBulkLoader.DEFAULT_BATCH_SIZE)
+    val loader = new ShapeFileMetaBulkLoader(tableName, batchSize)
+    session.doWork(new Work {
+      override def execute(connection: Connection): Unit = loader.insert(connection, itor.asJava)
+    })
+    logInfo("******* Inserted %d rows into the table [%s], %.0f rows/s"
+      .format(loader.getNumRows, tableName, loader.getRowsPerSecond))
+    logInfo(SessionFactoryRegistry.getMetrics)
+  }
+
+  /**
+    * Dumps the metas as CSV files, one per partition, for loading them into the table offline,
+    * e.g. with psql's \copy and the statement of ShapeFileMetaBulkLoader.getCopySQL.
+    */
+  def saveShapeFileMetaAsCSV(outputDir: String, tableName: String): Unit = {
+    val partsDirName = new Path(outputDir).toString
+    shapeFileMetaRDD.foreachPartition(itor => {
+      val partPath = new Path(partsDirName, "part-%05d.csv".format(TaskContext.getPartitionId()))
+      val writer = new BufferedWriter(new OutputStreamWriter(
+        partPath.getFileSystem(getConf).create(partPath, true), StandardCharsets.UTF_8))
+      try {
+        val loader = new ShapeFileMetaBulkLoader(tableName)
+        loader.writeCSV(itor.asJava, writer)
+        logInfo("******* Dumped %d rows into [%s], %.0f rows/s"
+          .format(loader.getNumRows, partPath, loader.getRowsPerSecond))
+      } finally {
+        writer.close()
+      }
+    })
+  }
+
+  /**
+    * Reads the attributes of the metas as a DataFrame with typed columns: a "recordid" column
+    * holding ShapeFileMeta.getRecordId with the ids of getFileIds, followed by the given .dbf columns, or all of them if none
+    * is given. N and F columns become long or double columns, D columns dates, L columns booleans
+    * and the others strings. Only the selected fields are decoded, straight from the .dbf records,
+    * instead of splitting the tab-separated attributes of the geometries and parsing them again.
+    * The schema is checked against the .dbf file of every shapefile of the metas, see
+    * getAttributeColumns. Without metas, the DataFrame is empty and the selected columns are
+    * strings.
+    *
+    * @throws IllegalArgumentException if the columns of the files don't match
+    */
+  def readAttributes(sparkSession: SparkSession, columns: String*): DataFrame = {
+    val selectedColumns = columns.toArray
+    val filePaths = getFilePaths
+    val fileIds = sparkSession.sparkContext.broadcast(filePaths.zipWithIndex.toMap)
+    val (columnNames, columnTypes) = getAttributeColumns(filePaths,
+      if (selectedColumns.isEmpty) null else java.util.Arrays.asList(selectedColumns: _*))
+    val fields = columnNames.zip(columnTypes).map({case (name, columnType) =>
+      StructField(name, getSQLType(columnType))})
+    val schema = StructType(StructField("recordid", LongType, nullable = false) +: fields)
+
+    val rowRDD = shapeFileMetaRDD.mapPartitions(itor => {
+      val shapeFileMetas = itor.toArray
+      val rows = new Array[Row](shapeFileMetas.length)
+      GeometryReaderUtil.readAttributes(shapeFileMetas.toSeq.asJava,
+        if (selectedColumns.isEmpty) null else java.util.Arrays.asList(selectedColumns: _*),
+        new GeometryReaderUtil.AttributeHandler {
+          override def handle(index: Int, decoder: DbfColumnDecoder, record: ByteBuffer): Unit = {
+            val shapeFileMeta = shapeFileMetas(index)
+            rows(index) = toRow(shapeFileMeta.getRecordId(fileIds.value(shapeFileMeta.getFilePath)),
+              decoder, record, columnTypes)
+          }
+        })
+      rows.iterator
+    })
+    sparkSession.createDataFrame(rowRDD, schema)
+  }
+
+  /**
+    * Returns the paths of the shapefiles of the metas, in order.
+    */
+  private def getFilePaths: Array[String] = shapeFileMetaRDD.map(_.getFilePath).distinct().collect().sorted
+
+  /**
+    * Numbers the shapefiles of the metas in path order, as the file ids of
+    * ShapeFileMeta.getRecordId. Unlike hashes of the paths, these ids can't collide, and they are
+    * the same for the same set of files.
+    */
+  def getFileIds: Map[String, Int] = getFilePaths.zipWithIndex.toMap
+
+  /**
+    * Returns the names and DbfColumnDecoder types of the columns, read from the .dbf file of every
+    * shapefile of the metas. The files must have the selected columns, or the same columns if
+    * none is selected, in the same order. A column of longs in some files and of doubles in
+    * others is read as doubles, any other difference of types fails.
+    *
+    * @param filePaths the paths of the shapefiles of the metas, see getFilePaths
+    * @param columns the names of the columns, or null for all of them
+    */
+  private def getAttributeColumns(filePaths: Array[String],
+                                  columns: java.util.List[String]): (Array[String], Array[Int]) = {
+    if (filePaths.isEmpty) {
+      val columnNames = if (columns == null) Array.empty[String] else columns.asScala.toArray
+      return (columnNames, columnNames.map(_ => DbfColumnDecoder.TYPE_STRING))
+    }
+
+    val fileColumns = filePaths.map(filePath => {
+      val decoder = try {
+        new DbfColumnDecoder(GeometryReaderUtil.readFieldDescriptors(filePath, getConf), columns)
+      } catch {
+        case e: IllegalArgumentException =>
+          throw new IllegalArgumentException(e.getMessage + " of " + filePath, e)
+      }
+      (0 until decoder.getNumColumns).map(i => (decoder.getColumnName(i), decoder.getColumnType(i)))
+    })
+
+    val (firstPath, firstColumns) = (filePaths.head, fileColumns.head)
+    val columnTypes = firstColumns.map(_._2).toArray
+    for ((filePath, otherColumns) <- filePaths.zip(fileColumns).tail) {
+      if (otherColumns.length != firstColumns.length
+        || firstColumns.zip(otherColumns).exists({case ((name, _), (otherName, _)) => !name.equalsIgnoreCase(otherName)})) {
+        throw new IllegalArgumentException("The fields [%s] of %s differ from the fields [%s] of %s".format(
+          otherColumns.map(_._1).mkString(", "), filePath, firstColumns.map(_._1).mkString(", "), firstPath))
+      }
+
+      for (i <- columnTypes.indices if columnTypes(i) != otherColumns(i)._2) {
+        val columnType = otherColumns(i)._2
+        if (Set(columnTypes(i), columnType) == Set(DbfColumnDecoder.TYPE_LONG, DbfColumnDecoder.TYPE_DOUBLE)) {
+          columnTypes(i) = DbfColumnDecoder.TYPE_DOUBLE
+        } else {
+          throw new IllegalArgumentException("The field %s is of type %s in %s but of type %s in %s".format(
+            firstColumns(i)._1, getSQLType(columnType).simpleString, filePath,
+            getSQLType(columnTypes(i)).simpleString, firstPath))
+        }
+      }
+    }
+    (firstColumns.map(_._1).toArray, columnTypes)
+  }
+
+  private def getSQLType(columnType: Int): DataType = columnType match {
+    case DbfColumnDecoder.TYPE_LONG => LongType
+    case DbfColumnDecoder.TYPE_DOUBLE => DoubleType
+    case DbfColumnDecoder.TYPE_DATE => DateType
+    case DbfColumnDecoder.TYPE_BOOLEAN => BooleanType
+    case _ => StringType
+  }
+
+  /**
+    * @param columnTypes the types of the columns in the schema, which are doubles where the
+    *                    decoder of the record's file has longs
+    */
+  private def toRow(recordId: Long, decoder: DbfColumnDecoder, record: ByteBuffer,
+                    columnTypes: Array[Int]): Row = {
+    val values = new Array[Any](decoder.getNumColumns + 1)
+    values(0) = recordId
+    for (column <- 0 until decoder.getNumColumns if !decoder.isNull(record, column)) {
+      values(column + 1) = columnTypes(column) match {
+        case DbfColumnDecoder.TYPE_LONG => decoder.getLong(record, column)
+        // decodes the longs of the files where the column has no decimals as well
+        case DbfColumnDecoder.TYPE_DOUBLE => decoder.getDouble(record, column)
+        case DbfColumnDecoder.TYPE_DATE => Date.valueOf(LocalDate.ofEpochDay(decoder.getDate(record, column)))
+        case DbfColumnDecoder.TYPE_BOOLEAN => decoder.getBoolean(record, column)
+        case _ => decoder.getString(record, column)
+      }
+    }
+    Row.fromSeq(values)
+  }
+
+  /**
+    * Builds the partitioner from the envelopes, or reuses the one saved for the same table,
+    * grid type and number of partitions when ConfigParameter.PARTITIONER_DIR_PATH is set.
+    */
+  private def createPartitioner(sc: SparkContext, tableName: String, gridType: GridType,
+                                partitionNum: Int, envelopes: java.util.List[Envelope]): SpatialPartitioner = {
+    val partitionerDir = sc.hadoopConfiguration.get(ConfigParameter.PARTITIONER_DIR_PATH)
+    if (partitionerDir == null) {
+      PartitionUtil.spatialPartitioning(gridType, partitionNum, envelopes)
+    } else {
+      val partitionerPath = new Path(partitionerDir, "%s_%s_%d.partitioner".format(tableName, gridType, partitionNum))
+      PartitionUtil.spatialPartitioning(gridType, partitionNum, envelopes, partitionerPath.toString, sc.hadoopConfiguration)
+    }
+  }
+
   def partition(partitioner: SpatialPartitioner): Unit = {
     this.shapeFileMetaRDD = this.shapeFileMetaRDD
       .flatMap(shapefileMeta => this.partitioner.placeObject(shapefileMeta).asScala)
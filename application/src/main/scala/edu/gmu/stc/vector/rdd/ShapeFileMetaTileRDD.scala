@@ -0,0 +1,103 @@
+package edu.gmu.stc.vector.rdd
+
+import edu.gmu.stc.hibernate.SessionFactoryRegistry
+import edu.gmu.stc.vector.shapefile.meta.ShapeFileMeta
+import org.apache.hadoop.conf.Configuration
+import org.apache.spark.{Partition, SerializableWritable, SparkContext, TaskContext}
+import org.apache.spark.internal.Logging
+import org.apache.spark.rdd.RDD
+import org.hibernate.ScrollMode
+
+/**
+  * A tile of the query bounding box, with the SQL query selecting the metas assigned to it.
+  */
+class ShapeFileMetaTilePartition(idx: Int, val sql: String) extends Partition {
+  override def index: Int = idx
+}
+
+/**
+  * Reads the metas of a table which overlap a bounding box, like JdbcRDD: the bounding box is
+  * split into a grid of tiles, one per partition, and every partition queries the database for
+  * its own tile from the executor. Unlike fetching all metas on the driver and parallelizing
+  * them, the driver never holds the rows.
+  *
+  * A meta overlapping several tiles is read by one of them only: the tile containing its lower
+  * left corner, clamped to the bounding box. Rows are streamed from a stateless session with a
+  * forward-only cursor, so the executors don't hold them either.
+  *
+  * Created by Fei Hu on 5/6/18.
+  */
+class ShapeFileMetaTileRDD(sc: SparkContext,
+                           hConf: SerializableWritable[Configuration],
+                           tableName: String,
+                           numTiles: Int,
+                           minX: Double, minY: Double, maxX: Double, maxY: Double)
+  extends RDD[ShapeFileMeta](sc, Nil) with Logging {
+
+  override protected def getPartitions: Array[Partition] = {
+    val numColumns = math.ceil(math.sqrt(numTiles)).toInt
+    val numRows = math.ceil(numTiles.toDouble / numColumns).toInt
+    val overlapSQL = ShapeFileMeta.getSQLForOverlappedRows(tableName, minX, minY, maxX, maxY)
+
+    val partitions = for (row <- 0 until numRows; column <- 0 until numColumns) yield {
+      val conditions =
+        ShapeFileMetaTileRDD.tileConditions("minx", minX, maxX, column, numColumns) ++
+        ShapeFileMetaTileRDD.tileConditions("miny", minY, maxY, row, numRows)
+      val sql = "SELECT * " + overlapSQL + conditions.map(" AND " + _).mkString
+      new ShapeFileMetaTilePartition(row * numColumns + column, sql)
+    }
+    partitions.toArray
+  }
+
+  override def compute(split: Partition, context: TaskContext): Iterator[ShapeFileMeta] = {
+    val sql = split.asInstanceOf[ShapeFileMetaTilePartition].sql
+    val sessionFactory = SessionFactoryRegistry.getSessionFactory(hConf.value, tableName,
+      classOf[ShapeFileMeta])
+    val session = sessionFactory.openStatelessSession()
+    // PostgreSQL only streams rows with a cursor inside a transaction
+    val transaction = session.beginTransaction()
+    val results = session.createSQLQuery(sql)
+      .addEntity(classOf[ShapeFileMeta])
+      .setFetchSize(ShapeFileMetaTileRDD.FetchSize)
+      .setReadOnly(true)
+      .scroll(ScrollMode.FORWARD_ONLY)
+
+    context.addTaskCompletionListener((_: TaskContext) => {
+      results.close()
+      transaction.rollback()
+      session.close()
+    })
+
+    new Iterator[ShapeFileMeta] {
+      private var hasNextRow = results.next()
+
+      override def hasNext: Boolean = hasNextRow
+
+      override def next(): ShapeFileMeta = {
+        if (!hasNextRow) throw new NoSuchElementException
+        val shapeFileMeta = results.get(0).asInstanceOf[ShapeFileMeta]
+        hasNextRow = results.next()
+        shapeFileMeta
+      }
+    }
+  }
+}
+
+object ShapeFileMetaTileRDD {
+  /** number of rows fetched from the database at once */
+  val FetchSize = 10000
+
+  /**
+    * Returns the SQL conditions on the column assigning a meta to the tile along one axis,
+    * given the min of the meta on that axis. The first tile also takes the metas starting
+    * before the bounding box, and the last one those starting at its max.
+    */
+  private def tileConditions(column: String, min: Double, max: Double,
+                             tile: Int, numTiles: Int): Seq[String] = {
+    val tileSize = (max - min) / numTiles
+    val conditions = Seq.newBuilder[String]
+    if (tile > 0) conditions += "%s >= %s".format(column, String.valueOf(min + tile * tileSize))
+    if (tile < numTiles - 1) conditions += "%s < %s".format(column, String.valueOf(min + (tile + 1) * tileSize))
+    conditions.result()
+  }
+}
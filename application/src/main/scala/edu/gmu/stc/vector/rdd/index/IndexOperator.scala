@@ -1,6 +1,6 @@
 package edu.gmu.stc.vector.rdd.index
 
-import com.vividsolutions.jts.geom.{Envelope, Geometry, GeometryFactory}
+import com.vividsolutions.jts.geom.{Envelope, Geometry, GeometryFactory, Point}
 import com.vividsolutions.jts.index.SpatialIndex
 import com.vividsolutions.jts.index.quadtree.Quadtree
 import com.vividsolutions.jts.index.strtree.STRtree
@@ -8,8 +8,11 @@ import edu.gmu.stc.vector.shapefile.meta.ShapeFileMeta
 import edu.gmu.stc.vector.shapefile.reader.GeometryReaderUtil
 import org.apache.hadoop.conf.Configuration
 import org.apache.hadoop.fs.Path
+import org.apache.spark.TaskContext
 import org.apache.spark.internal.Logging
 import org.datasyslab.geospark.enums.IndexType
+import org.datasyslab.geospark.joinJudgement.DedupParams
+import org.datasyslab.geospark.utils.HalfOpenRectangle
 
 import scala.collection.JavaConverters._
 import scala.collection.mutable
@@ -38,7 +41,22 @@ class IndexOperator(indexType: String) extends Serializable {
     List(spatialIndex).toIterator
   }
 
+  def buildRecordIndex(iterator: Iterator[(Long, Geometry)]): Iterator[SpatialIndex] = {
+    val spatialIndex: SpatialIndex = if (IndexType.getIndexType(indexType) == IndexType.RTREE) {
+                                          new STRtree
+                                        } else {
+                                          new Quadtree
+                                        }
+
+    while (iterator.hasNext) {
+      val record = iterator.next()
+      spatialIndex.insert(record._2.getEnvelopeInternal, record)
+    }
 
+    spatialIndex.query(new Envelope(0.0, 0.0, 0.0, 0.0))
+
+    List(spatialIndex).toIterator
+  }
 }
 
 object IndexOperator extends Logging{
@@ -94,6 +112,61 @@ object IndexOperator extends Logging{
 
 
 
+  /**
+    * Joins the indexed records of a partition with the records of the same partition of
+    * another RDD, and returns the pairs whose geometries intersect.
+    *
+    * If dedupParams is not null, a pair is only returned by the partition whose extent contains
+    * the reference point of the pair, i.e. the lower-left corner of the intersection of the two
+    * envelopes. A pair found in several partitions is then reported exactly once without any
+    * shuffle. This requires both RDDs to be partitioned by the partitioner of dedupParams.
+    */
+  def geoSpatialJoinRecords(iterator1: Iterator[SpatialIndex],
+                            iterator2: Iterator[(Long, Geometry)],
+                            dedupParams: DedupParams)
+  : Iterator[((Long, Geometry), (Long, Geometry))] = {
+    if (iterator1.isEmpty || iterator2.isEmpty) {
+      return Iterator.empty
+    }
+
+    val extent = getPartitionExtent(dedupParams)
+
+    iterator1.flatMap(spatialIndex => {
+      iterator2.flatMap(record2 => {
+        val g2 = record2._2
+        val overlapped = spatialIndex.query(g2.getEnvelopeInternal).asScala
+        overlapped.map(record1 => record1.asInstanceOf[(Long, Geometry)])
+          .filter(record1 => isReferencePartition(extent, record1._2, g2) && record1._2.intersects(g2))
+          .map(record1 => (record1, record2))
+      })
+    })
+  }
+
+  private def getPartitionExtent(dedupParams: DedupParams): HalfOpenRectangle = {
+    if (dedupParams == null) {
+      return null
+    }
+
+    val partitionId = TaskContext.getPartitionId()
+    val partitionExtents = dedupParams.getPartitionExtents
+    if (partitionId < partitionExtents.size()) {
+      new HalfOpenRectangle(partitionExtents.get(partitionId))
+    } else {
+      logWarning("Didn't find partition extent for this partition: " + partitionId)
+      null
+    }
+  }
+
+  private def isReferencePartition(extent: HalfOpenRectangle, g1: Geometry, g2: Geometry): Boolean = {
+    // Each point is assigned to exactly one partition, so pairs with a point are never duplicated
+    if (extent == null || g1.isInstanceOf[Point] || g2.isInstanceOf[Point]) {
+      return true
+    }
+
+    val intersection = g1.getEnvelopeInternal.intersection(g2.getEnvelopeInternal)
+    intersection.isNull || extent.contains(intersection.getMinX, intersection.getMinY)
+  }
+
   def spatialJoinV2(iterator1: Iterator[SpatialIndex],
                   iterator2: Iterator[ShapeFileMeta])
   : Iterator[(Long, Long)] = {
@@ -0,0 +1,64 @@
+package edu.gmu.stc.hibernate;
+
+import org.apache.hadoop.conf.Configuration;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Test;
+
+import edu.gmu.stc.config.ConfigParameter;
+import edu.gmu.stc.vector.shapefile.meta.ShapeFileMeta;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by Fei Hu on 5/5/18.
+ */
+public class SessionFactoryRegistryTest {
+
+  private static Configuration createConf(String database) {
+    Configuration conf = new Configuration(false);
+    conf.set(ConfigParameter.HIBERNATE_DRIEVER, "org.h2.Driver");
+    conf.set(ConfigParameter.HIBERNATE_URL, "jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1");
+    conf.set(ConfigParameter.HIBERNATE_USER, "sa");
+    conf.set(ConfigParameter.HIBERNATE_PASS, "");
+    conf.set(ConfigParameter.HIBERNATE_DIALECT, "org.hibernate.dialect.H2Dialect");
+    conf.set(ConfigParameter.HIBERNATE_HBM2DDL_AUTO, "update");
+    return conf;
+  }
+
+  @After
+  public void tearDown() {
+    SessionFactoryRegistry.closeAll();
+  }
+
+  @Test
+  public void testFactoriesAreShared() {
+    SessionFactory factory = SessionFactoryRegistry.getSessionFactory(
+        createConf("registry"), "buildings", ShapeFileMeta.class);
+    assertSame(factory, SessionFactoryRegistry.getSessionFactory(
+        createConf("registry"), "buildings", ShapeFileMeta.class));
+    assertNotSame(factory, SessionFactoryRegistry.getSessionFactory(
+        createConf("registry"), "roads", ShapeFileMeta.class));
+    assertNotSame(factory, SessionFactoryRegistry.getSessionFactory(
+        createConf("other"), "buildings", ShapeFileMeta.class));
+
+    HibernateUtil hibernateUtil = new HibernateUtil();
+    hibernateUtil.createSessionFactoryWithPhysicalNamingStrategy(
+        createConf("registry"), new PhysicalNameStrategyImpl("buildings"), ShapeFileMeta.class);
+    Session session = hibernateUtil.getSession();
+    assertTrue(session.isOpen());
+    hibernateUtil.closeSession();
+    hibernateUtil.closeSessionFactory();
+    assertFalse(factory.isClosed());
+    assertTrue(SessionFactoryRegistry.getMetrics().contains("sessions opened"));
+
+    SessionFactoryRegistry.closeAll();
+    assertTrue(factory.isClosed());
+    assertNotSame(factory, SessionFactoryRegistry.getSessionFactory(
+        createConf("registry"), "buildings", ShapeFileMeta.class));
+  }
+}
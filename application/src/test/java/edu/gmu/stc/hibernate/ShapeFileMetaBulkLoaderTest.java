@@ -0,0 +1,136 @@
+package edu.gmu.stc.hibernate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.gmu.stc.vector.shapefile.meta.ShapeFileMeta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Created by Fei Hu on 5/4/18.
+ */
+public class ShapeFileMetaBulkLoaderTest {
+
+  private static final String TABLE_NAME = "buildings";
+
+  private Connection connection;
+
+  @Before
+  public void setUp() throws SQLException {
+    connection = DriverManager.getConnection("jdbc:h2:mem:bulkloader;DB_CLOSE_DELAY=-1");
+    Statement statement = connection.createStatement();
+    statement.execute("CREATE TABLE " + TABLE_NAME + " (index BIGINT PRIMARY KEY, typeid INT, "
+                      + "shp_offset BIGINT, shp_length INT, dbf_offset BIGINT, dbf_length INT, "
+                      + "minx DOUBLE, miny DOUBLE, maxx DOUBLE, maxy DOUBLE, filepath VARCHAR(255))");
+    statement.close();
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    Statement statement = connection.createStatement();
+    statement.execute("DROP TABLE " + TABLE_NAME);
+    statement.close();
+    connection.close();
+  }
+
+  private static List<ShapeFileMeta> createMetas(int numMetas) {
+    List<ShapeFileMeta> metas = new ArrayList<ShapeFileMeta>();
+    for (int i = 0; i < numMetas; i++) {
+      metas.add(new ShapeFileMeta((long) i, 5, 100L + 48 * i, 44, 98L + 11 * i, 10,
+                                  "hdfs://data/va/buildings", i, -i, i + 0.5, -i + 0.5));
+    }
+    return metas;
+  }
+
+  @Test
+  public void testInsertInBatches() throws SQLException {
+    ShapeFileMetaBulkLoader loader = new ShapeFileMetaBulkLoader(TABLE_NAME, 1000);
+    assertEquals(2500, loader.insert(connection, createMetas(2500).iterator()));
+    assertEquals(2500, loader.getNumRows());
+    assertTrue(loader.getRowsPerSecond() > 0);
+    assertTrue(connection.getAutoCommit());
+
+    Statement statement = connection.createStatement();
+    ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM " + TABLE_NAME);
+    resultSet.next();
+    assertEquals(2500, resultSet.getLong(1));
+
+    resultSet = statement.executeQuery("SELECT " + ShapeFileMetaBulkLoader.COLUMNS + " FROM "
+                                       + TABLE_NAME + " WHERE index = 1234");
+    assertTrue(resultSet.next());
+    assertEquals(5, resultSet.getInt("typeid"));
+    assertEquals(100L + 48 * 1234, resultSet.getLong("shp_offset"));
+    assertEquals(44, resultSet.getInt("shp_length"));
+    assertEquals(98L + 11 * 1234, resultSet.getLong("dbf_offset"));
+    assertEquals(10, resultSet.getInt("dbf_length"));
+    assertEquals(-1233.5, resultSet.getDouble("maxy"), 0);
+    assertEquals("hdfs://data/va/buildings", resultSet.getString("filepath"));
+    statement.close();
+  }
+
+  @Test
+  public void testInsertRollsBackOnError() throws SQLException {
+    List<ShapeFileMeta> metas = createMetas(10);
+    // duplicate id
+    metas.add(createMetas(1).get(0));
+
+    ShapeFileMetaBulkLoader loader = new ShapeFileMetaBulkLoader(TABLE_NAME, 4);
+    try {
+      loader.insert(connection, metas.iterator());
+      fail("the duplicate id should fail");
+    } catch (SQLException e) {
+      // expected
+    }
+
+    Statement statement = connection.createStatement();
+    ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM " + TABLE_NAME);
+    resultSet.next();
+    assertEquals(0, resultSet.getLong(1));
+    statement.close();
+  }
+
+  @Test
+  public void testWriteCSV() throws Exception {
+    ShapeFileMeta meta = new ShapeFileMeta(7L, 3, 100L, 44, 98L, 10, "a \"quoted\", path",
+                                           1.5, 2.5, 3.5, 4.5);
+    StringWriter writer = new StringWriter();
+    ShapeFileMetaBulkLoader loader = new ShapeFileMetaBulkLoader(TABLE_NAME);
+    assertEquals(1, loader.writeCSV(Arrays.asList(meta).iterator(), writer));
+    assertEquals("7,3,100,44,98,10,1.5,2.5,3.5,4.5,\"a \"\"quoted\"\", path\"\n", writer.toString());
+
+    // H2 reads the dump back in the column order of COLUMNS
+    File csv = File.createTempFile("metas", ".csv");
+    try {
+      Files.write(csv.toPath(), writer.toString().getBytes(StandardCharsets.UTF_8));
+      Statement statement = connection.createStatement();
+      statement.execute("INSERT INTO " + TABLE_NAME + " (" + ShapeFileMetaBulkLoader.COLUMNS
+                        + ") SELECT * FROM CSVREAD('" + csv.getAbsolutePath() + "', '"
+                        + ShapeFileMetaBulkLoader.COLUMNS.replace(" ", "")
+                        + "', 'fieldSeparator=, charset=UTF-8')");
+      ResultSet resultSet = statement.executeQuery("SELECT filepath, maxy FROM " + TABLE_NAME);
+      assertTrue(resultSet.next());
+      assertEquals("a \"quoted\", path", resultSet.getString(1));
+      assertEquals(4.5, resultSet.getDouble(2), 0);
+      statement.close();
+    } finally {
+      csv.delete();
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package edu.gmu.stc.vector.parition;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+import org.apache.hadoop.conf.Configuration;
+import org.datasyslab.geospark.enums.GridType;
+import org.datasyslab.geospark.spatialPartitioning.SpatialPartitioner;
+import org.datasyslab.geospark.spatialPartitioning.SpatialPartitionerIO;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by Fei Hu on 5/8/18.
+ */
+public class PartitionUtilTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final Configuration conf = new Configuration();
+
+  /**
+   * A saved partitioner is reused while it covers the samples, and rebuilt and saved again once
+   * they spread beyond it, whatever its type.
+   */
+  @Test
+  public void testRebuildPartitionerNotCoveringSamples() throws Exception {
+    for (GridType gridType : new GridType[] {GridType.EQUALGRID, GridType.RTREE,
+                                             GridType.QUADTREE, GridType.KDBTREE}) {
+      String path = new File(folder.getRoot(), gridType.name()).getPath();
+      List<Envelope> samples = createSamples(1, 100);
+      SpatialPartitioner saved = PartitionUtil.spatialPartitioning(gridType, 4, samples, path, conf);
+      assertEquals(gridType.name(), saved.getGrids(),
+                   PartitionUtil.spatialPartitioning(gridType, 4, createSamples(10, 90), path, conf).getGrids());
+
+      List<Envelope> wider = createSamples(1, 300);
+      SpatialPartitioner rebuilt = PartitionUtil.spatialPartitioning(gridType, 4, wider, path, conf);
+      assertTrue(gridType.name(), getExtent(rebuilt).covers(getExtent(wider)));
+      assertEquals(gridType.name(), rebuilt.getGrids(),
+                   SpatialPartitionerIO.load(path, conf, null).getGrids());
+    }
+  }
+
+  private static List<Envelope> createSamples(double min, double max) {
+    Random random = new Random(3);
+    List<Envelope> samples = new ArrayList<Envelope>();
+    samples.add(new Envelope(min, min + 1, min, min + 1));
+    samples.add(new Envelope(max - 1, max, max - 1, max));
+    for (int i = 0; i < 1000; i++) {
+      double x = min + random.nextDouble() * (max - min - 1);
+      double y = min + random.nextDouble() * (max - min - 1);
+      samples.add(new Envelope(x, x + 1, y, y + 1));
+    }
+    return samples;
+  }
+
+  private static Envelope getExtent(List<Envelope> envelopes) {
+    Envelope extent = new Envelope();
+    for (Envelope envelope : envelopes) {
+      extent.expandToInclude(envelope);
+    }
+    return extent;
+  }
+
+  private static Envelope getExtent(SpatialPartitioner partitioner) {
+    return getExtent(partitioner.getGrids());
+  }
+}
@@ -0,0 +1,195 @@
+package edu.gmu.stc.vector.rdd;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.types.DataType;
+import org.apache.spark.sql.types.DataTypes;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.gmu.stc.config.ConfigParameter;
+import scala.collection.JavaConverters;
+import scala.collection.Seq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Reads the attributes of copies of the core module's dbf/map shapefile with
+ * {@link ShapeFileMetaRDD#readAttributes}, some of them with other field types.
+ *
+ * Created by Fei Hu on 5/8/18.
+ */
+public class ShapeFileMetaRDDTest {
+
+  // the tests run in the directory of the application module
+  private static final String SHAPEFILE_PATH = "../core/src/test/resources/shapefiles/dbf/map";
+  private static final String[] SUFFIXES = {".shp", ".shx", ".dbf"};
+  private static final int NUM_RECORDS = 3220;
+
+  // GEOID is the fifth field, and ALAND the eighth, an N field of 14 digits without decimals
+  private static final int GEOID_FIELD = 4;
+  private static final int ALAND_FIELD = 7;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static SparkSession sparkSession;
+  private static JavaSparkContext sc;
+
+  @BeforeClass
+  public static void setUp() {
+    sparkSession = SparkSession.builder().master("local[2]")
+        .appName(ShapeFileMetaRDDTest.class.getSimpleName()).getOrCreate();
+    sc = JavaSparkContext.fromSparkContext(sparkSession.sparkContext());
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    sparkSession.stop();
+  }
+
+  @Test
+  public void testReadAttributes() throws IOException {
+    File dir = folder.newFolder("counties");
+    copyShapefile(dir, "map");
+
+    Dataset<Row> attributes = readAttributes(dir, "GEOID", "ALAND");
+    assertSchema(attributes, DataTypes.StringType, DataTypes.LongType);
+    Map<String, Long> landAreas = getLandAreas(attributes);
+    assertEquals(NUM_RECORDS, landAreas.size());
+    assertEquals(Long.valueOf(1655865960L), landAreas.get("20175"));
+  }
+
+  /**
+   * ALAND has decimals in one of the files, so it is read as a double from both.
+   */
+  @Test
+  public void testReadWidenedAttributes() throws IOException {
+    File dir = folder.newFolder("counties");
+    copyShapefile(dir, "map");
+    patchField(copyShapefile(dir, "decimals"), ALAND_FIELD, 'N', 2);
+
+    Dataset<Row> attributes = readAttributes(dir, "GEOID", "ALAND");
+    assertSchema(attributes, DataTypes.StringType, DataTypes.DoubleType);
+    List<Row> rows = attributes.collectAsList();
+    assertEquals(2 * NUM_RECORDS, rows.size());
+    for (Row row : rows) {
+      if (row.getString(1).equals("20175")) {
+        assertEquals(1655865960.0, row.getDouble(2), 0);
+      }
+    }
+  }
+
+  @Test
+  public void testReadMismatchedAttributes() throws IOException {
+    File dir = folder.newFolder("counties");
+    copyShapefile(dir, "map");
+    patchField(copyShapefile(dir, "logical"), GEOID_FIELD, 'L', 0);
+
+    assertRejected(dir, "The field GEOID is of type", "GEOID", "ALAND");
+    // ALAND alone has the same type in both files
+    assertEquals(2 * NUM_RECORDS, readAttributes(dir, "ALAND").count());
+    assertRejected(dir, "No field missing in the .dbf file of", "ALAND", "missing");
+  }
+
+  /**
+   * The paths of the files differ only by names with the same hash code, so their records
+   * would share ids if these were built from the hash codes of the paths.
+   */
+  @Test
+  public void testRecordIdsOfFilesWithSameHashCode() throws IOException {
+    File dir = folder.newFolder("counties");
+    assertEquals("Aa".hashCode(), "BB".hashCode());
+    copyShapefile(dir, "Aa");
+    copyShapefile(dir, "BB");
+
+    Set<Long> recordIds = new HashSet<Long>();
+    for (Row row : readAttributes(dir, "GEOID").collectAsList()) {
+      recordIds.add(row.getLong(0));
+    }
+    assertEquals(2 * NUM_RECORDS, recordIds.size());
+  }
+
+  @Test
+  public void testReadNoAttributes() throws IOException {
+    Dataset<Row> attributes = readAttributes(folder.newFolder("empty"), "GEOID");
+    assertSchema(attributes, DataTypes.StringType);
+    assertEquals(0, attributes.count());
+  }
+
+  private Dataset<Row> readAttributes(File dir, String... columns) {
+    Configuration conf = new Configuration(sc.hadoopConfiguration());
+    conf.set(ConfigParameter.INPUT_DIR_PATH, dir.getAbsolutePath());
+    ShapeFileMetaRDD shapeFileMetaRDD = new ShapeFileMetaRDD(sc.sc(), conf);
+    shapeFileMetaRDD.initializeShapeFileMetaRDD(sc.sc(), conf);
+    Seq<String> columnSeq = JavaConverters.asScalaBufferConverter(Arrays.asList(columns)).asScala();
+    return shapeFileMetaRDD.readAttributes(sparkSession, columnSeq);
+  }
+
+  private void assertRejected(File dir, String expectedMessage, String... columns) {
+    try {
+      readAttributes(dir, columns);
+      fail("read " + Arrays.toString(columns));
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains(expectedMessage));
+    }
+  }
+
+  private static void assertSchema(Dataset<Row> attributes, DataType... columnTypes) {
+    assertEquals(columnTypes.length + 1, attributes.schema().fields().length);
+    assertEquals(DataTypes.LongType, attributes.schema().fields()[0].dataType());
+    for (int i = 0; i < columnTypes.length; i++) {
+      assertEquals(columnTypes[i], attributes.schema().fields()[i + 1].dataType());
+    }
+  }
+
+  private static Map<String, Long> getLandAreas(Dataset<Row> attributes) {
+    Map<String, Long> landAreas = new HashMap<String, Long>();
+    for (Row row : attributes.collectAsList()) {
+      landAreas.put(row.getString(1), row.getLong(2));
+    }
+    return landAreas;
+  }
+
+  /**
+   * Copies the files of the test shapefile to dir/name and returns the copied .dbf file.
+   */
+  private static File copyShapefile(File dir, String name) throws IOException {
+    for (String suffix : SUFFIXES) {
+      Files.copy(new File(SHAPEFILE_PATH + suffix).toPath(), new File(dir, name + suffix).toPath());
+    }
+    return new File(dir, name + ".dbf");
+  }
+
+  /**
+   * Changes the type and the number of decimals in the descriptor of a field.
+   */
+  private static void patchField(File dbfFile, int field, char type, int decimals)
+      throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(dbfFile, "rw")) {
+      file.seek(32 + 32 * field + 11);
+      file.write(type);
+      file.seek(32 + 32 * field + 17);
+      file.write(decimals);
+    }
+  }
+}
@@ -0,0 +1,186 @@
+package edu.gmu.stc.vector.rdd;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.spark.SerializableWritable;
+import org.apache.spark.SparkConf;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.storage.StorageLevel;
+import org.datasyslab.geospark.enums.GridType;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import edu.gmu.stc.config.ConfigParameter;
+import edu.gmu.stc.hibernate.SessionFactoryRegistry;
+import edu.gmu.stc.hibernate.ShapeFileMetaBulkLoader;
+import edu.gmu.stc.vector.shapefile.meta.ShapeFileMeta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Loads metas into an H2 table and reads them back with {@link ShapeFileMetaTileRDD} over
+ * several tile grids, comparing them with a plain bounding box query.
+ *
+ * Created by Fei Hu on 5/8/18.
+ */
+public class ShapeFileMetaTileRDDTest {
+
+  private static final String TABLE_NAME = "buildings";
+  private static final String URL = "jdbc:h2:mem:tiles;DB_CLOSE_DELAY=-1";
+
+  private static JavaSparkContext sc;
+  private static Connection connection;
+
+  @BeforeClass
+  public static void setUp() throws SQLException {
+    sc = new JavaSparkContext(new SparkConf().setMaster("local[2]")
+                                  .setAppName(ShapeFileMetaTileRDDTest.class.getSimpleName()));
+    Configuration conf = sc.hadoopConfiguration();
+    conf.set(ConfigParameter.HIBERNATE_DRIEVER, "org.h2.Driver");
+    conf.set(ConfigParameter.HIBERNATE_URL, URL);
+    conf.set(ConfigParameter.HIBERNATE_USER, "sa");
+    conf.set(ConfigParameter.HIBERNATE_PASS, "");
+    conf.set(ConfigParameter.HIBERNATE_DIALECT, "org.hibernate.dialect.H2Dialect");
+    conf.set(ConfigParameter.HIBERNATE_HBM2DDL_AUTO, "update");
+
+    // the session factory creates the table, like when the metas are saved
+    SessionFactoryRegistry.getSessionFactory(conf, TABLE_NAME, ShapeFileMeta.class);
+    connection = DriverManager.getConnection(URL, "sa", "");
+    new ShapeFileMetaBulkLoader(TABLE_NAME).insert(connection, createMetas().iterator());
+  }
+
+  @AfterClass
+  public static void tearDown() throws SQLException {
+    sc.stop();
+    SessionFactoryRegistry.closeAll();
+    Statement statement = connection.createStatement();
+    statement.execute("DROP TABLE " + TABLE_NAME);
+    statement.close();
+    connection.close();
+  }
+
+  /**
+   * Boxes and points spread over and around the bounding boxes queried, some of them starting
+   * exactly on tile borders, or on the edges of the bounding box.
+   */
+  private static List<ShapeFileMeta> createMetas() {
+    Random random = new Random(11);
+    List<ShapeFileMeta> metas = new ArrayList<ShapeFileMeta>();
+    for (int i = 0; i < 2000; i++) {
+      double x = random.nextDouble() * 140 - 20;
+      double y = random.nextDouble() * 140 - 20;
+      double size = i % 10 == 0 ? 0 : random.nextDouble() * 15;
+      metas.add(createMeta(metas.size(), x, y, x + size, y + size));
+    }
+    for (int x = 0; x <= 100; x += 25) {
+      for (int y = 0; y <= 100; y += 25) {
+        metas.add(createMeta(metas.size(), x, y, x, y));
+        metas.add(createMeta(metas.size(), x, y, x + 10, y + 10));
+        metas.add(createMeta(metas.size(), x - 10, y - 10, x, y));
+      }
+    }
+    return metas;
+  }
+
+  private static ShapeFileMeta createMeta(long index, double minX, double minY, double maxX,
+                                          double maxY) {
+    return new ShapeFileMeta(index, 5, 100 + index * 128, 120, 33 + index * 40, 39,
+                             "hdfs://data/va/buildings", minX, minY, maxX, maxY);
+  }
+
+  @Test
+  public void testTileGrids() throws Exception {
+    double[][] boundingBoxes = {{0, 0, 100, 100}, {10.5, 20.25, 60, 90}, {-100, -100, 200, 200}};
+    for (double[] box : boundingBoxes) {
+      List<Long> expected = queryIndexes(box);
+      assertFalse(expected.isEmpty());
+      // a single tile, rows or columns only, square and uneven grids
+      for (int numTiles : new int[] {1, 2, 4, 7, 9, 16}) {
+        ShapeFileMetaTileRDD rdd = new ShapeFileMetaTileRDD(
+            sc.sc(), new SerializableWritable<Configuration>(sc.hadoopConfiguration()), TABLE_NAME,
+            numTiles, box[0], box[1], box[2], box[3]);
+        assertIndexes(box[0] + ", " + box[1] + ", " + box[2] + ", " + box[3] + ", " + numTiles
+                      + " tiles", expected, rdd.toJavaRDD().collect());
+      }
+    }
+  }
+
+  @Test
+  public void testMetasArePersisted() throws Exception {
+    double[] box = {0, 0, 100, 100};
+    ShapeFileMetaRDD shapeFileMetaRDD = new ShapeFileMetaRDD(sc.sc(), sc.hadoopConfiguration());
+    shapeFileMetaRDD.initializeShapeFileMetaRDDAndPartitioner(
+        sc.sc(), TABLE_NAME, GridType.EQUALGRID, 4, box[0], box[1], box[2], box[3]);
+    assertNotNull(shapeFileMetaRDD.getPartitioner());
+
+    // the metas sampled for the partitioner are kept for their later use
+    assertEquals(StorageLevel.MEMORY_AND_DISK(),
+                 shapeFileMetaRDD.getShapeFileMetaRDD().getStorageLevel());
+    assertIndexes("persisted", queryIndexes(box),
+                  shapeFileMetaRDD.getShapeFileMetaRDD().toJavaRDD().collect());
+  }
+
+  @Test
+  public void testPartitionedMetasAreUnpersisted() throws Exception {
+    double[] box = {0, 0, 100, 100};
+    Set<Integer> persistedRDDs = new HashSet<Integer>(sc.getPersistentRDDs().keySet());
+    ShapeFileMetaRDD shapeFileMetaRDD = new ShapeFileMetaRDD(sc.sc(), sc.hadoopConfiguration());
+    shapeFileMetaRDD.initializeShapeFileMetaRDD(
+        sc.sc(), TABLE_NAME, GridType.EQUALGRID, 4, box[0], box[1], box[2], box[3]);
+
+    // the metas were persisted for sampling, and dropped once shuffled into the partitions
+    assertEquals(persistedRDDs, sc.getPersistentRDDs().keySet());
+    List<Long> expected = queryIndexes(box);
+    List<Long> indexes = new ArrayList<Long>();
+    for (ShapeFileMeta meta : shapeFileMetaRDD.getShapeFileMetaRDD().toJavaRDD().collect()) {
+      indexes.add(meta.getIndex());
+    }
+    // a meta is placed into every partition it overlaps
+    assertEquals(new HashSet<Long>(expected), new HashSet<Long>(indexes));
+  }
+
+  /**
+   * Checks that every meta is read once, and that no meta is missing.
+   */
+  private static void assertIndexes(String message, List<Long> expected,
+                                    List<ShapeFileMeta> metas) {
+    List<Long> indexes = new ArrayList<Long>();
+    for (ShapeFileMeta meta : metas) {
+      indexes.add(meta.getIndex());
+    }
+    assertEquals(message, indexes.size(), new HashSet<Long>(indexes).size());
+    Collections.sort(indexes);
+    assertEquals(message, expected, indexes);
+  }
+
+  private static List<Long> queryIndexes(double[] box) throws SQLException {
+    List<Long> indexes = new ArrayList<Long>();
+    Statement statement = connection.createStatement();
+    try {
+      ResultSet resultSet = statement.executeQuery(
+          "SELECT index " + ShapeFileMeta.getSQLForOverlappedRows(TABLE_NAME, box[0], box[1],
+                                                                  box[2], box[3]));
+      while (resultSet.next()) {
+        indexes.add(resultSet.getLong(1));
+      }
+    } finally {
+      statement.close();
+    }
+    Collections.sort(indexes);
+    return indexes;
+  }
+}
@@ -0,0 +1,253 @@
+package edu.gmu.stc.vector.shapefile.meta.index;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import edu.gmu.stc.vector.shapefile.meta.ShapeFileMeta;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Writes {@link ShapeFileMetaIndex} files and compares their queries with filtering all the
+ * metas by envelope.
+ *
+ * Created by Fei Hu on 5/8/18.
+ */
+public class ShapeFileMetaIndexTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private FileSystem fs;
+  private Path indexPath;
+
+  @Before
+  public void setUp() throws IOException {
+    fs = FileSystem.getLocal(new Configuration());
+    indexPath = new Path(folder.getRoot().getAbsolutePath(), "map" + ShapeFileMetaIndex.SUFFIX);
+  }
+
+  @Test
+  public void testQuery() throws IOException {
+    Random random = new Random(7);
+    List<ShapeFileMeta> metas = new ArrayList<ShapeFileMeta>();
+    for (int i = 0; i < 1000; i++) {
+      double x = random.nextDouble() * 100;
+      double y = random.nextDouble() * 100;
+      // a few points among the boxes
+      double size = i % 10 == 0 ? 0 : random.nextDouble() * 5;
+      metas.add(createMeta(i, x, y, x + size, y + size));
+    }
+
+    List<Envelope> envelopes = new ArrayList<Envelope>();
+    for (int i = 0; i < 20; i++) {
+      double x = random.nextDouble() * 100;
+      double y = random.nextDouble() * 100;
+      envelopes.add(new Envelope(x, x + random.nextDouble() * 30, y, y + random.nextDouble() * 30));
+    }
+    envelopes.add(new Envelope(-1000, 1000, -1000, 1000));
+    envelopes.add(new Envelope(200, 300, 200, 300));
+    envelopes.add(new Envelope(50, 50, 50, 50));
+
+    // one, two and more levels above the leaves
+    for (int nodeCapacity : new int[] {2, 4, ShapeFileMetaIndex.DEFAULT_NODE_CAPACITY, 100}) {
+      assertQueries(metas, nodeCapacity, envelopes);
+    }
+  }
+
+  @Test
+  public void testEmptyIndex() throws IOException {
+    ShapeFileMetaIndex.write(new ArrayList<ShapeFileMeta>(), fs, indexPath);
+    ShapeFileMetaIndex index = new ShapeFileMetaIndex(fs, indexPath);
+    try {
+      assertEquals(0, index.getNumRecords());
+      List<Envelope> leafEnvelopes = new ArrayList<Envelope>();
+      assertEquals(0, index.queryLeaves(new Envelope(-1000, 1000, -1000, 1000), leafEnvelopes).length);
+      assertTrue(leafEnvelopes.isEmpty());
+      assertTrue(index.query(new Envelope(-1000, 1000, -1000, 1000)).isEmpty());
+    } finally {
+      index.close();
+    }
+  }
+
+  @Test
+  public void testSingleLeaf() throws IOException {
+    List<ShapeFileMeta> metas = new ArrayList<ShapeFileMeta>();
+    for (int i = 0; i < 5; i++) {
+      metas.add(createMeta(i, i, i, i + 1, i + 1));
+    }
+    List<Envelope> envelopes = Arrays.asList(
+        new Envelope(0, 5, 0, 5), new Envelope(1.5, 2.5, 1.5, 2.5), new Envelope(10, 11, 10, 11));
+    assertQueries(metas, ShapeFileMetaIndex.DEFAULT_NODE_CAPACITY, envelopes);
+
+    ShapeFileMetaIndex index = new ShapeFileMetaIndex(fs, indexPath);
+    try {
+      List<Envelope> leafEnvelopes = new ArrayList<Envelope>();
+      assertEquals(0, index.queryLeaves(new Envelope(10, 11, 10, 11), leafEnvelopes).length);
+      assertArrayEquals(new int[] {0}, index.queryLeaves(new Envelope(0, 1, 0, 1), leafEnvelopes));
+      assertEquals(Collections.singletonList(new Envelope(0, 5, 0, 5)), leafEnvelopes);
+    } finally {
+      index.close();
+    }
+  }
+
+  /**
+   * Unit squares with gaps between them, queried with boxes which touch them only on their
+   * edges or corners. The intervals are closed, so touching squares are returned.
+   */
+  @Test
+  public void testQueryTouchingEdges() throws IOException {
+    List<ShapeFileMeta> metas = new ArrayList<ShapeFileMeta>();
+    for (int i = 0; i < 10; i++) {
+      for (int j = 0; j < 10; j++) {
+        metas.add(createMeta(i * 10 + j, 2 * i, 2 * j, 2 * i + 1, 2 * j + 1));
+      }
+    }
+
+    ShapeFileMetaIndex.write(new ArrayList<ShapeFileMeta>(metas), fs, indexPath, 4);
+    ShapeFileMetaIndex index = new ShapeFileMetaIndex(fs, indexPath);
+    try {
+      // the right edge of square (0, 0) and the left edge of square (1, 0)
+      assertEquals(Arrays.asList(0L, 10L), getIndexes(index.query(new Envelope(1, 2, 0.25, 0.75))));
+      // the top right corner of square (4, 4) only
+      assertEquals(Collections.singletonList(44L), getIndexes(index.query(new Envelope(9, 9.5, 9, 9.5))));
+      // the corners of four squares
+      assertEquals(Arrays.asList(44L, 45L, 54L, 55L),
+                   getIndexes(index.query(new Envelope(9, 10, 9, 10))));
+      // the gaps only
+      assertTrue(index.query(new Envelope(1.25, 1.75, 1.25, 1.75)).isEmpty());
+      // the top edges of the last row
+      assertEquals(Arrays.asList(9L, 19L), getIndexes(index.query(new Envelope(0, 3, 19, 25))));
+    } finally {
+      index.close();
+    }
+    assertQueries(metas, 4, Arrays.asList(
+        new Envelope(1, 2, 0.25, 0.75), new Envelope(9, 10, 9, 10), new Envelope(19, 19, 0, 19)));
+  }
+
+  @Test
+  public void testBadMagic() throws IOException {
+    writeHeader(0x12345678, 1);
+    assertRejected("is not a shapefile meta index");
+  }
+
+  @Test
+  public void testBadVersion() throws IOException {
+    writeHeader(0x534D4958, 2);
+    assertRejected("Unsupported version 2");
+  }
+
+  /**
+   * Writes the index of the metas and checks that queryLeaves with readLeaves, and query, return
+   * the metas overlapping each envelope.
+   */
+  private void assertQueries(List<ShapeFileMeta> metas, int nodeCapacity, List<Envelope> envelopes)
+      throws IOException {
+    ShapeFileMetaIndex.write(new ArrayList<ShapeFileMeta>(metas), fs, indexPath, nodeCapacity);
+    Map<Long, ShapeFileMeta> metasByIndex = new HashMap<Long, ShapeFileMeta>();
+    for (ShapeFileMeta meta : metas) {
+      metasByIndex.put(meta.getIndex(), meta);
+    }
+
+    ShapeFileMetaIndex index = new ShapeFileMetaIndex(fs, indexPath);
+    try {
+      assertEquals(metas.size(), index.getNumRecords());
+      for (Envelope envelope : envelopes) {
+        String message = "node capacity " + nodeCapacity + ", " + envelope;
+        List<Long> expected = new ArrayList<Long>();
+        for (ShapeFileMeta meta : metas) {
+          if (meta.getEnvelopeInternal().intersects(envelope)) {
+            expected.add(meta.getIndex());
+          }
+        }
+        Collections.sort(expected);
+
+        List<Envelope> leafEnvelopes = new ArrayList<Envelope>();
+        int[] leaves = index.queryLeaves(envelope, leafEnvelopes);
+        assertEquals(message, leaves.length, leafEnvelopes.size());
+        for (int i = 0; i < leaves.length; i++) {
+          assertTrue(message, leafEnvelopes.get(i).intersects(envelope));
+          if (i > 0) {
+            assertTrue(message, leaves[i - 1] < leaves[i]);
+          }
+        }
+
+        List<ShapeFileMeta> actual = index.readLeaves(leaves, envelope);
+        assertEquals(message, expected, getIndexes(actual));
+        assertEquals(message, expected, getIndexes(index.query(envelope)));
+        for (ShapeFileMeta meta : actual) {
+          assertMetaEquals(metasByIndex.get(meta.getIndex()), meta);
+        }
+      }
+    } finally {
+      index.close();
+    }
+  }
+
+  private void assertMetaEquals(ShapeFileMeta expected, ShapeFileMeta actual) {
+    String message = "record " + expected.getIndex();
+    assertEquals(message, expected.getTypeID(), actual.getTypeID());
+    assertEquals(message, expected.getShp_offset(), actual.getShp_offset());
+    assertEquals(message, expected.getShp_length(), actual.getShp_length());
+    assertEquals(message, expected.getDbf_offset(), actual.getDbf_offset());
+    assertEquals(message, expected.getDbf_length(), actual.getDbf_length());
+    assertEquals(message, ShapeFileMetaIndex.getShapeFilePath(indexPath), actual.getFilePath());
+    assertEquals(message, expected.getEnvelopeInternal(), actual.getEnvelopeInternal());
+  }
+
+  private static List<Long> getIndexes(List<ShapeFileMeta> metas) {
+    List<Long> indexes = new ArrayList<Long>();
+    for (ShapeFileMeta meta : metas) {
+      indexes.add(meta.getIndex());
+    }
+    Collections.sort(indexes);
+    return indexes;
+  }
+
+  private static ShapeFileMeta createMeta(long index, double minX, double minY, double maxX,
+                                          double maxY) {
+    return new ShapeFileMeta(index, 5, 100 + index * 128, 120, 33 + index * 40, 39, "unused",
+                             minX, minY, maxX, maxY);
+  }
+
+  /**
+   * Writes the header of an empty index, without a checksum file,
+   * so that the header is read as written.
+   */
+  private void writeHeader(int magic, int version) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(24);
+    header.putInt(magic).putInt(version).putInt(0).putInt(16).putInt(0).putInt(0);
+    Files.write(new File(indexPath.toUri().getPath()).toPath(), header.array());
+  }
+
+  private void assertRejected(String expectedMessage) {
+    try {
+      new ShapeFileMetaIndex(fs, indexPath).close();
+      fail("opened " + indexPath);
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains(expectedMessage));
+    }
+  }
+}
@@ -0,0 +1,185 @@
+package edu.gmu.stc.vector.shapefile.meta.index.parser;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.shp.ShapeType;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import edu.gmu.stc.vector.shapefile.meta.DbfMeta;
+import edu.gmu.stc.vector.shapefile.meta.ShapeFileMeta;
+import edu.gmu.stc.vector.shapefile.meta.ShpMeta;
+import edu.gmu.stc.vector.shapefile.writer.ShapefileWriter;
+
+/**
+ * Compares the time to extract the metas of a generated polygon shapefile with
+ * {@link ShpFileMetaParser} and {@link DbfMetaParser}, as CombineShapeFileMetaIndexReader used
+ * to, and with {@link ShapeFileMetaBulkParser}.
+ *
+ * Usage: ShapeFileMetaParserBenchmark [numRecords] [iterations]
+ *
+ * Created by Fei Hu on 5/2/18.
+ */
+public class ShapeFileMetaParserBenchmark {
+
+  public static void main(String[] args) throws IOException {
+    int numRecords = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+    File dir = Files.createTempDirectory("meta_benchmark").toFile();
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    Path basePath = new Path(dir.getAbsolutePath(), "polygons");
+    generateShapefile(fs, basePath, numRecords);
+
+    // warm up both code paths and check they agree
+    List<ShapeFileMeta> expected = parseWithMetaParsers(fs, basePath);
+    List<ShapeFileMeta> actual = parseWithBulkParser(fs, basePath);
+    checkEquals(expected, actual);
+
+    long metaParsersTime = 0;
+    long bulkParserTime = 0;
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      parseWithMetaParsers(fs, basePath);
+      metaParsersTime += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      parseWithBulkParser(fs, basePath);
+      bulkParserTime += System.nanoTime() - start;
+    }
+
+    System.out.println(String.format("%d records, average of %d iterations", numRecords, iterations));
+    System.out.println(String.format("ShpFileMetaParser + DbfMetaParser: %.1f ms",
+                                     metaParsersTime / 1e6 / iterations));
+    System.out.println(String.format("ShapeFileMetaBulkParser: %.1f ms",
+                                     bulkParserTime / 1e6 / iterations));
+
+    fs.delete(new Path(dir.getAbsolutePath()), true);
+  }
+
+  private static void generateShapefile(FileSystem fs, Path basePath, final int numRecords)
+      throws IOException {
+    final GeometryFactory geometryFactory = new GeometryFactory();
+    final Random random = new Random(42);
+    Iterator<Geometry> polygons = new Iterator<Geometry>() {
+      private int count = 0;
+
+      @Override
+      public boolean hasNext() {
+        return count < numRecords;
+      }
+
+      @Override
+      public Geometry next() {
+        count++;
+        int numPoints = 4 + random.nextInt(60);
+        double x = random.nextDouble() * 360 - 180;
+        double y = random.nextDouble() * 180 - 90;
+        Coordinate[] coordinates = new Coordinate[numPoints + 1];
+        for (int i = 0; i < numPoints; i++) {
+          double angle = 2 * Math.PI * i / numPoints;
+          coordinates[i] = new Coordinate(x + 0.01 * Math.cos(angle), y + 0.01 * Math.sin(angle));
+        }
+        coordinates[numPoints] = coordinates[0];
+        Geometry polygon = geometryFactory.createPolygon(coordinates);
+        polygon.setUserData(String.valueOf(count));
+        return polygon;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+
+    new ShapefileWriter(ShapeType.POLYGON, Collections.singletonList("id"), null)
+        .write(polygons, fs, basePath);
+  }
+
+  private static List<ShapeFileMeta> parseWithMetaParsers(FileSystem fs, Path basePath)
+      throws IOException {
+    String filePath = basePath.toString();
+    List<ShapeFileMeta> metas = new ArrayList<ShapeFileMeta>();
+
+    int[] indexes;
+    FSDataInputStream shxInputStream = fs.open(new Path(filePath + ".shx"));
+    try {
+      shxInputStream.skip(24);
+      int shxLength = shxInputStream.readInt() * 2 - 100;
+      shxInputStream.skip(72);
+      indexes = new int[shxLength / 4];
+      for (int i = 0; i < indexes.length; i++) {
+        indexes[i] = shxInputStream.readInt();
+      }
+    } finally {
+      shxInputStream.close();
+    }
+
+    FSDataInputStream shpInputStream = fs.open(new Path(filePath + ".shp"));
+    FSDataInputStream dbfInputStream = fs.open(new Path(filePath + ".dbf"));
+    try {
+      ShpFileMetaParser shpParser = new ShpFileMetaParser(shpInputStream);
+      shpParser.parseShapeFileHead();
+      DbfMetaParser dbfParser = new DbfMetaParser();
+      dbfParser.parseFileHead(new DataInputStream(dbfInputStream));
+
+      for (int i = 0; i < indexes.length; i += 2) {
+        if (shpInputStream.getPos() < indexes[i] * 2) {
+          shpInputStream.skip(indexes[i] * 2 - shpInputStream.getPos());
+        }
+        int index = shpParser.parseRecordHeadID();
+        ShpMeta shpMeta = shpParser.parseRecordPrimitiveContent(indexes[i + 1] * 2 - 4);
+        shpMeta.setIndex((long) index);
+        DbfMeta dbfMeta = dbfParser.parsePrimitiveRecord(dbfInputStream);
+        metas.add(new ShapeFileMeta(shpMeta, dbfMeta, filePath));
+      }
+    } finally {
+      shpInputStream.close();
+      dbfInputStream.close();
+    }
+    return metas;
+  }
+
+  private static List<ShapeFileMeta> parseWithBulkParser(FileSystem fs, Path basePath)
+      throws IOException {
+    String filePath = basePath.toString();
+    ShapeFileMetaBulkParser parser = new ShapeFileMetaBulkParser(
+        fs.open(new Path(filePath + ".shp")), fs.open(new Path(filePath + ".dbf")), filePath);
+    try {
+      return parser.parseAll();
+    } finally {
+      parser.close();
+    }
+  }
+
+  private static void checkEquals(List<ShapeFileMeta> expected, List<ShapeFileMeta> actual) {
+    if (expected.size() != actual.size()) {
+      throw new IllegalStateException(String.format("Expected %d metas, got %d",
+                                                    expected.size(), actual.size()));
+    }
+    for (int i = 0; i < expected.size(); i++) {
+      ShapeFileMeta e = expected.get(i);
+      ShapeFileMeta a = actual.get(i);
+      if (!e.getIndex().equals(a.getIndex()) || e.getTypeID() != a.getTypeID()
+          || e.getShp_offset() != a.getShp_offset() || e.getShp_length() != a.getShp_length()
+          || e.getDbf_offset() != a.getDbf_offset() || e.getDbf_length() != a.getDbf_length()
+          || !e.getEnvelopeInternal().equals(a.getEnvelopeInternal())) {
+        throw new IllegalStateException("Metas differ at record " + i);
+      }
+    }
+  }
+}
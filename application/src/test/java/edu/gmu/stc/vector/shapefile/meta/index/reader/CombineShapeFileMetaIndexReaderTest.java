@@ -0,0 +1,295 @@
+package edu.gmu.stc.vector.shapefile.meta.index.reader;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.shp.ShapeType;
+import org.datasyslab.geospark.formatMapper.shapefileParser.shapes.MappedShapefile;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.gmu.stc.vector.shapefile.meta.DbfMeta;
+import edu.gmu.stc.vector.shapefile.meta.ShapeFileMeta;
+import edu.gmu.stc.vector.shapefile.meta.ShpMeta;
+import edu.gmu.stc.vector.shapefile.meta.index.parser.DbfMetaParser;
+import edu.gmu.stc.vector.shapefile.meta.index.parser.ShapeFileMetaBulkParser;
+import edu.gmu.stc.vector.shapefile.meta.index.parser.ShpFileMetaParser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the metas of {@link ShapeFileMetaBulkParser} and {@link CombineShapeFileMetaIndexReader}
+ * with the ones of {@link ShpFileMetaParser} and {@link DbfMetaParser}, on the shapefiles of the
+ * core module's tests.
+ *
+ * Created by Fei Hu on 5/8/18.
+ */
+public class CombineShapeFileMetaIndexReaderTest {
+
+  // the tests run in the directory of the application module
+  private static final String SHAPEFILES_DIR = "../core/src/test/resources/shapefiles";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final Configuration conf = new Configuration();
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws IOException {
+    fs = FileSystem.getLocal(conf);
+  }
+
+  @Test
+  public void testPoints() throws Exception {
+    String filePath = getShapefilePath("point");
+    assertMetas(parseWithMetaParsers(filePath, true), filePath, true);
+  }
+
+  @Test
+  public void testPolygons() throws Exception {
+    String filePath = getShapefilePath("dbf");
+    assertMetas(parseWithMetaParsers(filePath, false), filePath, true);
+  }
+
+  @Test
+  public void testPolylines() throws Exception {
+    String filePath = getShapefilePath("polyline");
+    assertMetas(parseWithMetaParsers(filePath, false), filePath, true);
+  }
+
+  @Test
+  public void testWithoutDbf() throws Exception {
+    String sourcePath = getShapefilePath("point");
+    String filePath = new File(folder.getRoot(), "map").getAbsolutePath();
+    FileUtils.copyFile(new File(sourcePath + ".shp"), new File(filePath + ".shp"));
+    FileUtils.copyFile(new File(sourcePath + ".shx"), new File(filePath + ".shx"));
+
+    List<ShapeFileMeta> expected = new ArrayList<ShapeFileMeta>();
+    for (ShapeFileMeta meta : parseWithMetaParsers(sourcePath, true)) {
+      expected.add(new ShapeFileMeta(meta.getIndex(), meta.getTypeID(), meta.getShp_offset(),
+                                     meta.getShp_length(), 0, 0, filePath, meta.getMinX(),
+                                     meta.getMinY(), meta.getMaxX(), meta.getMaxY()));
+    }
+    assertMetas(expected, filePath, false);
+  }
+
+  /**
+   * The records of a .dbf file with fewer records than the .shp file, and the ones left in a
+   * .dbf file with more records, are counted by the bulk parser.
+   */
+  @Test
+  public void testRecordCountsDiffer() throws Exception {
+    String sourcePath = getShapefilePath("dbf");
+    List<ShapeFileMeta> metas = parseWithMetaParsers(sourcePath, false);
+    int numRecords = metas.size();
+
+    // the .dbf file claims two records less
+    String filePath = copyShapefile(sourcePath, "fewer");
+    patchInt(filePath + ".dbf", 4, Integer.reverseBytes(numRecords - 2));
+    ShapeFileMetaBulkParser parser = openParser(filePath);
+    try {
+      assertEquals(numRecords, parser.parseAll().size());
+      assertEquals(2, parser.getNumRecordsWithoutAttributes());
+      assertEquals(metas.get(numRecords - 2).getIndex().longValue(),
+                   parser.getFirstRecordWithoutAttributes());
+      assertEquals(0, parser.skipRemainingAttributes());
+    } finally {
+      parser.close();
+    }
+
+    // the .shp file ends before its last record, in 16-bit words
+    filePath = copyShapefile(sourcePath, "more");
+    patchInt(filePath + ".shp", 24, (int) ((metas.get(numRecords - 1).getShp_offset() - 12) / 2));
+    parser = openParser(filePath);
+    try {
+      assertEquals(numRecords - 1, parser.parseAll().size());
+      assertEquals(0, parser.getNumRecordsWithoutAttributes());
+      assertEquals(-1, parser.getFirstRecordWithoutAttributes());
+      assertEquals(1, parser.skipRemainingAttributes());
+    } finally {
+      parser.close();
+    }
+    // the reader warns about it and still reads the records of the .shp file
+    assertEquals(numRecords - 1, readMetas(new CombineShapeFileMetaIndexReader(3), filePath, true).size());
+  }
+
+  private ShapeFileMetaBulkParser openParser(String filePath) throws IOException {
+    return new ShapeFileMetaBulkParser(fs.open(new Path(filePath + ".shp")),
+                                       fs.open(new Path(filePath + ".dbf")), filePath);
+  }
+
+  /**
+   * Copies the files of a shapefile to the temporary folder and returns the path of the copy.
+   */
+  private String copyShapefile(String sourcePath, String name) throws IOException {
+    String filePath = new File(folder.getRoot(), name).getAbsolutePath();
+    for (String suffix : new String[] {".shp", ".shx", ".dbf"}) {
+      FileUtils.copyFile(new File(sourcePath + suffix), new File(filePath + suffix));
+    }
+    return filePath;
+  }
+
+  /**
+   * Overwrites a big-endian int of a file.
+   */
+  private static void patchInt(String path, long offset, int value) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(path, "rw");
+    try {
+      file.seek(offset);
+      file.writeInt(value);
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * Checks the metas of the bulk parser, and of the reader in batches smaller than the number
+   * of records, of exactly that number, larger than it, and of the default size, which the
+   * point file exceeds.
+   */
+  private void assertMetas(List<ShapeFileMeta> expected, String filePath, boolean hasDbf)
+      throws Exception {
+    assertTrue(expected.size() > 3);
+
+    ShapeFileMetaBulkParser parser = new ShapeFileMetaBulkParser(
+        fs.open(new Path(filePath + ".shp")), hasDbf ? fs.open(new Path(filePath + ".dbf")) : null,
+        filePath);
+    try {
+      assertMetasEqual(expected, parser.parseAll());
+    } finally {
+      parser.close();
+    }
+
+    for (int batchSize : new int[] {1, 3, expected.size(), expected.size() + 1}) {
+      assertMetasEqual(expected, readMetas(new CombineShapeFileMetaIndexReader(batchSize), filePath, hasDbf));
+    }
+    assertMetasEqual(expected, readMetas(new CombineShapeFileMetaIndexReader(), filePath, hasDbf));
+  }
+
+  private List<ShapeFileMeta> readMetas(CombineShapeFileMetaIndexReader reader, String filePath,
+                                        boolean hasDbf) throws Exception {
+    List<Path> paths = new ArrayList<Path>();
+    paths.add(new Path(filePath + ".shp"));
+    paths.add(new Path(filePath + ".shx"));
+    if (hasDbf) {
+      paths.add(new Path(filePath + ".dbf"));
+    }
+    long[] lengths = new long[paths.size()];
+    for (int i = 0; i < lengths.length; i++) {
+      lengths[i] = fs.getFileStatus(paths.get(i)).getLen();
+    }
+
+    List<ShapeFileMeta> metas = new ArrayList<ShapeFileMeta>();
+    try {
+      reader.initialize(new CombineFileSplit(paths.toArray(new Path[paths.size()]), lengths),
+                        new TaskAttemptContextImpl(conf, new TaskAttemptID()));
+      while (reader.nextKeyValue()) {
+        assertEquals(reader.getCurrentValue().getIndex().longValue(), reader.getCurrentKey().getIndex());
+        metas.add(reader.getCurrentValue());
+      }
+      assertEquals(1, reader.getProgress(), 0);
+    } finally {
+      reader.close();
+    }
+    return metas;
+  }
+
+  /**
+   * Parses the metas record by record, finding the records through the .shx file.
+   *
+   * ShpFileMetaParser reads a bounding box, which point records don't have, so the metas of
+   * points are built from the record headers and the points read by MappedShapefile.
+   */
+  private List<ShapeFileMeta> parseWithMetaParsers(String filePath, boolean points)
+      throws IOException {
+    int[] indexes;
+    FSDataInputStream shxInputStream = fs.open(new Path(filePath + ".shx"));
+    try {
+      shxInputStream.seek(24);
+      int shxLength = shxInputStream.readInt() * 2 - 100;
+      shxInputStream.seek(100);
+      indexes = new int[shxLength / 4];
+      for (int i = 0; i < indexes.length; i++) {
+        indexes[i] = shxInputStream.readInt();
+      }
+    } finally {
+      shxInputStream.close();
+    }
+
+    MappedShapefile shapefile = new MappedShapefile(filePath);
+    GeometryFactory geometryFactory = new GeometryFactory();
+    List<ShapeFileMeta> metas = new ArrayList<ShapeFileMeta>();
+    FSDataInputStream shpInputStream = fs.open(new Path(filePath + ".shp"));
+    FSDataInputStream dbfInputStream = fs.open(new Path(filePath + ".dbf"));
+    try {
+      ShpFileMetaParser shpParser = new ShpFileMetaParser(shpInputStream);
+      shpParser.parseShapeFileHead();
+      DbfMetaParser dbfParser = new DbfMetaParser();
+      dbfParser.parseFileHead(new DataInputStream(dbfInputStream));
+
+      for (int i = 0; i < indexes.length; i += 2) {
+        shpInputStream.seek(indexes[i] * 2L);
+        int index = shpParser.parseRecordHeadID();
+        int length = indexes[i + 1] * 2 - 4;
+        DbfMeta dbfMeta = dbfParser.parsePrimitiveRecord(dbfInputStream);
+        if (!points) {
+          ShpMeta shpMeta = shpParser.parseRecordPrimitiveContent(length);
+          shpMeta.setIndex((long) index);
+          metas.add(new ShapeFileMeta(shpMeta, dbfMeta, filePath));
+          continue;
+        }
+
+        long offset = indexes[i] * 2L + 12;
+        Envelope envelope = shapefile.getGeometry(i / 2, geometryFactory).getEnvelopeInternal();
+        metas.add(new ShapeFileMeta((long) index, ShapeType.POINT.getId(), offset, length,
+                                    dbfMeta.getOffset(), dbfMeta.getLength(), filePath,
+                                    envelope.getMinX(), envelope.getMinY(),
+                                    envelope.getMaxX(), envelope.getMaxY()));
+      }
+    } finally {
+      shpInputStream.close();
+      dbfInputStream.close();
+    }
+    return metas;
+  }
+
+  private static void assertMetasEqual(List<ShapeFileMeta> expected, List<ShapeFileMeta> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      ShapeFileMeta e = expected.get(i);
+      ShapeFileMeta a = actual.get(i);
+      String message = "record " + i;
+      assertEquals(message, e.getIndex(), a.getIndex());
+      assertEquals(message, e.getTypeID(), a.getTypeID());
+      assertEquals(message, e.getShp_offset(), a.getShp_offset());
+      assertEquals(message, e.getShp_length(), a.getShp_length());
+      assertEquals(message, e.getDbf_offset(), a.getDbf_offset());
+      assertEquals(message, e.getDbf_length(), a.getDbf_length());
+      assertEquals(message, e.getFilePath(), a.getFilePath());
+      assertEquals(message, e.getEnvelopeInternal(), a.getEnvelopeInternal());
+    }
+  }
+
+  private static String getShapefilePath(String name) throws IOException {
+    return new File(SHAPEFILES_DIR, name + "/map").getCanonicalPath();
+  }
+}
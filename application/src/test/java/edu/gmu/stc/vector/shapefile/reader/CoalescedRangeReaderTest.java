@@ -0,0 +1,131 @@
+package edu.gmu.stc.vector.shapefile.reader;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Created by Fei Hu on 5/8/18.
+ */
+public class CoalescedRangeReaderTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private byte[] data;
+  private FSDataInputStream inputStream;
+
+  @Before
+  public void setUp() throws IOException {
+    data = new byte[4096];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (i * 31 + 7);
+    }
+    File file = folder.newFile("ranges.bin");
+    Files.write(file.toPath(), data);
+    inputStream = FileSystem.getLocal(new Configuration()).open(new Path(file.getAbsolutePath()));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    inputStream.close();
+  }
+
+  @Test
+  public void testMergeGapsUpToMaxGap() throws IOException {
+    CoalescedRangeReader reader = new CoalescedRangeReader(8, 1024);
+    // gaps of 5 and exactly 8 bytes
+    read(reader, new long[] {0, 15, 33}, new int[] {10, 10, 10});
+    assertEquals(1, reader.getNumReads());
+  }
+
+  @Test
+  public void testSplitGapsAboveMaxGap() throws IOException {
+    CoalescedRangeReader reader = new CoalescedRangeReader(8, 1024);
+    // gaps of 9 and 100 bytes
+    read(reader, new long[] {0, 19, 129}, new int[] {10, 10, 10});
+    assertEquals(3, reader.getNumReads());
+  }
+
+  @Test
+  public void testOverlappingAndDuplicateRanges() throws IOException {
+    CoalescedRangeReader reader = new CoalescedRangeReader(0, 1024);
+    List<Integer> indexes = read(reader, new long[] {10, 20, 10, 25, 100},
+                                 new int[] {20, 20, 20, 5, 10});
+    List<Integer> sorted = new ArrayList<Integer>(indexes);
+    Collections.sort(sorted);
+    assertEquals(Arrays.asList(0, 1, 2, 3, 4), sorted);
+    // the first four ranges overlap, the last one is past a gap
+    assertEquals(2, reader.getNumReads());
+  }
+
+  @Test
+  public void testSplitAtMaxReadLength() throws IOException {
+    CoalescedRangeReader reader = new CoalescedRangeReader(1024, 100);
+    // the first two ranges fill the maximum read length, the third one doesn't fit
+    read(reader, new long[] {0, 60, 120}, new int[] {60, 40, 60});
+    assertEquals(2, reader.getNumReads());
+
+    // a range larger than the maximum read length is read at once
+    reader = new CoalescedRangeReader(1024, 100);
+    read(reader, new long[] {200, 500}, new int[] {300, 10});
+    assertEquals(2, reader.getNumReads());
+  }
+
+  @Test
+  public void testOriginalIndexes() throws IOException {
+    CoalescedRangeReader reader = new CoalescedRangeReader(16, 1024);
+    long[] offsets = {3000, 40, 1000, 0, 1010};
+    int[] lengths = {50, 10, 5, 20, 30};
+    List<Integer> indexes = read(reader, offsets, lengths);
+    // handed out in offset order, with the indexes of the arrays passed in
+    assertEquals(Arrays.asList(3, 1, 2, 4, 0), indexes);
+    assertEquals(4, reader.getNumReads());
+  }
+
+  @Test
+  public void testNoRanges() throws IOException {
+    CoalescedRangeReader reader = new CoalescedRangeReader();
+    assertEquals(0, read(reader, new long[0], new int[0]).size());
+    assertEquals(0, reader.getNumReads());
+  }
+
+  /**
+   * Reads the ranges, checks their bytes and returns the indexes in the order they were handled.
+   */
+  private List<Integer> read(CoalescedRangeReader reader, final long[] offsets, final int[] lengths)
+      throws IOException {
+    final List<Integer> indexes = new ArrayList<Integer>();
+    reader.read(inputStream, offsets, lengths, new CoalescedRangeReader.RangeHandler() {
+      @Override
+      public void handle(int index, ByteBuffer range) throws IOException {
+        byte[] bytes = new byte[range.remaining()];
+        range.get(bytes);
+        int offset = (int) offsets[index];
+        assertArrayEquals("range " + index,
+                          Arrays.copyOfRange(data, offset, offset + lengths[index]), bytes);
+        indexes.add(index);
+      }
+    });
+    assertEquals(offsets.length, indexes.size());
+    return indexes;
+  }
+}
@@ -0,0 +1,140 @@
+package edu.gmu.stc.vector.shapefile.reader;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.dbf.DbfColumnDecoder;
+import org.datasyslab.geospark.formatMapper.shapefileParser.shapes.MappedShapefile;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import edu.gmu.stc.vector.shapefile.meta.ShapeFileMeta;
+import edu.gmu.stc.vector.shapefile.meta.index.parser.ShapeFileMetaBulkParser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads the records of the core module's test shapefiles with {@link GeometryReaderUtil}.
+ *
+ * Created by Fei Hu on 5/8/18.
+ */
+public class GeometryReaderUtilTest {
+
+  // the tests run in the directory of the application module
+  private static final String SHAPEFILES_DIR = "../core/src/test/resources/shapefiles";
+
+  private FileSystem fs;
+  private String filePath;
+  private List<ShapeFileMeta> metas;
+
+  @Before
+  public void setUp() throws IOException {
+    fs = FileSystem.getLocal(new Configuration());
+    filePath = new File(SHAPEFILES_DIR, "dbf/map").getCanonicalPath();
+    ShapeFileMetaBulkParser parser = new ShapeFileMetaBulkParser(
+        fs.open(new Path(filePath + GeometryReaderUtil.SHP_SUFFIX)),
+        fs.open(new Path(filePath + GeometryReaderUtil.DBF_SUFFIX)), filePath);
+    try {
+      metas = new ArrayList<ShapeFileMeta>(parser.parseAll());
+    } finally {
+      parser.close();
+    }
+    // out of file order, to check that the geometries follow the list
+    Collections.reverse(metas);
+  }
+
+  /**
+   * The records of mapped files, of files longer than the mapping limit and of files read with
+   * mapping turned off are the same.
+   */
+  @Test
+  public void testReadGeometries() throws IOException {
+    Configuration tooLarge = new Configuration();
+    // larger than the .shx and .dbf files, smaller than the .shp file
+    tooLarge.setLong(MappedShapefile.MAX_LENGTH_KEY, 1000000);
+    Configuration disabled = new Configuration();
+    disabled.setBoolean(MappedShapefile.ENABLED_KEY, false);
+
+    for (boolean withAttributes : new boolean[] {false, true}) {
+      List<Geometry> expected = GeometryReaderUtil.readGeometries(metas, withAttributes, disabled);
+      assertEquals(metas.size(), expected.size());
+      assertGeometriesEqual(expected,
+                            GeometryReaderUtil.readGeometries(metas, withAttributes, new Configuration()));
+      assertGeometriesEqual(expected,
+                            GeometryReaderUtil.readGeometries(metas, withAttributes, tooLarge));
+      if (withAttributes) {
+        assertNotNull(expected.get(0).getUserData());
+      } else {
+        assertNull(expected.get(0).getUserData());
+      }
+    }
+  }
+
+  @Test
+  public void testReadNoGeometries() throws IOException {
+    assertEquals(0, GeometryReaderUtil.readGeometries(new ArrayList<ShapeFileMeta>(), true,
+                                                      new Configuration()).size());
+  }
+
+  /**
+   * The selected columns decoded from the .dbf records are the values of the tab-separated
+   * attributes of the geometries, typed.
+   */
+  @Test
+  public void testReadAttributes() throws IOException {
+    List<Geometry> geometries = GeometryReaderUtil.readGeometries(metas, true, new Configuration());
+    final String[] geoids = new String[metas.size()];
+    final long[] landAreas = new long[metas.size()];
+    final boolean[] read = new boolean[metas.size()];
+    GeometryReaderUtil.readAttributes(metas, Arrays.asList("geoid", "ALAND"),
+        new GeometryReaderUtil.AttributeHandler() {
+          @Override
+          public void handle(int index, DbfColumnDecoder decoder, ByteBuffer record) {
+            assertEquals(DbfColumnDecoder.TYPE_STRING, decoder.getColumnType(0));
+            assertEquals(DbfColumnDecoder.TYPE_LONG, decoder.getColumnType(1));
+            geoids[index] = decoder.getString(record, 0);
+            landAreas[index] = decoder.getLong(record, 1);
+            read[index] = true;
+          }
+        });
+
+    for (int i = 0; i < metas.size(); i++) {
+      assertTrue("record " + i, read[i]);
+      // GEOID and ALAND are the fifth and eighth fields
+      String[] values = ((String) geometries.get(i).getUserData()).split("\t", -1);
+      assertEquals("record " + i, values[4], geoids[i]);
+      assertEquals("record " + i, Long.parseLong(values[7]), landAreas[i]);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReadMissingAttributes() throws IOException {
+    GeometryReaderUtil.readAttributes(metas, Collections.singletonList("missing"),
+        new GeometryReaderUtil.AttributeHandler() {
+          @Override
+          public void handle(int index, DbfColumnDecoder decoder, ByteBuffer record) {
+          }
+        });
+  }
+
+  private static void assertGeometriesEqual(List<Geometry> expected, List<Geometry> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals("record " + i, expected.get(i).toText(), actual.get(i).toText());
+      assertEquals("record " + i, expected.get(i).getUserData(), actual.get(i).getUserData());
+    }
+  }
+}
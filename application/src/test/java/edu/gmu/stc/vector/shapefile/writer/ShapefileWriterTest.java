@@ -0,0 +1,372 @@
+package edu.gmu.stc.vector.shapefile.writer;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.shp.ShapeType;
+import org.datasyslab.geospark.formatMapper.shapefileParser.shapes.MappedShapefile;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import edu.gmu.stc.vector.shapefile.reader.GeometryReaderUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes shapefiles with {@link ShapefileWriter} and {@link ShapefileMerger} and reads them back
+ * with GeoTools, and with {@link MappedShapefile}, which goes through the .shx index.
+ *
+ * Created by Fei Hu on 5/8/18.
+ */
+public class ShapefileWriterTest {
+
+  private static final List<String> FIELD_NAMES = Arrays.asList("id", "name");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final GeometryFactory geometryFactory = new GeometryFactory();
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws IOException {
+    fs = FileSystem.getLocal(new Configuration());
+  }
+
+  @Test
+  public void testWritePolygons() throws IOException {
+    List<Record> records = createPolygonRecords();
+    Path basePath = new Path(folder.getRoot().getAbsolutePath(), "polygons");
+    assertEquals(records.size(), write(ShapeType.POLYGON, FIELD_NAMES, records, basePath));
+    assertShapefile(basePath, ShapeType.POLYGON, FIELD_NAMES, records);
+  }
+
+  @Test
+  public void testWritePoints() throws IOException {
+    List<Record> records = new ArrayList<Record>();
+    records.add(new Record(createPoint(1, 2), "a"));
+    records.add(new Record(createPoint(-3.5, 4.25), "b"));
+    // only the first point of a multipoint fits in a point record
+    Geometry multiPoint = geometryFactory.createMultiPoint(
+        new Coordinate[] {new Coordinate(5, 6), new Coordinate(7, 8)});
+    records.add(new Record(multiPoint, createPoint(5, 6), "c"));
+    records.add(new Record(geometryFactory.createPoint((Coordinate) null), null, "empty"));
+    records.add(new Record(null, null));
+
+    // with a single field, the whole user data goes to it
+    Path basePath = new Path(folder.getRoot().getAbsolutePath(), "points");
+    List<String> fieldNames = Collections.singletonList("att");
+    assertEquals(records.size(), write(ShapeType.POINT, fieldNames, records, basePath));
+    assertShapefile(basePath, ShapeType.POINT, fieldNames, records);
+  }
+
+  /**
+   * Without field names, the parts get the numeric fields of GeometryReaderUtil.saveAsShapefile,
+   * numbered across the parts.
+   */
+  @Test
+  public void testWriteLegacyFields() throws IOException {
+    Path partsDir = new Path(folder.getRoot().getAbsolutePath(), "parts");
+    List<Geometry> first = Arrays.<Geometry>asList(createSquare(1.5, -2.25, 3), null);
+    first.get(0).setUserData("12.5");
+    List<Geometry> second = Arrays.<Geometry>asList(createSquare(10, 20, 1), createSquare(-7, 8, 0.5));
+    second.get(0).setUserData("not a number");
+    second.get(1).setUserData(42);
+
+    ShapefileWriter writer = new ShapefileWriter(ShapeType.POLYGON, Collections.<String>emptyList(), null);
+    writer.write(first.iterator(), fs, new Path(partsDir, "part-00000"), 0);
+    writer.write(second.iterator(), fs, new Path(partsDir, "part-00001"), first.size());
+    Path merged = new Path(folder.getRoot().getAbsolutePath(), "merged");
+    assertEquals(4, ShapefileMerger.merge(fs, ShapefileMerger.listParts(fs, partsDir), merged));
+
+    Double[][] expected = {
+        {-2.25, 1.5, 0.75, 4.5, 12.5},
+        {null, null, null, null, null},
+        {20.0, 10.0, 21.0, 11.0, null},
+        {8.0, -7.0, 8.5, -6.5, 42.0}};
+    ShapefileDataStore dataStore = new ShapefileDataStore(
+        new File(merged + GeometryReaderUtil.SHP_SUFFIX).toURI().toURL());
+    try {
+      SimpleFeatureType schema = dataStore.getSchema();
+      for (String fieldName : ShapefileWriter.LEGACY_FIELD_NAMES) {
+        Class<?> binding = schema.getDescriptor(fieldName).getType().getBinding();
+        assertTrue(fieldName + " is " + binding, Number.class.isAssignableFrom(binding));
+      }
+      assertEquals(Double.class, schema.getDescriptor("minLat").getType().getBinding());
+
+      int i = 0;
+      try (SimpleFeatureIterator features = dataStore.getFeatureSource().getFeatures().features()) {
+        while (features.hasNext()) {
+          SimpleFeature feature = features.next();
+          assertEquals(i, ((Number) feature.getAttribute("outPolyID")).longValue());
+          for (int j = 1; j < ShapefileWriter.LEGACY_FIELD_NAMES.size(); j++) {
+            String fieldName = ShapefileWriter.LEGACY_FIELD_NAMES.get(j);
+            assertNumber("record " + i + " " + fieldName, expected[i][j - 1],
+                         feature.getAttribute(fieldName));
+          }
+          i++;
+        }
+      }
+      assertEquals(expected.length, i);
+    } finally {
+      dataStore.dispose();
+    }
+  }
+
+  @Test
+  public void testFormatDouble() {
+    assertEquals("-2.250000000000000", ShapefileWriter.formatDouble(-2.25));
+    assertNull(ShapefileWriter.formatDouble(Double.NaN));
+    assertNull(ShapefileWriter.formatDouble(Double.POSITIVE_INFINITY));
+    // decimals are dropped to fit the field, then the value is left out
+    String large = ShapefileWriter.formatDouble(1e20);
+    assertEquals(ShapefileWriter.DBF_DOUBLE_WIDTH, large.length());
+    assertEquals(1e20, Double.parseDouble(large), 0);
+    assertEquals("1" + String.format("%032d", 0), ShapefileWriter.formatDouble(1e32));
+    assertNull(ShapefileWriter.formatDouble(1e33));
+  }
+
+  @Test
+  public void testMerge() throws IOException {
+    Path partsDir = new Path(folder.getRoot().getAbsolutePath(), "parts");
+    List<Record> polygons = createPolygonRecords();
+    List<Record> wider = Arrays.asList(
+        new Record(createSquare(50, 50, 5), "6\tA name much longer than the names of the first part"),
+        new Record(createSquare(-60, -70, 1), "7\tlast"));
+
+    // an empty part first, so the merged header doesn't start with its empty bounding box
+    write(ShapeType.POLYGON, FIELD_NAMES, Collections.<Record>emptyList(), new Path(partsDir, "part-00000"));
+    write(ShapeType.POLYGON, FIELD_NAMES, polygons, new Path(partsDir, "part-00001"));
+    write(ShapeType.POLYGON, FIELD_NAMES, Collections.<Record>emptyList(), new Path(partsDir, "part-00002"));
+    write(ShapeType.POLYGON, FIELD_NAMES, wider, new Path(partsDir, "part-00003"));
+
+    List<Path> parts = ShapefileMerger.listParts(fs, partsDir);
+    assertEquals(4, parts.size());
+    assertEquals("part-00000", parts.get(0).getName());
+    assertEquals("part-00003", parts.get(3).getName());
+
+    List<Record> expected = new ArrayList<Record>(polygons);
+    expected.addAll(wider);
+    Path merged = new Path(folder.getRoot().getAbsolutePath(), "merged");
+    assertEquals(expected.size(), ShapefileMerger.merge(fs, parts, merged));
+    assertShapefile(merged, ShapeType.POLYGON, FIELD_NAMES, expected);
+  }
+
+  @Test
+  public void testMergeNullShapes() throws IOException {
+    Path partsDir = new Path(folder.getRoot().getAbsolutePath(), "parts");
+    List<Record> nullShapes = Arrays.asList(
+        new Record(null, null), new Record(geometryFactory.createPolygon((LinearRing) null, null), null, "2\tempty"));
+    List<Record> polygons = Arrays.asList(
+        new Record(createSquare(50, 50, 5), "3\tfirst"), new Record(createSquare(60, 70, 1), "4\tlast"));
+    write(ShapeType.POLYGON, FIELD_NAMES, nullShapes, new Path(partsDir, "part-00000"));
+    write(ShapeType.POLYGON, FIELD_NAMES, polygons, new Path(partsDir, "part-00001"));
+
+    // the zeros in the header of the first part are not taken for a bounding box around (0, 0)
+    List<Record> expected = new ArrayList<Record>(nullShapes);
+    expected.addAll(polygons);
+    Path merged = new Path(folder.getRoot().getAbsolutePath(), "merged");
+    assertEquals(expected.size(), ShapefileMerger.merge(fs, ShapefileMerger.listParts(fs, partsDir), merged));
+    assertShapefile(merged, ShapeType.POLYGON, FIELD_NAMES, expected);
+  }
+
+  @Test
+  public void testMergeEmptyParts() throws IOException {
+    Path partsDir = new Path(folder.getRoot().getAbsolutePath(), "parts");
+    write(ShapeType.POLYGON, FIELD_NAMES, Collections.<Record>emptyList(), new Path(partsDir, "part-00000"));
+    write(ShapeType.POLYGON, FIELD_NAMES, Collections.<Record>emptyList(), new Path(partsDir, "part-00001"));
+
+    Path merged = new Path(folder.getRoot().getAbsolutePath(), "merged");
+    assertEquals(0, ShapefileMerger.merge(fs, ShapefileMerger.listParts(fs, partsDir), merged));
+    assertShapefile(merged, ShapeType.POLYGON, FIELD_NAMES, Collections.<Record>emptyList());
+  }
+
+  @Test
+  public void testCommit() throws IOException {
+    Path partsDir = new Path(folder.getRoot().getAbsolutePath(), "parts");
+    Path partBasePath = new Path(partsDir, "part-00000");
+    List<Record> records = createPolygonRecords();
+
+    // an attempt replaces the files left by an earlier one
+    Path firstAttempt = new Path(partsDir, "_temporary/attempt-1/part-00000");
+    write(ShapeType.POLYGON, FIELD_NAMES, records.subList(0, 1), firstAttempt);
+    ShapefileWriter.commit(fs, firstAttempt, partBasePath);
+    Path secondAttempt = new Path(partsDir, "_temporary/attempt-2/part-00000");
+    write(ShapeType.POLYGON, FIELD_NAMES, records, secondAttempt);
+    ShapefileWriter.commit(fs, secondAttempt, partBasePath);
+
+    assertFalse(fs.exists(firstAttempt.getParent()));
+    assertFalse(fs.exists(secondAttempt.getParent()));
+    assertEquals(Collections.singletonList(partBasePath), ShapefileMerger.listParts(fs, partsDir));
+    assertShapefile(partBasePath, ShapeType.POLYGON, FIELD_NAMES, records);
+  }
+
+  /**
+   * Polygons with a hole, a multipolygon, a polygon in a collection and null or empty geometries.
+   */
+  private List<Record> createPolygonRecords() {
+    List<Record> records = new ArrayList<Record>();
+
+    LinearRing shell = geometryFactory.createLinearRing(new Coordinate[] {
+        new Coordinate(0, 0), new Coordinate(10, 0), new Coordinate(10, 10),
+        new Coordinate(0, 10), new Coordinate(0, 0)});
+    // counter-clockwise, like the shell, to check that holes are reoriented
+    LinearRing hole = geometryFactory.createLinearRing(new Coordinate[] {
+        new Coordinate(2, 2), new Coordinate(4, 2), new Coordinate(4, 4),
+        new Coordinate(2, 4), new Coordinate(2, 2)});
+    records.add(new Record(geometryFactory.createPolygon(shell, new LinearRing[] {hole}), "1\tholes"));
+
+    Geometry multiPolygon = geometryFactory.createMultiPolygon(new Polygon[] {
+        createSquare(20, 30, 1), createSquare(25, 35, 2)});
+    records.add(new Record(multiPolygon, "2\tmulti"));
+
+    records.add(new Record(null, null));
+    records.add(new Record(geometryFactory.createPolygon((LinearRing) null, null), null, "4\tempty"));
+
+    // only the polygons of a collection are written
+    Polygon square = createSquare(-5, -5, 1);
+    Geometry collection = geometryFactory.createGeometryCollection(new Geometry[] {
+        square, createPoint(100, 100)});
+    records.add(new Record(collection, square, "5\tcollection"));
+    return records;
+  }
+
+  private Polygon createSquare(double x, double y, double size) {
+    return (Polygon) geometryFactory.toGeometry(new Envelope(x, x + size, y, y + size));
+  }
+
+  private Geometry createPoint(double x, double y) {
+    return geometryFactory.createPoint(new Coordinate(x, y));
+  }
+
+  private long write(ShapeType shapeType, List<String> fieldNames, List<Record> records,
+                     Path basePath) throws IOException {
+    List<Geometry> geometries = new ArrayList<Geometry>();
+    for (Record record : records) {
+      geometries.add(record.geometry);
+    }
+    return new ShapefileWriter(shapeType, fieldNames, null).write(geometries.iterator(), fs, basePath);
+  }
+
+  private void assertShapefile(Path basePath, ShapeType shapeType, List<String> fieldNames,
+                               List<Record> expected) throws IOException {
+    Envelope bbox = new Envelope();
+    for (Record record : expected) {
+      if (record.shape != null) {
+        bbox.expandToInclude(record.shape.getEnvelopeInternal());
+      }
+    }
+
+    ShapefileDataStore dataStore = new ShapefileDataStore(
+        new File(basePath + GeometryReaderUtil.SHP_SUFFIX).toURI().toURL());
+    try {
+      if (!bbox.isNull()) {
+        assertEquals(bbox, new Envelope(dataStore.getFeatureSource().getBounds()));
+      }
+
+      int i = 0;
+      try (SimpleFeatureIterator features = dataStore.getFeatureSource().getFeatures().features()) {
+        while (features.hasNext()) {
+          SimpleFeature feature = features.next();
+          Record record = expected.get(i++);
+          if (record.shape != null) {
+            assertTopologicallyEquals(record.shape, (Geometry) feature.getDefaultGeometry());
+          }
+          for (int j = 0; j < fieldNames.size(); j++) {
+            Object value = feature.getAttribute(fieldNames.get(j));
+            assertEquals(record.getValue(j), value == null ? "" : value.toString().trim());
+          }
+        }
+      }
+      assertEquals(expected.size(), i);
+    } finally {
+      dataStore.dispose();
+    }
+
+    // MappedShapefile finds the records through the .shx file
+    MappedShapefile shapefile = new MappedShapefile(basePath.toUri().getPath());
+    assertEquals(expected.size(), shapefile.getNumRecords());
+    for (int i = 0; i < expected.size(); i++) {
+      Record record = expected.get(i);
+      if (record.shape == null) {
+        assertEquals(ShapefileWriter.NULL_SHAPE, shapefile.getTypeID(i));
+        continue;
+      }
+
+      assertEquals(shapeType.getId(), shapefile.getTypeID(i));
+      Geometry geometry = shapefile.getGeometry(i, geometryFactory);
+      assertTopologicallyEquals(record.shape, geometry);
+      StringBuilder attributes = new StringBuilder();
+      for (int j = 0; j < fieldNames.size(); j++) {
+        attributes.append(j > 0 ? "\t" : "").append(record.getValue(j));
+      }
+      assertEquals(attributes.toString(), geometry.getUserData());
+    }
+  }
+
+  /**
+   * GeoTools reads a blank number as null or as zero, depending on its version.
+   */
+  private static void assertNumber(String message, Double expected, Object actual) {
+    if (expected == null) {
+      assertTrue(message + " was " + actual, actual == null || ((Number) actual).doubleValue() == 0);
+    } else {
+      assertEquals(message, expected, ((Number) actual).doubleValue(), 0);
+    }
+  }
+
+  private static void assertTopologicallyEquals(Geometry expected, Geometry actual) {
+    // the readers may return a multipolygon for a polygon, or reverse the rings
+    assertTrue("expected " + expected + " but was " + actual, expected.equals(actual));
+  }
+
+  /**
+   * A geometry to write, with the shape and the attribute values expected back.
+   */
+  private static class Record {
+    final Geometry geometry;
+    // null if the record is written as a null shape
+    final Geometry shape;
+    final String[] values;
+
+    Record(Geometry geometry, String userData) {
+      this(geometry, geometry, userData);
+    }
+
+    Record(Geometry geometry, Geometry shape, String userData) {
+      this.geometry = geometry;
+      this.shape = shape;
+      this.values = userData == null ? new String[0] : userData.split("\t");
+      if (geometry != null) {
+        geometry.setUserData(userData);
+      }
+    }
+
+    String getValue(int field) {
+      return field < values.length ? values[field] : "";
+    }
+  }
+}
@@ -18,7 +18,10 @@ public enum IndexType implements Serializable{
 	QUADTREE,
 	
 	/** The rtree. */
-	RTREE;
+	RTREE,
+
+	/** The packed rtree. */
+	PACKEDRTREE;
 	
 	/**
 	 * Gets the index type.
@@ -0,0 +1,281 @@
+/**
+ * FILE: GeoJsonEncoder.java
+ * PATH: org.datasyslab.geospark.formatMapper.geojson.GeoJsonEncoder.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.formatMapper.geojson;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Encodes geometries as GeoJSON features, one feature at a time.
+ *
+ * Coordinates are appended straight to a reused buffer instead of building a JSON tree for
+ * the whole partition, so encoding a partition takes memory for a single feature only.
+ * Features have the same layout as the ones written by wololo's GeoJSONWriter: user data,
+ * if any, goes to the "UserData" property.
+ *
+ * Instances are not thread-safe.
+ */
+public class GeoJsonEncoder {
+
+    private static final String COLLECTION_HEADER = "{\"type\":\"FeatureCollection\",\"features\":[";
+    private static final String COLLECTION_FOOTER = "]}";
+
+    private final StringBuilder buffer = new StringBuilder(256);
+
+    /**
+     * Returns the feature of the geometry as a single line of JSON.
+     */
+    public String encode(Geometry geometry)
+    {
+        buffer.setLength(0);
+        appendFeature(geometry, buffer);
+        return buffer.toString();
+    }
+
+    /**
+     * Encodes the geometries lazily, one line per call to next().
+     *
+     * @param lineDelimited if true, returns one feature per line (newline-delimited GeoJSON);
+     * otherwise, returns lines which together form a single FeatureCollection
+     */
+    public static Iterator<String> encode(final Iterator<? extends Geometry> geometries, final boolean lineDelimited)
+    {
+        final GeoJsonEncoder encoder = new GeoJsonEncoder();
+        return new Iterator<String>() {
+            private boolean headerDone = lineDelimited;
+            private boolean footerDone = lineDelimited;
+            private boolean first = true;
+
+            @Override
+            public boolean hasNext()
+            {
+                return !headerDone || geometries.hasNext() || !footerDone;
+            }
+
+            @Override
+            public String next()
+            {
+                if (!headerDone) {
+                    headerDone = true;
+                    return COLLECTION_HEADER;
+                }
+
+                if (geometries.hasNext()) {
+                    encoder.buffer.setLength(0);
+                    if (!first && !lineDelimited) {
+                        encoder.buffer.append(',');
+                    }
+                    first = false;
+                    appendFeature(geometries.next(), encoder.buffer);
+                    return encoder.buffer.toString();
+                }
+
+                if (!footerDone) {
+                    footerDone = true;
+                    return COLLECTION_FOOTER;
+                }
+
+                throw new NoSuchElementException();
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Appends the feature of the geometry to the buffer.
+     */
+    public static void appendFeature(Geometry geometry, StringBuilder out)
+    {
+        out.append("{\"type\":\"Feature\",\"geometry\":");
+        appendGeometry(geometry, out);
+        out.append(",\"properties\":");
+        final Object userData = geometry.getUserData();
+        if (userData == null) {
+            out.append("null");
+        } else {
+            out.append("{\"UserData\":");
+            appendValue(userData, out);
+            out.append('}');
+        }
+        out.append('}');
+    }
+
+    /**
+     * Appends the GeoJSON geometry object of the geometry to the buffer.
+     */
+    public static void appendGeometry(Geometry geometry, StringBuilder out)
+    {
+        if (geometry instanceof Point) {
+            out.append("{\"type\":\"Point\",\"coordinates\":");
+            final CoordinateSequence sequence = ((Point) geometry).getCoordinateSequence();
+            if (sequence.size() == 0) {
+                out.append("[]");
+            } else {
+                appendCoordinate(sequence, 0, out);
+            }
+        } else if (geometry instanceof LineString) {
+            out.append("{\"type\":\"LineString\",\"coordinates\":");
+            appendSequence(((LineString) geometry).getCoordinateSequence(), out);
+        } else if (geometry instanceof Polygon) {
+            out.append("{\"type\":\"Polygon\",\"coordinates\":");
+            appendRings((Polygon) geometry, out);
+        } else if (geometry instanceof MultiPoint) {
+            out.append("{\"type\":\"MultiPoint\",\"coordinates\":[");
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                appendCoordinate(((Point) geometry.getGeometryN(i)).getCoordinateSequence(), 0, out);
+            }
+            out.append(']');
+        } else if (geometry instanceof MultiLineString) {
+            out.append("{\"type\":\"MultiLineString\",\"coordinates\":[");
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                appendSequence(((LineString) geometry.getGeometryN(i)).getCoordinateSequence(), out);
+            }
+            out.append(']');
+        } else if (geometry instanceof MultiPolygon) {
+            out.append("{\"type\":\"MultiPolygon\",\"coordinates\":[");
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                appendRings((Polygon) geometry.getGeometryN(i), out);
+            }
+            out.append(']');
+        } else if (geometry instanceof GeometryCollection) {
+            out.append("{\"type\":\"GeometryCollection\",\"geometries\":[");
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                appendGeometry(geometry.getGeometryN(i), out);
+            }
+            out.append(']');
+        } else {
+            throw new IllegalArgumentException("Unsupported geometry type: " + geometry.getGeometryType());
+        }
+        out.append('}');
+    }
+
+    private static void appendRings(Polygon polygon, StringBuilder out)
+    {
+        out.append('[');
+        if (!polygon.isEmpty()) {
+            appendSequence(polygon.getExteriorRing().getCoordinateSequence(), out);
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                out.append(',');
+                appendSequence(polygon.getInteriorRingN(i).getCoordinateSequence(), out);
+            }
+        }
+        out.append(']');
+    }
+
+    private static void appendSequence(CoordinateSequence sequence, StringBuilder out)
+    {
+        out.append('[');
+        for (int i = 0; i < sequence.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            appendCoordinate(sequence, i, out);
+        }
+        out.append(']');
+    }
+
+    private static void appendCoordinate(CoordinateSequence sequence, int i, StringBuilder out)
+    {
+        out.append('[');
+        appendNumber(sequence.getOrdinate(i, CoordinateSequence.X), out);
+        out.append(',');
+        appendNumber(sequence.getOrdinate(i, CoordinateSequence.Y), out);
+        if (sequence.getDimension() > 2) {
+            final double z = sequence.getOrdinate(i, CoordinateSequence.Z);
+            if (!Double.isNaN(z)) {
+                out.append(',');
+                appendNumber(z, out);
+            }
+        }
+        out.append(']');
+    }
+
+    private static void appendNumber(double value, StringBuilder out)
+    {
+        // Whole numbers are common in projected data and print faster as longs.
+        // StringBuilder.append(double) doesn't allocate a String either.
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value).append(".0");
+        } else {
+            out.append(value);
+        }
+    }
+
+    private static void appendValue(Object value, StringBuilder out)
+    {
+        if (value instanceof Boolean || (value instanceof Number && isFinite((Number) value))) {
+            out.append(value);
+        } else {
+            appendString(value.toString(), out);
+        }
+    }
+
+    private static boolean isFinite(Number value)
+    {
+        return !(value instanceof Double || value instanceof Float)
+            || !(Double.isNaN(value.doubleValue()) || Double.isInfinite(value.doubleValue()));
+    }
+
+    private static void appendString(String value, StringBuilder out)
+    {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
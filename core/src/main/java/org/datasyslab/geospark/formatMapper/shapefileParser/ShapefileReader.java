@@ -22,6 +22,7 @@ import org.apache.spark.api.java.function.Function;
 import org.apache.spark.api.java.function.Function2;
 import org.datasyslab.geospark.formatMapper.shapefileParser.boundary.BoundBox;
 import org.datasyslab.geospark.formatMapper.shapefileParser.boundary.BoundaryInputFormat;
+import org.datasyslab.geospark.formatMapper.shapefileParser.shapes.MappedShapefile;
 import org.datasyslab.geospark.formatMapper.shapefileParser.shapes.PrimitiveShape;
 import org.datasyslab.geospark.formatMapper.shapefileParser.shapes.ShapeInputFormat;
 import org.datasyslab.geospark.formatMapper.shapefileParser.shapes.ShapeKey;
@@ -30,6 +31,7 @@ import org.datasyslab.geospark.spatialRDD.PointRDD;
 import org.datasyslab.geospark.spatialRDD.PolygonRDD;
 import scala.Tuple2;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -70,6 +72,22 @@ public class ShapefileReader {
             String inputPath,
             final GeometryFactory geometryFactory)
     {
+        // Local files are memory-mapped and decoded in place, unless turned off by MappedShapefile.ENABLED_KEY
+        final List<String> localShapefiles;
+        try {
+            localShapefiles = MappedShapefile.listLocalShapefiles(inputPath, sc.hadoopConfiguration());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (localShapefiles != null && !localShapefiles.isEmpty()) {
+            return sc.parallelize(localShapefiles, localShapefiles.size()).flatMap(new FlatMapFunction<String, Geometry>() {
+                @Override
+                public Iterator<Geometry> call(String basePath) throws Exception {
+                    return new MappedShapefile(basePath).iterator(geometryFactory);
+                }
+            });
+        }
+
         JavaPairRDD<ShapeKey, PrimitiveShape> shapePrimitiveRdd = sc.newAPIHadoopFile(
                 inputPath,
                 ShapeInputFormat.class,
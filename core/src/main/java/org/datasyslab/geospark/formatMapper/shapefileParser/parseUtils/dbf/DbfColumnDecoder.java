@@ -0,0 +1,491 @@
+/**
+ * FILE: DbfColumnDecoder.java
+ * PATH: org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.dbf.DbfColumnDecoder.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.dbf;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes selected fields of .dbf records into typed values.
+ *
+ * {@link DbfParseUtil#primitiveToAttributes} turns every field of a record into a string and
+ * joins them with tabs, so numbers are parsed again from text downstream. This decoder resolves
+ * the offsets and types of the selected fields once from the field descriptors, and then reads
+ * each field straight from the record buffer with absolute gets, without copying it:
+ * <ul>
+ * <li>N fields without decimals as longs, N fields with decimals and F fields as doubles</li>
+ * <li>D fields as days since 1970-01-01</li>
+ * <li>L fields as booleans</li>
+ * <li>C and all other fields as trimmed strings, one byte per char</li>
+ * </ul>
+ * Blank fields other than text, numbers filled with '*' on overflow, unknown logicals '?' and
+ * dates of zeros are null. Records can be decoded one field at a time, or appended to a {@link Batch} of
+ * primitive arrays, one per column.
+ *
+ * Record buffers hold a record from its position, right after the deletion flag, like the
+ * buffers passed to {@link DbfParseUtil#primitiveToAttributes(ByteBuffer)}. Their position is
+ * left unchanged.
+ */
+public class DbfColumnDecoder {
+
+    public static final int TYPE_LONG = 0;
+    public static final int TYPE_DOUBLE = 1;
+    public static final int TYPE_DATE = 2;
+    public static final int TYPE_BOOLEAN = 3;
+    public static final int TYPE_STRING = 4;
+
+    /** longest N field without decimals which always fits in a long */
+    private static final int MAX_LONG_DIGITS = 18;
+
+    /** longest mantissa which is exact as a double, so that the decoded value is correctly rounded */
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    /** powers of ten which are exact as doubles */
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final List<FieldDescriptor> fields;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int[] types;
+
+    /**
+     * Decodes all fields of the records.
+     */
+    public DbfColumnDecoder(List<FieldDescriptor> fieldDescriptors)
+    {
+        this(fieldDescriptors, null);
+    }
+
+    /**
+     * Decodes the given fields of the records, in the given order.
+     *
+     * @param columns names of the fields, case insensitive, or null for all fields
+     * @throws IllegalArgumentException if a field does not exist
+     */
+    public DbfColumnDecoder(List<FieldDescriptor> fieldDescriptors, List<String> columns)
+    {
+        final int[] fieldOffsets = new int[fieldDescriptors.size()];
+        for (int i = 1; i < fieldOffsets.length; i++) {
+            fieldOffsets[i] = fieldOffsets[i - 1] + fieldDescriptors.get(i - 1).getFieldLength();
+        }
+
+        final int[] selected;
+        if (columns == null) {
+            selected = new int[fieldDescriptors.size()];
+            for (int i = 0; i < selected.length; i++) {
+                selected[i] = i;
+            }
+        }
+        else {
+            selected = new int[columns.size()];
+            for (int i = 0; i < selected.length; i++) {
+                selected[i] = indexOf(fieldDescriptors, columns.get(i));
+            }
+        }
+
+        this.fields = new ArrayList<>(selected.length);
+        this.offsets = new int[selected.length];
+        this.lengths = new int[selected.length];
+        this.types = new int[selected.length];
+        for (int i = 0; i < selected.length; i++) {
+            final FieldDescriptor descriptor = fieldDescriptors.get(selected[i]);
+            fields.add(descriptor);
+            offsets[i] = fieldOffsets[selected[i]];
+            lengths[i] = descriptor.getFieldLength();
+            types[i] = getType(descriptor);
+        }
+    }
+
+    private static int indexOf(List<FieldDescriptor> fieldDescriptors, String column)
+    {
+        for (int i = 0; i < fieldDescriptors.size(); i++) {
+            if (fieldDescriptors.get(i).getFiledName().equalsIgnoreCase(column)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No field " + column + " in the .dbf file");
+    }
+
+    /**
+     * Returns the type a field is decoded to, one of the TYPE_ constants.
+     */
+    public static int getType(FieldDescriptor descriptor)
+    {
+        switch (descriptor.getFieldType()) {
+            case 'N':
+                return descriptor.getFieldDecimalCount() == 0 && descriptor.getFieldLength() <= MAX_LONG_DIGITS
+                    ? TYPE_LONG : TYPE_DOUBLE;
+            case 'F':
+                return TYPE_DOUBLE;
+            case 'D':
+                return TYPE_DATE;
+            case 'L':
+                return TYPE_BOOLEAN;
+            default:
+                return TYPE_STRING;
+        }
+    }
+
+    public int getNumColumns()
+    {
+        return types.length;
+    }
+
+    public String getColumnName(int column)
+    {
+        return fields.get(column).getFiledName();
+    }
+
+    public int getColumnType(int column)
+    {
+        return types[column];
+    }
+
+    /**
+     * Returns whether the field of the record has no value.
+     */
+    public boolean isNull(ByteBuffer record, int column)
+    {
+        final int start = record.position() + offsets[column];
+        final int end = start + lengths[column];
+        int i = start;
+        while (i < end && isBlank(record.get(i))) {
+            i++;
+        }
+        if (i == end) {
+            // blank text is an empty string, as in the tab-separated attributes
+            return types[column] != TYPE_STRING;
+        }
+        switch (types[column]) {
+            case TYPE_LONG:
+            case TYPE_DOUBLE:
+                // overflown numbers are filled with '*'
+                return record.get(i) == '*';
+            case TYPE_DATE:
+                while (i < end && record.get(i) == '0') {
+                    i++;
+                }
+                return i == end;
+            case TYPE_BOOLEAN:
+                return record.get(i) == '?';
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Decodes a field of type TYPE_LONG.
+     *
+     * @throws NumberFormatException if the field is null or not an integer
+     */
+    public long getLong(ByteBuffer record, int column)
+    {
+        final int start = record.position() + offsets[column];
+        final int end = start + lengths[column];
+        int i = skipBlanks(record, start, end);
+        final boolean negative = i < end && record.get(i) == '-';
+        if (negative || (i < end && record.get(i) == '+')) {
+            i++;
+        }
+        final int firstDigit = i;
+        long value = 0;
+        for (; i < end; i++) {
+            final byte b = record.get(i);
+            if (b < '0' || b > '9') {
+                break;
+            }
+            value = value * 10 + (b - '0');
+        }
+        if (i == firstDigit || skipBlanks(record, i, end) != end) {
+            throw new NumberFormatException("Not an integer: " + getString(record, column));
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Decodes a field of type TYPE_DOUBLE, or of type TYPE_LONG as a double.
+     *
+     * @throws NumberFormatException if the field is null or not a number
+     */
+    public double getDouble(ByteBuffer record, int column)
+    {
+        final int start = record.position() + offsets[column];
+        final int end = start + lengths[column];
+        int i = skipBlanks(record, start, end);
+        final boolean negative = i < end && record.get(i) == '-';
+        if (negative || (i < end && record.get(i) == '+')) {
+            i++;
+        }
+
+        // digits are accumulated into an exact mantissa, then scaled once by an exact power of ten
+        long mantissa = 0;
+        boolean hasDigits = false;
+        int numDigits = 0;
+        int numDecimals = -1;
+        for (; i < end; i++) {
+            final byte b = record.get(i);
+            if (b >= '0' && b <= '9') {
+                hasDigits = true;
+                if (mantissa > 0 || b != '0') {
+                    numDigits++;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (numDecimals >= 0) {
+                    numDecimals++;
+                }
+            }
+            else if (b == '.' && numDecimals < 0) {
+                numDecimals = 0;
+            }
+            else {
+                break;
+            }
+        }
+
+        if (!hasDigits || skipBlanks(record, i, end) != end || numDigits > MAX_EXACT_DIGITS
+            || numDecimals >= POWERS_OF_TEN.length) {
+            // exponents, long mantissas and malformed numbers are left to the JDK
+            return Double.parseDouble(getString(record, column));
+        }
+        double value = numDecimals > 0 ? mantissa / POWERS_OF_TEN[numDecimals] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Decodes a field of type TYPE_DATE, stored as YYYYMMDD.
+     *
+     * @return the number of days since 1970-01-01
+     * @throws NumberFormatException if the field is null or not a date
+     */
+    public int getDate(ByteBuffer record, int column)
+    {
+        final int start = skipBlanks(record, record.position() + offsets[column],
+                                     record.position() + offsets[column] + lengths[column]);
+        if (start + 8 > record.position() + offsets[column] + lengths[column]) {
+            throw new NumberFormatException("Not a date: " + getString(record, column));
+        }
+        final int year = parseDigits(record, start, 4, column);
+        final int month = parseDigits(record, start + 4, 2, column);
+        final int day = parseDigits(record, start + 6, 2, column);
+        return daysSinceEpoch(year, month, day);
+    }
+
+    private int parseDigits(ByteBuffer record, int start, int numDigits, int column)
+    {
+        int value = 0;
+        for (int i = start; i < start + numDigits; i++) {
+            final byte b = record.get(i);
+            if (b < '0' || b > '9') {
+                throw new NumberFormatException("Not a date: " + getString(record, column));
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of days from 1970-01-01 to a date of the proleptic Gregorian calendar.
+     */
+    static int daysSinceEpoch(int year, int month, int day)
+    {
+        // shift the year to start in March, so that leap days fall at its end
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Decodes a field of type TYPE_BOOLEAN.
+     *
+     * @return true for Y, y, T and t, false otherwise
+     */
+    public boolean getBoolean(ByteBuffer record, int column)
+    {
+        final int start = record.position() + offsets[column];
+        final int end = start + lengths[column];
+        final int i = skipBlanks(record, start, end);
+        if (i == end) {
+            return false;
+        }
+        final byte b = record.get(i);
+        return b == 'Y' || b == 'y' || b == 'T' || b == 't';
+    }
+
+    /**
+     * Returns the text of a field of any type, trimmed, mapping each byte to one char as
+     * {@link DbfParseUtil} does.
+     */
+    public String getString(ByteBuffer record, int column)
+    {
+        final int start = record.position() + offsets[column];
+        int end = start + lengths[column];
+        final int first = skipBlanks(record, start, end);
+        while (end > first && isBlank(record.get(end - 1))) {
+            end--;
+        }
+        final char[] chars = new char[end - first];
+        for (int i = first; i < end; i++) {
+            // force the byte to a positive integer interpretation before casting to char
+            chars[i - first] = (char) (0x00FF & record.get(i));
+        }
+        return new String(chars);
+    }
+
+    private static int skipBlanks(ByteBuffer record, int start, int end)
+    {
+        while (start < end && isBlank(record.get(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private static boolean isBlank(byte b)
+    {
+        // same as String.trim, which also drops the NUL padding of some writers
+        return b >= 0 && b <= ' ';
+    }
+
+    public Batch newBatch(int capacity)
+    {
+        return new Batch(capacity);
+    }
+
+    /**
+     * Appends the selected fields of a record to the batch.
+     *
+     * @return false if the batch is full and the record was not decoded
+     */
+    public boolean decode(ByteBuffer record, Batch batch)
+    {
+        if (batch.size == batch.capacity) {
+            return false;
+        }
+        final int row = batch.size;
+        for (int column = 0; column < types.length; column++) {
+            final boolean isNull = isNull(record, column);
+            batch.nulls[column][row] = isNull;
+            if (isNull) {
+                continue;
+            }
+            switch (types[column]) {
+                case TYPE_LONG:
+                    ((long[]) batch.values[column])[row] = getLong(record, column);
+                    break;
+                case TYPE_DOUBLE:
+                    ((double[]) batch.values[column])[row] = getDouble(record, column);
+                    break;
+                case TYPE_DATE:
+                    ((int[]) batch.values[column])[row] = getDate(record, column);
+                    break;
+                case TYPE_BOOLEAN:
+                    ((boolean[]) batch.values[column])[row] = getBoolean(record, column);
+                    break;
+                default:
+                    ((String[]) batch.values[column])[row] = getString(record, column);
+            }
+        }
+        batch.size++;
+        return true;
+    }
+
+    /**
+     * Decoded records held column by column, in one primitive array per column: long[] for
+     * TYPE_LONG, double[] for TYPE_DOUBLE, int[] for TYPE_DATE, boolean[] for TYPE_BOOLEAN and
+     * String[] for TYPE_STRING. The values of null fields are left unspecified.
+     */
+    public class Batch {
+
+        private final int capacity;
+        private final Object[] values;
+        private final boolean[][] nulls;
+        private int size = 0;
+
+        private Batch(int capacity)
+        {
+            this.capacity = capacity;
+            this.values = new Object[types.length];
+            this.nulls = new boolean[types.length][capacity];
+            for (int column = 0; column < types.length; column++) {
+                switch (types[column]) {
+                    case TYPE_LONG:
+                        values[column] = new long[capacity];
+                        break;
+                    case TYPE_DOUBLE:
+                        values[column] = new double[capacity];
+                        break;
+                    case TYPE_DATE:
+                        values[column] = new int[capacity];
+                        break;
+                    case TYPE_BOOLEAN:
+                        values[column] = new boolean[capacity];
+                        break;
+                    default:
+                        values[column] = new String[capacity];
+                }
+            }
+        }
+
+        public int size()
+        {
+            return size;
+        }
+
+        public boolean isFull()
+        {
+            return size == capacity;
+        }
+
+        /**
+         * Empties the batch, keeping its arrays for the next records.
+         */
+        public void clear()
+        {
+            size = 0;
+        }
+
+        public boolean isNull(int column, int row)
+        {
+            return nulls[column][row];
+        }
+
+        public long[] getLongs(int column)
+        {
+            return (long[]) values[column];
+        }
+
+        public double[] getDoubles(int column)
+        {
+            return (double[]) values[column];
+        }
+
+        public int[] getDates(int column)
+        {
+            return (int[]) values[column];
+        }
+
+        public boolean[] getBooleans(int column)
+        {
+            return (boolean[]) values[column];
+        }
+
+        public String[] getStrings(int column)
+        {
+            return (String[]) values[column];
+        }
+    }
+}
@@ -34,14 +34,15 @@ public class ShapeReaderFactory {
 
     public static ShapeReader fromInput(final Input input) {
         return new ShapeReader() {
+            // Input reads big-endian numbers, shapes are little-endian
             @Override
             public int readInt() {
-                return toByteBuffer(input, 4).getInt();
+                return Integer.reverseBytes(input.readInt());
             }
 
             @Override
             public double readDouble() {
-                return toByteBuffer(input, 8).getDouble();
+                return Double.longBitsToDouble(Long.reverseBytes(input.readLong()));
             }
 
             @Override
@@ -56,11 +57,4 @@ public class ShapeReaderFactory {
         };
     }
 
-    private static ByteBuffer toByteBuffer(Input input, int numBytes)
-    {
-        byte[] bytes = new byte[numBytes];
-        input.read(bytes);
-        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
-    }
-
 }
@@ -0,0 +1,368 @@
+/**
+ * FILE: MappedShapefile.java
+ * PATH: org.datasyslab.geospark.formatMapper.shapefileParser.shapes.MappedShapefile.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.formatMapper.shapefileParser.shapes;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.dbf.DbfParseUtil;
+import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.shp.ShapeFileConst;
+import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.shp.ShapeParser;
+import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.shp.ShapeReaderFactory;
+import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.shp.ShapeType;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a shapefile on a local disk or NFS mount through memory-mapped .shp, .shx and .dbf files.
+ *
+ * Records are decoded in place from the mapped buffers, without going through Hadoop streams
+ * and without copying them into intermediate byte arrays. Headers and the .shx index are
+ * big-endian, shape contents and the .dbf header little-endian.
+ */
+public class MappedShapefile {
+
+    public static final String SHP_SUFFIX = ".shp";
+    public static final String SHX_SUFFIX = ".shx";
+    public static final String DBF_SUFFIX = ".dbf";
+
+    /**
+     * Hadoop configuration key, true by default. If false, local shapefiles are read through
+     * the Hadoop input formats like the shapefiles of any other file system.
+     */
+    public static final String ENABLED_KEY = "geospark.shapefile.mmap.enabled";
+
+    /**
+     * Hadoop configuration key, the length in bytes of the largest .shp, .shx or .dbf file which
+     * is memory-mapped, 2GB by default. Shapefiles with a larger file are read through the
+     * Hadoop input formats. A single mapping can't exceed 2GB, so neither can this length.
+     */
+    public static final String MAX_LENGTH_KEY = "geospark.shapefile.mmap.max.length";
+
+    private static final int SHP_HEADER_LENGTH = 100;
+    private static final int RECORD_HEADER_LENGTH = 8;
+
+    private final String basePath;
+    private final MappedByteBuffer shp;
+    @Nullable
+    private final MappedByteBuffer shx;
+    @Nullable
+    private final MappedByteBuffer dbf;
+
+    /** offsets of the records in the .shp file, only used if there is no .shx file */
+    private final int[] recordOffsets;
+    private final int numRecords;
+
+    @Nullable
+    private final DbfParseUtil dbfParseUtil;
+    private final int dbfHeaderLength;
+    private final int dbfRecordLength;
+
+    /**
+     * Maps the .shp file and, if they exist, the .shx and .dbf files of a shapefile.
+     *
+     * @param basePath local path of the shapefile without suffix
+     */
+    public MappedShapefile(String basePath) throws IOException
+    {
+        this(basePath, true);
+    }
+
+    /**
+     * Maps the .shp file and, if they exist, the .shx file and, if withAttributes is set, the .dbf
+     * file of a shapefile.
+     *
+     * @param basePath local path of the shapefile without suffix
+     */
+    public MappedShapefile(String basePath, boolean withAttributes) throws IOException
+    {
+        this.basePath = basePath;
+        this.shp = map(new File(basePath + SHP_SUFFIX));
+        final File shxFile = new File(basePath + SHX_SUFFIX);
+        this.shx = shxFile.exists() ? map(shxFile) : null;
+        final File dbfFile = new File(basePath + DBF_SUFFIX);
+        this.dbf = withAttributes && dbfFile.exists() ? map(dbfFile) : null;
+
+        if (shx != null) {
+            recordOffsets = null;
+            numRecords = (shx.limit() - SHP_HEADER_LENGTH) / RECORD_HEADER_LENGTH;
+        } else {
+            recordOffsets = scanRecordOffsets(shp);
+            numRecords = recordOffsets.length;
+        }
+
+        if (dbf != null) {
+            dbf.order(ByteOrder.LITTLE_ENDIAN);
+            dbfHeaderLength = dbf.getShort(8) & 0xffff;
+            dbfRecordLength = dbf.getShort(10) & 0xffff;
+            final byte[] header = new byte[dbfHeaderLength];
+            slice(dbf, 0, dbfHeaderLength).get(header);
+            dbfParseUtil = new DbfParseUtil();
+            dbfParseUtil.parseFileHead(new DataInputStream(new ByteArrayInputStream(header)));
+        } else {
+            dbfHeaderLength = 0;
+            dbfRecordLength = 0;
+            dbfParseUtil = null;
+        }
+    }
+
+    /**
+     * Returns true if the files of the file system can be memory-mapped, i.e. if they are local.
+     */
+    public static boolean isLocal(FileSystem fileSystem)
+    {
+        return "file".equals(fileSystem.getUri().getScheme());
+    }
+
+    /**
+     * Returns false if memory-mapping is turned off by {@link #ENABLED_KEY}.
+     */
+    public static boolean isEnabled(Configuration conf)
+    {
+        return conf.getBoolean(ENABLED_KEY, true);
+    }
+
+    /**
+     * Returns the length in bytes of the largest file which is memory-mapped, see {@link #MAX_LENGTH_KEY}.
+     */
+    public static long getMaxLength(Configuration conf)
+    {
+        return Math.min(conf.getLong(MAX_LENGTH_KEY, Integer.MAX_VALUE), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns true if none of the files a {@link MappedShapefile} would map for the local shapefile
+     * is longer than {@link #getMaxLength}: the .shp file, the .shx file and, if withAttributes is
+     * set, the .dbf file. Missing files don't count.
+     *
+     * @param basePath local path of the shapefile without suffix
+     */
+    public static boolean canMap(String basePath, boolean withAttributes, Configuration conf)
+    {
+        final long maxLength = getMaxLength(conf);
+        final String[] suffixes = withAttributes ? new String[] {SHP_SUFFIX, SHX_SUFFIX, DBF_SUFFIX}
+                                                 : new String[] {SHP_SUFFIX, SHX_SUFFIX};
+        for (String suffix : suffixes) {
+            if (new File(basePath + suffix).length() > maxLength) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the paths without suffix of the shapefiles in the comma-separated input paths,
+     * which are either directories or .shp files. Returns null if memory-mapping is turned off,
+     * any of the paths is not local, or any of the shapefiles has a file too large to be mapped,
+     * see {@link #canMap}.
+     */
+    @Nullable
+    public static List<String> listLocalShapefiles(String inputPaths, Configuration conf)
+        throws IOException
+    {
+        if (!isEnabled(conf)) {
+            return null;
+        }
+
+        final List<String> basePaths = new ArrayList<>();
+        for (String inputPath : inputPaths.split(",")) {
+            final Path path = new Path(inputPath);
+            final FileSystem fileSystem = path.getFileSystem(conf);
+            if (!isLocal(fileSystem)) {
+                return null;
+            }
+
+            for (FileStatus status : fileSystem.listStatus(path)) {
+                final String name = status.getPath().toUri().getPath();
+                if (!name.endsWith(SHP_SUFFIX)) {
+                    continue;
+                }
+                final String basePath = name.substring(0, name.length() - SHP_SUFFIX.length());
+                if (!canMap(basePath, true, conf)) {
+                    return null;
+                }
+                basePaths.add(basePath);
+            }
+        }
+        return basePaths;
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException
+    {
+        if (file.length() > Integer.MAX_VALUE) {
+            throw new IOException("Can't map " + file + " which is larger than 2GB");
+        }
+
+        // The mapping stays valid after the channel is closed
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static int[] scanRecordOffsets(ByteBuffer shp)
+    {
+        final int fileLength = Math.min(shp.limit(), 2 * shp.getInt(24));
+        int[] offsets = new int[1024];
+        int count = 0;
+        int offset = SHP_HEADER_LENGTH;
+        while (offset + RECORD_HEADER_LENGTH <= fileLength) {
+            if (count == offsets.length) {
+                final int[] newOffsets = new int[2 * count];
+                System.arraycopy(offsets, 0, newOffsets, 0, count);
+                offsets = newOffsets;
+            }
+            offsets[count++] = offset;
+            offset += RECORD_HEADER_LENGTH + 2 * shp.getInt(offset + 4);
+        }
+
+        final int[] result = new int[count];
+        System.arraycopy(offsets, 0, result, 0, count);
+        return result;
+    }
+
+    public String getBasePath()
+    {
+        return basePath;
+    }
+
+    public int getNumRecords()
+    {
+        return numRecords;
+    }
+
+    public boolean hasAttributes()
+    {
+        return dbf != null;
+    }
+
+    private int recordOffset(int index)
+    {
+        return shx != null ? 2 * shx.getInt(SHP_HEADER_LENGTH + RECORD_HEADER_LENGTH * index)
+                           : recordOffsets[index];
+    }
+
+    /**
+     * Returns the shape type id of the record.
+     */
+    public int getTypeID(int index)
+    {
+        return Integer.reverseBytes(shp.getInt(recordOffset(index) + RECORD_HEADER_LENGTH));
+    }
+
+    /**
+     * Returns the geometry of the record with its attributes, if there is a .dbf file.
+     */
+    public Geometry getGeometry(int index, GeometryFactory geometryFactory) throws IOException
+    {
+        final int offset = recordOffset(index);
+        final int contentLength = 2 * shp.getInt(offset + 4);
+        final int typeID = Integer.reverseBytes(shp.getInt(offset + RECORD_HEADER_LENGTH));
+        final Geometry geometry = readShape(offset + RECORD_HEADER_LENGTH + ShapeFileConst.INT_LENGTH,
+            contentLength - ShapeFileConst.INT_LENGTH, typeID, geometryFactory);
+        if (dbf != null && index < dbfParseUtil.numRecord) {
+            geometry.setUserData(readAttributes(dbfHeaderLength + (long) index * dbfRecordLength + 1,
+                dbfRecordLength - 1));
+        }
+        return geometry;
+    }
+
+    /**
+     * Parses a shape from the .shp file.
+     *
+     * @param offset offset of the shape content, right after the shape type
+     * @param length length of the shape content, excluding the shape type
+     */
+    public Geometry readShape(long offset, int length, int typeID, GeometryFactory geometryFactory)
+    {
+        final ShapeParser parser = ShapeType.getType(typeID).getParser(geometryFactory);
+        return parser.parseShape(ShapeReaderFactory.fromByteBuffer(slice(shp, offset, length)));
+    }
+
+    /**
+     * Parses the attributes of a record from the .dbf file, as a tab-separated string.
+     *
+     * @param offset offset of the record, right after the deletion flag
+     * @param length length of the record, excluding the deletion flag
+     */
+    public String readAttributes(long offset, int length) throws IOException
+    {
+        if (dbf == null) {
+            throw new IOException("No " + DBF_SUFFIX + " file for " + basePath);
+        }
+        return dbfParseUtil.primitiveToAttributes(slice(dbf, offset, length));
+    }
+
+    private static ByteBuffer slice(MappedByteBuffer buffer, long offset, int length)
+    {
+        final ByteBuffer duplicate = buffer.duplicate();
+        duplicate.limit((int) offset + length);
+        duplicate.position((int) offset);
+        return duplicate;
+    }
+
+    /**
+     * Iterates over the geometries of the shapefile, skipping records of undefined shape type.
+     */
+    public Iterator<Geometry> iterator(final GeometryFactory geometryFactory)
+    {
+        return new Iterator<Geometry>() {
+            private int next = advance(0);
+
+            private int advance(int index)
+            {
+                while (index < numRecords && getTypeID(index) == ShapeType.UNDEFINED.getId()) {
+                    index++;
+                }
+                return index;
+            }
+
+            @Override
+            public boolean hasNext()
+            {
+                return next < numRecords;
+            }
+
+            @Override
+            public Geometry next()
+            {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    return getGeometry(next, geometryFactory);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    next = advance(next + 1);
+                }
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
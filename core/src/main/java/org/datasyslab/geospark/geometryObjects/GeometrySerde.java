@@ -15,20 +15,51 @@ import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.shp.Shape
  * Supports Point, LineString, Polygon, MultiPoint, MultiLineString, MultiPolygon,
  * GeometryCollection, Circle and Envelope types.
  *
- * First byte contains {@link Type#id}. Then go type-specific bytes, followed
- * by user-data attached to the geometry.
+ * First byte contains {@link Type#id}. Geometries are written as {@link Type#COMPACT}:
+ * a version byte, then a geometry kind byte, then the geometry itself written straight
+ * into the Kryo output, followed by user-data attached to the geometry.
+ *
+ * Compact layout (version 1): counts are variable-length ints, coordinates are raw XY doubles.
+ * Point, LineString, LinearRing: number of coordinates, coordinates.
+ * Polygon: number of rings (0 if empty), then each ring, exterior ring first.
+ * MultiPoint, MultiLineString, MultiPolygon: number of parts, then each part without a kind byte.
+ * GeometryCollection: number of parts, then each part with its kind byte and user-data.
+ * Circle: radius, then the center with its kind byte and user-data.
+ * User-data: 0 if none, 1 followed by a string, 2 followed by a Kryo class and object.
+ *
+ * Older versions wrote geometries as {@link Type#SHAPE}, {@link Type#CIRCLE} and
+ * {@link Type#GEOMETRYCOLLECTION} using {@link ShapeSerde}. These are still readable.
  */
 public class GeometrySerde extends Serializer {
 
     private static final Logger log = Logger.getLogger(GeometrySerde.class);
     private static final GeometryFactory geometryFactory = new GeometryFactory();
 
+    private static final byte COMPACT_VERSION = 1;
+
+    // Geometry kinds of the compact layout
+    private static final byte POINT = 1;
+    private static final byte LINESTRING = 2;
+    private static final byte LINEARRING = 3;
+    private static final byte POLYGON = 4;
+    private static final byte MULTIPOINT = 5;
+    private static final byte MULTILINESTRING = 6;
+    private static final byte MULTIPOLYGON = 7;
+    private static final byte GEOMETRYCOLLECTION = 8;
+    private static final byte CIRCLE = 9;
+
+    // User-data markers of the compact layout
+    private static final byte NO_USER_DATA = 0;
+    private static final byte STRING_USER_DATA = 1;
+    private static final byte OBJECT_USER_DATA = 2;
+
     private enum Type
     {
         SHAPE(0),
         CIRCLE(1),
         GEOMETRYCOLLECTION(2),
-        ENVELOPE(3);
+        ENVELOPE(3),
+        COMPACT(4);
 
         private final int id;
 
@@ -50,25 +81,10 @@ public class GeometrySerde extends Serializer {
 
     @Override
     public void write(Kryo kryo, Output out, Object object) {
-        if (object instanceof Circle) {
-            Circle circle = (Circle) object;
-            writeType(out, Type.CIRCLE);
-            out.writeDouble(circle.getRadius());
-            writeGeometry(kryo, out, circle.getCenterGeometry());
-            writeUserData(kryo, out, circle);
-        } else if (object instanceof Point || object instanceof LineString
-            || object instanceof Polygon || object instanceof MultiPoint
-            || object instanceof MultiLineString || object instanceof MultiPolygon) {
-            writeType(out, Type.SHAPE);
-            writeGeometry(kryo, out, (Geometry) object);
-        } else if (object instanceof GeometryCollection) {
-            GeometryCollection collection = (GeometryCollection) object;
-            writeType(out, Type.GEOMETRYCOLLECTION);
-            out.writeInt(collection.getNumGeometries());
-            for (int i=0; i<collection.getNumGeometries(); i++) {
-                writeGeometry(kryo, out, collection.getGeometryN(i));
-            }
-            writeUserData(kryo, out, collection);
+        if (object instanceof Geometry) {
+            writeType(out, Type.COMPACT);
+            out.writeByte(COMPACT_VERSION);
+            writeCompact(kryo, out, (Geometry) object);
         } else if( object instanceof Envelope) {
             Envelope envelope = (Envelope) object;
             writeType(out, Type.ENVELOPE);
@@ -86,17 +102,87 @@ public class GeometrySerde extends Serializer {
         out.writeByte((byte) type.id);
     }
 
-    private void writeGeometry(Kryo kryo, Output out, Geometry geometry) {
-        byte[] data = ShapeSerde.serialize(geometry);
-        out.write(data, 0, data.length);
-        writeUserData(kryo, out, geometry);
+    private void writeCompact(Kryo kryo, Output out, Geometry geometry) {
+        if (geometry instanceof Circle) {
+            Circle circle = (Circle) geometry;
+            out.writeByte(CIRCLE);
+            out.writeDouble(circle.getRadius());
+            writeCompact(kryo, out, circle.getCenterGeometry());
+        } else if (geometry instanceof Point) {
+            out.writeByte(POINT);
+            writeCoordinates(out, ((Point) geometry).getCoordinateSequence());
+        } else if (geometry instanceof LinearRing) {
+            out.writeByte(LINEARRING);
+            writeCoordinates(out, ((LinearRing) geometry).getCoordinateSequence());
+        } else if (geometry instanceof LineString) {
+            out.writeByte(LINESTRING);
+            writeCoordinates(out, ((LineString) geometry).getCoordinateSequence());
+        } else if (geometry instanceof Polygon) {
+            out.writeByte(POLYGON);
+            writePolygon(out, (Polygon) geometry);
+        } else if (geometry instanceof MultiPoint) {
+            out.writeByte(MULTIPOINT);
+            out.writeVarInt(geometry.getNumGeometries(), true);
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                writeCoordinates(out, ((Point) geometry.getGeometryN(i)).getCoordinateSequence());
+            }
+        } else if (geometry instanceof MultiLineString) {
+            out.writeByte(MULTILINESTRING);
+            out.writeVarInt(geometry.getNumGeometries(), true);
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                writeCoordinates(out, ((LineString) geometry.getGeometryN(i)).getCoordinateSequence());
+            }
+        } else if (geometry instanceof MultiPolygon) {
+            out.writeByte(MULTIPOLYGON);
+            out.writeVarInt(geometry.getNumGeometries(), true);
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                writePolygon(out, (Polygon) geometry.getGeometryN(i));
+            }
+        } else if (geometry instanceof GeometryCollection) {
+            out.writeByte(GEOMETRYCOLLECTION);
+            out.writeVarInt(geometry.getNumGeometries(), true);
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                writeCompact(kryo, out, geometry.getGeometryN(i));
+            }
+        } else {
+            throw new UnsupportedOperationException("Cannot serialize object of type " +
+                geometry.getClass().getName());
+        }
+        writeCompactUserData(kryo, out, geometry);
+    }
+
+    private void writePolygon(Output out, Polygon polygon) {
+        if (polygon.isEmpty()) {
+            out.writeVarInt(0, true);
+            return;
+        }
+        out.writeVarInt(polygon.getNumInteriorRing() + 1, true);
+        writeCoordinates(out, polygon.getExteriorRing().getCoordinateSequence());
+        for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+            writeCoordinates(out, polygon.getInteriorRingN(i).getCoordinateSequence());
+        }
+    }
+
+    private void writeCoordinates(Output out, CoordinateSequence coordinates) {
+        final int size = coordinates.size();
+        out.writeVarInt(size, true);
+        for (int i = 0; i < size; i++) {
+            out.writeDouble(coordinates.getX(i));
+            out.writeDouble(coordinates.getY(i));
+        }
     }
 
-    private void writeUserData(Kryo kryo, Output out, Geometry geometry) {
-        out.writeBoolean(geometry.getUserData() != null);
-        if (geometry.getUserData() != null) {
-            kryo.writeClass(out, geometry.getUserData().getClass());
-            kryo.writeObject(out, geometry.getUserData());
+    private void writeCompactUserData(Kryo kryo, Output out, Geometry geometry) {
+        final Object userData = geometry.getUserData();
+        if (userData == null) {
+            out.writeByte(NO_USER_DATA);
+        } else if (userData instanceof String) {
+            out.writeByte(STRING_USER_DATA);
+            out.writeString((String) userData);
+        } else {
+            out.writeByte(OBJECT_USER_DATA);
+            kryo.writeClass(out, userData.getClass());
+            kryo.writeObject(out, userData);
         }
     }
 
@@ -104,7 +190,18 @@ public class GeometrySerde extends Serializer {
     public Object read(Kryo kryo, Input input, Class aClass) {
         byte typeId = input.readByte();
         Type geometryType = Type.fromId(typeId);
+        if (geometryType == null) {
+            throw new UnsupportedOperationException("Cannot deserialize object of type " + typeId);
+        }
         switch (geometryType) {
+            case COMPACT: {
+                byte version = input.readByte();
+                if (version != COMPACT_VERSION) {
+                    throw new UnsupportedOperationException(
+                        "Cannot deserialize geometry of version " + version);
+                }
+                return readCompact(kryo, input);
+            }
             case SHAPE:
                 return readGeometry(kryo, input);
             case CIRCLE: {
@@ -139,6 +236,104 @@ public class GeometrySerde extends Serializer {
         }
     }
 
+    private Geometry readCompact(Kryo kryo, Input input) {
+        final byte kind = input.readByte();
+        final Geometry geometry;
+        switch (kind) {
+            case CIRCLE: {
+                double radius = input.readDouble();
+                geometry = new Circle(readCompact(kryo, input), radius);
+                break;
+            }
+            case POINT:
+                geometry = geometryFactory.createPoint(readCoordinates(input));
+                break;
+            case LINESTRING:
+                geometry = geometryFactory.createLineString(readCoordinates(input));
+                break;
+            case LINEARRING:
+                geometry = geometryFactory.createLinearRing(readCoordinates(input));
+                break;
+            case POLYGON:
+                geometry = readPolygon(input);
+                break;
+            case MULTIPOINT: {
+                Point[] points = new Point[input.readVarInt(true)];
+                for (int i = 0; i < points.length; i++) {
+                    points[i] = geometryFactory.createPoint(readCoordinates(input));
+                }
+                geometry = geometryFactory.createMultiPoint(points);
+                break;
+            }
+            case MULTILINESTRING: {
+                LineString[] lineStrings = new LineString[input.readVarInt(true)];
+                for (int i = 0; i < lineStrings.length; i++) {
+                    lineStrings[i] = geometryFactory.createLineString(readCoordinates(input));
+                }
+                geometry = geometryFactory.createMultiLineString(lineStrings);
+                break;
+            }
+            case MULTIPOLYGON: {
+                Polygon[] polygons = new Polygon[input.readVarInt(true)];
+                for (int i = 0; i < polygons.length; i++) {
+                    polygons[i] = readPolygon(input);
+                }
+                geometry = geometryFactory.createMultiPolygon(polygons);
+                break;
+            }
+            case GEOMETRYCOLLECTION: {
+                Geometry[] geometries = new Geometry[input.readVarInt(true)];
+                for (int i = 0; i < geometries.length; i++) {
+                    geometries[i] = readCompact(kryo, input);
+                }
+                geometry = geometryFactory.createGeometryCollection(geometries);
+                break;
+            }
+            default:
+                throw new UnsupportedOperationException("Cannot deserialize geometry of kind " + kind);
+        }
+        geometry.setUserData(readCompactUserData(kryo, input));
+        return geometry;
+    }
+
+    private Polygon readPolygon(Input input) {
+        final int numRings = input.readVarInt(true);
+        if (numRings == 0) {
+            return geometryFactory.createPolygon(null, null);
+        }
+        LinearRing shell = geometryFactory.createLinearRing(readCoordinates(input));
+        LinearRing[] holes = new LinearRing[numRings - 1];
+        for (int i = 0; i < holes.length; i++) {
+            holes[i] = geometryFactory.createLinearRing(readCoordinates(input));
+        }
+        return geometryFactory.createPolygon(shell, holes);
+    }
+
+    private CoordinateSequence readCoordinates(Input input) {
+        Coordinate[] coordinates = new Coordinate[input.readVarInt(true)];
+        for (int i = 0; i < coordinates.length; i++) {
+            double x = input.readDouble();
+            double y = input.readDouble();
+            coordinates[i] = new Coordinate(x, y);
+        }
+        return geometryFactory.getCoordinateSequenceFactory().create(coordinates);
+    }
+
+    private Object readCompactUserData(Kryo kryo, Input input) {
+        switch (input.readByte()) {
+            case NO_USER_DATA:
+                return null;
+            case STRING_USER_DATA:
+                return input.readString();
+            case OBJECT_USER_DATA: {
+                Registration clazz = kryo.readClass(input);
+                return kryo.readObject(input, clazz.getType());
+            }
+            default:
+                throw new UnsupportedOperationException("Cannot deserialize user data");
+        }
+    }
+
     private Object readUserData(Kryo kryo, Input input) {
         Object userData = null;
         if (input.readBoolean()) {
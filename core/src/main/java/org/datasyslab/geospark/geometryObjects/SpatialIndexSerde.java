@@ -15,6 +15,7 @@ import com.vividsolutions.jts.index.strtree.AbstractNode;
 import com.vividsolutions.jts.index.strtree.ItemBoundable;
 import com.vividsolutions.jts.index.strtree.STRtree;
 import org.apache.log4j.Logger;
+import org.datasyslab.geospark.index.PackedRtree;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -23,9 +24,10 @@ import java.util.List;
 /**
  * Provides methods to efficiently serialize and deserialize spatialIndex types.
  *
- * Support Quadtree, STRtree types
+ * Support Quadtree, STRtree and PackedRtree types
  *
- * trees are serialized recursively.
+ * Quadtree and STRtree are serialized recursively. PackedRtree writes its own flat arrays.
+ * @see PackedRtree#write(Output)
  */
 public class SpatialIndexSerde extends Serializer{
 
@@ -46,7 +48,8 @@ public class SpatialIndexSerde extends Serializer{
     private enum Type{
 
         QUADTREE(0),
-        RTREE(1);
+        RTREE(1),
+        PACKEDRTREE(2);
 
         private final int id;
 
@@ -113,6 +116,9 @@ public class SpatialIndexSerde extends Serializer{
                     writeSTRTreeNode(kryo, output, tree.getRoot());
                 }
             }
+        } else if (o instanceof PackedRtree) {
+            writeType(output, Type.PACKEDRTREE);
+            ((PackedRtree) o).write(output);
         } else {
             throw new UnsupportedOperationException(" index type not supported ");
         }
@@ -161,6 +167,9 @@ public class SpatialIndexSerde extends Serializer{
                     return index;
                 }else return new STRtree(nodeCapacity);
             }
+            case PACKEDRTREE:{
+                return PackedRtree.read(input);
+            }
             default:{
                 throw new UnsupportedOperationException("can't deserialize spatial index of type" + indexType);
             }
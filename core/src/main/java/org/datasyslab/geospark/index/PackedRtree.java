@@ -0,0 +1,473 @@
+/**
+ * FILE: PackedRtree.java
+ * PATH: org.datasyslab.geospark.index.PackedRtree.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.index;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.ArrayListVisitor;
+import com.vividsolutions.jts.index.ItemVisitor;
+import com.vividsolutions.jts.index.SpatialIndex;
+import org.datasyslab.geospark.geometryObjects.GeometrySerde;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A static R-tree packed into flat arrays using the Sort-Tile-Recursive algorithm.
+ *
+ * Items are inserted first and the tree is built on the first query, like {@link com.vividsolutions.jts.index.strtree.STRtree}.
+ * After that the tree can't be modified. Node and item envelopes are stored in double arrays,
+ * four values per entry. The children of a node are a contiguous range of nodes, or of items
+ * for leaf nodes, so no per-node objects are needed.
+ *
+ * The serialized form is a handful of arrays followed by a single blob with all the items.
+ * A deserialized tree decodes an item only when a query returns it, so a broadcast tree
+ * which is probed with small windows never materializes most of its geometries.
+ *
+ * Items must be geometries to be serialized. Queries are thread-safe once the tree is built.
+ */
+public class PackedRtree implements SpatialIndex, Serializable {
+
+    public static final int DEFAULT_NODE_CAPACITY = 10;
+
+    private static final byte VERSION = 1;
+
+    // Standalone Kryo used for the item blob, so that the blob can be decoded without the
+    // Kryo instance which read the tree
+    private static final ThreadLocal<Kryo> blobKryo = new ThreadLocal<Kryo>() {
+        @Override
+        protected Kryo initialValue() {
+            return new Kryo();
+        }
+    };
+    private static final GeometrySerde geometrySerde = new GeometrySerde();
+
+    private transient int nodeCapacity;
+
+    // Inserted items before build
+    private transient List<Envelope> pendingBounds = new ArrayList<>();
+    private transient List<Object> pendingItems = new ArrayList<>();
+
+    private transient volatile boolean built = false;
+
+    // Items in tree order. Item i has envelope itemBounds[4*i .. 4*i+4) = (minX, minY, maxX, maxY)
+    private transient int numItems;
+    private transient double[] itemBounds;
+
+    // Nodes bottom-up; the root is the last one. Nodes [0, numLeafNodes) are leaves and their
+    // children are items. Node k has envelope nodeBounds[4*k .. 4*k+4) and children [childBegin[k], childEnd[k])
+    private transient int numNodes;
+    private transient int numLeafNodes;
+    private transient double[] nodeBounds;
+    private transient int[] childBegin;
+    private transient int[] childEnd;
+
+    // Decoded items. Slots are null until decoded from the blob.
+    private transient AtomicReferenceArray<Object> items;
+    // Encoded items; item i is itemBlob[itemOffsets[i] .. itemOffsets[i+1]). Null if the tree was built locally.
+    private transient byte[] itemBlob;
+    private transient int[] itemOffsets;
+
+    public PackedRtree() {
+        this(DEFAULT_NODE_CAPACITY);
+    }
+
+    public PackedRtree(int nodeCapacity) {
+        if (nodeCapacity < 2) {
+            throw new IllegalArgumentException("Node capacity must be at least 2: " + nodeCapacity);
+        }
+        this.nodeCapacity = nodeCapacity;
+    }
+
+    @Override
+    public void insert(Envelope itemEnv, Object item) {
+        if (built) {
+            throw new IllegalStateException("Cannot insert items into a PackedRtree after it has been built");
+        }
+        if (itemEnv.isNull()) {
+            return;
+        }
+        pendingBounds.add(itemEnv);
+        pendingItems.add(item);
+    }
+
+    @Override
+    public boolean remove(Envelope itemEnv, Object item) {
+        throw new UnsupportedOperationException("PackedRtree doesn't support removal");
+    }
+
+    @Override
+    public List query(Envelope searchEnv) {
+        final ArrayListVisitor visitor = new ArrayListVisitor();
+        query(searchEnv, visitor);
+        return visitor.getItems();
+    }
+
+    @Override
+    public void query(Envelope searchEnv, ItemVisitor visitor) {
+        build();
+        if (numNodes == 0) {
+            return;
+        }
+
+        final double minX = searchEnv.getMinX();
+        final double minY = searchEnv.getMinY();
+        final double maxX = searchEnv.getMaxX();
+        final double maxY = searchEnv.getMaxY();
+
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = numNodes - 1;
+        while (top > 0) {
+            final int node = stack[--top];
+            if (!intersects(nodeBounds, node, minX, minY, maxX, maxY)) {
+                continue;
+            }
+            if (node < numLeafNodes) {
+                for (int i = childBegin[node]; i < childEnd[node]; i++) {
+                    if (intersects(itemBounds, i, minX, minY, maxX, maxY)) {
+                        visitor.visitItem(getItem(i));
+                    }
+                }
+            } else {
+                final int count = childEnd[node] - childBegin[node];
+                if (top + count > stack.length) {
+                    stack = Arrays.copyOf(stack, Math.max(2 * stack.length, top + count));
+                }
+                for (int child = childEnd[node] - 1; child >= childBegin[node]; child--) {
+                    stack[top++] = child;
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return built ? numItems : pendingItems.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int getNodeCapacity() {
+        return nodeCapacity;
+    }
+
+    /**
+     * Packs the inserted items into the tree. Called on the first query if not called before.
+     */
+    public void build() {
+        // Checked outside the lock, so that concurrent queries of a built tree never contend
+        if (!built) {
+            buildOnce();
+        }
+    }
+
+    private synchronized void buildOnce() {
+        if (built) {
+            return;
+        }
+
+        numItems = pendingItems.size();
+        itemBounds = new double[4 * numItems];
+        for (int i = 0; i < numItems; i++) {
+            setBounds(itemBounds, i, pendingBounds.get(i));
+        }
+
+        // Order items into leaves
+        final int[] itemOrder = sortTileRecursive(itemBounds, numItems);
+        itemBounds = permute(itemBounds, itemOrder);
+        final Object[] sortedItems = new Object[numItems];
+        for (int i = 0; i < numItems; i++) {
+            sortedItems[i] = pendingItems.get(itemOrder[i]);
+        }
+        items = new AtomicReferenceArray<>(sortedItems);
+
+        final int maxNodes = maxNodes(numItems);
+        nodeBounds = new double[4 * maxNodes];
+        childBegin = new int[maxNodes];
+        childEnd = new int[maxNodes];
+        numNodes = 0;
+
+        if (numItems > 0) {
+            // Level being built, not yet appended to the node arrays
+            int levelSize = groups(numItems);
+            double[] levelBounds = new double[4 * levelSize];
+            int[] levelBegin = new int[levelSize];
+            int[] levelEnd = new int[levelSize];
+            group(itemBounds, numItems, 0, levelBounds, levelBegin, levelEnd);
+            boolean leafLevel = true;
+            while (true) {
+                final int[] order = sortTileRecursive(levelBounds, levelSize);
+                levelBounds = permute(levelBounds, order);
+                levelBegin = permute(levelBegin, order);
+                levelEnd = permute(levelEnd, order);
+
+                final int levelOffset = numNodes;
+                System.arraycopy(levelBounds, 0, nodeBounds, 4 * levelOffset, 4 * levelSize);
+                System.arraycopy(levelBegin, 0, childBegin, levelOffset, levelSize);
+                System.arraycopy(levelEnd, 0, childEnd, levelOffset, levelSize);
+                numNodes += levelSize;
+                if (leafLevel) {
+                    numLeafNodes = levelSize;
+                    leafLevel = false;
+                }
+
+                if (levelSize == 1) {
+                    break;
+                }
+
+                final int parents = groups(levelSize);
+                final double[] parentBounds = new double[4 * parents];
+                final int[] parentBegin = new int[parents];
+                final int[] parentEnd = new int[parents];
+                levelSize = group(levelBounds, levelSize, levelOffset, parentBounds, parentBegin, parentEnd);
+                levelBounds = parentBounds;
+                levelBegin = parentBegin;
+                levelEnd = parentEnd;
+            }
+        }
+
+        nodeBounds = Arrays.copyOf(nodeBounds, 4 * numNodes);
+        childBegin = Arrays.copyOf(childBegin, numNodes);
+        childEnd = Arrays.copyOf(childEnd, numNodes);
+
+        pendingBounds = null;
+        pendingItems = null;
+        built = true;
+    }
+
+    private int groups(int count) {
+        return (count + nodeCapacity - 1) / nodeCapacity;
+    }
+
+    private int maxNodes(int count) {
+        int total = 0;
+        int levelSize = count;
+        do {
+            levelSize = groups(levelSize);
+            total += levelSize;
+        } while (levelSize > 1);
+        return total;
+    }
+
+    /**
+     * Groups consecutive entries into parents of up to nodeCapacity children.
+     * Children of parent p are [offset + p*nodeCapacity, ...). Returns the number of parents.
+     */
+    private int group(double[] bounds, int count, int offset, double[] parentBounds, int[] parentBegin, int[] parentEnd) {
+        final int parents = groups(count);
+        for (int p = 0; p < parents; p++) {
+            final int begin = p * nodeCapacity;
+            final int end = Math.min(begin + nodeCapacity, count);
+            double minX = Double.POSITIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            for (int i = begin; i < end; i++) {
+                minX = Math.min(minX, bounds[4 * i]);
+                minY = Math.min(minY, bounds[4 * i + 1]);
+                maxX = Math.max(maxX, bounds[4 * i + 2]);
+                maxY = Math.max(maxY, bounds[4 * i + 3]);
+            }
+            parentBounds[4 * p] = minX;
+            parentBounds[4 * p + 1] = minY;
+            parentBounds[4 * p + 2] = maxX;
+            parentBounds[4 * p + 3] = maxY;
+            parentBegin[p] = offset + begin;
+            parentEnd[p] = offset + end;
+        }
+        return parents;
+    }
+
+    /**
+     * Returns the order of the entries for packing: sorted by center X into vertical slices
+     * of sqrt(#parents) parents each, then by center Y within each slice.
+     */
+    private int[] sortTileRecursive(final double[] bounds, int count) {
+        final Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        final int parents = groups(count);
+        final int sliceSize = (int) Math.ceil(Math.sqrt(parents)) * nodeCapacity;
+
+        Arrays.sort(order, new CenterComparator(bounds, 0));
+        final CenterComparator byY = new CenterComparator(bounds, 1);
+        for (int begin = 0; begin < count; begin += sliceSize) {
+            Arrays.sort(order, begin, Math.min(begin + sliceSize, count), byY);
+        }
+
+        final int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    private static final class CenterComparator implements Comparator<Integer> {
+        private final double[] bounds;
+        private final int axis;
+
+        CenterComparator(double[] bounds, int axis) {
+            this.bounds = bounds;
+            this.axis = axis;
+        }
+
+        @Override
+        public int compare(Integer a, Integer b) {
+            return Double.compare(center(a), center(b));
+        }
+
+        private double center(int i) {
+            return bounds[4 * i + axis] + bounds[4 * i + 2 + axis];
+        }
+    }
+
+    private static double[] permute(double[] bounds, int[] order) {
+        final double[] result = new double[bounds.length];
+        for (int i = 0; i < order.length; i++) {
+            System.arraycopy(bounds, 4 * order[i], result, 4 * i, 4);
+        }
+        return result;
+    }
+
+    private static int[] permute(int[] values, int[] order) {
+        final int[] result = new int[values.length];
+        for (int i = 0; i < order.length; i++) {
+            result[i] = values[order[i]];
+        }
+        return result;
+    }
+
+    private static void setBounds(double[] bounds, int i, Envelope envelope) {
+        bounds[4 * i] = envelope.getMinX();
+        bounds[4 * i + 1] = envelope.getMinY();
+        bounds[4 * i + 2] = envelope.getMaxX();
+        bounds[4 * i + 3] = envelope.getMaxY();
+    }
+
+    private static boolean intersects(double[] bounds, int i, double minX, double minY, double maxX, double maxY) {
+        return bounds[4 * i] <= maxX && bounds[4 * i + 2] >= minX
+            && bounds[4 * i + 1] <= maxY && bounds[4 * i + 3] >= minY;
+    }
+
+    private Object getItem(int i) {
+        Object item = items.get(i);
+        if (item == null) {
+            final int offset = itemOffsets[i];
+            final Input input = new Input(itemBlob, offset, itemOffsets[i + 1] - offset);
+            item = geometrySerde.read(blobKryo.get(), input, Geometry.class);
+            if (!items.compareAndSet(i, null, item)) {
+                item = items.get(i);
+            }
+        }
+        return item;
+    }
+
+    /**
+     * Writes the tree, building it first if needed.
+     */
+    public void write(Output output) {
+        build();
+
+        if (itemBlob == null) {
+            encodeItems();
+        }
+
+        output.writeByte(VERSION);
+        output.writeInt(nodeCapacity);
+        output.writeInt(numItems);
+        output.writeInt(numNodes);
+        output.writeInt(numLeafNodes);
+        output.writeDoubles(itemBounds);
+        output.writeDoubles(nodeBounds);
+        output.writeInts(childBegin);
+        output.writeInts(childEnd);
+        output.writeInts(itemOffsets);
+        output.writeBytes(itemBlob);
+    }
+
+    /**
+     * Reads a tree written by {@link #write(Output)}. Items stay encoded until queried.
+     */
+    public static PackedRtree read(Input input) {
+        final byte version = input.readByte();
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported PackedRtree version: " + version);
+        }
+
+        final PackedRtree tree = new PackedRtree(input.readInt());
+        tree.numItems = input.readInt();
+        tree.numNodes = input.readInt();
+        tree.numLeafNodes = input.readInt();
+        tree.itemBounds = input.readDoubles(4 * tree.numItems);
+        tree.nodeBounds = input.readDoubles(4 * tree.numNodes);
+        tree.childBegin = input.readInts(tree.numNodes);
+        tree.childEnd = input.readInts(tree.numNodes);
+        tree.itemOffsets = input.readInts(tree.numItems + 1);
+        tree.itemBlob = input.readBytes(tree.itemOffsets[tree.numItems]);
+        tree.items = new AtomicReferenceArray<>(tree.numItems);
+        tree.pendingBounds = null;
+        tree.pendingItems = null;
+        tree.built = true;
+        return tree;
+    }
+
+    private void encodeItems() {
+        final Kryo kryo = blobKryo.get();
+        final Output output = new Output(4096, -1);
+        final int[] offsets = new int[numItems + 1];
+        for (int i = 0; i < numItems; i++) {
+            offsets[i] = output.position();
+            final Object item = items.get(i);
+            if (!(item instanceof Geometry)) {
+                throw new UnsupportedOperationException("Cannot serialize PackedRtree item of type " + item.getClass().getName());
+            }
+            geometrySerde.write(kryo, output, item);
+        }
+        offsets[numItems] = output.position();
+        itemBlob = output.toBytes();
+        itemOffsets = offsets;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        final Output output = new Output(4096, -1);
+        write(output);
+        final byte[] bytes = output.toBytes();
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        final PackedRtree tree = read(new Input(bytes));
+        nodeCapacity = tree.nodeCapacity;
+        numItems = tree.numItems;
+        numNodes = tree.numNodes;
+        numLeafNodes = tree.numLeafNodes;
+        itemBounds = tree.itemBounds;
+        nodeBounds = tree.nodeBounds;
+        childBegin = tree.childBegin;
+        childEnd = tree.childEnd;
+        itemOffsets = tree.itemOffsets;
+        itemBlob = tree.itemBlob;
+        items = tree.items;
+        built = true;
+    }
+}
@@ -19,7 +19,9 @@ import org.apache.spark.TaskContext;
 import org.apache.spark.api.java.function.FlatMapFunction2;
 import org.datasyslab.geospark.enums.JoinBuildSide;
 import org.datasyslab.geospark.enums.IndexType;
+import org.datasyslab.geospark.index.PackedRtree;
 import org.datasyslab.geospark.monitoring.GeoSparkMetric;
+import org.datasyslab.geospark.utils.PreparedGeometryCache;
 
 import javax.annotation.Nullable;
 import java.io.Serializable;
@@ -43,6 +45,8 @@ public class DynamicIndexLookupJudgement<T extends Geometry, U extends Geometry>
     private final GeoSparkMetric streamCount;
     private final GeoSparkMetric resultCount;
     private final GeoSparkMetric candidateCount;
+    private final GeoSparkMetric preparedHitCount;
+    private final GeoSparkMetric preparedMissCount;
 
     /**
      * @see JudgementBase
@@ -55,6 +59,25 @@ public class DynamicIndexLookupJudgement<T extends Geometry, U extends Geometry>
                                        GeoSparkMetric streamCount,
                                        GeoSparkMetric resultCount,
                                        GeoSparkMetric candidateCount) {
+        this(considerBoundaryIntersection, indexType, joinBuildSide, dedupParams,
+            buildCount, streamCount, resultCount, candidateCount, null, null);
+    }
+
+    /**
+     * Geometries on the build side are refined using {@link PreparedGeometryCache}.
+     *
+     * @see JudgementBase
+     */
+    public DynamicIndexLookupJudgement(boolean considerBoundaryIntersection,
+                                       IndexType indexType,
+                                       JoinBuildSide joinBuildSide,
+                                       @Nullable DedupParams dedupParams,
+                                       GeoSparkMetric buildCount,
+                                       GeoSparkMetric streamCount,
+                                       GeoSparkMetric resultCount,
+                                       GeoSparkMetric candidateCount,
+                                       @Nullable GeoSparkMetric preparedHitCount,
+                                       @Nullable GeoSparkMetric preparedMissCount) {
         super(considerBoundaryIntersection, dedupParams);
         this.indexType = indexType;
         this.joinBuildSide = joinBuildSide;
@@ -62,6 +85,8 @@ public class DynamicIndexLookupJudgement<T extends Geometry, U extends Geometry>
         this.streamCount = streamCount;
         this.resultCount = resultCount;
         this.candidateCount = candidateCount;
+        this.preparedHitCount = preparedHitCount;
+        this.preparedMissCount = preparedMissCount;
     }
 
     @Override
@@ -79,6 +104,11 @@ public class DynamicIndexLookupJudgement<T extends Geometry, U extends Geometry>
 
         final boolean buildLeft = (joinBuildSide == JoinBuildSide.LEFT);
 
+        // Build side geometries are probed many times. Prepare the large ones.
+        usePreparedGeometries(
+            new PreparedGeometryCache(PreparedGeometryCache.DEFAULT_VERTEX_THRESHOLD, preparedHitCount, preparedMissCount),
+            buildLeft);
+
         final Iterator<? extends Geometry> buildShapes;
         final Iterator<? extends Geometry> streamShapes;
         if (buildLeft) {
@@ -195,6 +225,8 @@ public class DynamicIndexLookupJudgement<T extends Geometry, U extends Geometry>
                 return new STRtree();
             case QUADTREE:
                 return new Quadtree();
+            case PACKEDRTREE:
+                return new PackedRtree();
             default:
                 throw new IllegalArgumentException("Unsupported index type: " + indexType);
         }
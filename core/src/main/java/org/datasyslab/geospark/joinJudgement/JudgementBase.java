@@ -15,6 +15,7 @@ import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 import org.apache.spark.TaskContext;
 import org.datasyslab.geospark.utils.HalfOpenRectangle;
+import org.datasyslab.geospark.utils.PreparedGeometryCache;
 
 import javax.annotation.Nullable;
 import java.io.Serializable;
@@ -48,6 +49,9 @@ abstract class JudgementBase implements Serializable {
 
     transient private HalfOpenRectangle extent;
 
+    transient private PreparedGeometryCache preparedCache;
+    transient private boolean prepareLeft;
+
     /**
      * @param considerBoundaryIntersection true for 'intersects', false for 'contains' join condition
      * @param dedupParams Optional information to activate de-dup logic
@@ -79,6 +83,21 @@ abstract class JudgementBase implements Serializable {
         }
     }
 
+    /**
+     * Makes `match` evaluate the join condition using prepared versions of the geometries
+     * on one side of the join. Use for the side whose geometries are tested against
+     * many geometries of the other side, e.g. the side an index is built on.
+     *
+     * Must be called before processing a partition with a cache created for that partition.
+     *
+     * @param cache Per-partition cache of prepared geometries
+     * @param prepareLeft true to prepare left geometries, false to prepare right geometries
+     */
+    protected void usePreparedGeometries(PreparedGeometryCache cache, boolean prepareLeft) {
+        this.preparedCache = cache;
+        this.prepareLeft = prepareLeft;
+    }
+
     protected boolean match(Geometry left, Geometry right) {
         if (extent != null) {
             // Handle easy case: points. Since each point is assigned to exactly one partition,
@@ -112,6 +131,17 @@ abstract class JudgementBase implements Serializable {
 
     private boolean geoMatch(Geometry left, Geometry right) {
         //log.warn("Check "+left.toText()+" with "+right.toText());
+        if (preparedCache != null) {
+            if (prepareLeft) {
+                return considerBoundaryIntersection ? preparedCache.intersects(left, right) : preparedCache.covers(left, right);
+            }
+
+            // 'intersects' is symmetric; 'covers' can't be evaluated by the right geometry
+            if (considerBoundaryIntersection) {
+                return preparedCache.intersects(right, left);
+            }
+        }
+
         return considerBoundaryIntersection ? left.intersects(right) : left.covers(right);
     }
 }
@@ -0,0 +1,225 @@
+/**
+ * FILE: PlaneSweepJudgement.java
+ * PATH: org.datasyslab.geospark.joinJudgement.PlaneSweepJudgement.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.joinJudgement;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.apache.spark.TaskContext;
+import org.apache.spark.api.java.function.FlatMapFunction2;
+import org.datasyslab.geospark.monitoring.GeoSparkMetric;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.datasyslab.geospark.utils.TimeUtils.elapsedSince;
+
+/**
+ * Partition level join which doesn't build any index. Both sides are sorted by the minimum
+ * X of their envelopes and swept from left to right.
+ *
+ * At every step the sweep takes the shape with the smallest minimum X among the two sides
+ * and scans forward on the other side while the shapes there start before this shape ends.
+ * These shapes form the active list of the current shape: their X-ranges overlap by
+ * construction, so only the Y-ranges need to be checked before running the exact
+ * `match`. Each pair of shapes with intersecting envelopes is visited exactly once.
+ *
+ * Sorting is O(n log n) and doesn't allocate per-shape index nodes, which makes this
+ * judgement cheaper than {@link DynamicIndexLookupJudgement} when both sides are of
+ * comparable size and each shape is probed only a few times.
+ */
+public class PlaneSweepJudgement<T extends Geometry, U extends Geometry>
+        extends JudgementBase
+        implements FlatMapFunction2<Iterator<U>, Iterator<T>, Pair<U, T>>, Serializable {
+
+    private static final Logger log = LogManager.getLogger(PlaneSweepJudgement.class);
+
+    private final GeoSparkMetric buildCount;
+    private final GeoSparkMetric streamCount;
+    private final GeoSparkMetric resultCount;
+    private final GeoSparkMetric candidateCount;
+
+    /**
+     * @see JudgementBase
+     */
+    public PlaneSweepJudgement(boolean considerBoundaryIntersection,
+                               @Nullable DedupParams dedupParams,
+                               GeoSparkMetric buildCount,
+                               GeoSparkMetric streamCount,
+                               GeoSparkMetric resultCount,
+                               GeoSparkMetric candidateCount) {
+        super(considerBoundaryIntersection, dedupParams);
+        this.buildCount = buildCount;
+        this.streamCount = streamCount;
+        this.resultCount = resultCount;
+        this.candidateCount = candidateCount;
+    }
+
+    @Override
+    public Iterator<Pair<U, T>> call(final Iterator<U> leftShapes, final Iterator<T> rightShapes) throws Exception {
+
+        if (!leftShapes.hasNext() || !rightShapes.hasNext()) {
+            buildCount.add(0);
+            streamCount.add(0);
+            resultCount.add(0);
+            candidateCount.add(0);
+            return Collections.emptyIterator();
+        }
+
+        initPartition();
+
+        final long startTime = System.currentTimeMillis();
+        final SortedShapes left = new SortedShapes(leftShapes);
+        final SortedShapes right = new SortedShapes(rightShapes);
+        log("Sorted %d left and %d right shapes in %d ms", left.size(), right.size(), elapsedSince(startTime));
+        buildCount.add(left.size());
+        streamCount.add(right.size());
+
+        return new Iterator<Pair<U, T>>() {
+            // Next unprocessed shape on each side
+            private int leftIndex = 0;
+            private int rightIndex = 0;
+
+            // A batch of pre-computed matches
+            private final List<Pair<U, T>> batch = new ArrayList<>();
+            // An index of the element from 'batch' to return next
+            private int nextIndex = 0;
+
+            @Override
+            public boolean hasNext() {
+                return nextIndex < batch.size() || populateNextBatch();
+            }
+
+            @Override
+            public Pair<U, T> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return batch.get(nextIndex++);
+            }
+
+            private boolean populateNextBatch() {
+                batch.clear();
+                nextIndex = 0;
+
+                while (leftIndex < left.size() && rightIndex < right.size()) {
+                    if (left.minX[leftIndex] <= right.minX[rightIndex]) {
+                        scanRight(leftIndex);
+                        leftIndex++;
+                    } else {
+                        scanLeft(rightIndex);
+                        rightIndex++;
+                    }
+
+                    if (!batch.isEmpty()) {
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+
+            // Matches left shape i against the right shapes starting before it ends
+            private void scanRight(int i) {
+                final double maxX = left.maxX[i];
+                for (int j = rightIndex; j < right.size() && right.minX[j] <= maxX; j++) {
+                    if (left.overlapsY(i, right, j)) {
+                        check(left.shapes[i], right.shapes[j]);
+                    }
+                }
+            }
+
+            // Matches right shape j against the left shapes starting before it ends
+            private void scanLeft(int j) {
+                final double maxX = right.maxX[j];
+                for (int i = leftIndex; i < left.size() && left.minX[i] <= maxX; i++) {
+                    if (left.overlapsY(i, right, j)) {
+                        check(left.shapes[i], right.shapes[j]);
+                    }
+                }
+            }
+
+            private void check(Geometry leftShape, Geometry rightShape) {
+                candidateCount.add(1);
+                if (match(leftShape, rightShape)) {
+                    batch.add(Pair.of((U) leftShape, (T) rightShape));
+                    resultCount.add(1);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Shapes sorted by the minimum X of their envelopes. Envelope bounds are copied
+     * into primitive arrays to keep the sweep loops free of pointer chasing.
+     */
+    private static final class SortedShapes {
+        private final Geometry[] shapes;
+        private final double[] minX;
+        private final double[] maxX;
+        private final double[] minY;
+        private final double[] maxY;
+
+        SortedShapes(Iterator<? extends Geometry> geometries) {
+            final List<Geometry> list = new ArrayList<>();
+            while (geometries.hasNext()) {
+                list.add(geometries.next());
+            }
+
+            shapes = list.toArray(new Geometry[list.size()]);
+            Arrays.sort(shapes, new Comparator<Geometry>() {
+                @Override
+                public int compare(Geometry g1, Geometry g2) {
+                    return Double.compare(g1.getEnvelopeInternal().getMinX(), g2.getEnvelopeInternal().getMinX());
+                }
+            });
+
+            minX = new double[shapes.length];
+            maxX = new double[shapes.length];
+            minY = new double[shapes.length];
+            maxY = new double[shapes.length];
+            for (int i = 0; i < shapes.length; i++) {
+                final Envelope envelope = shapes[i].getEnvelopeInternal();
+                minX[i] = envelope.getMinX();
+                maxX[i] = envelope.getMaxX();
+                minY[i] = envelope.getMinY();
+                maxY[i] = envelope.getMaxY();
+            }
+        }
+
+        int size() {
+            return shapes.length;
+        }
+
+        boolean overlapsY(int i, SortedShapes other, int j) {
+            return minY[i] <= other.maxY[j] && other.minY[j] <= maxY[i];
+        }
+    }
+
+    private void log(String message, Object...params) {
+        if (Level.INFO.isGreaterOrEqual(log.getEffectiveLevel())) {
+            final int partitionId = TaskContext.getPartitionId();
+            final long threadId = Thread.currentThread().getId();
+            log.info("[" + threadId + ", PID=" + partitionId + "] " + String.format(message, params));
+        }
+    }
+}
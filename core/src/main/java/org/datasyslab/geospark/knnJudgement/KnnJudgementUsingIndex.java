@@ -54,7 +54,7 @@ public class KnnJudgementUsingIndex<U extends Geometry, T extends Geometry> impl
 		}
 		else
 		{
-			throw new Exception("[KnnJudgementUsingIndex][Call] QuadTree index doesn't support KNN search.");
+			throw new Exception("[KnnJudgementUsingIndex][Call] Only RTREE index supports KNN search.");
 		}
 		List<T> result = new ArrayList();
 		for(int i=0;i<localK.length;i++)
@@ -0,0 +1,99 @@
+/**
+ * FILE: BatchJudgementBase.java
+ * PATH: org.datasyslab.geospark.rangeJudgement.BatchJudgementBase.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.rangeJudgement;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.SpatialIndex;
+import org.apache.spark.broadcast.Broadcast;
+import org.datasyslab.geospark.monitoring.GeoSparkMetric;
+import org.datasyslab.geospark.utils.PreparedGeometryCache;
+import scala.Tuple2;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Base class for range queries which evaluate many query windows at once.
+ *
+ * The windows are broadcast as a spatial index whose items are the window geometries.
+ * The user data of each window holds its id: the position of the window in the
+ * list passed to {@link org.datasyslab.geospark.spatialOperator.RangeQuery#BatchSpatialRangeQuery}.
+ *
+ * An object matches a window if the window covers the object, or intersects it
+ * when considerBoundaryIntersection is true.
+ */
+public abstract class BatchJudgementBase<T extends Geometry> implements Serializable {
+
+    private static final Envelope EVERYWHERE = new Envelope(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+        Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+
+    private final Broadcast<SpatialIndex> windowIndex;
+    private final boolean considerBoundaryIntersection;
+    private final GeoSparkMetric preparedHitCount;
+    private final GeoSparkMetric preparedMissCount;
+
+    // Windows are tested against many objects. Prepare each of them once per task.
+    transient private PreparedGeometryCache preparedCache;
+
+    /**
+     * @param windowIndex index of the query windows, see class comment
+     * @param considerBoundaryIntersection the consider boundary intersection
+     * @param preparedHitCount counts the tests which reused a prepared query window
+     * @param preparedMissCount counts the preparations of query windows
+     */
+    protected BatchJudgementBase(Broadcast<SpatialIndex> windowIndex, boolean considerBoundaryIntersection,
+                                 @Nullable GeoSparkMetric preparedHitCount, @Nullable GeoSparkMetric preparedMissCount)
+    {
+        this.windowIndex = windowIndex;
+        this.considerBoundaryIntersection = considerBoundaryIntersection;
+        this.preparedHitCount = preparedHitCount;
+        this.preparedMissCount = preparedMissCount;
+    }
+
+    /**
+     * Must be called before processing a partition.
+     */
+    protected void initPartition()
+    {
+        preparedCache = new PreparedGeometryCache(PreparedGeometryCache.DEFAULT_VERTEX_THRESHOLD, preparedHitCount, preparedMissCount);
+    }
+
+    /**
+     * Returns all the query windows.
+     */
+    protected List<Geometry> getWindows()
+    {
+        return windowIndex.value().query(EVERYWHERE);
+    }
+
+    /**
+     * Adds a (window id, object) pair to the results for every window which matches the object.
+     */
+    protected void matchWindows(T spatialObject, List<Tuple2<Integer, T>> results)
+    {
+        final List<Geometry> windows = windowIndex.value().query(spatialObject.getEnvelopeInternal());
+        for (Geometry window : windows) {
+            if (match(window, spatialObject)) {
+                results.add(new Tuple2<>(getWindowId(window), spatialObject));
+            }
+        }
+    }
+
+    protected boolean match(Geometry window, Geometry spatialObject)
+    {
+        return considerBoundaryIntersection
+            ? preparedCache.intersects(window, spatialObject)
+            : preparedCache.covers(window, spatialObject);
+    }
+
+    protected static int getWindowId(Geometry window)
+    {
+        return (Integer) window.getUserData();
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * FILE: BatchRangeFilter.java
+ * PATH: org.datasyslab.geospark.rangeJudgement.BatchRangeFilter.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.rangeJudgement;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.SpatialIndex;
+import org.apache.spark.api.java.function.PairFlatMapFunction;
+import org.apache.spark.broadcast.Broadcast;
+import org.datasyslab.geospark.monitoring.GeoSparkMetric;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Matches every object of a partition against all the query windows by probing the window index.
+ */
+public class BatchRangeFilter<T extends Geometry> extends BatchJudgementBase<T>
+    implements PairFlatMapFunction<Iterator<T>, Integer, T> {
+
+    public BatchRangeFilter(Broadcast<SpatialIndex> windowIndex, boolean considerBoundaryIntersection,
+                            GeoSparkMetric preparedHitCount, GeoSparkMetric preparedMissCount) {
+        super(windowIndex, considerBoundaryIntersection, preparedHitCount, preparedMissCount);
+    }
+
+    @Override
+    public Iterator<Tuple2<Integer, T>> call(final Iterator<T> spatialObjects) throws Exception {
+        initPartition();
+
+        return new Iterator<Tuple2<Integer, T>>() {
+            // Matches of the last object which had any
+            private final List<Tuple2<Integer, T>> batch = new ArrayList<>();
+            // An index of the element from 'batch' to return next
+            private int nextIndex = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (nextIndex >= batch.size()) {
+                    if (!spatialObjects.hasNext()) {
+                        return false;
+                    }
+                    batch.clear();
+                    nextIndex = 0;
+                    matchWindows(spatialObjects.next(), batch);
+                }
+                return true;
+            }
+
+            @Override
+            public Tuple2<Integer, T> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return batch.get(nextIndex++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
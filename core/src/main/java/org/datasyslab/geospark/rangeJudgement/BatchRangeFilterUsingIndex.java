@@ -0,0 +1,50 @@
+/**
+ * FILE: BatchRangeFilterUsingIndex.java
+ * PATH: org.datasyslab.geospark.rangeJudgement.BatchRangeFilterUsingIndex.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.rangeJudgement;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.SpatialIndex;
+import org.apache.spark.api.java.function.PairFlatMapFunction;
+import org.apache.spark.broadcast.Broadcast;
+import org.datasyslab.geospark.monitoring.GeoSparkMetric;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Matches all the query windows against the index of a partition.
+ */
+public class BatchRangeFilterUsingIndex<T extends Geometry> extends BatchJudgementBase<T>
+    implements PairFlatMapFunction<Iterator<SpatialIndex>, Integer, T> {
+
+    public BatchRangeFilterUsingIndex(Broadcast<SpatialIndex> windowIndex, boolean considerBoundaryIntersection,
+                                      GeoSparkMetric preparedHitCount, GeoSparkMetric preparedMissCount) {
+        super(windowIndex, considerBoundaryIntersection, preparedHitCount, preparedMissCount);
+    }
+
+    @Override
+    public Iterator<Tuple2<Integer, T>> call(Iterator<SpatialIndex> treeIndexes) throws Exception {
+        initPartition();
+
+        final List<Tuple2<Integer, T>> results = new ArrayList<>();
+        while (treeIndexes.hasNext()) {
+            final SpatialIndex treeIndex = treeIndexes.next();
+            for (Geometry window : getWindows()) {
+                final int windowId = getWindowId(window);
+                final List<T> candidates = treeIndex.query(window.getEnvelopeInternal());
+                for (T candidate : candidates) {
+                    if (match(window, candidate)) {
+                        results.add(new Tuple2<>(windowId, candidate));
+                    }
+                }
+            }
+        }
+        return results.iterator();
+    }
+}
@@ -3,7 +3,10 @@ package org.datasyslab.geospark.rangeJudgement;
 import com.vividsolutions.jts.geom.Geometry;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
+import org.datasyslab.geospark.monitoring.GeoSparkMetric;
+import org.datasyslab.geospark.utils.PreparedGeometryCache;
 
+import javax.annotation.Nullable;
 import java.io.Serializable;
 
 public class JudgementBase<U extends Geometry> implements Serializable {
@@ -12,6 +15,11 @@ public class JudgementBase<U extends Geometry> implements Serializable {
     private boolean considerBoundaryIntersection;
     U queryGeometry;
     protected boolean leftCoveredByRight = true;
+    private final GeoSparkMetric preparedHitCount;
+    private final GeoSparkMetric preparedMissCount;
+
+    // The query geometry is tested against every object. Prepare it once per task.
+    transient private PreparedGeometryCache preparedCache;
 
     /**
      * Instantiates a new range filter using index.
@@ -20,12 +28,39 @@ public class JudgementBase<U extends Geometry> implements Serializable {
      * @param considerBoundaryIntersection the consider boundary intersection
      */
     public JudgementBase(U queryWindow,boolean considerBoundaryIntersection, boolean leftCoveredByRight)
+    {
+        this(queryWindow, considerBoundaryIntersection, leftCoveredByRight, null, null);
+    }
+
+    /**
+     * Instantiates a new range filter which reports prepared geometry usage.
+     *
+     * @param queryWindow the query window
+     * @param considerBoundaryIntersection the consider boundary intersection
+     * @param preparedHitCount counts the tests which reused the prepared query window
+     * @param preparedMissCount counts the preparations of the query window
+     */
+    public JudgementBase(U queryWindow, boolean considerBoundaryIntersection, boolean leftCoveredByRight,
+                         @Nullable GeoSparkMetric preparedHitCount, @Nullable GeoSparkMetric preparedMissCount)
     {
         this.considerBoundaryIntersection=considerBoundaryIntersection;
         this.queryGeometry=queryWindow;
         this.leftCoveredByRight = leftCoveredByRight;
+        this.preparedHitCount = preparedHitCount;
+        this.preparedMissCount = preparedMissCount;
     }
+
     public boolean match(Geometry spatialObject, Geometry queryWindow) {
+        // Only the query geometry is prepared. Caching the objects would hold on to the whole partition.
+        if (queryWindow == queryGeometry) {
+            if (preparedCache == null) {
+                preparedCache = new PreparedGeometryCache(PreparedGeometryCache.DEFAULT_VERTEX_THRESHOLD, preparedHitCount, preparedMissCount);
+            }
+            return considerBoundaryIntersection
+                ? preparedCache.intersects(queryWindow, spatialObject)
+                : preparedCache.covers(queryWindow, spatialObject);
+        }
+
         if(considerBoundaryIntersection)
         {
             if(queryWindow.intersects(spatialObject)) return true;
@@ -8,6 +8,7 @@ package org.datasyslab.geospark.rangeJudgement;
 
 import com.vividsolutions.jts.geom.Geometry;
 import org.apache.spark.api.java.function.Function;
+import org.datasyslab.geospark.monitoring.GeoSparkMetric;
 
 
 // TODO: Auto-generated Javadoc
@@ -18,6 +19,11 @@ public class RangeFilter<U extends Geometry, T extends Geometry> extends Judgeme
 		super(queryWindow, considerBoundaryIntersection, leftCoveredByRight);
 	}
 
+	public RangeFilter(U queryWindow, boolean considerBoundaryIntersection, boolean leftCoveredByRight,
+			GeoSparkMetric preparedHitCount, GeoSparkMetric preparedMissCount) {
+		super(queryWindow, considerBoundaryIntersection, leftCoveredByRight, preparedHitCount, preparedMissCount);
+	}
+
 
 	/* (non-Javadoc)
          * @see org.apache.spark.api.java.function.Function#call(java.lang.Object)
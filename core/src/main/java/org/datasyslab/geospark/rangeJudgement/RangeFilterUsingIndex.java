@@ -9,6 +9,7 @@ package org.datasyslab.geospark.rangeJudgement;
 import com.vividsolutions.jts.geom.*;
 import com.vividsolutions.jts.index.SpatialIndex;
 import org.apache.spark.api.java.function.FlatMapFunction;
+import org.datasyslab.geospark.monitoring.GeoSparkMetric;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -21,6 +22,12 @@ public class RangeFilterUsingIndex<U extends Geometry, T extends Geometry> exten
 	public RangeFilterUsingIndex(U queryWindow, boolean considerBoundaryIntersection, boolean leftCoveredByRight) {
 		super(queryWindow, considerBoundaryIntersection, leftCoveredByRight);
 	}
+
+	public RangeFilterUsingIndex(U queryWindow, boolean considerBoundaryIntersection, boolean leftCoveredByRight,
+			GeoSparkMetric preparedHitCount, GeoSparkMetric preparedMissCount) {
+		super(queryWindow, considerBoundaryIntersection, leftCoveredByRight, preparedHitCount, preparedMissCount);
+	}
+
 	/**
 	 * Call.
 	 *
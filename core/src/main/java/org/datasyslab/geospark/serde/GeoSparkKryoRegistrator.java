@@ -9,6 +9,7 @@ import org.apache.spark.serializer.KryoRegistrator;
 import org.datasyslab.geospark.geometryObjects.Circle;
 import org.datasyslab.geospark.geometryObjects.GeometrySerde;
 import org.datasyslab.geospark.geometryObjects.SpatialIndexSerde;
+import org.datasyslab.geospark.index.PackedRtree;
 
 public class GeoSparkKryoRegistrator implements KryoRegistrator {
 
@@ -33,5 +34,6 @@ public class GeoSparkKryoRegistrator implements KryoRegistrator {
         // TODO: Replace the default serializer with default spatial index serializer
         kryo.register(Quadtree.class, indexSerializer);
         kryo.register(STRtree.class, indexSerializer);
+        kryo.register(PackedRtree.class, indexSerializer);
     }
 }
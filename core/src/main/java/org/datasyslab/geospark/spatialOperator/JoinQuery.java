@@ -24,6 +24,7 @@ import org.datasyslab.geospark.joinJudgement.DedupParams;
 import org.datasyslab.geospark.joinJudgement.DynamicIndexLookupJudgement;
 import org.datasyslab.geospark.joinJudgement.LeftIndexLookupJudgement;
 import org.datasyslab.geospark.joinJudgement.NestedLoopJudgement;
+import org.datasyslab.geospark.joinJudgement.PlaneSweepJudgement;
 import org.datasyslab.geospark.joinJudgement.RightIndexLookupJudgement;
 import org.datasyslab.geospark.monitoring.GeoSparkMetric;
 import org.datasyslab.geospark.monitoring.GeoSparkMetrics;
@@ -116,13 +117,23 @@ public class JoinQuery {
         public final boolean allowDuplicates;
         public final IndexType indexType;
         public final JoinBuildSide joinBuildSide;
+        /**
+         * Sort both sides of each partition and join them using a plane sweep instead of
+         * a nested loop. Only used if {@code useIndex} is false.
+         */
+        public final boolean usePlaneSweep;
 
         public JoinParams(boolean useIndex, boolean considerBoundaryIntersection, boolean allowDuplicates) {
+            this(useIndex, considerBoundaryIntersection, allowDuplicates, false);
+        }
+
+        public JoinParams(boolean useIndex, boolean considerBoundaryIntersection, boolean allowDuplicates, boolean usePlaneSweep) {
             this.useIndex = useIndex;
             this.considerBoundaryIntersection = considerBoundaryIntersection;
             this.allowDuplicates = allowDuplicates;
             this.indexType = IndexType.RTREE;
             this.joinBuildSide = JoinBuildSide.RIGHT;
+            this.usePlaneSweep = usePlaneSweep;
         }
 
         public JoinParams(boolean considerBoundaryIntersection, IndexType polygonIndexType, JoinBuildSide joinBuildSide) {
@@ -131,6 +142,7 @@ public class JoinQuery {
             this.allowDuplicates = false;
             this.indexType = polygonIndexType;
             this.joinBuildSide = joinBuildSide;
+            this.usePlaneSweep = false;
         }
     }
 
@@ -413,6 +425,8 @@ public class JoinQuery {
         GeoSparkMetric streamCount = GeoSparkMetrics.createMetric(sparkContext, "streamCount");
         GeoSparkMetric resultCount = GeoSparkMetrics.createMetric(sparkContext, "resultCount");
         GeoSparkMetric candidateCount = GeoSparkMetrics.createMetric(sparkContext, "candidateCount");
+        GeoSparkMetric preparedHitCount = GeoSparkMetrics.createMetric(sparkContext, "preparedHitCount");
+        GeoSparkMetric preparedMissCount = GeoSparkMetrics.createMetric(sparkContext, "preparedMissCount");
 
         final SpatialPartitioner partitioner =
                 (SpatialPartitioner) rightRDD.spatialPartitionedRDD.partitioner().get();
@@ -436,7 +450,8 @@ public class JoinQuery {
                         joinParams.indexType,
                         joinParams.joinBuildSide,
                         dedupParams,
-                        buildCount, streamCount, resultCount, candidateCount);
+                        buildCount, streamCount, resultCount, candidateCount,
+                        preparedHitCount, preparedMissCount);
                 resultWithDuplicates = leftRDD.spatialPartitionedRDD.zipPartitions(rightRDD.spatialPartitionedRDD, judgement);
             }
         }/*
@@ -450,6 +465,14 @@ public class JoinQuery {
                     buildCount, streamCount, resultCount, candidateCount);
             resultWithDuplicates = leftRDD.spatialPartitionedRDD.zipPartitions(rightRDD.spatialPartitionedRDD, judgement);
         }*/
+        else if (joinParams.usePlaneSweep) {
+            PlaneSweepJudgement judgement =
+                new PlaneSweepJudgement(
+                    joinParams.considerBoundaryIntersection,
+                    dedupParams,
+                    buildCount, streamCount, resultCount, candidateCount);
+            resultWithDuplicates = leftRDD.spatialPartitionedRDD.zipPartitions(rightRDD.spatialPartitionedRDD, judgement);
+        }
         else {
             NestedLoopJudgement judgement = new NestedLoopJudgement(joinParams.considerBoundaryIntersection, dedupParams);
             resultWithDuplicates = rightRDD.spatialPartitionedRDD.zipPartitions(leftRDD.spatialPartitionedRDD, judgement);
@@ -7,9 +7,20 @@
 package org.datasyslab.geospark.spatialOperator;
 
 import java.io.Serializable;
+import java.util.List;
 
 import com.vividsolutions.jts.geom.*;
+import com.vividsolutions.jts.index.SpatialIndex;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import org.apache.spark.SparkContext;
+import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.broadcast.Broadcast;
+import org.datasyslab.geospark.monitoring.GeoSparkMetric;
+import org.datasyslab.geospark.monitoring.GeoSparkMetrics;
+import org.datasyslab.geospark.rangeJudgement.BatchRangeFilter;
+import org.datasyslab.geospark.rangeJudgement.BatchRangeFilterUsingIndex;
 import org.datasyslab.geospark.rangeJudgement.RangeFilter;
 import org.datasyslab.geospark.rangeJudgement.RangeFilterUsingIndex;
 import org.datasyslab.geospark.spatialRDD.*;
@@ -44,10 +55,14 @@ public class RangeQuery implements Serializable{
 			if(spatialRDD.indexedRawRDD == null) {
 				throw new Exception("[RangeQuery][SpatialRangeQuery] Index doesn't exist. Please build index on rawSpatialRDD.");
 			}
-			return spatialRDD.indexedRawRDD.mapPartitions(new RangeFilterUsingIndex(queryGeometry,considerBoundaryIntersection,true));
+			final SparkContext sparkContext = spatialRDD.indexedRawRDD.context();
+			return spatialRDD.indexedRawRDD.mapPartitions(new RangeFilterUsingIndex(queryGeometry,considerBoundaryIntersection,true,
+				createPreparedHitCount(sparkContext), createPreparedMissCount(sparkContext)));
 		}
 		else{
-			return spatialRDD.getRawSpatialRDD().filter(new RangeFilter(queryGeometry, considerBoundaryIntersection,true));
+			final SparkContext sparkContext = spatialRDD.getRawSpatialRDD().context();
+			return spatialRDD.getRawSpatialRDD().filter(new RangeFilter(queryGeometry, considerBoundaryIntersection,true,
+				createPreparedHitCount(sparkContext), createPreparedMissCount(sparkContext)));
 		}
 	}
 
@@ -120,10 +135,75 @@ public class RangeQuery implements Serializable{
 			if(spatialRDD.indexedRawRDD == null) {
 				throw new Exception("[RangeQuery][SpatialRangeQuery] Index doesn't exist. Please build index on rawSpatialRDD.");
 			}
-			return spatialRDD.indexedRawRDD.mapPartitions(new RangeFilterUsingIndex(queryGeometry,considerBoundaryIntersection,false));
+			final SparkContext sparkContext = spatialRDD.indexedRawRDD.context();
+			return spatialRDD.indexedRawRDD.mapPartitions(new RangeFilterUsingIndex(queryGeometry,considerBoundaryIntersection,false,
+				createPreparedHitCount(sparkContext), createPreparedMissCount(sparkContext)));
 		}
 		else{
-			return spatialRDD.getRawSpatialRDD().filter(new RangeFilter(queryGeometry, considerBoundaryIntersection,false));
+			final SparkContext sparkContext = spatialRDD.getRawSpatialRDD().context();
+			return spatialRDD.getRawSpatialRDD().filter(new RangeFilter(queryGeometry, considerBoundaryIntersection,false,
+				createPreparedHitCount(sparkContext), createPreparedMissCount(sparkContext)));
 		}
 	}
+
+	/**
+	 * Batch spatial range query. Evaluates all the query windows in a single pass over SpatialRDD
+	 * and returns (window id, object) pairs for every object covered/intersected by a window.
+	 * The window id is the position of the window in queryWindows.
+	 *
+	 * The windows are indexed on the driver and broadcast to the executors, so this is meant
+	 * for a moderate number of windows, e.g. the tiles of a dashboard.
+	 *
+	 * @param spatialRDD the spatial RDD
+	 * @param queryWindows the original query windows
+	 * @param considerBoundaryIntersection the consider boundary intersection
+	 * @param useIndex the use index
+	 * @return the java pair RDD
+	 * @throws Exception the exception
+	 */
+	public static <U extends Geometry, T extends Geometry> JavaPairRDD<Integer, T> BatchSpatialRangeQuery(SpatialRDD<T> spatialRDD, List<U> queryWindows, boolean considerBoundaryIntersection, boolean useIndex) throws Exception
+	{
+		if(useIndex==true && spatialRDD.indexedRawRDD == null) {
+			throw new Exception("[RangeQuery][BatchSpatialRangeQuery] Index doesn't exist. Please build index on rawSpatialRDD.");
+		}
+
+		final STRtree windowIndex = new STRtree();
+		for (int i = 0; i < queryWindows.size(); i++) {
+			final U originalQueryWindow = queryWindows.get(i);
+			final Geometry queryWindow;
+			if(spatialRDD.getCRStransformation())
+			{
+				queryWindow = CRSTransformation.Transform(spatialRDD.getSourceEpsgCode(),spatialRDD.getTargetEpgsgCode(), originalQueryWindow);
+			}
+			else {
+				// The user data carries the window id. Don't overwrite the caller's.
+				queryWindow = (Geometry) originalQueryWindow.clone();
+			}
+			queryWindow.setUserData(i);
+			windowIndex.insert(queryWindow.getEnvelopeInternal(), queryWindow);
+		}
+		windowIndex.build();
+
+		final SparkContext sparkContext = spatialRDD.getRawSpatialRDD().context();
+		final Broadcast<SpatialIndex> broadcastWindows = JavaSparkContext.fromSparkContext(sparkContext).broadcast((SpatialIndex) windowIndex);
+		if(useIndex==true)
+		{
+			return spatialRDD.indexedRawRDD.mapPartitionsToPair(new BatchRangeFilterUsingIndex<T>(broadcastWindows, considerBoundaryIntersection,
+				createPreparedHitCount(sparkContext), createPreparedMissCount(sparkContext)));
+		}
+		else{
+			return spatialRDD.getRawSpatialRDD().mapPartitionsToPair(new BatchRangeFilter<T>(broadcastWindows, considerBoundaryIntersection,
+				createPreparedHitCount(sparkContext), createPreparedMissCount(sparkContext)));
+		}
+	}
+
+	private static GeoSparkMetric createPreparedHitCount(SparkContext sparkContext)
+	{
+		return GeoSparkMetrics.createMetric(sparkContext, "rangequery", "preparedHitCount");
+	}
+
+	private static GeoSparkMetric createPreparedMissCount(SparkContext sparkContext)
+	{
+		return GeoSparkMetrics.createMetric(sparkContext, "rangequery", "preparedMissCount");
+	}
 }
@@ -0,0 +1,267 @@
+/**
+ * FILE: FlatGridIndex.java
+ * PATH: org.datasyslab.geospark.spatialPartitioning.FlatGridIndex.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.spatialPartitioning;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A static uniform bucket index over a fixed list of grid envelopes.
+ *
+ * The extent of all grids is divided into roughly sqrt(N) x sqrt(N) buckets and each
+ * bucket stores the IDs of the grids overlapping it in one packed int array. The index
+ * is built once and never modified, so it can be shipped with the partitioner and
+ * shared by all tasks.
+ *
+ * Lookups go through a reusable {@link OverlapIterator}. A grid spanning several buckets
+ * is reported only from the first bucket it shares with the query envelope, so the
+ * iterator never returns the same ID twice and doesn't need a hash set to de-dup.
+ */
+public final class FlatGridIndex implements Serializable {
+
+    private final double[] minX;
+    private final double[] maxX;
+    private final double[] minY;
+    private final double[] maxY;
+
+    // First bucket column and row covered by each grid
+    private final int[] firstColumn;
+    private final int[] firstRow;
+
+    private final double extentMinX;
+    private final double extentMaxX;
+    private final double extentMinY;
+    private final double extentMaxY;
+    private final double bucketWidth;
+    private final double bucketHeight;
+    private final int numColumns;
+    private final int numRows;
+
+    // Grid IDs of bucket b are stored in bucketEntries[bucketOffsets[b]..bucketOffsets[b+1])
+    private final int[] bucketOffsets;
+    private final int[] bucketEntries;
+
+    public FlatGridIndex(List<Envelope> grids) {
+        Objects.requireNonNull(grids, "grids");
+
+        final int numGrids = grids.size();
+        minX = new double[numGrids];
+        maxX = new double[numGrids];
+        minY = new double[numGrids];
+        maxY = new double[numGrids];
+        firstColumn = new int[numGrids];
+        firstRow = new int[numGrids];
+
+        final Envelope extent = new Envelope();
+        for (int i = 0; i < numGrids; i++) {
+            final Envelope grid = grids.get(i);
+            minX[i] = grid.getMinX();
+            maxX[i] = grid.getMaxX();
+            minY[i] = grid.getMinY();
+            maxY[i] = grid.getMaxY();
+            extent.expandToInclude(grid);
+        }
+
+        if (extent.isNull()) {
+            extentMinX = extentMinY = 0;
+            extentMaxX = extentMaxY = -1;
+            numColumns = numRows = 0;
+            bucketWidth = bucketHeight = 1;
+            bucketOffsets = new int[1];
+            bucketEntries = new int[0];
+            return;
+        }
+
+        extentMinX = extent.getMinX();
+        extentMaxX = extent.getMaxX();
+        extentMinY = extent.getMinY();
+        extentMaxY = extent.getMaxY();
+
+        final int side = Math.max(1, (int) Math.ceil(Math.sqrt(numGrids)));
+        numColumns = extent.getWidth() > 0 ? side : 1;
+        numRows = extent.getHeight() > 0 ? side : 1;
+        bucketWidth = extent.getWidth() > 0 ? extent.getWidth() / numColumns : 1;
+        bucketHeight = extent.getHeight() > 0 ? extent.getHeight() / numRows : 1;
+
+        // First pass: count grids per bucket
+        final int numBuckets = numColumns * numRows;
+        final int[] counts = new int[numBuckets];
+        for (int i = 0; i < numGrids; i++) {
+            firstColumn[i] = column(minX[i]);
+            firstRow[i] = row(minY[i]);
+            final int lastColumn = column(maxX[i]);
+            final int lastRow = row(maxY[i]);
+            for (int c = firstColumn[i]; c <= lastColumn; c++) {
+                for (int r = firstRow[i]; r <= lastRow; r++) {
+                    counts[c * numRows + r]++;
+                }
+            }
+        }
+
+        bucketOffsets = new int[numBuckets + 1];
+        for (int b = 0; b < numBuckets; b++) {
+            bucketOffsets[b + 1] = bucketOffsets[b] + counts[b];
+        }
+
+        // Second pass: fill the buckets
+        bucketEntries = new int[bucketOffsets[numBuckets]];
+        final int[] cursors = new int[numBuckets];
+        System.arraycopy(bucketOffsets, 0, cursors, 0, numBuckets);
+        for (int i = 0; i < numGrids; i++) {
+            final int lastColumn = column(maxX[i]);
+            final int lastRow = row(maxY[i]);
+            for (int c = firstColumn[i]; c <= lastColumn; c++) {
+                for (int r = firstRow[i]; r <= lastRow; r++) {
+                    bucketEntries[cursors[c * numRows + r]++] = i;
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return minX.length;
+    }
+
+    /**
+     * Returns true if the grid with the specified ID covers the envelope.
+     * Same semantics as {@link Envelope#covers(Envelope)}.
+     */
+    public boolean covers(int gridId, Envelope envelope) {
+        return envelope.getMinX() >= minX[gridId] && envelope.getMaxX() <= maxX[gridId]
+            && envelope.getMinY() >= minY[gridId] && envelope.getMaxY() <= maxY[gridId];
+    }
+
+    /**
+     * Creates a new iterator. Iterators are not thread-safe, but can be reused for
+     * any number of lookups via {@link OverlapIterator#reset(Envelope)}.
+     */
+    public OverlapIterator newIterator() {
+        return new OverlapIterator();
+    }
+
+    private int column(double x) {
+        return clamp((int) Math.floor((x - extentMinX) / bucketWidth), numColumns);
+    }
+
+    private int row(double y) {
+        return clamp((int) Math.floor((y - extentMinY) / bucketHeight), numRows);
+    }
+
+    private static int clamp(int value, int count) {
+        if (value < 0) {
+            return 0;
+        }
+        return value >= count ? count - 1 : value;
+    }
+
+    private boolean intersects(int gridId, double qMinX, double qMaxX, double qMinY, double qMaxY) {
+        return !(qMinX > maxX[gridId] || qMaxX < minX[gridId]
+            || qMinY > maxY[gridId] || qMaxY < minY[gridId]);
+    }
+
+    /**
+     * Iterates over IDs of the grids intersecting a query envelope. Same semantics as
+     * {@link Envelope#intersects(Envelope)}. Doesn't allocate anything after construction.
+     */
+    public final class OverlapIterator {
+        private double qMinX;
+        private double qMaxX;
+        private double qMinY;
+        private double qMaxY;
+
+        private int startColumn;
+        private int endColumn;
+        private int startRow;
+        private int endRow;
+
+        private int column;
+        private int row;
+        private int position;
+        private int end;
+
+        private int next = -1;
+
+        private OverlapIterator() {
+        }
+
+        public void reset(Envelope envelope) {
+            next = -1;
+            if (envelope.isNull() || numColumns == 0
+                || envelope.getMinX() > extentMaxX || envelope.getMaxX() < extentMinX
+                || envelope.getMinY() > extentMaxY || envelope.getMaxY() < extentMinY) {
+                // Nothing to visit
+                column = endColumn = 0;
+                row = endRow = 0;
+                position = end = 0;
+                return;
+            }
+
+            qMinX = envelope.getMinX();
+            qMaxX = envelope.getMaxX();
+            qMinY = envelope.getMinY();
+            qMaxY = envelope.getMaxY();
+
+            startColumn = column(qMinX);
+            endColumn = column(qMaxX);
+            startRow = row(qMinY);
+            endRow = row(qMaxY);
+
+            column = startColumn;
+            row = startRow;
+            final int bucket = column * numRows + row;
+            position = bucketOffsets[bucket];
+            end = bucketOffsets[bucket + 1];
+            advance();
+        }
+
+        public boolean hasNext() {
+            return next >= 0;
+        }
+
+        public int next() {
+            if (next < 0) {
+                throw new NoSuchElementException();
+            }
+            final int result = next;
+            advance();
+            return result;
+        }
+
+        private void advance() {
+            next = -1;
+            while (true) {
+                while (position < end) {
+                    final int gridId = bucketEntries[position++];
+                    // Report the grid only from the first bucket shared with the query
+                    if (Math.max(firstColumn[gridId], startColumn) == column
+                        && Math.max(firstRow[gridId], startRow) == row
+                        && intersects(gridId, qMinX, qMaxX, qMinY, qMaxY)) {
+                        next = gridId;
+                        return;
+                    }
+                }
+
+                if (row < endRow) {
+                    row++;
+                } else if (column < endColumn) {
+                    column++;
+                    row = startRow;
+                } else {
+                    return;
+                }
+
+                final int bucket = column * numRows + row;
+                position = bucketOffsets[bucket];
+                end = bucketOffsets[bucket + 1];
+            }
+        }
+    }
+}
@@ -13,20 +13,26 @@ import org.datasyslab.geospark.joinJudgement.DedupParams;
 import scala.Tuple2;
 
 import javax.annotation.Nullable;
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
-import java.util.Set;
 
 public class FlatGridPartitioner extends SpatialPartitioner {
+    // Built once on the driver and shipped together with the grids
+    private final FlatGridIndex gridIndex;
+
+    // Lookup iterators are not thread-safe; keep one per thread
+    transient private volatile ThreadLocal<FlatGridIndex.OverlapIterator> overlapIterators;
+
     public FlatGridPartitioner(GridType gridType, List<Envelope> grids) {
         super(gridType, grids);
+        this.gridIndex = new FlatGridIndex(grids);
     }
 
     // For backwards compatibility (see SpatialRDD.spatialPartitioning(otherGrids))
     public FlatGridPartitioner(List<Envelope> grids) {
-        super(null, grids);
+        this(null, grids);
     }
 
     @Override
@@ -39,16 +45,19 @@ public class FlatGridPartitioner extends SpatialPartitioner {
 
         final Envelope envelope = spatialObject.getEnvelopeInternal();
 
-        Set<Tuple2<Integer, T>> result = new HashSet();
+        // Only visit the grids whose buckets overlap the envelope. Each grid ID is
+        // returned at most once, hence a list is enough to hold the results.
+        final FlatGridIndex.OverlapIterator overlaps = getOverlapIterator();
+        overlaps.reset(envelope);
+
+        final List<Tuple2<Integer, T>> result = new ArrayList<>(2);
         boolean containFlag = false;
-        for (int i=0; i<grids.size(); i++) {
-            final Envelope grid = grids.get(i);
-            if(grid.covers(envelope)) {
-                result.add(new Tuple2(i, spatialObject));
+        while (overlaps.hasNext()) {
+            final int i = overlaps.next();
+            if(gridIndex.covers(i, envelope)) {
                 containFlag=true;
-            } else if(grid.intersects(envelope) || envelope.covers(grid)) {
-                result.add(new Tuple2<>(i, spatialObject));
             }
+            result.add(new Tuple2<>(i, spatialObject));
         }
 
         if(!containFlag) {
@@ -58,6 +67,25 @@ public class FlatGridPartitioner extends SpatialPartitioner {
         return result.iterator();
     }
 
+    private FlatGridIndex.OverlapIterator getOverlapIterator() {
+        ThreadLocal<FlatGridIndex.OverlapIterator> iterators = overlapIterators;
+        if (iterators == null) {
+            synchronized (this) {
+                iterators = overlapIterators;
+                if (iterators == null) {
+                    iterators = new ThreadLocal<FlatGridIndex.OverlapIterator>() {
+                        @Override
+                        protected FlatGridIndex.OverlapIterator initialValue() {
+                            return gridIndex.newIterator();
+                        }
+                    };
+                    overlapIterators = iterators;
+                }
+            }
+        }
+        return iterators.get();
+    }
+
     @Nullable
     public DedupParams getDedupParams() {
         /**
@@ -1,6 +1,8 @@
 package org.datasyslab.geospark.spatialPartitioning;
 
 
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import com.vividsolutions.jts.geom.Envelope;
 
 import java.io.Serializable;
@@ -155,6 +157,108 @@ public class KDBTree implements Serializable {
         });
     }
 
+    /**
+     * Rebalances the leaves given the number of objects each of them received.
+     *
+     * Sibling leaves are merged if together they hold at most targetCount objects. A leaf
+     * with more than maxCount objects is split into about count / targetCount leaves
+     * by repeatedly halving the sample envelopes it holds, so the tree must still have
+     * its elements. Leaf IDs are reassigned afterwards.
+     *
+     * @param leafCounts number of objects per leaf ID, as assigned by {@link #assignLeafIds()}
+     * @param targetCount desired number of objects per leaf
+     * @param maxCount number of objects above which a leaf is split
+     */
+    public void rebalance(long[] leafCounts, long targetCount, long maxCount) {
+        rebalanceNode(leafCounts, Math.max(1, targetCount), maxCount);
+        assignLeafIds();
+    }
+
+    private long rebalanceNode(long[] leafCounts, long targetCount, long maxCount) {
+        if (isLeaf()) {
+            final long count = leafCounts[leafId];
+            if (count > maxCount) {
+                subdivide((int) Math.min(Integer.MAX_VALUE, (count + targetCount - 1) / targetCount));
+            }
+            return count;
+        }
+
+        final long count = children[0].rebalanceNode(leafCounts, targetCount, maxCount)
+            + children[1].rebalanceNode(leafCounts, targetCount, maxCount);
+        if (children[0].isLeaf() && children[1].isLeaf() && count <= targetCount) {
+            items.clear();
+            items.addAll(children[0].items);
+            items.addAll(children[1].items);
+            children = null;
+        }
+        return count;
+    }
+
+    /**
+     * Splits this leaf into about the given number of leaves by halving its items along
+     * the longer side. Stops early where the items can't be split any further.
+     */
+    private void subdivide(int parts) {
+        if (parts < 2 || !isLeaf() || items.size() < 2) {
+            return;
+        }
+
+        final boolean splitX = extent.getWidth() > extent.getHeight();
+        if (!split(splitX) && !split(!splitX)) {
+            return;
+        }
+
+        children[0].subdivide((parts + 1) / 2);
+        children[1].subdivide(parts / 2);
+    }
+
+    /**
+     * Writes the structure of the tree: extents and leaf IDs, but not the elements.
+     */
+    public void write(Output output) {
+        output.writeInt(maxItemsPerNode, true);
+        output.writeInt(maxLevels, true);
+        writeNode(output);
+    }
+
+    private void writeNode(Output output) {
+        output.writeDouble(extent.getMinX());
+        output.writeDouble(extent.getMaxX());
+        output.writeDouble(extent.getMinY());
+        output.writeDouble(extent.getMaxY());
+        if (isLeaf()) {
+            output.writeBoolean(true);
+            output.writeInt(leafId, true);
+        } else {
+            output.writeBoolean(false);
+            children[0].writeNode(output);
+            children[1].writeNode(output);
+        }
+    }
+
+    /**
+     * Reads a tree written by {@link #write(Output)}.
+     */
+    public static KDBTree read(Input input) {
+        final int maxItemsPerNode = input.readInt(true);
+        final int maxLevels = input.readInt(true);
+        return readNode(input, maxItemsPerNode, maxLevels, 0);
+    }
+
+    private static KDBTree readNode(Input input, int maxItemsPerNode, int maxLevels, int level) {
+        final Envelope extent = new Envelope(
+            input.readDouble(), input.readDouble(), input.readDouble(), input.readDouble());
+        final KDBTree tree = new KDBTree(maxItemsPerNode, maxLevels, level, extent);
+        if (input.readBoolean()) {
+            tree.leafId = input.readInt(true);
+        } else {
+            tree.children = new KDBTree[2];
+            tree.children[0] = readNode(input, maxItemsPerNode, maxLevels, level + 1);
+            tree.children[1] = readNode(input, maxItemsPerNode, maxLevels, level + 1);
+        }
+        return tree;
+    }
+
     private boolean split(boolean splitX) {
         final Comparator<Envelope> comparator = splitX ? new XComparator() : new YComparator();
         Collections.sort(items, comparator);
@@ -25,6 +25,10 @@ public class KDBTreePartitioner extends SpatialPartitioner {
         this.tree.dropElements();
     }
 
+    public KDBTree getTree() {
+        return tree;
+    }
+
     @Override
     public int numPartitions() {
         return grids.size();
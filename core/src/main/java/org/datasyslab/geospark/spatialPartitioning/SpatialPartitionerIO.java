@@ -0,0 +1,164 @@
+/**
+ * FILE: SpatialPartitionerIO.java
+ * PATH: org.datasyslab.geospark.spatialPartitioning.SpatialPartitionerIO.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.spatialPartitioning;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.datasyslab.geospark.enums.GridType;
+import org.datasyslab.geospark.spatialPartitioning.quadtree.QuadTreePartitioner;
+import org.datasyslab.geospark.spatialPartitioning.quadtree.StandardQuadTree;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Saves spatial partitioners to local or HDFS paths and loads them back, so that pipelines
+ * which partition the same datasets repeatedly can skip sampling and building the grids.
+ *
+ * Only the structure is stored: grids for flat grid partitioners, and the tree without its
+ * sample elements for Quad-Tree and KDB-Tree partitioners. De-dup parameters are derived
+ * from the leaf extents again when the partitioner is loaded.
+ */
+public final class SpatialPartitionerIO {
+
+    private static final int MAGIC = 0x47535054;
+    private static final byte VERSION = 1;
+
+    private static final byte FLAT_GRID = 0;
+    private static final byte QUADTREE = 1;
+    private static final byte KDBTREE = 2;
+
+    private SpatialPartitionerIO() {}
+
+    /**
+     * Saves the partitioner to a local or HDFS path, overwriting any existing file.
+     */
+    public static void save(SpatialPartitioner partitioner, String path, Configuration conf) throws IOException
+    {
+        final Path filePath = new Path(path);
+        final FileSystem fileSystem = filePath.getFileSystem(conf);
+        try (OutputStream stream = fileSystem.create(filePath, true)) {
+            final Output output = new Output(stream);
+            write(partitioner, output);
+            output.flush();
+        }
+    }
+
+    /**
+     * Loads a partitioner saved by {@link #save}.
+     *
+     * @param datasetBoundary boundary of the dataset to partition, or null to skip the check
+     * @throws IllegalArgumentException if the grids or the tree of the partitioner don't cover
+     * the dataset boundary
+     */
+    public static SpatialPartitioner load(String path, Configuration conf, @Nullable Envelope datasetBoundary)
+        throws IOException
+    {
+        final Path filePath = new Path(path);
+        final FileSystem fileSystem = filePath.getFileSystem(conf);
+        final SpatialPartitioner partitioner;
+        try (InputStream stream = fileSystem.open(filePath)) {
+            partitioner = read(new Input(stream));
+        }
+
+        if (datasetBoundary != null) {
+            checkBoundary(partitioner, datasetBoundary, path);
+        }
+        return partitioner;
+    }
+
+    /**
+     * Writes the partitioner in the binary format used by {@link #save}.
+     */
+    public static void write(SpatialPartitioner partitioner, Output output)
+    {
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+
+        if (partitioner instanceof KDBTreePartitioner) {
+            output.writeByte(KDBTREE);
+            ((KDBTreePartitioner) partitioner).getTree().write(output);
+        } else if (partitioner instanceof QuadTreePartitioner) {
+            output.writeByte(QUADTREE);
+            ((QuadTreePartitioner) partitioner).getQuadTree().write(output);
+        } else if (partitioner instanceof FlatGridPartitioner) {
+            output.writeByte(FLAT_GRID);
+            final GridType gridType = partitioner.getGridType();
+            output.writeString(gridType == null ? null : gridType.name());
+            final List<Envelope> grids = partitioner.getGrids();
+            output.writeInt(grids.size(), true);
+            for (Envelope grid : grids) {
+                output.writeDouble(grid.getMinX());
+                output.writeDouble(grid.getMaxX());
+                output.writeDouble(grid.getMinY());
+                output.writeDouble(grid.getMaxY());
+            }
+        } else {
+            throw new UnsupportedOperationException("Can't save partitioner of type " + partitioner.getClass().getName());
+        }
+    }
+
+    /**
+     * Reads a partitioner written by {@link #write}.
+     */
+    public static SpatialPartitioner read(Input input) throws IOException
+    {
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a saved spatial partitioner");
+        }
+
+        final byte version = input.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported spatial partitioner version: " + version);
+        }
+
+        final byte type = input.readByte();
+        switch (type) {
+            case KDBTREE:
+                return new KDBTreePartitioner(KDBTree.read(input));
+            case QUADTREE:
+                return new QuadTreePartitioner(StandardQuadTree.<Geometry>read(input));
+            case FLAT_GRID: {
+                final String gridType = input.readString();
+                final int size = input.readInt(true);
+                final List<Envelope> grids = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    grids.add(new Envelope(input.readDouble(), input.readDouble(), input.readDouble(), input.readDouble()));
+                }
+                return new FlatGridPartitioner(gridType == null ? null : GridType.valueOf(gridType), grids);
+            }
+            default:
+                throw new IOException("Unsupported spatial partitioner type: " + type);
+        }
+    }
+
+    private static void checkBoundary(SpatialPartitioner partitioner, Envelope datasetBoundary, String path)
+    {
+        final Envelope extent = new Envelope();
+        for (Envelope grid : partitioner.getGrids()) {
+            extent.expandToInclude(grid);
+        }
+
+        if (extent.covers(datasetBoundary)) {
+            return;
+        }
+
+        // Flat grids would send everything outside of the grids to the overflow partition,
+        // and trees have nowhere to put such objects, so neither is worth reusing.
+        throw new IllegalArgumentException("[GeoSpark][SpatialPartitionerIO] Partitioner loaded from " + path
+            + " covers " + extent + " which doesn't cover the dataset boundary " + datasetBoundary);
+    }
+}
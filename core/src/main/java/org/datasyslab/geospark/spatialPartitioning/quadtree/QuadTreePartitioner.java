@@ -64,6 +64,10 @@ public class QuadTreePartitioner extends SpatialPartitioner {
         return new DedupParams(grids);
     }
 
+    public StandardQuadTree<? extends Geometry> getQuadTree() {
+        return quadTree;
+    }
+
     @Override
     public int numPartitions() {
         return grids.size();
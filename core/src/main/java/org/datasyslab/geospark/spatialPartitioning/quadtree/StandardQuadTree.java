@@ -6,6 +6,8 @@
  */
 package org.datasyslab.geospark.spatialPartitioning.quadtree;
 
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import com.vividsolutions.jts.geom.Envelope;
 import org.apache.commons.lang3.mutable.MutableInt;
 
@@ -182,6 +184,59 @@ public class StandardQuadTree<T> implements Serializable {
         });
     }
 
+    /**
+     * Writes the structure of the tree: zones and partition IDs, but not the elements.
+     */
+    public void write(Output output) {
+        output.writeInt(maxItemsPerZone, true);
+        output.writeInt(maxLevel, true);
+        writeNode(output);
+    }
+
+    private void writeNode(Output output) {
+        output.writeDouble(zone.x);
+        output.writeDouble(zone.y);
+        output.writeDouble(zone.width);
+        output.writeDouble(zone.height);
+        output.writeInt(zone.partitionId);
+        output.writeInt(nodeNum, true);
+        output.writeBoolean(regions != null);
+        if (regions != null) {
+            for (StandardQuadTree<T> region : regions) {
+                region.writeNode(output);
+            }
+        }
+    }
+
+    /**
+     * Reads a tree written by {@link #write(Output)}.
+     */
+    public static <T> StandardQuadTree<T> read(Input input) {
+        final int maxItemsPerZone = input.readInt(true);
+        final int maxLevel = input.readInt(true);
+        return readNode(input, maxItemsPerZone, maxLevel, 0);
+    }
+
+    private static <T> StandardQuadTree<T> readNode(Input input, int maxItemsPerZone, int maxLevel, int level) {
+        final QuadRectangle zone = new QuadRectangle(
+            input.readDouble(), input.readDouble(), input.readDouble(), input.readDouble());
+        zone.partitionId = input.readInt();
+        final StandardQuadTree<T> tree = new StandardQuadTree<>(zone, level, maxItemsPerZone, maxLevel);
+        tree.nodeNum = input.readInt(true);
+        if (input.readBoolean()) {
+            tree.regions = newRegions();
+            for (int i = 0; i < tree.regions.length; i++) {
+                tree.regions[i] = readNode(input, maxItemsPerZone, maxLevel, level + 1);
+            }
+        }
+        return tree;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> StandardQuadTree<T>[] newRegions() {
+        return (StandardQuadTree<T>[]) new StandardQuadTree<?>[4];
+    }
+
     public List<T> getElements(QuadRectangle r) {
         int region = this.findRegion(r, false);
 
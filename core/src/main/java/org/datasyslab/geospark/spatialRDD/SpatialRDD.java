@@ -13,7 +13,10 @@ import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LinearRing;
 import com.vividsolutions.jts.geom.Polygon;
 import com.vividsolutions.jts.index.SpatialIndex;
+import org.apache.hadoop.io.compress.GzipCodec;
 import org.apache.log4j.Logger;
+import org.apache.spark.SparkContext;
+import org.apache.spark.TaskContext;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.function.FlatMapFunction;
 import org.apache.spark.api.java.function.Function;
@@ -23,6 +26,10 @@ import org.apache.spark.storage.StorageLevel;
 import org.apache.spark.util.random.SamplingUtils;
 import org.datasyslab.geospark.enums.GridType;
 import org.datasyslab.geospark.enums.IndexType;
+import org.datasyslab.geospark.formatMapper.geojson.GeoJsonEncoder;
+import org.datasyslab.geospark.joinJudgement.DedupParams;
+import org.datasyslab.geospark.monitoring.GeoSparkMetric;
+import org.datasyslab.geospark.monitoring.GeoSparkMetrics;
 import org.datasyslab.geospark.spatialPartitioning.EqualPartitioning;
 import org.datasyslab.geospark.spatialPartitioning.FlatGridPartitioner;
 import org.datasyslab.geospark.spatialPartitioning.HilbertPartitioning;
@@ -31,29 +38,28 @@ import org.datasyslab.geospark.spatialPartitioning.KDBTreePartitioner;
 import org.datasyslab.geospark.spatialPartitioning.QuadtreePartitioning;
 import org.datasyslab.geospark.spatialPartitioning.RtreePartitioning;
 import org.datasyslab.geospark.spatialPartitioning.SpatialPartitioner;
+import org.datasyslab.geospark.spatialPartitioning.SpatialPartitionerIO;
 import org.datasyslab.geospark.spatialPartitioning.VoronoiPartitioning;
 import org.datasyslab.geospark.spatialPartitioning.quadtree.QuadTreePartitioner;
 import org.datasyslab.geospark.spatialPartitioning.quadtree.StandardQuadTree;
 import org.datasyslab.geospark.spatialRddTool.IndexBuilder;
-import org.datasyslab.geospark.spatialRddTool.StatCalculator;
+import org.datasyslab.geospark.spatialRddTool.SampleStatCalculator;
+import org.datasyslab.geospark.utils.CRSTransformCache;
+import org.datasyslab.geospark.utils.GeometryFingerprint;
+import org.datasyslab.geospark.utils.HalfOpenRectangle;
 import org.datasyslab.geospark.utils.RDDSampleUtils;
-import org.geotools.geometry.jts.JTS;
-import org.geotools.referencing.CRS;
 import org.opengis.referencing.FactoryException;
-import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
-import org.wololo.geojson.Feature;
-import org.wololo.geojson.FeatureCollection;
-import org.wololo.jts2geojson.GeoJSONWriter;
 import scala.Tuple2;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 // TODO: Auto-generated Javadoc
 /**
@@ -92,6 +98,13 @@ public class SpatialRDD<T extends Geometry> implements Serializable{
         /** The sample number. */
         private int sampleNumber = -1;
 
+        // Maximum number of samples collected by analyze() when the sample number is not set
+        private static final int DEFAULT_SAMPLE_CAPACITY = 100000;
+
+        // Boundary, count and samples of rawSpatialRDD collected by analyze(), and the ID of the RDD they describe
+        private transient SampleStatCalculator sampleStats;
+        private transient int sampleStatsRddId = -1;
+
 	public int getSampleNumber() {
 		return sampleNumber;
 	}
@@ -124,19 +137,8 @@ public class SpatialRDD<T extends Geometry> implements Serializable{
 	public boolean CRSTransform(String sourceEpsgCRSCode, String targetEpsgCRSCode)
 	{
 		try {
-    	        CoordinateReferenceSystem sourceCRS = CRS.decode(sourceEpsgCRSCode);
-		CoordinateReferenceSystem targetCRS = CRS.decode(targetEpsgCRSCode);
-		final MathTransform transform = CRS.findMathTransform(sourceCRS, targetCRS, false);
-		this.CRStransformation=true;
-		this.sourceEpsgCode=sourceEpsgCRSCode;
-		this.targetEpgsgCode=targetEpsgCRSCode;
-		this.rawSpatialRDD = this.rawSpatialRDD.map(new Function<T,T>()
-		{
-			@Override
-			public T call(T originalObject) throws Exception {
-				return (T) JTS.transform(originalObject,transform);
-			}
-		});
+		final MathTransform transform = CRSTransformCache.getTransform(sourceEpsgCRSCode, targetEpsgCRSCode, false);
+		CRSTransform(sourceEpsgCRSCode, targetEpsgCRSCode, transform);
 		return true;
 		} catch (FactoryException e) {
 			// TODO Auto-generated catch block
@@ -155,19 +157,9 @@ public class SpatialRDD<T extends Geometry> implements Serializable{
         public boolean CRSTransform(String sourceEpsgCRSCode, String targetEpsgCRSCode, boolean longitudeFirst)
         {
           try {
-            CoordinateReferenceSystem sourceCRS = CRS.decode(sourceEpsgCRSCode, longitudeFirst);
-            CoordinateReferenceSystem targetCRS = CRS.decode(targetEpsgCRSCode, longitudeFirst);
-            final MathTransform transform = CRS.findMathTransform(sourceCRS, targetCRS, false);
-            this.CRStransformation=true;
-            this.sourceEpsgCode=sourceEpsgCRSCode;
-            this.targetEpgsgCode=targetEpsgCRSCode;
-            this.rawSpatialRDD = this.rawSpatialRDD.map(new Function<T,T>()
-            {
-              @Override
-              public T call(T originalObject) throws Exception {
-                return (T) JTS.transform(originalObject,transform);
-              }
-            });
+            final MathTransform transform = CRSTransformCache.getTransform(sourceEpsgCRSCode, longitudeFirst,
+                targetEpsgCRSCode, longitudeFirst, false);
+            CRSTransform(sourceEpsgCRSCode, targetEpsgCRSCode, transform);
             return true;
           } catch (FactoryException e) {
             // TODO Auto-generated catch block
@@ -176,6 +168,32 @@ public class SpatialRDD<T extends Geometry> implements Serializable{
           }
         }
 
+	private void CRSTransform(String sourceEpsgCRSCode, String targetEpsgCRSCode, final MathTransform transform)
+	{
+		this.CRStransformation=true;
+		this.sourceEpsgCode=sourceEpsgCRSCode;
+		this.targetEpgsgCode=targetEpsgCRSCode;
+		final SparkContext sparkContext = this.rawSpatialRDD.context();
+		final GeoSparkMetric geometryCount = GeoSparkMetrics.createMetric(sparkContext, "crstransform", "geometryCount");
+		final GeoSparkMetric coordinateCount = GeoSparkMetrics.createMetric(sparkContext, "crstransform", "coordinateCount");
+		// Nanoseconds spent in the transforms, the throughput is coordinateCount / transformTime
+		final GeoSparkMetric transformTime = GeoSparkMetrics.createMetric(sparkContext, "crstransform", "transformTime");
+		logger.info("[SpatialRDD][CRSTransform] Transform from " + sourceEpsgCRSCode + " to " + targetEpsgCRSCode
+			+ ", transform cache hits: " + CRSTransformCache.getHitCount() + ", misses: " + CRSTransformCache.getMissCount());
+		this.rawSpatialRDD = this.rawSpatialRDD.map(new Function<T,T>()
+		{
+			@Override
+			public T call(T originalObject) throws Exception {
+				geometryCount.add(1);
+				coordinateCount.add(originalObject.getNumPoints());
+				final long startTime = System.nanoTime();
+				final T result = CRSTransformCache.transform(originalObject, transform);
+				transformTime.add(System.nanoTime() - startTime);
+				return result;
+			}
+		});
+	}
+
     public boolean spatialPartitioning(GridType gridType) throws Exception
     {
         int numPartitions = this.rawSpatialRDD.rdd().partitions().length;
@@ -191,6 +209,108 @@ public class SpatialRDD<T extends Geometry> implements Serializable{
 	 * @throws Exception the exception
 	 */
 	public void spatialPartitioning(GridType gridType, int numPartitions) throws Exception
+	{
+		final List<Envelope> samples = sampleEnvelopes(numPartitions);
+		final Envelope paddedBoundary = getPaddedBoundary();
+
+		switch(gridType) {
+			case EQUALGRID: {
+				EqualPartitioning EqualPartitioning = new EqualPartitioning(paddedBoundary, numPartitions);
+				grids = EqualPartitioning.getGrids();
+				partitioner = new FlatGridPartitioner(grids);
+				break;
+			}
+			case HILBERT: {
+				HilbertPartitioning hilbertPartitioning = new HilbertPartitioning(samples, paddedBoundary, numPartitions);
+				grids = hilbertPartitioning.getGrids();
+				partitioner = new FlatGridPartitioner(grids);
+				break;
+			}
+			case RTREE: {
+				RtreePartitioning rtreePartitioning = new RtreePartitioning(samples, numPartitions);
+				grids = rtreePartitioning.getGrids();
+				partitioner = new FlatGridPartitioner(grids);
+				break;
+			}
+			case VORONOI: {
+				VoronoiPartitioning voronoiPartitioning = new VoronoiPartitioning(samples, numPartitions);
+				grids = voronoiPartitioning.getGrids();
+				partitioner = new FlatGridPartitioner(grids);
+				break;
+			}
+			case QUADTREE: {
+				QuadtreePartitioning quadtreePartitioning = new QuadtreePartitioning(samples, paddedBoundary, numPartitions);
+				partitionTree = quadtreePartitioning.getPartitionTree();
+				partitioner = new QuadTreePartitioner(partitionTree);
+				break;
+			}
+			case KDBTREE: {
+				partitioner = new KDBTreePartitioner(buildKDBTree(samples, numPartitions, paddedBoundary));
+				break;
+			}
+			default:
+				throw new Exception("[AbstractSpatialRDD][spatialPartitioning] Unsupported spatial partitioning method.");
+		}
+
+		this.spatialPartitionedRDD = partition(partitioner);
+	}
+
+	/**
+	 * Skew-aware spatial partitioning using KDB-tree grids.
+	 *
+	 * Builds KDB-tree grids from a sample like spatialPartitioning(GridType.KDBTREE, numPartitions),
+	 * then counts the objects each grid receives in a map-only pass. If the largest grid holds more than
+	 * maxSkewRatio times the median, sibling grids which together hold at most an average share are merged
+	 * and grids above the limit are subdivided using their samples. The resulting partitioner is used
+	 * to partition the data.
+	 *
+	 * A grid can't be subdivided below the objects sharing a location, so the returned ratio may still
+	 * exceed maxSkewRatio. The rebalanced grids are used anyway and the returned ratio is the measured one.
+	 *
+	 * @param numPartitions the desired number of partitions
+	 * @param maxSkewRatio the largest acceptable ratio of the largest partition to the median one
+	 * @return the skew ratio of the final partitioning
+	 * @throws Exception the exception
+	 */
+	public double spatialPartitioningAdaptive(int numPartitions, double maxSkewRatio) throws Exception
+	{
+		if (maxSkewRatio < 1) {
+			throw new IllegalArgumentException("Max skew ratio must be >= 1");
+		}
+
+		final List<Envelope> samples = sampleEnvelopes(numPartitions);
+		final Envelope paddedBoundary = getPaddedBoundary();
+
+		SpatialPartitioner candidate = new KDBTreePartitioner(buildKDBTree(samples, numPartitions, paddedBoundary));
+		long[] counts = countObjectsPerPartition(candidate);
+		double skewRatio = getSkewRatio(counts);
+		logger.info("[AbstractSpatialRDD][spatialPartitioningAdaptive] Skew ratio of " + counts.length
+			+ " KDB-tree partitions is " + skewRatio);
+
+		if (skewRatio > maxSkewRatio) {
+			// The partitioner dropped the samples from its tree, rebuild the same tree to split its leaves
+			final KDBTree tree = buildKDBTree(samples, numPartitions, paddedBoundary);
+			final long total = sum(counts);
+			final long targetCount = total / counts.length;
+			final long maxCount = (long) (maxSkewRatio * getMedian(counts));
+			tree.rebalance(counts, targetCount, Math.max(targetCount, maxCount));
+
+			candidate = new KDBTreePartitioner(tree);
+			counts = countObjectsPerPartition(candidate);
+			skewRatio = getSkewRatio(counts);
+			logger.info("[AbstractSpatialRDD][spatialPartitioningAdaptive] Skew ratio after rebalancing into "
+				+ counts.length + " partitions is " + skewRatio);
+		}
+
+		this.partitioner = candidate;
+		this.spatialPartitionedRDD = partition(partitioner);
+		return skewRatio;
+	}
+
+	/**
+	 * Samples the envelopes of the objects for building partitioning grids.
+	 */
+	private List<Envelope> sampleEnvelopes(int numPartitions) throws Exception
 	{
           if (numPartitions <= 0) {
             throw new IllegalArgumentException("Number of partitions must be >= 0");
@@ -208,6 +328,17 @@ public class SpatialRDD<T extends Geometry> implements Serializable{
 
           //Calculate the number of samples we need to take.
           int sampleNumberOfRecords = RDDSampleUtils.getSampleNumbers(numPartitions, this.approximateTotalCount,this.sampleNumber);
+
+          // Reuse the samples collected by analyze() unless the RDD changed since then.
+          // Large datasets get at most DEFAULT_SAMPLE_CAPACITY samples this way.
+          if (this.sampleStats != null && this.sampleStatsRddId == this.rawSpatialRDD.id()
+              && (this.sampleStats.isComplete()
+                  || this.sampleStats.getSampleSize() >= Math.min(sampleNumberOfRecords, DEFAULT_SAMPLE_CAPACITY))) {
+            final List<Envelope> samples = this.sampleStats.getSamples(sampleNumberOfRecords);
+            logger.info("Reused " + samples.size() + " samples collected by analyze()");
+            return samples;
+          }
+
           //Take Sample
           // RDD.takeSample implementation tends to scan the data multiple times to gather the exact
           // number of samples requested. Repeated scans increase the latency of the join. This increase
@@ -225,59 +356,89 @@ public class SpatialRDD<T extends Geometry> implements Serializable{
               .collect();
 
           logger.info("Collected " + samples.size() + " samples");
+          return samples;
+	}
 
+	private Envelope getPaddedBoundary()
+	{
 		// Add some padding at the top and right of the boundaryEnvelope to make
 		// sure all geometries lie within the half-open rectangle.
                 // TODO: Is the padding value reasonable here? The ratio number may be more reasonable.
-		final Envelope paddedBoundary = new Envelope(
+		return new Envelope(
 			boundaryEnvelope.getMinX(), boundaryEnvelope.getMaxX() + 0.01,
 			boundaryEnvelope.getMinY(), boundaryEnvelope.getMaxY() + 0.01);
+	}
 
-		switch(gridType) {
-			case EQUALGRID: {
-				EqualPartitioning EqualPartitioning = new EqualPartitioning(paddedBoundary, numPartitions);
-				grids = EqualPartitioning.getGrids();
-				partitioner = new FlatGridPartitioner(grids);
-				break;
-			}
-			case HILBERT: {
-				HilbertPartitioning hilbertPartitioning = new HilbertPartitioning(samples, paddedBoundary, numPartitions);
-				grids = hilbertPartitioning.getGrids();
-				partitioner = new FlatGridPartitioner(grids);
-				break;
-			}
-			case RTREE: {
-				RtreePartitioning rtreePartitioning = new RtreePartitioning(samples, numPartitions);
-				grids = rtreePartitioning.getGrids();
-				partitioner = new FlatGridPartitioner(grids);
-				break;
-			}
-			case VORONOI: {
-				VoronoiPartitioning voronoiPartitioning = new VoronoiPartitioning(samples, numPartitions);
-				grids = voronoiPartitioning.getGrids();
-				partitioner = new FlatGridPartitioner(grids);
-				break;
-			}
-			case QUADTREE: {
-				QuadtreePartitioning quadtreePartitioning = new QuadtreePartitioning(samples, paddedBoundary, numPartitions);
-				partitionTree = quadtreePartitioning.getPartitionTree();
-				partitioner = new QuadTreePartitioner(partitionTree);
-				break;
+	private static KDBTree buildKDBTree(List<Envelope> samples, int numPartitions, Envelope paddedBoundary)
+	{
+		final KDBTree tree = new KDBTree(samples.size() / numPartitions, numPartitions, paddedBoundary);
+		for (final Envelope sample : samples) {
+			tree.insert(sample);
+		}
+		tree.assignLeafIds();
+		return tree;
+	}
+
+	/**
+	 * Counts the objects each partition would receive without shuffling them.
+	 */
+	private long[] countObjectsPerPartition(final SpatialPartitioner partitioner)
+	{
+		final int numPartitions = partitioner.numPartitions();
+		return this.rawSpatialRDD.mapPartitions(new FlatMapFunction<Iterator<T>, long[]>() {
+			@Override
+			public Iterator<long[]> call(Iterator<T> geometries) throws Exception {
+				final long[] counts = new long[numPartitions];
+				while (geometries.hasNext()) {
+					final Iterator<Tuple2<Integer, T>> placements = partitioner.placeObject(geometries.next());
+					while (placements.hasNext()) {
+						counts[placements.next()._1()]++;
+					}
+				}
+				return Collections.singletonList(counts).iterator();
 			}
-			case KDBTREE: {
-				final KDBTree tree = new KDBTree(samples.size() / numPartitions, numPartitions, paddedBoundary);
-				for (final Envelope sample : samples) {
-					tree.insert(sample);
+		}).reduce(new Function2<long[], long[], long[]>() {
+			@Override
+			public long[] call(long[] counts1, long[] counts2) throws Exception {
+				for (int i = 0; i < counts1.length; i++) {
+					counts1[i] += counts2[i];
 				}
-				tree.assignLeafIds();
-				partitioner = new KDBTreePartitioner(tree);
-				break;
+				return counts1;
 			}
-			default:
-				throw new Exception("[AbstractSpatialRDD][spatialPartitioning] Unsupported spatial partitioning method.");
+		});
+	}
+
+	/**
+	 * Returns the ratio of the largest count to the median one, or to the mean one if the median is zero.
+	 */
+	private static double getSkewRatio(long[] counts)
+	{
+		long max = 0;
+		for (long count : counts) {
+			max = Math.max(max, count);
+		}
+		if (max == 0) {
+			return 1.0;
 		}
+		final double median = getMedian(counts);
+		return max / (median > 0 ? median : (double) sum(counts) / counts.length);
+	}
 
-		this.spatialPartitionedRDD = partition(partitioner);
+	private static double getMedian(long[] counts)
+	{
+		final long[] sorted = Arrays.copyOf(counts, counts.length);
+		Arrays.sort(sorted);
+		final int middle = sorted.length / 2;
+		return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2.0;
+	}
+
+	private static long sum(long[] counts)
+	{
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		return total;
 	}
 
 	public SpatialPartitioner getPartitioner()
@@ -291,6 +452,38 @@ public class SpatialRDD<T extends Geometry> implements Serializable{
 		this.spatialPartitionedRDD = partition(partitioner);
 	}
 
+	/**
+	 * Saves the partitioner to a local or HDFS path, so that later runs can skip
+	 * sampling and building it. See loadSpatialPartitioner.
+	 *
+	 * @param outputLocation the output location
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void saveSpatialPartitioner(String outputLocation) throws IOException
+	{
+		if (this.partitioner == null) {
+			throw new IllegalStateException("[AbstractSpatialRDD][saveSpatialPartitioner] Please do spatial partitioning first.");
+		}
+		SpatialPartitionerIO.save(this.partitioner, outputLocation, this.rawSpatialRDD.context().hadoopConfiguration());
+	}
+
+	/**
+	 * Partitions the RDD with a partitioner saved by saveSpatialPartitioner. Fails if the
+	 * partitioner can't place all objects within the boundary of this RDD.
+	 *
+	 * @param inputLocation the input location
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void loadSpatialPartitioner(String inputLocation) throws IOException
+	{
+		if (this.boundaryEnvelope == null) {
+			this.analyze();
+		}
+		final SpatialPartitioner partitioner = SpatialPartitionerIO.load(inputLocation,
+			this.rawSpatialRDD.context().hadoopConfiguration(), this.boundaryEnvelope);
+		spatialPartitioning(partitioner);
+	}
+
 	/**
 	 * @deprecated Use spatialPartitioning(SpatialPartitioner partitioner)
 	 */
@@ -345,35 +538,73 @@ public class SpatialRDD<T extends Geometry> implements Serializable{
 	/**
 	 * Count without duplicates.
 	 *
+	 * Geometries are reduced to compact fingerprints which are de-duplicated
+	 * with a hash-partitioned distinct. Nothing is collected to the driver.
+	 *
 	 * @return the long
 	 */
 	public long countWithoutDuplicates()
 	{
-
-		List collectedResult = this.rawSpatialRDD.collect();
-		HashSet resultWithoutDuplicates = new HashSet();
-		for(int i=0;i<collectedResult.size();i++)
-		{
-			resultWithoutDuplicates.add(collectedResult.get(i));
-		}
-		return resultWithoutDuplicates.size();
+		return countDistinctFingerprints(this.rawSpatialRDD);
 	}
 
 	/**
 	 * Count without duplicates SPRDD.
 	 *
+	 * If the partitioner supports de-dup (see {@link SpatialPartitioner#getDedupParams()}),
+	 * each geometry is counted only in the partition whose extent contains the reference point
+	 * of its envelope, i.e. the lower left corner. This is the same rule JoinQuery uses to avoid
+	 * duplicate join results. Identical geometries share the reference point and therefore the
+	 * partition, so remaining duplicates are removed locally and the count needs no shuffle.
+	 *
+	 * Otherwise, falls back to a hash-partitioned distinct on geometry fingerprints.
+	 *
 	 * @return the long
 	 */
 	public long countWithoutDuplicatesSPRDD()
 	{
-		JavaRDD cleanedRDD = this.spatialPartitionedRDD;
-		List collectedResult = cleanedRDD.collect();
-		HashSet resultWithoutDuplicates = new HashSet();
-		for(int i=0;i<collectedResult.size();i++)
-		{
-			resultWithoutDuplicates.add(collectedResult.get(i));
+		final DedupParams dedupParams = partitioner == null ? null : partitioner.getDedupParams();
+		if (dedupParams == null) {
+			return countDistinctFingerprints(this.spatialPartitionedRDD);
 		}
-		return resultWithoutDuplicates.size();
+
+		return this.spatialPartitionedRDD.mapPartitions(new FlatMapFunction<Iterator<T>, Long>() {
+			@Override
+			public Iterator<Long> call(Iterator<T> geometries) throws Exception {
+				final int partitionId = TaskContext.getPartitionId();
+				final List<Envelope> partitionExtents = dedupParams.getPartitionExtents();
+				final HalfOpenRectangle extent = partitionId < partitionExtents.size()
+					? new HalfOpenRectangle(partitionExtents.get(partitionId)) : null;
+
+				final Set<GeometryFingerprint> fingerprints = new HashSet<>();
+				while (geometries.hasNext()) {
+					final T geometry = geometries.next();
+					final Envelope envelope = geometry.getEnvelopeInternal();
+					if (extent != null && !envelope.isNull()
+						&& !extent.contains(envelope.getMinX(), envelope.getMinY())) {
+						// Counted by another partition
+						continue;
+					}
+					fingerprints.add(GeometryFingerprint.of(geometry));
+				}
+				return Collections.singletonList((long) fingerprints.size()).iterator();
+			}
+		}).fold(0L, new Function2<Long, Long, Long>() {
+			@Override
+			public Long call(Long count1, Long count2) throws Exception {
+				return count1 + count2;
+			}
+		});
+	}
+
+	private static <T extends Geometry> long countDistinctFingerprints(JavaRDD<T> geometries)
+	{
+		return geometries.map(new Function<T, GeometryFingerprint>() {
+			@Override
+			public GeometryFingerprint call(T geometry) throws Exception {
+				return GeometryFingerprint.of(geometry);
+			}
+		}).distinct().count();
 	}
 
 	/**
@@ -449,29 +680,32 @@ public class SpatialRDD<T extends Geometry> implements Serializable{
 	 */
 	public boolean analyze()
 	{
-		final Function2 combOp =
-				new Function2<StatCalculator, StatCalculator, StatCalculator>() {
-					@Override
-					public StatCalculator call(StatCalculator agg1, StatCalculator agg2) throws Exception {
-						return StatCalculator.combine(agg1, agg2);
-					}
-				};
+		final int capacity = sampleNumber > 0 ? sampleNumber : DEFAULT_SAMPLE_CAPACITY;
 
-		final Function2 seqOp = new Function2<StatCalculator, Geometry, StatCalculator>() {
-			@Override
-			public StatCalculator call(StatCalculator agg, Geometry object) throws Exception {
-				return StatCalculator.add(agg, object);
-			}
-		};
-
-		StatCalculator agg = (StatCalculator) this.rawSpatialRDD.aggregate(null, seqOp, combOp);
-		if (agg != null) {
-			this.boundaryEnvelope = agg.getBoundary();
-			this.approximateTotalCount = agg.getCount();
+		// Boundary, count and samples are collected in the same pass
+		final SampleStatCalculator stats;
+		if (this.rawSpatialRDD.partitions().isEmpty()) {
+			stats = new SampleStatCalculator(capacity);
 		} else {
-			this.boundaryEnvelope = null;
-			this.approximateTotalCount = 0;
+			stats = this.rawSpatialRDD.mapPartitionsWithIndex(
+				new Function2<Integer, Iterator<T>, Iterator<SampleStatCalculator>>() {
+					@Override
+					public Iterator<SampleStatCalculator> call(Integer partitionId, Iterator<T> objects) throws Exception {
+						return Collections.singletonList(SampleStatCalculator.compute(objects, capacity, partitionId)).iterator();
+					}
+				}, false)
+				.treeReduce(new Function2<SampleStatCalculator, SampleStatCalculator, SampleStatCalculator>() {
+					@Override
+					public SampleStatCalculator call(SampleStatCalculator agg1, SampleStatCalculator agg2) throws Exception {
+						return SampleStatCalculator.combine(agg1, agg2);
+					}
+				});
 		}
+
+		this.boundaryEnvelope = stats.getBoundary();
+		this.approximateTotalCount = stats.getCount();
+		this.sampleStats = stats;
+		this.sampleStatsRddId = this.rawSpatialRDD.id();
 		return true;
 	}
 
@@ -485,36 +719,37 @@ public class SpatialRDD<T extends Geometry> implements Serializable{
     /**
      * Save as geo JSON.
      *
+     * Writes one FeatureCollection per partition.
+     *
      * @param outputLocation the output location
      */
     public void saveAsGeoJSON(String outputLocation) {
-        this.rawSpatialRDD.mapPartitions(new FlatMapFunction<Iterator<T>, String>() {
+        saveAsGeoJSON(outputLocation, false, false);
+    }
+
+    /**
+     * Save as geo JSON.
+     *
+     * Features are encoded one at a time while the partition is written out, so memory use
+     * doesn't grow with the size of the partition.
+     *
+     * @param outputLocation the output location
+     * @param lineDelimited if true, writes one feature per line (newline-delimited GeoJSON)
+     * instead of one FeatureCollection per partition
+     * @param gzip if true, compresses the output files with gzip
+     */
+    public void saveAsGeoJSON(String outputLocation, final boolean lineDelimited, boolean gzip) {
+        final JavaRDD<String> lines = this.rawSpatialRDD.mapPartitions(new FlatMapFunction<Iterator<T>, String>() {
             @Override
             public Iterator<String> call(Iterator<T> iterator) throws Exception {
-                ArrayList<String> result = new ArrayList<String>();
-                GeoJSONWriter writer = new GeoJSONWriter();
-
-                List<Feature> featureList = new ArrayList<Feature>();
-                while (iterator.hasNext()) {
-                	Geometry spatialObject = (Geometry)iterator.next();
-                    Feature jsonFeature;
-                    if(spatialObject.getUserData()!=null)
-                    {
-                        Map<String,Object> userData = new HashMap<String,Object>();
-                        userData.put("UserData", spatialObject.getUserData());
-                    	jsonFeature = new Feature(writer.write(spatialObject),userData);
-                    }
-                    else
-                    {
-                    	jsonFeature = new Feature(writer.write(spatialObject),null);
-                    }
-                    featureList.add(jsonFeature);
-                }
-                FeatureCollection featureCollection = new FeatureCollection(featureList.toArray(new Feature[featureList.size()]));
-                result.add(featureCollection.toString());
-                return result.iterator();
+                return GeoJsonEncoder.encode(iterator, lineDelimited);
             }
-        }).saveAsTextFile(outputLocation);
+        });
+        if (gzip) {
+            lines.saveAsTextFile(outputLocation, GzipCodec.class);
+        } else {
+            lines.saveAsTextFile(outputLocation);
+        }
     }
 
     /**
@@ -7,6 +7,7 @@ import com.vividsolutions.jts.index.quadtree.Quadtree;
 import com.vividsolutions.jts.index.strtree.STRtree;
 import org.apache.spark.api.java.function.FlatMapFunction;
 import org.datasyslab.geospark.enums.IndexType;
+import org.datasyslab.geospark.index.PackedRtree;
 
 import java.util.HashSet;
 import java.util.Iterator;
@@ -24,6 +25,9 @@ public final class IndexBuilder<T extends Geometry> implements FlatMapFunction<I
         if (indexType == IndexType.RTREE) {
             spatialIndex = new STRtree();
         }
+        else if (indexType == IndexType.PACKEDRTREE) {
+            spatialIndex = new PackedRtree();
+        }
         else
         {
             spatialIndex = new Quadtree();
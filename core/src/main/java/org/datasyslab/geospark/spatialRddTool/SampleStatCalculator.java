@@ -0,0 +1,197 @@
+/**
+ * FILE: SampleStatCalculator.java
+ * PATH: org.datasyslab.geospark.spatialRddTool.SampleStatCalculator.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.spatialRddTool;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Computes the boundary, the count and a uniform sample of the envelopes of a partition
+ * in a single pass, and merges the results of several partitions.
+ *
+ * The boundary is kept in primitive fields and the sample in a flat array holding four
+ * ordinates per envelope (reservoir sampling), so that nothing is allocated per object.
+ * The sample is kept in random order, hence any prefix of it is a uniform sample too.
+ */
+public class SampleStatCalculator implements Serializable {
+    private double minX = Double.POSITIVE_INFINITY;
+    private double maxX = Double.NEGATIVE_INFINITY;
+    private double minY = Double.POSITIVE_INFINITY;
+    private double maxY = Double.NEGATIVE_INFINITY;
+    private long count = 0;
+    // Number of non-empty envelopes the sample was drawn from
+    private long sampledCount = 0;
+
+    private final int capacity;
+    private double[] sample;
+    private int sampleSize = 0;
+
+    public SampleStatCalculator(int capacity)
+    {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must be >= 0");
+        }
+        this.capacity = capacity;
+        this.sample = new double[4 * Math.min(capacity, 1024)];
+    }
+
+    /**
+     * Scans the objects of one partition.
+     */
+    public static SampleStatCalculator compute(Iterator<? extends Geometry> objects, int capacity, long seed)
+    {
+        final SampleStatCalculator result = new SampleStatCalculator(capacity);
+        final Random random = new Random(seed);
+        while (objects.hasNext()) {
+            result.add(objects.next().getEnvelopeInternal(), random);
+        }
+        result.shuffle(random);
+        return result;
+    }
+
+    private void add(Envelope envelope, Random random)
+    {
+        count++;
+        if (envelope.isNull()) {
+            return;
+        }
+
+        minX = Math.min(minX, envelope.getMinX());
+        maxX = Math.max(maxX, envelope.getMaxX());
+        minY = Math.min(minY, envelope.getMinY());
+        maxY = Math.max(maxY, envelope.getMaxY());
+        sampledCount++;
+
+        if (sampleSize < capacity) {
+            set(sampleSize++, envelope.getMinX(), envelope.getMaxX(), envelope.getMinY(), envelope.getMaxY());
+        } else if (capacity > 0) {
+            final long slot = (long) (random.nextDouble() * sampledCount);
+            if (slot < capacity) {
+                set((int) slot, envelope.getMinX(), envelope.getMaxX(), envelope.getMinY(), envelope.getMaxY());
+            }
+        }
+    }
+
+    private void set(int i, double minX, double maxX, double minY, double maxY)
+    {
+        if (sample.length < 4 * (i + 1)) {
+            final double[] newSample = new double[4 * Math.min(capacity, 2 * (i + 1))];
+            System.arraycopy(sample, 0, newSample, 0, 4 * sampleSize);
+            sample = newSample;
+        }
+        sample[4 * i] = minX;
+        sample[4 * i + 1] = maxX;
+        sample[4 * i + 2] = minY;
+        sample[4 * i + 3] = maxY;
+    }
+
+    private void shuffle(Random random)
+    {
+        for (int i = sampleSize - 1; i > 0; i--) {
+            final int j = random.nextInt(i + 1);
+            for (int k = 0; k < 4; k++) {
+                final double tmp = sample[4 * i + k];
+                sample[4 * i + k] = sample[4 * j + k];
+                sample[4 * j + k] = tmp;
+            }
+        }
+    }
+
+    /**
+     * Merges the results of two disjoint sets of objects. The merged sample is drawn from
+     * both samples in proportion to the number of objects each of them represents.
+     */
+    public static SampleStatCalculator combine(SampleStatCalculator agg1, SampleStatCalculator agg2)
+    {
+        final SampleStatCalculator result = new SampleStatCalculator(Math.max(agg1.capacity, agg2.capacity));
+        result.minX = Math.min(agg1.minX, agg2.minX);
+        result.maxX = Math.max(agg1.maxX, agg2.maxX);
+        result.minY = Math.min(agg1.minY, agg2.minY);
+        result.maxY = Math.max(agg1.maxY, agg2.maxY);
+        result.count = agg1.count + agg2.count;
+        result.sampledCount = agg1.sampledCount + agg2.sampledCount;
+
+        final Random random = new Random(31 * agg1.sampledCount + agg2.sampledCount);
+        long remaining1 = agg1.sampledCount;
+        long remaining2 = agg2.sampledCount;
+        int next1 = 0;
+        int next2 = 0;
+        while (result.sampleSize < result.capacity && (next1 < agg1.sampleSize || next2 < agg2.sampleSize)) {
+            final boolean first;
+            if (next1 == agg1.sampleSize) {
+                first = false;
+            } else if (next2 == agg2.sampleSize) {
+                first = true;
+            } else {
+                first = random.nextDouble() * (remaining1 + remaining2) < remaining1;
+            }
+
+            // Both samples are in random order, so taking the next one of a sample is the same as
+            // drawing one of the objects that sample was taken from without replacement
+            final SampleStatCalculator source = first ? agg1 : agg2;
+            final int i = first ? next1++ : next2++;
+            if (first) {
+                remaining1--;
+            } else {
+                remaining2--;
+            }
+            result.set(result.sampleSize++, source.sample[4 * i], source.sample[4 * i + 1],
+                source.sample[4 * i + 2], source.sample[4 * i + 3]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the boundary of the objects, or null if there were none.
+     */
+    @Nullable
+    public Envelope getBoundary()
+    {
+        return sampledCount == 0 ? null : new Envelope(minX, maxX, minY, maxY);
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Returns the number of sampled envelopes.
+     */
+    public int getSampleSize()
+    {
+        return sampleSize;
+    }
+
+    /**
+     * Returns true if the sample holds every non-empty envelope.
+     */
+    public boolean isComplete()
+    {
+        return sampleSize == sampledCount;
+    }
+
+    /**
+     * Returns the first sampleNumber envelopes of the sample, or the whole sample if it's smaller.
+     */
+    public List<Envelope> getSamples(int sampleNumber)
+    {
+        final int size = Math.min(sampleNumber, sampleSize);
+        final List<Envelope> samples = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            samples.add(new Envelope(sample[4 * i], sample[4 * i + 1], sample[4 * i + 2], sample[4 * i + 3]));
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * FILE: CRSTransformCache.java
+ * PATH: org.datasyslab.geospark.utils.CRSTransformCache.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.utils;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.CoordinateSequenceFilter;
+import com.vividsolutions.jts.geom.Geometry;
+import org.apache.log4j.Logger;
+import org.datasyslab.geospark.geometryObjects.Circle;
+import org.geotools.geometry.jts.JTS;
+import org.geotools.referencing.CRS;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide cache of CRS transforms.
+ *
+ * Decoding a CRS and finding the transform between two of them is much more expensive
+ * than transforming a geometry. The transforms are immutable and thread-safe, so they
+ * are looked up once per (source, target, axis order, lenient) and shared by all threads.
+ *
+ * Also transforms geometries by handing whole coordinate sequences to the math transform,
+ * instead of allocating a new coordinate per vertex like {@link JTS#transform(Geometry, MathTransform)}.
+ *
+ * Every miss is logged with the hit and miss counts of the process, so that transforms
+ * looked up again and again, e.g. because of different codes for the same CRS, show up in the logs.
+ */
+public final class CRSTransformCache {
+
+    final static Logger logger = Logger.getLogger(CRSTransformCache.class);
+
+    private static final ConcurrentMap<Key, MathTransform> transforms = new ConcurrentHashMap<>();
+
+    private static final AtomicLong hitCount = new AtomicLong();
+    private static final AtomicLong missCount = new AtomicLong();
+
+    private CRSTransformCache() {}
+
+    /**
+     * Returns the transform between two CRS codes decoded with the default axis order.
+     */
+    public static MathTransform getTransform(String sourceEpsgCRSCode, String targetEpsgCRSCode, boolean lenient)
+        throws FactoryException
+    {
+        return getTransform(new Key(sourceEpsgCRSCode, null, targetEpsgCRSCode, null, lenient));
+    }
+
+    /**
+     * Returns the transform between two CRS codes decoded with the given axis order.
+     */
+    public static MathTransform getTransform(String sourceEpsgCRSCode, boolean sourceLongitudeFirst,
+                                             String targetEpsgCRSCode, boolean targetLongitudeFirst, boolean lenient)
+        throws FactoryException
+    {
+        return getTransform(new Key(sourceEpsgCRSCode, sourceLongitudeFirst, targetEpsgCRSCode, targetLongitudeFirst, lenient));
+    }
+
+    private static MathTransform getTransform(Key key) throws FactoryException
+    {
+        MathTransform transform = transforms.get(key);
+        if (transform != null) {
+            hitCount.incrementAndGet();
+            return transform;
+        }
+
+        // Two threads may decode the same pair concurrently. Both get equivalent transforms.
+        missCount.incrementAndGet();
+        final CoordinateReferenceSystem sourceCRS = decode(key.source, key.sourceLongitudeFirst);
+        final CoordinateReferenceSystem targetCRS = decode(key.target, key.targetLongitudeFirst);
+        transform = CRS.findMathTransform(sourceCRS, targetCRS, key.lenient);
+        final MathTransform existing = transforms.putIfAbsent(key, transform);
+        logger.info("[CRSTransformCache][getTransform] Created the transform from " + key.source + " to " + key.target
+            + ", hits: " + hitCount.get() + ", misses: " + missCount.get());
+        return existing != null ? existing : transform;
+    }
+
+    private static CoordinateReferenceSystem decode(String code, @Nullable Boolean longitudeFirst) throws FactoryException
+    {
+        return longitudeFirst == null ? CRS.decode(code) : CRS.decode(code, longitudeFirst);
+    }
+
+    /**
+     * Returns a transformed copy of the geometry. User data is kept.
+     *
+     * @param geometry the geometry, not modified
+     * @param transform a transform from {@link #getTransform}
+     * @return the transformed geometry
+     * @throws TransformException the transform exception
+     */
+    public static <T extends Geometry> T transform(T geometry, MathTransform transform) throws TransformException
+    {
+        // Circles don't expose their coordinates, and 3D transforms need all the ordinates
+        if (geometry instanceof Circle || transform.getSourceDimensions() != 2 || transform.getTargetDimensions() != 2) {
+            return (T) JTS.transform(geometry, transform);
+        }
+
+        final T result = (T) geometry.clone();
+        final SequenceTransformer transformer = new SequenceTransformer(transform);
+        result.apply(transformer);
+        if (transformer.error != null) {
+            throw transformer.error;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of lookups served from the cache in this process.
+     */
+    public static long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of lookups which had to decode the CRS codes in this process.
+     */
+    public static long getMissCount()
+    {
+        return missCount.get();
+    }
+
+    /**
+     * Transforms each coordinate sequence in place with a single call to the math transform.
+     */
+    private static final class SequenceTransformer implements CoordinateSequenceFilter {
+        private final MathTransform transform;
+        private double[] buffer = new double[0];
+        private TransformException error;
+        private boolean done = false;
+
+        SequenceTransformer(MathTransform transform) {
+            this.transform = transform;
+        }
+
+        @Override
+        public void filter(CoordinateSequence sequence, int i) {
+            // Called for every coordinate, but the whole sequence is transformed on the first one
+            if (i != 0) {
+                return;
+            }
+
+            final int size = sequence.size();
+            if (buffer.length < 2 * size) {
+                buffer = new double[2 * size];
+            }
+            for (int j = 0; j < size; j++) {
+                buffer[2 * j] = sequence.getOrdinate(j, CoordinateSequence.X);
+                buffer[2 * j + 1] = sequence.getOrdinate(j, CoordinateSequence.Y);
+            }
+            try {
+                transform.transform(buffer, 0, buffer, 0, size);
+            } catch (TransformException e) {
+                error = e;
+                done = true;
+                return;
+            }
+            for (int j = 0; j < size; j++) {
+                sequence.setOrdinate(j, CoordinateSequence.X, buffer[2 * j]);
+                sequence.setOrdinate(j, CoordinateSequence.Y, buffer[2 * j + 1]);
+            }
+        }
+
+        @Override
+        public boolean isDone() {
+            return done;
+        }
+
+        @Override
+        public boolean isGeometryChanged() {
+            return true;
+        }
+    }
+
+    private static final class Key {
+        private final String source;
+        private final Boolean sourceLongitudeFirst;
+        private final String target;
+        private final Boolean targetLongitudeFirst;
+        private final boolean lenient;
+
+        Key(String source, @Nullable Boolean sourceLongitudeFirst, String target, @Nullable Boolean targetLongitudeFirst, boolean lenient) {
+            this.source = source;
+            this.sourceLongitudeFirst = sourceLongitudeFirst;
+            this.target = target;
+            this.targetLongitudeFirst = targetLongitudeFirst;
+            this.lenient = lenient;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return source.equals(other.source)
+                && target.equals(other.target)
+                && lenient == other.lenient
+                && equal(sourceLongitudeFirst, other.sourceLongitudeFirst)
+                && equal(targetLongitudeFirst, other.targetLongitudeFirst);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = source.hashCode();
+            result = 31 * result + target.hashCode();
+            result = 31 * result + (sourceLongitudeFirst == null ? 0 : sourceLongitudeFirst.hashCode());
+            result = 31 * result + (targetLongitudeFirst == null ? 0 : targetLongitudeFirst.hashCode());
+            result = 31 * result + (lenient ? 1 : 0);
+            return result;
+        }
+
+        private static boolean equal(Boolean a, Boolean b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
@@ -8,10 +8,8 @@ package org.datasyslab.geospark.utils;
 
 import com.vividsolutions.jts.geom.Geometry;
 import org.geotools.geometry.jts.JTS;
-import org.geotools.referencing.CRS;
 import org.opengis.geometry.MismatchedDimensionException;
 import org.opengis.referencing.FactoryException;
-import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.TransformException;
 
@@ -36,10 +34,8 @@ public class CRSTransformation {
 	public static Point Transform(String sourceEpsgCRSCode, String targetEpsgCRSCode, Point sourceObject)
 	{
 		try {
-	    	CoordinateReferenceSystem sourceCRS = CRS.decode(sourceEpsgCRSCode);
-			CoordinateReferenceSystem targetCRS = CRS.decode(targetEpsgCRSCode);
-			final MathTransform transform = CRS.findMathTransform(sourceCRS, targetCRS, false);
-			return (Point)JTS.transform(sourceObject,transform);
+			final MathTransform transform = CRSTransformCache.getTransform(sourceEpsgCRSCode, targetEpsgCRSCode, false);
+			return CRSTransformCache.transform(sourceObject,transform);
 			} catch (FactoryException e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
@@ -66,10 +62,8 @@ public class CRSTransformation {
 	public static Polygon Transform(String sourceEpsgCRSCode, String targetEpsgCRSCode, Polygon sourceObject)
 	{
 		try {
-	    	CoordinateReferenceSystem sourceCRS = CRS.decode(sourceEpsgCRSCode);
-			CoordinateReferenceSystem targetCRS = CRS.decode(targetEpsgCRSCode);
-			final MathTransform transform = CRS.findMathTransform(sourceCRS, targetCRS, false);
-			return (Polygon)JTS.transform(sourceObject,transform);
+			final MathTransform transform = CRSTransformCache.getTransform(sourceEpsgCRSCode, targetEpsgCRSCode, false);
+			return CRSTransformCache.transform(sourceObject,transform);
 			} catch (FactoryException e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
@@ -96,9 +90,7 @@ public class CRSTransformation {
 	public static Envelope Transform(String sourceEpsgCRSCode, String targetEpsgCRSCode, Envelope sourceObject)
 	{
 		try {
-	    	CoordinateReferenceSystem sourceCRS = CRS.decode(sourceEpsgCRSCode);
-			CoordinateReferenceSystem targetCRS = CRS.decode(targetEpsgCRSCode);
-			final MathTransform transform = CRS.findMathTransform(sourceCRS, targetCRS, false);
+			final MathTransform transform = CRSTransformCache.getTransform(sourceEpsgCRSCode, targetEpsgCRSCode, false);
 			return JTS.transform(sourceObject,transform);
 			} catch (FactoryException e) {
 				// TODO Auto-generated catch block
@@ -118,10 +110,8 @@ public class CRSTransformation {
 	public static <T extends Geometry> T Transform(String sourceEpsgCRSCode, String targetEpsgCRSCode, T sourceObject)
 	{
 		try {
-			CoordinateReferenceSystem sourceCRS = CRS.decode(sourceEpsgCRSCode);
-			CoordinateReferenceSystem targetCRS = CRS.decode(targetEpsgCRSCode);
-			final MathTransform transform = CRS.findMathTransform(sourceCRS, targetCRS, false);
-			return (T)JTS.transform(sourceObject,transform);
+			final MathTransform transform = CRSTransformCache.getTransform(sourceEpsgCRSCode, targetEpsgCRSCode, false);
+			return CRSTransformCache.transform(sourceObject,transform);
 		} catch (FactoryException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
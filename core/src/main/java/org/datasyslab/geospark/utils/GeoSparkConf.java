@@ -65,8 +65,8 @@ public class GeoSparkConf implements Serializable {
         this.indexType = IndexType.getIndexType(sparkConf.get("geospark.global.indextype", "rtree"));
         this.joinApproximateTotalCount = sparkConf.getLong("geospark.join.approxcount", -1);
         String[] boundaryString = sparkConf.get("geospark.join.boundary","0,0,0,0").split(",");
-        this.datasetBoundary = new Envelope(Double.parseDouble(boundaryString[0]), Double.parseDouble(boundaryString[0]),
-                Double.parseDouble(boundaryString[0]),Double.parseDouble(boundaryString[0]));
+        this.datasetBoundary = new Envelope(Double.parseDouble(boundaryString[0]), Double.parseDouble(boundaryString[1]),
+                Double.parseDouble(boundaryString[2]),Double.parseDouble(boundaryString[3]));
         this.joinGridType = GridType.getGridType(sparkConf.get("geospark.join.gridtype","quadtree"));
         this.joinBuildSide = JoinBuildSide.getBuildSide(sparkConf.get("geospark.join.indexbuildside","left"));
         this.joinSparitionDominantSide = JoinSparitionDominantSide.getJoinSparitionDominantSide(sparkConf.get("geospark.join.spatitionside", "left"));
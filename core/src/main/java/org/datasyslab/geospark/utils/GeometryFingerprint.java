@@ -0,0 +1,125 @@
+/**
+ * FILE: GeometryFingerprint.java
+ * PATH: org.datasyslab.geospark.utils.GeometryFingerprint.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.utils;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import org.datasyslab.geospark.geometryObjects.Circle;
+
+import java.io.Serializable;
+
+/**
+ * A compact 128-bit fingerprint of a geometry. Geometries which are equal according to
+ * {@link Geometry#equals(Object)} (same type, structure and X/Y coordinates) have equal
+ * fingerprints. User data is ignored.
+ *
+ * Used to de-dup geometries on executors without shuffling or collecting the geometries
+ * themselves. The chance of two different geometries sharing a fingerprint is negligible
+ * for any realistic number of records.
+ */
+public final class GeometryFingerprint implements Serializable {
+    private final long high;
+    private final long low;
+
+    private GeometryFingerprint(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public static GeometryFingerprint of(Geometry geometry) {
+        final Hasher hasher = new Hasher();
+        hasher.add(geometry);
+        return new GeometryFingerprint(hasher.h1, hasher.h2);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GeometryFingerprint)) {
+            return false;
+        }
+        final GeometryFingerprint other = (GeometryFingerprint) o;
+        return high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (high ^ (high >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return Long.toHexString(high) + Long.toHexString(low);
+    }
+
+    private static final class Hasher {
+        private long h1 = 0x9E3779B97F4A7C15L;
+        private long h2 = 0xC2B2AE3D27D4EB4FL;
+
+        void add(Geometry geometry) {
+            add(geometry.getClass().getName().hashCode());
+
+            if (geometry instanceof Circle) {
+                final Circle circle = (Circle) geometry;
+                add(circle.getRadius());
+                add(circle.getCenterGeometry());
+            } else if (geometry instanceof Point) {
+                add(((Point) geometry).getCoordinateSequence());
+            } else if (geometry instanceof LineString) {
+                add(((LineString) geometry).getCoordinateSequence());
+            } else if (geometry instanceof Polygon) {
+                final Polygon polygon = (Polygon) geometry;
+                add(polygon.getNumInteriorRing());
+                add(polygon.getExteriorRing().getCoordinateSequence());
+                for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                    add(polygon.getInteriorRingN(i).getCoordinateSequence());
+                }
+            } else if (geometry instanceof GeometryCollection) {
+                add(geometry.getNumGeometries());
+                for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                    add(geometry.getGeometryN(i));
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported geometry type: " + geometry.getGeometryType());
+            }
+        }
+
+        void add(CoordinateSequence sequence) {
+            add(sequence.size());
+            for (int i = 0; i < sequence.size(); i++) {
+                add(sequence.getX(i));
+                add(sequence.getY(i));
+            }
+        }
+
+        void add(double value) {
+            // 0.0 == -0.0, so they must produce the same fingerprint
+            add(value == 0.0 ? 0L : Double.doubleToLongBits(value));
+        }
+
+        void add(long value) {
+            h1 = Long.rotateLeft(h1 ^ mix(value), 27) * 0x9E3779B97F4A7C15L + 0x52DCE729L;
+            h2 = Long.rotateLeft(h2 + mix(value ^ 0xFF51AFD7ED558CCDL), 31) * 0xC2B2AE3D27D4EB4FL + 0x38495AB5L;
+        }
+
+        // Finalization step of MurmurHash3
+        private static long mix(long k) {
+            k ^= k >>> 33;
+            k *= 0xFF51AFD7ED558CCDL;
+            k ^= k >>> 33;
+            k *= 0xC4CEB9FE1A85EC53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+}
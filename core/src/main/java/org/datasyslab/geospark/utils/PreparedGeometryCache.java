@@ -0,0 +1,96 @@
+/**
+ * FILE: PreparedGeometryCache.java
+ * PATH: org.datasyslab.geospark.utils.PreparedGeometryCache.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.utils;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import org.datasyslab.geospark.geometryObjects.Circle;
+import org.datasyslab.geospark.monitoring.GeoSparkMetric;
+
+import javax.annotation.Nullable;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Refinement helper which evaluates 'intersects' and 'covers' predicates using JTS
+ * prepared geometries for large geometries that are tested many times.
+ *
+ * Geometries with at least {@code vertexThreshold} vertices are prepared on first use and
+ * kept for the lifetime of the cache. Smaller geometries are tested directly, since
+ * preparing them costs more than it saves. Geometries are cached by identity, so the
+ * cache must only be fed with geometries that stay in memory while it is in use,
+ * e.g. the build side of a partition-level join.
+ *
+ * Not thread-safe. Create one cache per partition.
+ */
+public class PreparedGeometryCache {
+
+    public static final int DEFAULT_VERTEX_THRESHOLD = 32;
+
+    private final int vertexThreshold;
+    private final GeoSparkMetric hitCount;
+    private final GeoSparkMetric missCount;
+
+    private final PreparedGeometryFactory factory = new PreparedGeometryFactory();
+    private final Map<Geometry, PreparedGeometry> cache = new IdentityHashMap<>();
+
+    public PreparedGeometryCache(int vertexThreshold,
+                                 @Nullable GeoSparkMetric hitCount,
+                                 @Nullable GeoSparkMetric missCount) {
+        this.vertexThreshold = vertexThreshold;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+    }
+
+    /**
+     * Returns true if {@code geometry} intersects {@code other}. Uses prepared version
+     * of {@code geometry} if it is large enough.
+     */
+    public boolean intersects(Geometry geometry, Geometry other) {
+        final PreparedGeometry prepared = get(geometry, other);
+        return prepared != null ? prepared.intersects(other) : geometry.intersects(other);
+    }
+
+    /**
+     * Returns true if {@code geometry} covers {@code other}. Uses prepared version
+     * of {@code geometry} if it is large enough.
+     */
+    public boolean covers(Geometry geometry, Geometry other) {
+        final PreparedGeometry prepared = get(geometry, other);
+        return prepared != null ? prepared.covers(other) : geometry.covers(other);
+    }
+
+    @Nullable
+    private PreparedGeometry get(Geometry geometry, Geometry other) {
+        // Circles implement their own predicates which prepared geometries don't know about
+        if (geometry instanceof Circle || other instanceof Circle) {
+            return null;
+        }
+
+        // Look up first: counting the vertices of a large geometry on every test would cost
+        // a good part of what preparing it saves
+        PreparedGeometry prepared = cache.get(geometry);
+        if (prepared != null) {
+            if (hitCount != null) {
+                hitCount.add(1);
+            }
+            return prepared;
+        }
+
+        if (geometry.getNumPoints() < vertexThreshold) {
+            return null;
+        }
+
+        prepared = factory.create(geometry);
+        cache.put(geometry, prepared);
+        if (missCount != null) {
+            missCount.add(1);
+        }
+        return prepared;
+    }
+}
@@ -4,8 +4,12 @@ import org.apache.spark.SparkContext
 
 object GeoSparkMetrics {
   def createMetric(sc: SparkContext, name: String): GeoSparkMetric = {
+    createMetric(sc, "spatialjoin", name)
+  }
+
+  def createMetric(sc: SparkContext, scope: String, name: String): GeoSparkMetric = {
     val acc = new GeoSparkMetric()
-    sc.register(acc, "geospark.spatialjoin." + name)
+    sc.register(acc, "geospark." + scope + "." + name)
     acc
   }
 }
@@ -0,0 +1,93 @@
+/**
+ * FILE: GeoJsonEncoderBenchmark.java
+ * PATH: org.datasyslab.geospark.formatMapper.geojson.GeoJsonEncoderBenchmark.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.formatMapper.geojson;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.wololo.geojson.Feature;
+import org.wololo.geojson.FeatureCollection;
+import org.wololo.jts2geojson.GeoJSONWriter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the throughput of {@link GeoJsonEncoder} with the FeatureCollection path it replaces,
+ * on generated polygons.
+ *
+ * Usage: GeoJsonEncoderBenchmark [numPolygons] [rounds]
+ */
+public class GeoJsonEncoderBenchmark {
+
+    public static void main(String[] args)
+    {
+        final int numPolygons = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        final List<Geometry> polygons = createPolygons(numPolygons);
+
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            final long legacyChars = encodeFeatureCollection(polygons);
+            final long legacyNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long chars = 0;
+            final Iterator<String> lines = GeoJsonEncoder.encode(polygons.iterator(), false);
+            while (lines.hasNext()) {
+                chars += lines.next().length();
+            }
+            final long nanos = System.nanoTime() - start;
+
+            System.out.println(String.format("GeoJSON encoding of %d polygons: FeatureCollection %.1f MB/s, GeoJsonEncoder %.1f MB/s",
+                polygons.size(), legacyChars * 1e3 / legacyNanos, chars * 1e3 / nanos));
+        }
+    }
+
+    /**
+     * Polygons of 100 points around random centers, with their index as user data.
+     */
+    private static List<Geometry> createPolygons(int numPolygons)
+    {
+        final GeometryFactory factory = new GeometryFactory();
+        final Random random = new Random(42);
+        final List<Geometry> polygons = new ArrayList<>();
+        for (int i = 0; i < numPolygons; i++) {
+            final Coordinate[] shell = new Coordinate[101];
+            final double x = random.nextDouble() * 360 - 180;
+            final double y = random.nextDouble() * 180 - 90;
+            for (int j = 0; j < 100; j++) {
+                final double angle = 2 * Math.PI * j / 100;
+                shell[j] = new Coordinate(x + Math.cos(angle) * random.nextDouble(), y + Math.sin(angle) * random.nextDouble());
+            }
+            shell[100] = shell[0];
+            final Geometry polygon = factory.createPolygon(shell);
+            polygon.setUserData("polygon" + i);
+            polygons.add(polygon);
+        }
+        return polygons;
+    }
+
+    /**
+     * Encodes the polygons like saveAsGeoJSON did before GeoJsonEncoder, and returns the length.
+     */
+    private static long encodeFeatureCollection(List<Geometry> polygons)
+    {
+        final GeoJSONWriter writer = new GeoJSONWriter();
+        final List<Feature> features = new ArrayList<>();
+        for (Geometry polygon : polygons) {
+            final Map<String, Object> userData = new HashMap<>();
+            userData.put("UserData", polygon.getUserData());
+            features.add(new Feature(writer.write(polygon), userData));
+        }
+        return new FeatureCollection(features.toArray(new Feature[features.size()])).toString().length();
+    }
+}
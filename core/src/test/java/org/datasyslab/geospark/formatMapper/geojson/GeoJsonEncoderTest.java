@@ -0,0 +1,105 @@
+/**
+ * FILE: GeoJsonEncoderTest.java
+ * PATH: org.datasyslab.geospark.formatMapper.geojson.GeoJsonEncoderTest.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.formatMapper.geojson;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTReader;
+import org.junit.Test;
+import org.wololo.geojson.Feature;
+import org.wololo.geojson.FeatureCollection;
+import org.wololo.geojson.GeoJSONFactory;
+import org.wololo.jts2geojson.GeoJSONReader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GeoJsonEncoderTest {
+
+    private final WKTReader wktReader = new WKTReader();
+    private final GeoJSONReader geoJsonReader = new GeoJSONReader();
+
+    private final List<String> wkts = Arrays.asList(
+        "POINT (-88.331492 32.324142)",
+        "LINESTRING (0 0, 1 1, 2 0)",
+        "POLYGON ((0 0, 0 10, 10 10, 10 0, 0 0), (2 2, 4 2, 4 4, 2 4, 2 2))",
+        "MULTIPOINT ((1 1), (2 2))",
+        "MULTILINESTRING ((0 0, 1 1), (2 2, 3 3))",
+        "MULTIPOLYGON (((0 0, 0 1, 1 1, 1 0, 0 0)), ((5 5, 5 6, 6 6, 6 5, 5 5)))",
+        "GEOMETRYCOLLECTION (POINT (1 1), LINESTRING (0 0, 1 1))");
+
+    @Test
+    public void testEncodeFeatures() throws Exception
+    {
+        final GeoJsonEncoder encoder = new GeoJsonEncoder();
+        for (String wkt : wkts) {
+            final Geometry geometry = wktReader.read(wkt);
+            final Feature feature = (Feature) GeoJSONFactory.create(encoder.encode(geometry));
+            assertTrue(wkt, geoJsonReader.read(feature.getGeometry()).equalsExact(geometry));
+            assertNull(feature.getProperties());
+        }
+    }
+
+    @Test
+    public void testEncodeUserData() throws Exception
+    {
+        final Geometry geometry = wktReader.read("POINT (1 2)");
+        geometry.setUserData("id\t1 \"quoted\"");
+        final Feature feature = (Feature) GeoJSONFactory.create(new GeoJsonEncoder().encode(geometry));
+        assertEquals("id\t1 \"quoted\"", feature.getProperties().get("UserData"));
+
+        geometry.setUserData(42);
+        final Feature numberFeature = (Feature) GeoJSONFactory.create(new GeoJsonEncoder().encode(geometry));
+        assertEquals(42, ((Number) numberFeature.getProperties().get("UserData")).intValue());
+    }
+
+    @Test
+    public void testEncodeCollection() throws Exception
+    {
+        final List<Geometry> geometries = new ArrayList<>();
+        for (String wkt : wkts) {
+            geometries.add(wktReader.read(wkt));
+        }
+
+        final FeatureCollection collection = (FeatureCollection) GeoJSONFactory.create(
+            join(GeoJsonEncoder.encode(geometries.iterator(), false)));
+        assertEquals(geometries.size(), collection.getFeatures().length);
+        for (int i = 0; i < geometries.size(); i++) {
+            assertTrue(geoJsonReader.read(collection.getFeatures()[i].getGeometry()).equalsExact(geometries.get(i)));
+        }
+
+        // Empty partitions still produce a valid collection
+        final FeatureCollection empty = (FeatureCollection) GeoJSONFactory.create(
+            join(GeoJsonEncoder.encode(Collections.<Geometry>emptyIterator(), false)));
+        assertEquals(0, empty.getFeatures().length);
+
+        // Line-delimited output has one feature per line and nothing else
+        final Iterator<String> lines = GeoJsonEncoder.encode(geometries.iterator(), true);
+        for (Geometry geometry : geometries) {
+            final Feature feature = (Feature) GeoJSONFactory.create(lines.next());
+            assertTrue(geoJsonReader.read(feature.getGeometry()).equalsExact(geometry));
+        }
+        assertFalse(lines.hasNext());
+        assertFalse(GeoJsonEncoder.encode(Collections.<Geometry>emptyIterator(), true).hasNext());
+    }
+
+    private static String join(Iterator<String> lines)
+    {
+        final StringBuilder builder = new StringBuilder();
+        while (lines.hasNext()) {
+            builder.append(lines.next()).append('\n');
+        }
+        return builder.toString();
+    }
+}
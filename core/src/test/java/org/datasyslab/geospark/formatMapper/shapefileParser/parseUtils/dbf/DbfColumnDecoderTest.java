@@ -0,0 +1,161 @@
+/**
+ * FILE: DbfColumnDecoderTest.java
+ * PATH: org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.dbf.DbfColumnDecoderTest.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.dbf;
+
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DbfColumnDecoderTest {
+
+    @Test
+    public void testDecodeMatchesTextAttributes() throws IOException {
+        final String path = DbfColumnDecoderTest.class.getClassLoader()
+            .getResource("shapefiles/dbf/map.dbf").getPath();
+        try (DataInputStream inputStream = new DataInputStream(new FileInputStream(path))) {
+            final DbfParseUtil dbfParseUtil = new DbfParseUtil();
+            dbfParseUtil.parseFileHead(inputStream);
+            final List<FieldDescriptor> descriptors = dbfParseUtil.getFieldDescriptors();
+            final DbfColumnDecoder decoder = new DbfColumnDecoder(descriptors, Arrays.asList("awater", "NAME", "ALAND"));
+            assertEquals(3, decoder.getNumColumns());
+            assertEquals("AWATER", decoder.getColumnName(0));
+            assertEquals(DbfColumnDecoder.TYPE_LONG, decoder.getColumnType(0));
+            assertEquals(DbfColumnDecoder.TYPE_STRING, decoder.getColumnType(1));
+
+            final List<String> names = new ArrayList<>();
+            int nameOffset = 0;
+            for (FieldDescriptor descriptor : descriptors) {
+                if (!names.contains("NAME") && !descriptor.getFiledName().equals("NAME")) {
+                    nameOffset += descriptor.getFieldLength();
+                }
+                names.add(descriptor.getFiledName());
+            }
+            final int nameLength = descriptors.get(names.indexOf("NAME")).getFieldLength();
+            final int alandIndex = names.indexOf("ALAND");
+            final int awaterIndex = names.indexOf("AWATER");
+
+            final byte[] bytes = new byte[dbfParseUtil.numBytesRecord - 1];
+            final DbfColumnDecoder.Batch batch = decoder.newBatch(1000);
+            int numRecords = 0;
+            while (!dbfParseUtil.isDone()) {
+                if (inputStream.readByte() == DbfParseUtil.FILE_END_FLAG) {
+                    break;
+                }
+                inputStream.readFully(bytes);
+                dbfParseUtil.numRecordRead++;
+                final ByteBuffer record = ByteBuffer.wrap(bytes);
+                final String[] attributes = dbfParseUtil.primitiveToAttributes(ByteBuffer.wrap(bytes)).split("\t");
+
+                assertEquals(Long.parseLong(attributes[awaterIndex]), decoder.getLong(record, 0));
+                // the tab-separated attributes go through the platform charset, so names are compared with the raw bytes
+                assertEquals(new String(bytes, nameOffset, nameLength, StandardCharsets.ISO_8859_1).trim(),
+                             decoder.getString(record, 1));
+                assertEquals(Long.parseLong(attributes[alandIndex]), decoder.getLong(record, 2));
+                assertEquals(Double.parseDouble(attributes[alandIndex]), decoder.getDouble(record, 2), 0);
+                assertEquals(0, record.position());
+
+                if (batch.isFull()) {
+                    batch.clear();
+                }
+                assertTrue(decoder.decode(record, batch));
+                assertEquals(Long.parseLong(attributes[alandIndex]), batch.getLongs(2)[batch.size() - 1]);
+                numRecords++;
+            }
+            assertEquals(dbfParseUtil.numRecord, numRecords);
+        }
+    }
+
+    @Test
+    public void testDecodeTypes() {
+        final List<FieldDescriptor> descriptors = Arrays.asList(
+            createDescriptor("ID", 'N', 6, 0),
+            createDescriptor("RATIO", 'N', 10, 3),
+            createDescriptor("DEPTH", 'F', 12, 0),
+            createDescriptor("BUILT", 'D', 8, 0),
+            createDescriptor("ACTIVE", 'L', 1, 0),
+            createDescriptor("NAME", 'C', 8, 0));
+        final DbfColumnDecoder decoder = new DbfColumnDecoder(descriptors);
+        assertEquals(DbfColumnDecoder.TYPE_LONG, decoder.getColumnType(0));
+        assertEquals(DbfColumnDecoder.TYPE_DOUBLE, decoder.getColumnType(1));
+        assertEquals(DbfColumnDecoder.TYPE_DOUBLE, decoder.getColumnType(2));
+        assertEquals(DbfColumnDecoder.TYPE_DATE, decoder.getColumnType(3));
+        assertEquals(DbfColumnDecoder.TYPE_BOOLEAN, decoder.getColumnType(4));
+
+        final DbfColumnDecoder.Batch batch = decoder.newBatch(2);
+        final ByteBuffer record = createRecord("  -42", "    -0.125", " 1.5E3", "20180507", "T", "Fairfax ");
+        assertTrue(decoder.decode(record, batch));
+        assertEquals(-42, batch.getLongs(0)[0]);
+        assertEquals(-0.125, batch.getDoubles(1)[0], 0);
+        assertEquals(1500, batch.getDoubles(2)[0], 0);
+        // 2018-05-07
+        assertEquals(17658, batch.getDates(3)[0]);
+        assertTrue(batch.getBooleans(4)[0]);
+        assertEquals("Fairfax", batch.getStrings(5)[0]);
+
+        final ByteBuffer nulls = createRecord("******", "", "", "00000000", "?", "");
+        assertTrue(decoder.decode(nulls, batch));
+        for (int column = 0; column < 5; column++) {
+            assertTrue(batch.isNull(column, 1));
+        }
+        assertFalse(batch.isNull(5, 1));
+        assertEquals("", batch.getStrings(5)[1]);
+        assertFalse(decoder.decode(record, batch));
+
+        try {
+            decoder.getLong(createRecord("1.5", "", "", "", "", ""), 0);
+            fail("a decimal is not a long");
+        } catch (NumberFormatException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDaysSinceEpoch() {
+        assertEquals(0, DbfColumnDecoder.daysSinceEpoch(1970, 1, 1));
+        assertEquals(-1, DbfColumnDecoder.daysSinceEpoch(1969, 12, 31));
+        assertEquals(11016, DbfColumnDecoder.daysSinceEpoch(2000, 2, 29));
+        assertEquals(-25508, DbfColumnDecoder.daysSinceEpoch(1900, 3, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownColumn() {
+        new DbfColumnDecoder(Arrays.asList(createDescriptor("ID", 'N', 6, 0)), Arrays.asList("NAME"));
+    }
+
+    private static FieldDescriptor createDescriptor(String name, char type, int length, int decimalCount) {
+        final FieldDescriptor descriptor = new FieldDescriptor();
+        descriptor.setFiledName(name);
+        descriptor.setFieldType((byte) type);
+        descriptor.setFieldLength(length);
+        descriptor.setFieldDecimalCount((byte) decimalCount);
+        return descriptor;
+    }
+
+    /**
+     * Pads the values to the field lengths of testDecodeTypes, numbers on the left.
+     */
+    private static ByteBuffer createRecord(String id, String ratio, String depth, String built,
+                                           String active, String name) {
+        final String record = String.format("%6s%10s%12s%8s%1s%-8s", id, ratio, depth, built, active, name);
+        // the record starts after some bytes, like a slice of a larger read
+        final ByteBuffer buffer = ByteBuffer.wrap(("xx" + record).getBytes(StandardCharsets.US_ASCII));
+        buffer.position(2);
+        return buffer;
+    }
+}
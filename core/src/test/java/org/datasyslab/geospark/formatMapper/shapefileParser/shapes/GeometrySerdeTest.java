@@ -3,16 +3,22 @@ package org.datasyslab.geospark.formatMapper.shapefileParser.shapes;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.io.ParseException;
 import com.vividsolutions.jts.io.WKTReader;
+import org.datasyslab.geospark.enums.GeometryType;
+import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.shp.ShapeSerde;
 import org.datasyslab.geospark.geometryObjects.Circle;
 import org.datasyslab.geospark.geometryObjects.GeometrySerde;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
+import java.util.EnumMap;
+import java.util.Map;
 
 public class GeometrySerdeTest {
     private final Kryo kryo = new Kryo();
@@ -29,6 +35,87 @@ public class GeometrySerdeTest {
         test("MULTIPOLYGON (((0 0, 0 1, 1 1, 1 0.4, 0 0)), " +
             "((0 0, 0 1, 1 1, 1 0.4, 0 0), (0.2 0.2, 0.5 0.2, 0.5 0.5, 0.2 0.5, 0.2 0.2)))");
         test("GEOMETRYCOLLECTION (POINT(4 6), LINESTRING(4 6,7 10))");
+        test("GEOMETRYCOLLECTION (POINT(4 6), GEOMETRYCOLLECTION (POLYGON ((0 0, 0 1, 1 1, 0 0))))");
+        test("LINEARRING (0 0, 0 1, 1 1, 0 0)");
+        test("POINT EMPTY");
+        test("LINESTRING EMPTY");
+        test("POLYGON EMPTY");
+        test("MULTIPOLYGON EMPTY");
+        test("GEOMETRYCOLLECTION EMPTY");
+    }
+
+    @Test
+    public void testEveryGeometryType() throws Exception {
+        Map<GeometryType, Geometry> samples = new EnumMap<>(GeometryType.class);
+        samples.put(GeometryType.POINT, parseWkt("POINT (-88.331492 32.324142)"));
+        samples.put(GeometryType.POLYGON, parseWkt("POLYGON ((0 0, 0 10, 10 10, 10 0, 0 0), (2 2, 4 2, 4 4, 2 4, 2 2))"));
+        samples.put(GeometryType.LINESTRING, parseWkt("LINESTRING (0 0, 1 1, 2 0)"));
+        samples.put(GeometryType.MULTIPOINT, parseWkt("MULTIPOINT ((1 1), (2 2))"));
+        samples.put(GeometryType.MULTIPOLYGON, parseWkt("MULTIPOLYGON (((0 0, 0 1, 1 1, 1 0, 0 0)), ((5 5, 5 6, 6 6, 6 5, 5 5)))"));
+        samples.put(GeometryType.MULTILINESTRING, parseWkt("MULTILINESTRING ((1 1, 1.3 4.5), (0 0, 0 1))"));
+        samples.put(GeometryType.GEOMETRYCOLLECTION, parseWkt("GEOMETRYCOLLECTION (POINT (1 1), LINESTRING (0 0, 1 1))"));
+        samples.put(GeometryType.CIRCLE, new Circle(parseWkt("POINT (1 2)"), 0.5));
+
+        for (GeometryType type : GeometryType.values()) {
+            Geometry geometry = samples.get(type);
+            Assert.assertNotNull("No sample for " + type, geometry);
+
+            Geometry result = serde(geometry);
+            Assert.assertEquals(type.name(), geometry, result);
+            Assert.assertNull(result.getUserData());
+
+            geometry.setUserData(42);
+            result = serde(geometry);
+            Assert.assertEquals(type.name(), geometry, result);
+            Assert.assertEquals(42, result.getUserData());
+        }
+    }
+
+    @Test
+    public void testUserDataOfParts() throws Exception {
+        GeometryCollection collection = (GeometryCollection) parseWkt("GEOMETRYCOLLECTION (POINT (1 1), LINESTRING (0 0, 1 1))");
+        collection.getGeometryN(0).setUserData("point");
+        collection.getGeometryN(1).setUserData(7L);
+        collection.setUserData("collection");
+
+        Geometry result = serde(collection);
+        Assert.assertEquals(collection, result);
+        Assert.assertEquals("collection", result.getUserData());
+        Assert.assertEquals("point", result.getGeometryN(0).getUserData());
+        Assert.assertEquals(7L, result.getGeometryN(1).getUserData());
+    }
+
+    @Test
+    public void testLegacyFormat() throws Exception {
+        GeometrySerde serde = new GeometrySerde();
+        for (String wkt : new String[] {"POINT (1.3 4.5)", "LINESTRING (1 1, 1.3 4.5, 5.2 999)",
+            "POLYGON ((0 0, 0 1, 1 1, 1 0.4, 0 0))", "MULTIPOINT ((1 1), (1.3 4.5))"}) {
+            Geometry geometry = parseWkt(wkt);
+
+            // Shape type id, ShapeSerde bytes, user data
+            Output output = new Output(256, -1);
+            output.writeByte(0);
+            byte[] shape = ShapeSerde.serialize(geometry);
+            output.writeBytes(shape);
+            output.writeBoolean(true);
+            kryo.writeClass(output, String.class);
+            kryo.writeObject(output, "legacy");
+
+            Geometry result = (Geometry) serde.read(kryo, new Input(output.toBytes()), Geometry.class);
+            Assert.assertEquals(geometry, result);
+            Assert.assertEquals("legacy", result.getUserData());
+        }
+
+        // Circle type id, radius, center, user data of the center and the circle
+        Output output = new Output(256, -1);
+        output.writeByte(1);
+        output.writeDouble(1.5);
+        output.writeBytes(ShapeSerde.serialize(new GeometryFactory().createPoint(new Coordinate(1, 2))));
+        output.writeBoolean(false);
+        output.writeBoolean(false);
+        Circle circle = (Circle) serde.read(kryo, new Input(output.toBytes()), Geometry.class);
+        Assert.assertEquals(1.5, circle.getRadius(), 0);
+        Assert.assertEquals(parseWkt("POINT (1 2)"), circle.getCenterGeometry());
     }
 
     private void test(String wkt) throws Exception {
@@ -38,7 +125,7 @@ public class GeometrySerdeTest {
         geometry.setUserData("This is a test");
         Assert.assertEquals(geometry, serde(geometry));
 
-        if (geometry instanceof GeometryCollection) {
+        if (geometry instanceof GeometryCollection || geometry.isEmpty()) {
             return;
         }
 
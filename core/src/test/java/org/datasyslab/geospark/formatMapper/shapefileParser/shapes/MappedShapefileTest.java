@@ -0,0 +1,126 @@
+/**
+ * FILE: MappedShapefileTest.java
+ * PATH: org.datasyslab.geospark.formatMapper.shapefileParser.shapes.MappedShapefileTest.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.formatMapper.shapefileParser.shapes;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.geotools.data.DataStore;
+import org.geotools.data.DataStoreFinder;
+import org.geotools.feature.FeatureIterator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opengis.feature.simple.SimpleFeature;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MappedShapefileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    @Test
+    public void testReadMatchesGeoTools() throws Exception {
+        for (String name : new String[] {"point", "polyline", "dbf"}) {
+            final String basePath = getShapeFilePath(name) + "/map";
+            final List<Geometry> expected = loadGeometries(basePath);
+
+            final MappedShapefile shapefile = new MappedShapefile(basePath);
+            assertEquals(name, expected.size(), shapefile.getNumRecords());
+            final Iterator<Geometry> geometries = shapefile.iterator(geometryFactory);
+            for (Geometry geometry : expected) {
+                assertEquals(name, geometry.getNumPoints(), geometries.next().getNumPoints());
+            }
+            assertFalse(geometries.hasNext());
+        }
+    }
+
+    @Test
+    public void testReadWithoutIndex() throws Exception {
+        final String basePath = getShapeFilePath("dbf") + "/map";
+        FileUtils.copyFile(new File(basePath + MappedShapefile.SHP_SUFFIX), folder.newFile("map.shp"));
+        FileUtils.copyFile(new File(basePath + MappedShapefile.DBF_SUFFIX), folder.newFile("map.dbf"));
+
+        final MappedShapefile indexed = new MappedShapefile(basePath);
+        final MappedShapefile scanned = new MappedShapefile(new File(folder.getRoot(), "map").getPath());
+        assertEquals(indexed.getNumRecords(), scanned.getNumRecords());
+        for (int i = 0; i < indexed.getNumRecords(); i++) {
+            final Geometry geometry = indexed.getGeometry(i, geometryFactory);
+            final Geometry other = scanned.getGeometry(i, geometryFactory);
+            assertEquals(geometry.toText(), other.toText());
+            assertEquals(geometry.getUserData(), other.getUserData());
+        }
+    }
+
+    /**
+     * A small .shp file with a .dbf file over the limit can only be mapped without its attributes.
+     */
+    @Test
+    public void testCanMap() throws Exception {
+        final String sourcePath = getShapeFilePath("dbf") + "/map";
+        final File dbfFile = folder.newFile("map.dbf");
+        FileUtils.copyFile(new File(sourcePath + MappedShapefile.SHP_SUFFIX), folder.newFile("map.shp"));
+        FileUtils.copyFile(new File(sourcePath + MappedShapefile.SHX_SUFFIX), folder.newFile("map.shx"));
+        FileUtils.copyFile(new File(sourcePath + MappedShapefile.DBF_SUFFIX), dbfFile);
+        // bytes past the records are ignored
+        FileUtils.writeByteArrayToFile(dbfFile, new byte[2000000], true);
+        final String basePath = new File(folder.getRoot(), "map").getPath();
+
+        final Configuration conf = new Configuration(false);
+        assertEquals(Integer.MAX_VALUE, MappedShapefile.getMaxLength(conf));
+        assertTrue(MappedShapefile.canMap(basePath, true, conf));
+        conf.setLong(MappedShapefile.MAX_LENGTH_KEY, Long.MAX_VALUE);
+        assertEquals(Integer.MAX_VALUE, MappedShapefile.getMaxLength(conf));
+
+        conf.setLong(MappedShapefile.MAX_LENGTH_KEY, 2000000);
+        assertTrue(MappedShapefile.canMap(basePath, false, conf));
+        assertFalse(MappedShapefile.canMap(basePath, true, conf));
+        conf.setLong(MappedShapefile.MAX_LENGTH_KEY, 1000000);
+        assertFalse(MappedShapefile.canMap(basePath, false, conf));
+
+        final MappedShapefile withoutAttributes = new MappedShapefile(basePath, false);
+        assertFalse(withoutAttributes.hasAttributes());
+        assertNull(withoutAttributes.getGeometry(0, geometryFactory).getUserData());
+        final MappedShapefile source = new MappedShapefile(sourcePath);
+        assertEquals(source.getGeometry(0, geometryFactory).getUserData(),
+            new MappedShapefile(basePath).getGeometry(0, geometryFactory).getUserData());
+    }
+
+    private List<Geometry> loadGeometries(String basePath) throws Exception {
+        final Map<String, Object> params = new HashMap<>();
+        params.put("url", new File(basePath + MappedShapefile.SHP_SUFFIX).toURI().toURL());
+        final DataStore dataStore = DataStoreFinder.getDataStore(params);
+        final List<Geometry> geometries = new ArrayList<>();
+        try (FeatureIterator<SimpleFeature> features =
+                 dataStore.getFeatureSource(dataStore.getTypeNames()[0]).getFeatures().features()) {
+            while (features.hasNext()) {
+                geometries.add((Geometry) features.next().getDefaultGeometry());
+            }
+        } finally {
+            dataStore.dispose();
+        }
+        return geometries;
+    }
+
+    private String getShapeFilePath(String fileName) {
+        return MappedShapefileTest.class.getClassLoader().getResource("shapefiles/" + fileName).getPath();
+    }
+}
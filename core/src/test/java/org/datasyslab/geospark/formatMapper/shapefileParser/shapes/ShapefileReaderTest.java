@@ -44,6 +44,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 public class ShapefileReaderTest implements Serializable{
@@ -59,6 +60,8 @@ public class ShapefileReaderTest implements Serializable{
         sc = new JavaSparkContext(conf);
         Logger.getLogger("org").setLevel(Level.WARN);
         Logger.getLogger("akka").setLevel(Level.WARN);
+        // Keep these tests on the Hadoop input format, testMappedShapefiles compares it with memory-mapping
+        sc.hadoopConfiguration().setBoolean(MappedShapefile.ENABLED_KEY, false);
         //Hard code to a file in resource folder. But you can replace it later in the try-catch field in your hdfs system.
     }
     
@@ -228,6 +231,62 @@ public class ShapefileReaderTest implements Serializable{
         }
     }
 
+    /**
+     * Test that memory-mapped local shapefiles give the same geometries and attributes as the Hadoop input format
+     * @throws IOException
+     */
+    @Test
+    public void testMappedShapefiles() throws IOException {
+        for (String name : new String[] {"point", "polyline", "dbf"}) {
+            String inputLocation = getShapeFilePath(name);
+            Assert.assertNull(MappedShapefile.listLocalShapefiles(inputLocation, sc.hadoopConfiguration()));
+            List<Geometry> expected = ShapefileReader.readToGeometryRDD(sc, inputLocation).collect();
+
+            List<Geometry> actual;
+            sc.hadoopConfiguration().setBoolean(MappedShapefile.ENABLED_KEY, true);
+            try {
+                Assert.assertEquals(1, MappedShapefile.listLocalShapefiles(inputLocation, sc.hadoopConfiguration()).size());
+                actual = ShapefileReader.readToGeometryRDD(sc, inputLocation).collect();
+            } finally {
+                sc.hadoopConfiguration().setBoolean(MappedShapefile.ENABLED_KEY, false);
+            }
+
+            Assert.assertEquals(name, expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                Assert.assertEquals(name, expected.get(i).toText(), actual.get(i).toText());
+                Assert.assertEquals(name, expected.get(i).getUserData(), actual.get(i).getUserData());
+            }
+        }
+    }
+
+    /**
+     * Test that shapefiles with a file longer than the mapping limit are read through the Hadoop input format
+     * @throws IOException
+     */
+    @Test
+    public void testFilesTooLargeToMap() throws IOException {
+        String inputLocation = getShapeFilePath("dbf");
+        List<Geometry> expected = ShapefileReader.readToGeometryRDD(sc, inputLocation).collect();
+
+        List<Geometry> actual;
+        sc.hadoopConfiguration().setBoolean(MappedShapefile.ENABLED_KEY, true);
+        // smaller than the .shp file, larger than the .shx and .dbf files
+        sc.hadoopConfiguration().setLong(MappedShapefile.MAX_LENGTH_KEY, 1000000);
+        try {
+            Assert.assertNull(MappedShapefile.listLocalShapefiles(inputLocation, sc.hadoopConfiguration()));
+            actual = ShapefileReader.readToGeometryRDD(sc, inputLocation).collect();
+        } finally {
+            sc.hadoopConfiguration().setBoolean(MappedShapefile.ENABLED_KEY, false);
+            sc.hadoopConfiguration().unset(MappedShapefile.MAX_LENGTH_KEY);
+        }
+
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i).toText(), actual.get(i).toText());
+            Assert.assertEquals(expected.get(i).getUserData(), actual.get(i).getUserData());
+        }
+    }
+
     /**
      * Test if parse the boundary in header correctly
      * @throws IOException
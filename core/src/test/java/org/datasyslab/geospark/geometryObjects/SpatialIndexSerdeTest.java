@@ -11,6 +11,7 @@ import com.vividsolutions.jts.index.SpatialIndex;
 import com.vividsolutions.jts.index.quadtree.Quadtree;
 import com.vividsolutions.jts.index.strtree.STRtree;
 import com.vividsolutions.jts.io.WKTReader;
+import org.datasyslab.geospark.index.PackedRtree;
 import org.junit.Test;
 
 import java.io.*;
@@ -33,14 +34,17 @@ public class SpatialIndexSerdeTest {
 
         kryo.register(Quadtree.class, spatialIndexSerde);
         kryo.register(STRtree.class, spatialIndexSerde);
+        kryo.register(PackedRtree.class, spatialIndexSerde);
 
         // test correctness
         testCorrectness(Quadtree.class);
         testCorrectness(STRtree.class);
+        testCorrectness(PackedRtree.class);
 
         // workbench of compare size
         compareSize(Quadtree.class);
         compareSize(STRtree.class);
+        compareSize(PackedRtree.class);
 
 //        // workbench of compare time
         compareTime(Quadtree.class);
@@ -77,6 +81,7 @@ public class SpatialIndexSerdeTest {
 
         // do with serde
         if(aClass == Quadtree.class) kryo.register(Quadtree.class, new SpatialIndexSerde());
+        else if(aClass == PackedRtree.class) kryo.register(PackedRtree.class, new SpatialIndexSerde());
         else kryo.register(STRtree.class, new SpatialIndexSerde());
         byte[] withSerde = serializeIndexKryo(tree);
 
@@ -166,6 +171,11 @@ public class SpatialIndexSerdeTest {
                 envelope = new Envelope(-180, 180, -90, 90);
             }
             return strtree.query(envelope);
+        }else if(index instanceof PackedRtree){
+            if(envelope == null){
+                envelope = new Envelope(-180, 180, -90, 90);
+            }
+            return index.query(envelope);
         }else throw new UnsupportedOperationException("unsupport index type");
     }
 
@@ -174,6 +184,7 @@ public class SpatialIndexSerdeTest {
         SpatialIndex quadtree;
         // initialize according to class pointed
         if(aClass == Quadtree.class) quadtree = new Quadtree();
+        else if(aClass == PackedRtree.class) quadtree = new PackedRtree();
         else quadtree = new STRtree();
 
         for(int i = 0;i < geomNum; ++i){
@@ -0,0 +1,157 @@
+/**
+ * FILE: PackedRtreeTest.java
+ * PATH: org.datasyslab.geospark.index.PackedRtreeTest.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.index;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PackedRtreeTest {
+
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    @Test
+    public void testQueryMatchesBruteForce() {
+        final Random random = new Random(7);
+        for (int nodeCapacity : new int[] {2, 3, PackedRtree.DEFAULT_NODE_CAPACITY, 64}) {
+            for (int numItems : new int[] {1, 2, 9, 10, 11, 101, 5000}) {
+                final List<Geometry> geometries = generateGeometries(random, numItems);
+                final PackedRtree tree = new PackedRtree(nodeCapacity);
+                final STRtree strtree = new STRtree();
+                for (Geometry geometry : geometries) {
+                    tree.insert(geometry.getEnvelopeInternal(), geometry);
+                    strtree.insert(geometry.getEnvelopeInternal(), geometry);
+                }
+                assertEquals(numItems, tree.size());
+
+                final PackedRtree deserialized = roundTrip(tree);
+                for (int i = 0; i < 200; i++) {
+                    final Envelope window = generateWindow(random);
+                    final Set<Object> expected = bruteForce(geometries, window);
+                    final String message = "capacity " + nodeCapacity + ", " + numItems + " items, " + window;
+                    assertEquals(message, expected, toSet(tree.query(window)));
+                    assertEquals(message, expected, toSet(strtree.query(window)));
+                    // a deserialized tree decodes its items, so they are compared by value
+                    assertEquals(message, toWkts(expected), toWkts(deserialized.query(window)));
+                }
+                // the window covering everything returns every item once
+                assertEquals(numItems, tree.query(new Envelope(-1000, 1000, -1000, 1000)).size());
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyTree() {
+        final PackedRtree tree = new PackedRtree();
+        assertTrue(tree.isEmpty());
+        assertTrue(tree.query(new Envelope(-1000, 1000, -1000, 1000)).isEmpty());
+        assertTrue(roundTrip(tree).query(new Envelope(-1000, 1000, -1000, 1000)).isEmpty());
+        assertEquals(0, tree.size());
+    }
+
+    @Test
+    public void testSingleItem() {
+        final Geometry point = geometryFactory.createPoint(new Coordinate(3, 4));
+        final PackedRtree tree = new PackedRtree();
+        tree.insert(point.getEnvelopeInternal(), point);
+
+        assertEquals(1, tree.query(new Envelope(0, 10, 0, 10)).size());
+        // windows touching the point only on their edges still intersect it
+        assertEquals(1, tree.query(new Envelope(3, 5, 4, 6)).size());
+        assertEquals(1, tree.query(new Envelope(0, 3, 0, 4)).size());
+        assertTrue(tree.query(new Envelope(3.0001, 5, 0, 10)).isEmpty());
+        assertEquals(1, roundTrip(tree).query(new Envelope(3, 3, 4, 4)).size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testInsertAfterBuild() {
+        final PackedRtree tree = new PackedRtree();
+        tree.build();
+        tree.insert(new Envelope(0, 1, 0, 1), geometryFactory.createPoint(new Coordinate(0, 0)));
+    }
+
+    private List<Geometry> generateGeometries(Random random, int numItems) {
+        final List<Geometry> geometries = new ArrayList<>(numItems);
+        for (int i = 0; i < numItems; i++) {
+            final double x = random.nextInt(2000) / 10.0 - 100;
+            final double y = random.nextInt(2000) / 10.0 - 100;
+            if (random.nextBoolean()) {
+                geometries.add(geometryFactory.createPoint(new Coordinate(x, y)));
+            }
+            else {
+                final double width = random.nextInt(100) / 10.0;
+                final double height = random.nextInt(100) / 10.0;
+                geometries.add(geometryFactory.toGeometry(new Envelope(x, x + width, y, y + height)));
+            }
+        }
+        return geometries;
+    }
+
+    private Envelope generateWindow(Random random) {
+        // coordinates on the same 0.1 grid as the items, so that windows often touch their edges
+        final double x = random.nextInt(2200) / 10.0 - 110;
+        final double y = random.nextInt(2200) / 10.0 - 110;
+        final double size = random.nextInt(400) / 10.0;
+        return new Envelope(x, x + size, y, y + size);
+    }
+
+    private static Set<Object> bruteForce(List<Geometry> geometries, Envelope window) {
+        final Set<Object> result = newIdentitySet();
+        for (Geometry geometry : geometries) {
+            if (window.intersects(geometry.getEnvelopeInternal())) {
+                result.add(geometry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the items as a set of references, failing if an item is returned twice.
+     */
+    private static Set<Object> toSet(List items) {
+        final Set<Object> result = newIdentitySet();
+        for (Object item : items) {
+            assertTrue("duplicate item " + item, result.add(item));
+        }
+        return result;
+    }
+
+    private static Set<Object> newIdentitySet() {
+        // Geometry.equals compares values, but the same geometry must not be returned twice
+        return Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    }
+
+    private static List<String> toWkts(Iterable items) {
+        final List<String> wkts = new ArrayList<>();
+        for (Object item : items) {
+            wkts.add(((Geometry) item).toText());
+        }
+        Collections.sort(wkts);
+        return wkts;
+    }
+
+    private static PackedRtree roundTrip(PackedRtree tree) {
+        final Output output = new Output(4096, -1);
+        tree.write(output);
+        return PackedRtree.read(new Input(output.toBytes()));
+    }
+}
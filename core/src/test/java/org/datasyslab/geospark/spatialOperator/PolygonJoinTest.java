@@ -131,6 +131,28 @@ public class PolygonJoinTest extends JoinTestBase {
         assertEquals(getExpectedCount(intersects), countJoinResults(result));
     }
 
+    @Test
+    public void testPlaneSweepAndContains() throws Exception {
+        testPlaneSweepInt(false);
+    }
+
+    @Test
+    public void testPlaneSweepAndIntersects() throws Exception {
+        testPlaneSweepInt(true);
+    }
+
+    private void testPlaneSweepInt(boolean intersects) throws Exception {
+        PolygonRDD queryRDD = createPolygonRDD(InputLocationQueryPolygon);
+        PolygonRDD spatialRDD = createPolygonRDD(InputLocation);
+
+        partitionRdds(queryRDD, spatialRDD);
+
+        final JoinQuery.JoinParams joinParams = new JoinQuery.JoinParams(false, intersects, false, true);
+        List<Tuple2<Polygon, HashSet<Polygon>>> result = JoinQuery.SpatialJoinQuery(spatialRDD,queryRDD,joinParams).collect();
+        sanityCheckJoinResults(result);
+        assertEquals(getExpectedCount(intersects), countJoinResults(result));
+    }
+
     /**
      * Test spatial join query with polygon RDD using R tree index.
      *
@@ -8,6 +8,9 @@ package org.datasyslab.geospark.spatialOperator;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import org.apache.log4j.Level;
@@ -23,6 +26,10 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+
+import static org.junit.Assert.assertEquals;
 
 
 // TODO: Auto-generated Javadoc
@@ -148,4 +155,33 @@ public class PolygonRangeTest {
     	assert RangeQuery.SpatialRangeQuery(spatialRDD, queryEnvelope, false,true).take(10).get(1).getUserData().toString() !=null;
     }
 
-}
\ No newline at end of file
+    /**
+     * Test batch spatial range query with and without index.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testBatchSpatialRangeQuery() throws Exception {
+    	PolygonRDD spatialRDD = new PolygonRDD(sc, InputLocation, splitter, true,StorageLevel.MEMORY_ONLY());
+    	spatialRDD.buildIndex(IndexType.RTREE,false);
+
+    	GeometryFactory geometryFactory = new GeometryFactory();
+    	List<Polygon> queryWindows = new ArrayList<>();
+    	for (int i = 0; i < 4; i++) {
+    		Envelope window = new Envelope(queryEnvelope);
+    		window.translate(i * 0.5, -i * 0.5);
+    		queryWindows.add((Polygon) geometryFactory.toGeometry(window));
+    	}
+
+    	for (boolean considerBoundaryIntersection : new boolean[] {false, true}) {
+    		for (boolean useIndex : new boolean[] {false, true}) {
+    			Map<Integer, Long> counts = RangeQuery.BatchSpatialRangeQuery(spatialRDD, queryWindows, considerBoundaryIntersection, useIndex).countByKey();
+    			for (int i = 0; i < queryWindows.size(); i++) {
+    				long expected = RangeQuery.SpatialRangeQuery(spatialRDD, queryWindows.get(i), considerBoundaryIntersection, false).count();
+    				Long actual = counts.get(i);
+    				assertEquals(expected, actual == null ? 0 : actual.longValue());
+    			}
+    		}
+    	}
+    }
+}
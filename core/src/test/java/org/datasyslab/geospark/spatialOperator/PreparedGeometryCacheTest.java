@@ -0,0 +1,197 @@
+/**
+ * FILE: PreparedGeometryCacheTest.java
+ * PATH: org.datasyslab.geospark.spatialOperator.PreparedGeometryCacheTest.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.spatialOperator;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import org.apache.commons.lang3.tuple.Pair;
+import org.datasyslab.geospark.GeoSparkTestBase;
+import org.datasyslab.geospark.enums.IndexType;
+import org.datasyslab.geospark.enums.JoinBuildSide;
+import org.datasyslab.geospark.geometryObjects.Circle;
+import org.datasyslab.geospark.joinJudgement.DynamicIndexLookupJudgement;
+import org.datasyslab.geospark.monitoring.GeoSparkMetric;
+import org.datasyslab.geospark.monitoring.GeoSparkMetrics;
+import org.datasyslab.geospark.utils.PreparedGeometryCache;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import scala.collection.JavaConverters;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PreparedGeometryCacheTest extends GeoSparkTestBase {
+
+    private static final GeometryFactory geometryFactory = new GeometryFactory();
+
+    @BeforeClass
+    public static void onceExecutedBeforeAll() {
+        initialize(PreparedGeometryCacheTest.class.getSimpleName());
+    }
+
+    @AfterClass
+    public static void TearDown() {
+        sc.stop();
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        final GeoSparkMetric hitCount = GeoSparkMetrics.createMetric(sc.sc(), "preparedHitCount");
+        final GeoSparkMetric missCount = GeoSparkMetrics.createMetric(sc.sc(), "preparedMissCount");
+        final PreparedGeometryCache cache =
+            new PreparedGeometryCache(PreparedGeometryCache.DEFAULT_VERTEX_THRESHOLD, hitCount, missCount);
+
+        final Polygon large = geometryFactory.createPolygon(createRing(0, 0, 10, 64), null);
+        final Point inside = createPoint(1, 1);
+        final Point outside = createPoint(20, 20);
+        assertTrue(cache.intersects(large, inside));
+        assertFalse(cache.intersects(large, outside));
+        assertTrue(cache.covers(large, inside));
+        assertFalse(cache.covers(large, outside));
+        assertEquals(1, sum(missCount));
+        assertEquals(3, sum(hitCount));
+
+        // geometries are cached by identity, so an equal copy is prepared again
+        assertTrue(cache.intersects((Geometry) large.clone(), inside));
+        assertEquals(2, sum(missCount));
+        assertEquals(3, sum(hitCount));
+    }
+
+    @Test
+    public void testSmallGeometriesAndCircles() {
+        final GeoSparkMetric hitCount = GeoSparkMetrics.createMetric(sc.sc(), "preparedHitCount");
+        final GeoSparkMetric missCount = GeoSparkMetrics.createMetric(sc.sc(), "preparedMissCount");
+        final PreparedGeometryCache cache =
+            new PreparedGeometryCache(PreparedGeometryCache.DEFAULT_VERTEX_THRESHOLD, hitCount, missCount);
+
+        final Polygon small = geometryFactory.createPolygon(createRing(0, 0, 10, 8), null);
+        final Circle circle = new Circle(createPoint(0, 0), 10.0);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(cache.intersects(small, createPoint(1, 1)));
+            assertFalse(cache.covers(small, createPoint(20, 20)));
+            assertTrue(cache.intersects(circle, createPoint(1, 1)));
+            assertFalse(cache.covers(circle, createPoint(20, 20)));
+        }
+        assertEquals(0, sum(missCount));
+        assertEquals(0, sum(hitCount));
+    }
+
+    /**
+     * The vertices of a prepared geometry are not counted again when it is reused.
+     */
+    @Test
+    public void testNoVertexCountOnHits() {
+        final int[] numPointsCalls = {0};
+        final Polygon large = new Polygon(createRing(0, 0, 10, 64), null, geometryFactory) {
+            @Override
+            public int getNumPoints() {
+                numPointsCalls[0]++;
+                return super.getNumPoints();
+            }
+        };
+        final PreparedGeometryCache cache =
+            new PreparedGeometryCache(PreparedGeometryCache.DEFAULT_VERTEX_THRESHOLD, null, null);
+
+        final Point outside = createPoint(20, 20);
+        assertFalse(cache.intersects(large, outside));
+        final int callsToPrepare = numPointsCalls[0];
+        for (int i = 0; i < 10; i++) {
+            assertFalse(cache.intersects(large, outside));
+        }
+        assertEquals(callsToPrepare, numPointsCalls[0]);
+    }
+
+    /**
+     * Each polygon of the build side is prepared once per partition and reused for all the
+     * candidates it is tested with, and the join returns the pairs of a nested loop.
+     */
+    @Test
+    public void testReuseAcrossJoin() {
+        final List<Polygon> polygons = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            polygons.add(geometryFactory.createPolygon(createRing(i * 10, 0, 6, 64), null));
+        }
+        final Random random = new Random(5);
+        final List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            points.add(createPoint(random.nextDouble() * 110 - 10, random.nextDouble() * 20 - 10));
+        }
+
+        final Set<String> expected = new HashSet<>();
+        final Set<Integer> candidatePolygons = new HashSet<>();
+        long numCandidates = 0;
+        for (int i = 0; i < polygons.size(); i++) {
+            for (Point point : points) {
+                if (polygons.get(i).getEnvelopeInternal().intersects(point.getEnvelopeInternal())) {
+                    numCandidates++;
+                    candidatePolygons.add(i);
+                }
+                if (polygons.get(i).intersects(point)) {
+                    expected.add(polygons.get(i).toText() + " " + point.toText());
+                }
+            }
+        }
+
+        final GeoSparkMetric hitCount = GeoSparkMetrics.createMetric(sc.sc(), "preparedHitCount");
+        final GeoSparkMetric missCount = GeoSparkMetrics.createMetric(sc.sc(), "preparedMissCount");
+        final DynamicIndexLookupJudgement<Point, Polygon> judgement = new DynamicIndexLookupJudgement<>(
+            true, IndexType.RTREE, JoinBuildSide.LEFT, null,
+            GeoSparkMetrics.createMetric(sc.sc(), "buildCount"),
+            GeoSparkMetrics.createMetric(sc.sc(), "streamCount"),
+            GeoSparkMetrics.createMetric(sc.sc(), "resultCount"),
+            GeoSparkMetrics.createMetric(sc.sc(), "candidateCount"),
+            hitCount, missCount);
+        final List<Pair<Polygon, Point>> pairs =
+            sc.parallelize(polygons, 1).zipPartitions(sc.parallelize(points, 1), judgement).collect();
+
+        final Set<String> actual = new HashSet<>();
+        for (Pair<Polygon, Point> pair : pairs) {
+            actual.add(pair.getLeft().toText() + " " + pair.getRight().toText());
+        }
+        assertEquals(expected.size(), pairs.size());
+        assertEquals(expected, actual);
+        assertEquals(candidatePolygons.size(), sum(missCount));
+        assertEquals(numCandidates - candidatePolygons.size(), sum(hitCount));
+    }
+
+    private static long sum(GeoSparkMetric metric) {
+        long sum = 0;
+        for (Object count : JavaConverters.mapAsJavaMapConverter(metric.value()).asJava().values()) {
+            sum += (Long) count;
+        }
+        return sum;
+    }
+
+    /**
+     * A closed ring of numPoints distinct points around the center.
+     */
+    private static LinearRing createRing(double x, double y, double radius, int numPoints) {
+        final Coordinate[] coordinates = new Coordinate[numPoints + 1];
+        for (int i = 0; i < numPoints; i++) {
+            final double angle = 2 * Math.PI * i / numPoints;
+            coordinates[i] = new Coordinate(x + radius * Math.cos(angle), y + radius * Math.sin(angle));
+        }
+        coordinates[numPoints] = coordinates[0];
+        return geometryFactory.createLinearRing(coordinates);
+    }
+
+    private static Point createPoint(double x, double y) {
+        return geometryFactory.createPoint(new Coordinate(x, y));
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * FILE: FlatGridPartitionerTest.java
+ * PATH: org.datasyslab.geospark.spatialPartitioning.FlatGridPartitionerTest.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.spatialPartitioning;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.datasyslab.geospark.enums.GridType;
+import org.junit.Assert;
+import org.junit.Test;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class FlatGridPartitionerTest {
+
+    private final GeometryFactory factory = new GeometryFactory();
+
+    /**
+     * Verifies that the indexed lookup returns the same partitions as a full scan of the grids
+     * for both full-coverage (EQUALGRID) and partial-coverage (RTREE) grids.
+     */
+    @Test
+    public void testPlaceObjectMatchesFullScan() throws Exception {
+        final Envelope boundary = new Envelope(0, 100, 0, 100);
+        final Random random = new Random(42);
+
+        final List<Envelope> samples = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            samples.add(randomEnvelope(random, boundary, 2));
+        }
+
+        final List<List<Envelope>> gridSets = new ArrayList<>();
+        gridSets.add(new EqualPartitioning(boundary, 64).getGrids());
+        gridSets.add(new RtreePartitioning(samples, 50).getGrids());
+
+        for (List<Envelope> grids : gridSets) {
+            final FlatGridPartitioner partitioner = new FlatGridPartitioner(GridType.RTREE, grids);
+            for (int i = 0; i < 2000; i++) {
+                final Envelope envelope = randomEnvelope(random, new Envelope(-10, 110, -10, 110), 20);
+                final Geometry geometry = factory.toGeometry(envelope);
+                Assert.assertEquals(fullScan(grids, envelope), place(partitioner, geometry));
+            }
+
+            // Points on the grid boundaries
+            for (Envelope grid : grids) {
+                final Geometry corner = factory.createPoint(new Coordinate(grid.getMaxX(), grid.getMaxY()));
+                Assert.assertEquals(fullScan(grids, corner.getEnvelopeInternal()), place(partitioner, corner));
+            }
+        }
+    }
+
+    @Test
+    public void testOverflowPartition() throws Exception {
+        final List<Envelope> grids = new EqualPartitioning(new Envelope(0, 10, 0, 10), 4).getGrids();
+        final FlatGridPartitioner partitioner = new FlatGridPartitioner(GridType.EQUALGRID, grids);
+
+        final Set<Integer> outside = place(partitioner, factory.createPoint(new Coordinate(50, 50)));
+        Assert.assertEquals(1, outside.size());
+        Assert.assertTrue(outside.contains(grids.size()));
+    }
+
+    private Envelope randomEnvelope(Random random, Envelope extent, double maxSize) {
+        final double x = extent.getMinX() + random.nextDouble() * extent.getWidth();
+        final double y = extent.getMinY() + random.nextDouble() * extent.getHeight();
+        return new Envelope(x, x + random.nextDouble() * maxSize, y, y + random.nextDouble() * maxSize);
+    }
+
+    private Set<Integer> place(FlatGridPartitioner partitioner, Geometry geometry) throws Exception {
+        final Set<Integer> ids = new HashSet<>();
+        final Iterator<Tuple2<Integer, Geometry>> it = partitioner.placeObject(geometry);
+        while (it.hasNext()) {
+            Assert.assertTrue("Duplicate partition ID", ids.add(it.next()._1()));
+        }
+        return ids;
+    }
+
+    private Set<Integer> fullScan(List<Envelope> grids, Envelope envelope) {
+        final Set<Integer> ids = new HashSet<>();
+        boolean containFlag = false;
+        for (int i = 0; i < grids.size(); i++) {
+            final Envelope grid = grids.get(i);
+            if (grid.covers(envelope)) {
+                ids.add(i);
+                containFlag = true;
+            } else if (grid.intersects(envelope) || envelope.covers(grid)) {
+                ids.add(i);
+            }
+        }
+        if (!containFlag) {
+            ids.add(grids.size());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * FILE: KDBTreeTest.java
+ * PATH: org.datasyslab.geospark.spatialPartitioning.KDBTreeTest.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.spatialPartitioning;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KDBTreeTest {
+
+    private final Envelope extent = new Envelope(0, 100, 0, 100);
+
+    @Test
+    public void testRebalance() {
+        final Random random = new Random(42);
+        final List<Envelope> samples = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            samples.add(point(random.nextDouble() * 99, random.nextDouble() * 99));
+        }
+
+        // Two levels, so four leaves
+        final KDBTree tree = new KDBTree(samples.size() / 4, 2, extent);
+        for (Envelope sample : samples) {
+            tree.insert(sample);
+        }
+        tree.assignLeafIds();
+        assertEquals(4, leaves(tree).size());
+
+        // The last leaf got a dense city, the first two are nearly empty
+        final long[] counts = new long[] {100, 100, 1000, 4000};
+        tree.rebalance(counts, 1300, 2000);
+
+        // The first two leaves are merged, the last one is split in four
+        final List<KDBTree> rebalancedLeaves = leaves(tree);
+        assertEquals(6, rebalancedLeaves.size());
+        for (int i = 0; i < rebalancedLeaves.size(); i++) {
+            assertEquals(i, rebalancedLeaves.get(i).getLeafId());
+        }
+
+        // The split leaves share the samples of the dense leaf evenly
+        final long[] sampleCounts = count(tree, samples);
+        for (int i = 2; i < 6; i++) {
+            assertTrue(Math.abs(sampleCounts[i] - sampleCounts[2]) <= 2);
+        }
+
+        // Leaves still tile the extent
+        double area = 0;
+        for (KDBTree leaf : rebalancedLeaves) {
+            area += leaf.getExtent().getArea();
+        }
+        assertEquals(extent.getArea(), area, 1e-9);
+    }
+
+    @Test
+    public void testRebalanceMergesSmallLeaves() {
+        final List<Envelope> samples = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 100; j++) {
+                samples.add(point(i + 0.5, j + 0.5));
+            }
+        }
+
+        final KDBTree tree = new KDBTree(samples.size() / 16, 16, extent);
+        for (Envelope sample : samples) {
+            tree.insert(sample);
+        }
+        tree.assignLeafIds();
+
+        // Only the first leaf received any data
+        final long[] counts = new long[leaves(tree).size()];
+        counts[0] = 1000;
+
+        tree.rebalance(counts, 1000, 2000);
+
+        final List<KDBTree> rebalancedLeaves = leaves(tree);
+        assertTrue(rebalancedLeaves.size() < counts.length);
+        for (int i = 0; i < rebalancedLeaves.size(); i++) {
+            assertEquals(i, rebalancedLeaves.get(i).getLeafId());
+        }
+    }
+
+    private static Envelope point(double x, double y) {
+        return new Envelope(x, x, y, y);
+    }
+
+    private static List<KDBTree> leaves(KDBTree tree) {
+        final List<KDBTree> leaves = new ArrayList<>();
+        tree.traverse(new KDBTree.Visitor() {
+            @Override
+            public boolean visit(KDBTree tree) {
+                if (tree.isLeaf()) {
+                    leaves.add(tree);
+                }
+                return true;
+            }
+        });
+        return leaves;
+    }
+
+    private static long[] count(KDBTree tree, List<Envelope> samples) {
+        final List<KDBTree> leaves = leaves(tree);
+        final long[] counts = new long[leaves.size()];
+        for (Envelope sample : samples) {
+            for (KDBTree leaf : leaves) {
+                if (leaf.getExtent().contains(sample.getMinX(), sample.getMinY())
+                    && sample.getMinX() < leaf.getExtent().getMaxX() && sample.getMinY() < leaf.getExtent().getMaxY()) {
+                    counts[leaf.getLeafId()]++;
+                    break;
+                }
+            }
+        }
+        return counts;
+    }
+}
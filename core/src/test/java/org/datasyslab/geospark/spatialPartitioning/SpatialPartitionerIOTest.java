@@ -0,0 +1,133 @@
+/**
+ * FILE: SpatialPartitionerIOTest.java
+ * PATH: org.datasyslab.geospark.spatialPartitioning.SpatialPartitionerIOTest.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.spatialPartitioning;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.datasyslab.geospark.enums.GridType;
+import org.datasyslab.geospark.spatialPartitioning.quadtree.QuadRectangle;
+import org.datasyslab.geospark.spatialPartitioning.quadtree.QuadTreePartitioner;
+import org.datasyslab.geospark.spatialPartitioning.quadtree.StandardQuadTree;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import scala.Tuple2;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class SpatialPartitionerIOTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final GeometryFactory factory = new GeometryFactory();
+    private final Envelope boundary = new Envelope(0, 100, 0, 100);
+    private final Configuration conf = new Configuration();
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        final Random random = new Random(42);
+        final List<Envelope> samples = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            samples.add(randomEnvelope(random, 1));
+        }
+
+        final List<SpatialPartitioner> partitioners = new ArrayList<>();
+        partitioners.add(new FlatGridPartitioner(GridType.RTREE, new RtreePartitioning(samples, 20).getGrids()));
+        partitioners.add(new FlatGridPartitioner(new EqualPartitioning(boundary, 16).getGrids()));
+        partitioners.add(new QuadTreePartitioner(new QuadtreePartitioning(samples, boundary, 20).getPartitionTree()));
+
+        final KDBTree tree = new KDBTree(samples.size() / 20, 20, boundary);
+        for (Envelope sample : samples) {
+            tree.insert(sample);
+        }
+        tree.assignLeafIds();
+        partitioners.add(new KDBTreePartitioner(tree));
+
+        for (int i = 0; i < partitioners.size(); i++) {
+            final SpatialPartitioner partitioner = partitioners.get(i);
+            final String path = new File(folder.getRoot(), "partitioner" + i).getPath();
+            SpatialPartitionerIO.save(partitioner, path, conf);
+            final SpatialPartitioner loaded = SpatialPartitionerIO.load(path, conf, new Envelope(10, 90, 10, 90));
+
+            assertEquals(partitioner.getClass(), loaded.getClass());
+            assertEquals(partitioner.getGridType(), loaded.getGridType());
+            assertEquals(partitioner.getGrids(), loaded.getGrids());
+            assertEquals(partitioner.numPartitions(), loaded.numPartitions());
+            if (partitioner.getDedupParams() == null) {
+                assertNull(loaded.getDedupParams());
+            } else {
+                assertEquals(partitioner.getDedupParams().getPartitionExtents(),
+                    loaded.getDedupParams().getPartitionExtents());
+            }
+
+            for (int j = 0; j < 1000; j++) {
+                final Geometry geometry = factory.toGeometry(randomEnvelope(random, 5));
+                assertEquals(place(partitioner, geometry), place(loaded, geometry));
+            }
+        }
+    }
+
+    @Test
+    public void testLoadChecksBoundary() throws Exception {
+        final StandardQuadTree<Integer> tree = new StandardQuadTree<>(new QuadRectangle(boundary), 0, 1, 2);
+        tree.forceGrowUp(2);
+        tree.assignPartitionIds();
+        final String path = new File(folder.getRoot(), "quadtree").getPath();
+        SpatialPartitionerIO.save(new QuadTreePartitioner(tree), path, conf);
+
+        try {
+            SpatialPartitionerIO.load(path, conf, new Envelope(50, 150, 50, 150));
+            fail("Expected the boundary check to fail");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        // Grids would send everything outside of them to the overflow partition
+        final String flatPath = new File(folder.getRoot(), "grids").getPath();
+        SpatialPartitionerIO.save(new FlatGridPartitioner(GridType.EQUALGRID,
+            new EqualPartitioning(boundary, 4).getGrids()), flatPath, conf);
+        try {
+            SpatialPartitionerIO.load(flatPath, conf, new Envelope(50, 150, 50, 150));
+            fail("Expected the boundary check to fail");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        // Covered boundaries, or no boundary, are accepted
+        SpatialPartitionerIO.load(path, conf, new Envelope(10, 20, 10, 20));
+        SpatialPartitionerIO.load(flatPath, conf, new Envelope(10, 20, 10, 20));
+        SpatialPartitionerIO.load(flatPath, conf, null);
+    }
+
+    private Envelope randomEnvelope(Random random, double maxSize) {
+        final double x = boundary.getMinX() + random.nextDouble() * (boundary.getWidth() - maxSize);
+        final double y = boundary.getMinY() + random.nextDouble() * (boundary.getHeight() - maxSize);
+        return new Envelope(x, x + random.nextDouble() * maxSize, y, y + random.nextDouble() * maxSize);
+    }
+
+    private Set<Integer> place(SpatialPartitioner partitioner, Geometry geometry) throws Exception {
+        final Set<Integer> partitions = new HashSet<>();
+        final Iterator<Tuple2<Integer, Geometry>> it = partitioner.placeObject(geometry);
+        while (it.hasNext()) {
+            partitions.add(it.next()._1());
+        }
+        return partitions;
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * FILE: AdaptivePartitioningTest.java
+ * PATH: org.datasyslab.geospark.spatialRDD.AdaptivePartitioningTest.java
+ * Copyright (c) 2015-2017 GeoSpark Development Team
+ * All rights reserved.
+ */
+package org.datasyslab.geospark.spatialRDD;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import org.datasyslab.geospark.GeoSparkTestBase;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptivePartitioningTest extends GeoSparkTestBase
+{
+    private static final GeometryFactory geometryFactory = new GeometryFactory();
+
+    @BeforeClass
+    public static void onceExecutedBeforeAll() {
+        initialize(AdaptivePartitioningTest.class.getSimpleName());
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        sc.stop();
+    }
+
+    /**
+     * Most points are in a small cluster, but all of them have distinct locations, so the
+     * crowded grids can be subdivided until the skew ratio is acceptable.
+     */
+    @Test
+    public void testSkewedPoints() throws Exception {
+        final Random random = new Random(13);
+        final List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 18000; i++) {
+            points.add(createPoint(10 + random.nextDouble(), 10 + random.nextDouble()));
+        }
+        for (int i = 0; i < 2000; i++) {
+            points.add(createPoint(random.nextDouble() * 100, random.nextDouble() * 100));
+        }
+
+        final double maxSkewRatio = 3;
+        final PointRDD spatialRDD = new PointRDD(sc.parallelize(points, 4));
+        spatialRDD.analyze();
+        final double skewRatio = spatialRDD.spatialPartitioningAdaptive(8, maxSkewRatio);
+
+        assertTrue("skew ratio " + skewRatio, skewRatio <= maxSkewRatio);
+        assertPartitioned(points, spatialRDD, skewRatio);
+    }
+
+    /**
+     * Half of the points share one location, which no grid can split, so the partitioning
+     * falls back to the rebalanced grids and reports their skew ratio.
+     */
+    @Test
+    public void testPointsSharingALocation() throws Exception {
+        final Random random = new Random(17);
+        final List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            points.add(createPoint(50, 50));
+            points.add(createPoint(random.nextDouble() * 100, random.nextDouble() * 100));
+        }
+
+        final PointRDD spatialRDD = new PointRDD(sc.parallelize(points, 4));
+        spatialRDD.analyze();
+        final double skewRatio = spatialRDD.spatialPartitioningAdaptive(8, 1.5);
+
+        assertPartitioned(points, spatialRDD, skewRatio);
+
+        // all the points at the shared location end up in the same partition
+        long largest = 0;
+        for (long count : countPerPartition(spatialRDD)) {
+            largest = Math.max(largest, count);
+        }
+        assertTrue(largest >= 5000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxSkewRatio() throws Exception {
+        final PointRDD spatialRDD = new PointRDD(sc.parallelize(Arrays.asList(createPoint(0, 0), createPoint(1, 1))));
+        spatialRDD.analyze();
+        spatialRDD.spatialPartitioningAdaptive(1, 0.5);
+    }
+
+    /**
+     * Checks that every point is in exactly one partition and that the returned skew ratio
+     * is the one of the partitions.
+     */
+    private static void assertPartitioned(List<Point> points, PointRDD spatialRDD, double skewRatio) {
+        final long[] counts = countPerPartition(spatialRDD);
+        assertEquals(spatialRDD.getPartitioner().numPartitions(), counts.length);
+        assertEquals(expectedSkewRatio(counts), skewRatio, 1e-9);
+
+        final List<String> expected = toSortedWkts(points);
+        final List<String> actual = toSortedWkts(spatialRDD.spatialPartitionedRDD.collect());
+        assertEquals(expected, actual);
+    }
+
+    private static long[] countPerPartition(PointRDD spatialRDD) {
+        final List<List<Point>> partitions = spatialRDD.spatialPartitionedRDD.glom().collect();
+        final long[] counts = new long[partitions.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = partitions.get(i).size();
+        }
+        return counts;
+    }
+
+    /**
+     * The ratio of the largest count to the median one, or to the mean one if the median is zero.
+     */
+    private static double expectedSkewRatio(long[] counts) {
+        final long[] sorted = Arrays.copyOf(counts, counts.length);
+        Arrays.sort(sorted);
+        final long max = sorted[sorted.length - 1];
+        if (max == 0) {
+            return 1.0;
+        }
+        final int middle = sorted.length / 2;
+        final double median = sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2.0;
+        if (median > 0) {
+            return max / median;
+        }
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return max / ((double) total / counts.length);
+    }
+
+    /**
+     * Sorted, so that points lost or placed in several partitions change the list.
+     */
+    private static List<String> toSortedWkts(List<Point> points) {
+        final List<String> wkts = new ArrayList<>(points.size());
+        for (Point point : points) {
+            wkts.add(point.toText());
+        }
+        Collections.sort(wkts);
+        return wkts;
+    }
+
+    private static Point createPoint(double x, double y) {
+        return geometryFactory.createPoint(new Coordinate(x, y));
+    }
+}
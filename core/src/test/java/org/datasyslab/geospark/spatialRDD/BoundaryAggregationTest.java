@@ -13,9 +13,17 @@ import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.io.ParseException;
 import com.vividsolutions.jts.io.WKTReader;
+import org.datasyslab.geospark.spatialRddTool.SampleStatCalculator;
 import org.datasyslab.geospark.spatialRddTool.StatCalculator;
 import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class BoundaryAggregationTest {
 
@@ -143,6 +151,51 @@ public class BoundaryAggregationTest {
         }
     }
 
+    @Test
+    public void testSampleStatCalculator() throws Exception
+    {
+        // 1000 points on the left, 3000 on the right
+        final List<Geometry> left = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            left.add(makePoint(i % 10, i / 100));
+        }
+        final List<Geometry> right = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            right.add(makePoint(100 + i % 10, i / 100));
+        }
+
+        final SampleStatCalculator leftStats = SampleStatCalculator.compute(left.iterator(), 400, 0);
+        assertEquals(1000, leftStats.getCount());
+        assertEquals(new Envelope(0, 9, 0, 9), leftStats.getBoundary());
+        assertEquals(400, leftStats.getSampleSize());
+        assertFalse(leftStats.isComplete());
+
+        final SampleStatCalculator rightStats = SampleStatCalculator.compute(right.iterator(), 400, 1);
+        final SampleStatCalculator stats = SampleStatCalculator.combine(leftStats, rightStats);
+        assertEquals(4000, stats.getCount());
+        assertEquals(new Envelope(0, 109, 0, 29), stats.getBoundary());
+        assertEquals(400, stats.getSampleSize());
+
+        // The sample is drawn in proportion to the number of points on each side
+        int leftSamples = 0;
+        for (Envelope sample : stats.getSamples(400)) {
+            if (sample.getMinX() < 100) {
+                leftSamples++;
+            }
+        }
+        assertTrue(leftSamples > 70 && leftSamples < 130);
+        assertEquals(100, stats.getSamples(100).size());
+
+        // Small datasets are sampled completely
+        final SampleStatCalculator smallStats = SampleStatCalculator.compute(left.subList(0, 10).iterator(), 400, 0);
+        assertTrue(smallStats.isComplete());
+        assertEquals(10, smallStats.getSamples(400).size());
+
+        final SampleStatCalculator emptyStats = SampleStatCalculator.compute(new ArrayList<Geometry>().iterator(), 400, 0);
+        assertEquals(0, emptyStats.getCount());
+        assertNull(emptyStats.getBoundary());
+    }
+
     private Point makePoint(double x, double y)
     {
         return factory.createPoint(new Coordinate(x, y));
@@ -20,6 +20,7 @@ import org.junit.Test;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 
 
 // TODO: Auto-generated Javadoc
@@ -105,7 +106,22 @@ public class RectangleRDDTest extends SpatialRDDTestBase {
         assert spatialRDD.countWithoutDuplicates()==spatialRDD.countWithoutDuplicatesSPRDD();
     }
 
-    
+    /**
+     * Test count without duplicates on partitioners which support de-dup.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testCountWithoutDuplicatesUsingDedupParams() throws Exception {
+        for (GridType dedupGridType : new GridType[] {GridType.QUADTREE, GridType.KDBTREE}) {
+            RectangleRDD spatialRDD = new RectangleRDD(sc, InputLocation, offset, splitter, true, 10,StorageLevel.MEMORY_ONLY());
+            spatialRDD.spatialPartitioning(dedupGridType);
+            assertNotNull(spatialRDD.getPartitioner().getDedupParams());
+            assertEquals(spatialRDD.countWithoutDuplicates(), spatialRDD.countWithoutDuplicatesSPRDD());
+        }
+    }
+
+
     /**
      * Test build index without set grid.
      *
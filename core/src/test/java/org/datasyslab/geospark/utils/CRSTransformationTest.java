@@ -23,9 +23,11 @@ import org.datasyslab.geospark.spatialOperator.RangeQuery;
 import org.datasyslab.geospark.spatialRDD.CircleRDD;
 import org.datasyslab.geospark.spatialRDD.PointRDD;
 import org.datasyslab.geospark.spatialRDD.PolygonRDD;
+import org.geotools.geometry.jts.JTS;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.opengis.referencing.operation.MathTransform;
 import scala.Tuple2;
 
 import java.io.IOException;
@@ -33,6 +35,7 @@ import java.io.InputStream;
 import java.util.*;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 // TODO: Auto-generated Javadoc
@@ -324,4 +327,39 @@ public class CRSTransformationTest {
             }
         }
     }
+
+    /**
+     * Test that the cached transform produces the same geometries as JTS.transform.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testCachedTransform() throws Exception {
+        MathTransform transform = CRSTransformCache.getTransform("epsg:4326", "epsg:3857", false);
+        long hitCount = CRSTransformCache.getHitCount();
+        long missCount = CRSTransformCache.getMissCount();
+        assertSame(transform, CRSTransformCache.getTransform("epsg:4326", "epsg:3857", false));
+        assertEquals(hitCount + 1, CRSTransformCache.getHitCount());
+        assertEquals(missCount, CRSTransformCache.getMissCount());
+
+        GeometryFactory geometryFactory = new GeometryFactory();
+        Polygon shell = geometryFactory.createPolygon(new Coordinate[] {
+            new Coordinate(30, -90), new Coordinate(30, -80), new Coordinate(40, -80), new Coordinate(40, -90), new Coordinate(30, -90)});
+        Polygon hole = geometryFactory.createPolygon(new Coordinate[] {
+            new Coordinate(32, -88), new Coordinate(32, -86), new Coordinate(34, -86), new Coordinate(34, -88), new Coordinate(32, -88)});
+        Geometry[] geometries = new Geometry[] {
+            geometryFactory.createPoint(new Coordinate(34.01, -84.01)),
+            geometryFactory.createLineString(new Coordinate[] {new Coordinate(30, -90), new Coordinate(35, -85)}),
+            geometryFactory.createPolygon((LinearRing) shell.getExteriorRing(), new LinearRing[] {(LinearRing) hole.getExteriorRing()}),
+            geometryFactory.createMultiPolygon(new Polygon[] {shell, hole})
+        };
+
+        for (Geometry geometry : geometries) {
+            geometry.setUserData("userData");
+            Geometry expected = JTS.transform(geometry, transform);
+            Geometry actual = CRSTransformCache.transform(geometry, transform);
+            assertTrue(expected.equalsExact(actual, 1e-6));
+            assertEquals("userData", actual.getUserData());
+        }
+    }
 }
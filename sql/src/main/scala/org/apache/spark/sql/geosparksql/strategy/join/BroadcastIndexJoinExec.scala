@@ -0,0 +1,136 @@
+/**
+  * FILE: BroadcastIndexJoinExec
+  * PATH: org.apache.spark.sql.geosparksql.strategy.join.BroadcastIndexJoinExec
+  * Copyright (c) GeoSpark Development Team
+  *
+  * MIT License
+  *
+  * Permission is hereby granted, free of charge, to any person obtaining a copy
+  * of this software and associated documentation files (the "Software"), to deal
+  * in the Software without restriction, including without limitation the rights
+  * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+  * copies of the Software, and to permit persons to whom the Software is
+  * furnished to do so, subject to the following conditions:
+  *
+  * The above copyright notice and this permission notice shall be included in all
+  * copies or substantial portions of the Software.
+  *
+  * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+  * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+  * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+  * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+  * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+  * SOFTWARE.
+  */
+package org.apache.spark.sql.geosparksql.strategy.join
+
+import com.vividsolutions.jts.geom.Geometry
+import com.vividsolutions.jts.index.SpatialIndex
+import com.vividsolutions.jts.index.strtree.STRtree
+import org.apache.spark.internal.Logging
+import org.apache.spark.rdd.RDD
+import org.apache.spark.sql.catalyst.InternalRow
+import org.apache.spark.sql.catalyst.expressions.codegen.GenerateUnsafeRowJoiner
+import org.apache.spark.sql.catalyst.expressions.{Attribute, BindReferences, Expression, UnsafeRow}
+import org.apache.spark.sql.catalyst.util.ArrayData
+import org.apache.spark.sql.execution.{BinaryExecNode, SparkPlan}
+import org.datasyslab.geospark.utils.PreparedGeometryCache
+import org.datasyslab.geosparksql.utils.GeometrySerializer
+
+import scala.collection.JavaConverters._
+
+/**
+  *  ST_Contains(left, right) - left contains right
+  *  or
+  *  ST_Intersects(left, right) - left and right intersect
+  *
+  * Collects the small side of the join on the driver, builds a single STRtree over its shapes
+  * and broadcasts it. Each partition of the other side then probes the tree, so neither side
+  * is partitioned or shuffled. With GeoSparkKryoRegistrator the tree is shipped by
+  * SpatialIndexSerde.
+  *
+  * @param left left side of the join
+  * @param right right side of the join
+  * @param leftShape expression for the first argument of ST_Contains or ST_Intersects
+  * @param rightShape expression for the second argument of ST_Contains or ST_Intersects
+  * @param intersects boolean indicating whether spatial relationship is 'intersects' (true)
+  *                   or 'contains' (false)
+  * @param broadcastLeft boolean indicating whether the index is built on the left side (true)
+  *                      or the right side (false)
+  */
+case class BroadcastIndexJoinExec(left: SparkPlan,
+                                  right: SparkPlan,
+                                  leftShape: Expression,
+                                  rightShape: Expression,
+                                  intersects: Boolean,
+                                  broadcastLeft: Boolean,
+                                  extraCondition: Option[Expression] = None)
+    extends BinaryExecNode
+    with Logging {
+
+  override def output: Seq[Attribute] = left.output ++ right.output
+
+  override protected def doExecute(): RDD[InternalRow] = {
+    val (buildPlan, buildShape, streamPlan, streamShape) =
+      if (broadcastLeft) (left, leftShape, right, rightShape) else (right, rightShape, left, leftShape)
+    val boundBuildShape = BindReferences.bindReference(buildShape, buildPlan.output)
+    val boundStreamShape = BindReferences.bindReference(streamShape, streamPlan.output)
+
+    val buildShapes = buildPlan.execute().map { row =>
+      val shape = GeometrySerializer.deserialize(boundBuildShape.eval(row).asInstanceOf[ArrayData])
+      shape.setUserData(row.copy())
+      shape
+    }.collect()
+
+    val index = new STRtree()
+    buildShapes.foreach(shape => index.insert(shape.getEnvelopeInternal, shape))
+    index.build()
+    logInfo(s"Broadcasting an index of ${buildShapes.length} shapes")
+    val broadcastIndex = sparkContext.broadcast[SpatialIndex](index)
+
+    val leftSchema = left.schema
+    val rightSchema = right.schema
+    val considerBoundaryIntersection = intersects
+    val buildsLeft = broadcastLeft
+
+    streamPlan.execute().mapPartitions { iter =>
+      val spatialIndex = broadcastIndex.value
+      // Shapes of the build side are probed by many rows, prepare the large ones once
+      val preparedCache = new PreparedGeometryCache(PreparedGeometryCache.DEFAULT_VERTEX_THRESHOLD, null, null)
+      val joiner = GenerateUnsafeRowJoiner.create(leftSchema, rightSchema)
+
+      def matches(buildShape: Geometry, streamShape: Geometry): Boolean = {
+        if (considerBoundaryIntersection) {
+          preparedCache.intersects(buildShape, streamShape)
+        } else if (buildsLeft) {
+          preparedCache.covers(buildShape, streamShape)
+        } else {
+          streamShape.covers(buildShape)
+        }
+      }
+
+      val joined = iter.flatMap { streamRow =>
+        val streamShape = GeometrySerializer.deserialize(boundStreamShape.eval(streamRow).asInstanceOf[ArrayData])
+        spatialIndex.query(streamShape.getEnvelopeInternal).asScala.iterator
+          .map(_.asInstanceOf[Geometry])
+          .filter(buildShape => matches(buildShape, streamShape))
+          .map { buildShape =>
+            val buildRow = buildShape.getUserData.asInstanceOf[UnsafeRow]
+            if (buildsLeft) {
+              joiner.join(buildRow, streamRow.asInstanceOf[UnsafeRow])
+            } else {
+              joiner.join(streamRow.asInstanceOf[UnsafeRow], buildRow)
+            }
+          }
+      }
+
+      if (extraCondition.isDefined) {
+        val boundCondition = newPredicate(extraCondition.get, left.output ++ right.output)
+        joined.filter(row => boundCondition.eval(row))
+      } else {
+        joined
+      }
+    }
+  }
+}
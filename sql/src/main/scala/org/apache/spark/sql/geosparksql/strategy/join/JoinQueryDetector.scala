@@ -25,7 +25,7 @@
   */
 package org.apache.spark.sql.geosparksql.strategy.join
 
-import org.apache.spark.sql.Strategy
+import org.apache.spark.sql.{SparkSession, Strategy}
 import org.apache.spark.sql.catalyst.expressions.{Expression, LessThan, LessThanOrEqual}
 import org.apache.spark.sql.catalyst.plans.Inner
 import org.apache.spark.sql.catalyst.plans.logical.{Join, LogicalPlan}
@@ -34,12 +34,15 @@ import org.apache.spark.sql.geosparksql.expressions.{ST_Contains, ST_Distance, S
 
 /**
   * Plans `RangeJoinExec` for inner joins on spatial relationships ST_Contains(a, b)
-  * and ST_Intersects(a, b).
+  * and ST_Intersects(a, b). Plans `BroadcastIndexJoinExec` instead if the estimated size of
+  * one side is at most `geospark.join.broadcastthreshold` bytes (disabled by default).
   *
   * Plans `DistanceJoinExec` for inner joins on spatial relationship ST_Distance(a, b) < r.
   */
 object JoinQueryDetector extends Strategy {
 
+  val BROADCAST_THRESHOLD_KEY = "geospark.join.broadcastthreshold"
+
   /**
     * Returns true if specified expression has at least one reference and all its references
     * map to the output of the specified plan.
@@ -98,8 +101,15 @@ object JoinQueryDetector extends Strategy {
 
     matchExpressionsToPlans(a, b, left, right) match {
       case Some((planA, planB)) =>
-        logInfo(s"Planning spatial join for $relationship relationship")
-        RangeJoinExec(planLater(planA), planLater(planB), a, b, intersects, extraCondition) :: Nil
+        broadcastSide(planA, planB) match {
+          case Some(broadcastLeft) =>
+            logInfo(s"Planning broadcast spatial join for $relationship relationship")
+            BroadcastIndexJoinExec(planLater(planA), planLater(planB), a, b, intersects, broadcastLeft,
+              extraCondition) :: Nil
+          case None =>
+            logInfo(s"Planning spatial join for $relationship relationship")
+            RangeJoinExec(planLater(planA), planLater(planB), a, b, intersects, extraCondition) :: Nil
+        }
       case None =>
         logInfo(
           s"Spatial join for $relationship with arguments not aligned " +
@@ -108,6 +118,24 @@ object JoinQueryDetector extends Strategy {
     }
   }
 
+  /**
+    * Returns Some(true) to broadcast the left side, Some(false) to broadcast the right side
+    * or None if neither side is estimated to be small enough.
+    */
+  private def broadcastSide(left: LogicalPlan, right: LogicalPlan): Option[Boolean] = {
+    SparkSession.getActiveSession.flatMap { session =>
+      val conf = session.sessionState.conf
+      val threshold = conf.getConfString(BROADCAST_THRESHOLD_KEY, "-1").toLong
+      if (threshold < 0) {
+        None
+      } else {
+        val leftSize = left.stats(conf).sizeInBytes
+        val rightSize = right.stats(conf).sizeInBytes
+        if (leftSize > threshold && rightSize > threshold) None else Some(leftSize <= rightSize)
+      }
+    }
+  }
+
   private def planDistanceJoin(left: LogicalPlan,
                                right: LogicalPlan,
                                children: Seq[Expression],
@@ -74,22 +74,22 @@ trait TraitJoinQueryExec { self: SparkPlan =>
     val (leftShapes, rightShapes) =
       toSpatialRddPair(leftResultsRaw, boundLeftShape, rightResultsRaw, boundRightShape)
 
-    // Only do SpatialRDD analyze when the user doesn't know approximate total count of the spatial partitioning
-    // dominant side rdd
+    val dominantShapes =
+      if (geosparkConf.getJoinSparitionDominantSide == JoinSparitionDominantSide.LEFT) leftShapes else rightShapes
     if (geosparkConf.getJoinApproximateTotalCount == -1)
     {
-      if (geosparkConf.getJoinSparitionDominantSide == JoinSparitionDominantSide.LEFT)
-      {
-        leftShapes.analyze()
-        geosparkConf.setJoinApproximateTotalCount(leftShapes.approximateTotalCount)
-        geosparkConf.setDatasetBoundary(leftShapes.boundaryEnvelope)
-      }
-      else
-      {
-        rightShapes.analyze()
-        geosparkConf.setJoinApproximateTotalCount(rightShapes.approximateTotalCount)
-        geosparkConf.setDatasetBoundary(rightShapes.boundaryEnvelope)
-      }
+      // The user doesn't know the approximate total count of the spatial partitioning
+      // dominant side rdd, so it has to be scanned once. The same scan collects the samples
+      // which doSpatialPartitioning uses to build the grids.
+      dominantShapes.analyze()
+      geosparkConf.setJoinApproximateTotalCount(dominantShapes.approximateTotalCount)
+      geosparkConf.setDatasetBoundary(dominantShapes.boundaryEnvelope)
+    }
+    else
+    {
+      // analyze takes an Integer, so counts of very large joins are clamped instead of wrapping around
+      dominantShapes.analyze(geosparkConf.getDatasetBoundary,
+        math.min(geosparkConf.getJoinApproximateTotalCount.longValue, Int.MaxValue).toInt)
     }
     logDebug(
         s"Found ${geosparkConf.getJoinApproximateTotalCount} objects")
@@ -136,36 +136,26 @@ trait TraitJoinQueryExec { self: SparkPlan =>
 
     val joinParams = new JoinParams(intersects, geosparkConf.getIndexType, geosparkConf.getJoinBuildSide)
 
-    //logInfo(s"leftShape count ${leftShapes.spatialPartitionedRDD.count()}")
-    //logInfo(s"rightShape count ${rightShapes.spatialPartitionedRDD.count()}")
-
     val matches = JoinQuery.spatialJoin(leftShapes, rightShapes, joinParams)
 
-    logDebug(s"Join result has ${matches.count()} rows")
-
-      matches.rdd.mapPartitions { iter =>
-        val filtered =
-          if (extraCondition.isDefined) {
-            val boundCondition = newPredicate(extraCondition.get, left.output ++ right.output)
-            iter.filter {
-              case (l, r) =>
-                val leftRow = l.getUserData.asInstanceOf[UnsafeRow]
-                val rightRow = r.getUserData.asInstanceOf[UnsafeRow]
-                var joiner = GenerateUnsafeRowJoiner.create(left.schema, right.schema)
-                boundCondition.eval(joiner.join(leftRow,rightRow))
-            }
-          } else {
-            iter
-          }
+    val leftSchema = left.schema
+    val rightSchema = right.schema
 
-        filtered.map {
-          case (l, r) =>
-            val leftRow = l.getUserData.asInstanceOf[UnsafeRow]
-            val rightRow = r.getUserData.asInstanceOf[UnsafeRow]
-            var joiner = GenerateUnsafeRowJoiner.create(left.schema, right.schema)
-          joiner.join(leftRow, rightRow)
-        }
+    matches.rdd.mapPartitions { iter =>
+      // Generating the joiner is expensive, one joiner serves the whole partition
+      val joiner = GenerateUnsafeRowJoiner.create(leftSchema, rightSchema)
+      val joined = iter.map {
+        case (l, r) =>
+          joiner.join(l.getUserData.asInstanceOf[UnsafeRow], r.getUserData.asInstanceOf[UnsafeRow])
       }
+
+      if (extraCondition.isDefined) {
+        val boundCondition = newPredicate(extraCondition.get, left.output ++ right.output)
+        joined.filter(row => boundCondition.eval(row))
+      } else {
+        joined
+      }
+    }
   }
 
   protected def toSpatialRdd(rdd: RDD[UnsafeRow],
@@ -25,8 +25,6 @@
   */
 package org.datasyslab.geosparksql.utils
 
-import java.io.{ByteArrayInputStream, ByteArrayOutputStream}
-
 import com.esotericsoftware.kryo.Kryo
 import com.esotericsoftware.kryo.io.{Input, Output}
 import com.vividsolutions.jts.geom.Geometry
@@ -36,23 +34,49 @@ import org.datasyslab.geospark.geometryObjects.GeometrySerde
 // This is a wrapper of GeoSpark core kryo serializer
 object GeometrySerializer {
 
-  def serialize(geometry: Geometry): Array[Byte] = {
-    val out = new ByteArrayOutputStream()
+  // Output buffers which grew larger than this are dropped after use
+  private val MAX_RETAINED_BUFFER_SIZE = 1024 * 1024
+
+  // Kryo and its buffers are expensive to create and not thread-safe,
+  // so each thread keeps one set and reuses it for every row
+  private class SerializerState {
     val kryo = new Kryo()
     val geometrySerde = new GeometrySerde()
-    val output = new Output(out)
-    geometrySerde.write(kryo,output,geometry)
-    output.close()
-    return out.toByteArray
+    var output = new Output(4096, -1)
+    val input = new Input()
+  }
+
+  private val state = new ThreadLocal[SerializerState] {
+    override def initialValue(): SerializerState = new SerializerState
+  }
+
+  def serialize(geometry: Geometry): Array[Byte] = {
+    val current = state.get()
+    val output = current.output
+    output.clear()
+
+    try {
+      current.geometrySerde.write(current.kryo, output, geometry)
+    } finally {
+      // Kryo memoizes class names of user data, every array must be readable on its own
+      current.kryo.reset()
+    }
+
+    val bytes = output.toBytes
+    if (output.getBuffer.length > MAX_RETAINED_BUFFER_SIZE) {
+      current.output = new Output(4096, -1)
+    }
+    bytes
   }
 
   def deserialize(values: ArrayData): Geometry = {
-    val in = new ByteArrayInputStream(values.toByteArray())
-    val kryo = new Kryo()
-    val geometrySerde = new GeometrySerde()
-    val input = new Input(in)
-    val geometry = geometrySerde.read(kryo, input,classOf[Geometry])
-    input.close()
-    return geometry.asInstanceOf[Geometry]
+    val current = state.get()
+    current.input.setBuffer(values.toByteArray())
+    try {
+      current.geometrySerde.read(current.kryo, current.input, classOf[Geometry]).asInstanceOf[Geometry]
+    } finally {
+      current.kryo.reset()
+      current.input.setBuffer(Array.emptyByteArray)
+    }
   }
 }
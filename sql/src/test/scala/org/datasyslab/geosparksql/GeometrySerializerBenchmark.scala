@@ -0,0 +1,90 @@
+package org.datasyslab.geosparksql
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream}
+
+import com.esotericsoftware.kryo.Kryo
+import com.esotericsoftware.kryo.io.{Input, Output}
+import com.vividsolutions.jts.geom.{Coordinate, Geometry, GeometryFactory}
+import org.apache.spark.sql.catalyst.util.{ArrayData, GenericArrayData}
+import org.datasyslab.geospark.geometryObjects.GeometrySerde
+import org.datasyslab.geosparksql.utils.GeometrySerializer
+
+import scala.util.Random
+
+/**
+  * Compares the per-row cost of GeometrySerializer with the previous implementation, which
+  * created a Kryo, a GeometrySerde and stream-backed buffers for every row.
+  *
+  * Usage: GeometrySerializerBenchmark [numRows] [iterations]
+  */
+object GeometrySerializerBenchmark {
+
+  private def serializeWithNewKryo(geometry: Geometry): Array[Byte] = {
+    val out = new ByteArrayOutputStream()
+    val output = new Output(out)
+    new GeometrySerde().write(new Kryo(), output, geometry)
+    output.close()
+    out.toByteArray
+  }
+
+  private def deserializeWithNewKryo(values: ArrayData): Geometry = {
+    val input = new Input(new ByteArrayInputStream(values.toByteArray()))
+    val geometry = new GeometrySerde().read(new Kryo(), input, classOf[Geometry])
+    input.close()
+    geometry.asInstanceOf[Geometry]
+  }
+
+  private def generate(numRows: Int, numVertices: Int): Array[Geometry] = {
+    val geometryFactory = new GeometryFactory()
+    val random = new Random(42)
+    Array.fill(numRows) {
+      val x = random.nextDouble() * 360 - 180
+      val y = random.nextDouble() * 180 - 90
+      if (numVertices == 1) {
+        geometryFactory.createPoint(new Coordinate(x, y))
+      } else {
+        val coordinates = Array.tabulate(numVertices + 1) { i =>
+          val angle = 2 * math.Pi * (i % numVertices) / numVertices
+          new Coordinate(x + 0.01 * math.cos(angle), y + 0.01 * math.sin(angle))
+        }
+        geometryFactory.createPolygon(geometryFactory.createLinearRing(coordinates), null)
+      }
+    }
+  }
+
+  /** Returns the average time per row in ns */
+  private def time(numRows: Int, iterations: Int)(f: => Unit): Double = {
+    // warm up
+    f
+    val start = System.nanoTime()
+    for (_ <- 0 until iterations) f
+    (System.nanoTime() - start).toDouble / iterations / numRows
+  }
+
+  def main(args: Array[String]): Unit = {
+    val numRows = if (args.length > 0) args(0).toInt else 200000
+    val iterations = if (args.length > 1) args(1).toInt else 10
+
+    println("%d rows, average of %d iterations, ns per row".format(numRows, iterations))
+    for ((name, numVertices) <- Seq(("points", 1), ("polygons of 16 vertices", 16))) {
+      val geometries = generate(numRows, numVertices)
+      val arrays = geometries.map(g => new GenericArrayData(GeometrySerializer.serialize(g)))
+
+      // both implementations must produce the same bytes
+      geometries.take(1000).foreach(g => {
+        if (!java.util.Arrays.equals(serializeWithNewKryo(g), GeometrySerializer.serialize(g))) {
+          throw new IllegalStateException("The serializers disagree on " + g)
+        }
+      })
+
+      val oldSerialize = time(numRows, iterations) { geometries.foreach(serializeWithNewKryo) }
+      val newSerialize = time(numRows, iterations) { geometries.foreach(GeometrySerializer.serialize) }
+      val oldDeserialize = time(numRows, iterations) { arrays.foreach(deserializeWithNewKryo) }
+      val newDeserialize = time(numRows, iterations) { arrays.foreach(GeometrySerializer.deserialize) }
+
+      println(name)
+      println("  serialize:   Kryo per row %.0f, GeometrySerializer %.0f".format(oldSerialize, newSerialize))
+      println("  deserialize: Kryo per row %.0f, GeometrySerializer %.0f".format(oldDeserialize, newDeserialize))
+    }
+  }
+}
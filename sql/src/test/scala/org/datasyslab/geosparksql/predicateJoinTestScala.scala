@@ -3,7 +3,7 @@ package org.datasyslab.geosparksql
 import org.apache.log4j.{Level, Logger}
 import org.apache.spark.serializer.KryoSerializer
 import org.apache.spark.sql.SparkSession
-import org.apache.spark.sql.geosparksql.strategy.join.JoinQueryDetector
+import org.apache.spark.sql.geosparksql.strategy.join.{BroadcastIndexJoinExec, JoinQueryDetector}
 import org.datasyslab.geospark.serde.GeoSparkKryoRegistrator
 import org.datasyslab.geospark.utils.GeoSparkConf
 import org.datasyslab.geosparksql.utils.GeoSparkSQLRegistrator
@@ -185,5 +185,32 @@ class predicateJoinTestScala extends FunSpec with BeforeAndAfterAll {
       rangeJoinDf.show(3)
       assert (rangeJoinDf.count()==500)
     }
+
+    it("Passed ST_Contains in a broadcast join")
+    {
+      var polygonCsvDf = sparkSession.read.format("csv").option("delimiter",",").option("header","false").load(csvPolygonInputLocation)
+      polygonCsvDf.createOrReplaceTempView("polygontable")
+      var polygonDf = sparkSession.sql("select ST_PolygonFromEnvelope(cast(polygontable._c0 as Decimal(24,20)),cast(polygontable._c1 as Decimal(24,20)), cast(polygontable._c2 as Decimal(24,20)), cast(polygontable._c3 as Decimal(24,20)), \"mypolygonid\") as polygonshape from polygontable")
+      polygonDf.createOrReplaceTempView("polygondf")
+
+      var pointCsvDF = sparkSession.read.format("csv").option("delimiter",",").option("header","false").load(csvPointInputLocation)
+      pointCsvDF.createOrReplaceTempView("pointtable")
+      var pointDf = sparkSession.sql("select ST_Point(cast(pointtable._c0 as Decimal(24,20)),cast(pointtable._c1 as Decimal(24,20)), \"myPointId\") as pointshape from pointtable")
+      pointDf.createOrReplaceTempView("pointdf")
+
+      sparkSession.conf.set(JoinQueryDetector.BROADCAST_THRESHOLD_KEY, "10485760")
+      try {
+        var rangeJoinDf = sparkSession.sql("select * from polygondf, pointdf where ST_Contains(polygondf.polygonshape,pointdf.pointshape) ")
+
+        rangeJoinDf.explain()
+        assert (rangeJoinDf.queryExecution.sparkPlan.collect { case join: BroadcastIndexJoinExec => join }.nonEmpty)
+        assert (rangeJoinDf.count()==1000)
+
+        var withinJoinDf = sparkSession.sql("select * from polygondf, pointdf where ST_Within(pointdf.pointshape, polygondf.polygonshape) ")
+        assert (withinJoinDf.count()==1000)
+      } finally {
+        sparkSession.conf.unset(JoinQueryDetector.BROADCAST_THRESHOLD_KEY)
+      }
+    }
 	}
 }
@@ -0,0 +1,80 @@
+package org.datasyslab.geosparksql
+
+import java.io.ByteArrayOutputStream
+
+import com.esotericsoftware.kryo.Kryo
+import com.esotericsoftware.kryo.io.Output
+import com.vividsolutions.jts.geom.Geometry
+import com.vividsolutions.jts.io.WKTReader
+import org.apache.spark.sql.catalyst.util.GenericArrayData
+import org.datasyslab.geospark.geometryObjects.{Circle, GeometrySerde}
+import org.datasyslab.geosparksql.utils.GeometrySerializer
+import org.scalatest.FunSpec
+
+class serializerTestScala extends FunSpec {
+
+  private val wktReader = new WKTReader()
+
+  private def serializeWithGeometrySerde(geometry: Geometry): Array[Byte] = {
+    val out = new ByteArrayOutputStream()
+    val output = new Output(out)
+    new GeometrySerde().write(new Kryo(), output, geometry)
+    output.close()
+    out.toByteArray
+  }
+
+  private def roundTrip(geometry: Geometry): Geometry = {
+    GeometrySerializer.deserialize(new GenericArrayData(GeometrySerializer.serialize(geometry)))
+  }
+
+  describe("GeoSpark-SQL Geometry Serializer Test") {
+
+    val wkts = Seq(
+      "POINT (-88.331492 32.324142)",
+      "LINESTRING (0 0, 1 1, 2 0)",
+      "POLYGON ((0 0, 0 10, 10 10, 10 0, 0 0), (2 2, 4 2, 4 4, 2 4, 2 2))",
+      "MULTIPOINT ((1 1), (2 2))",
+      "MULTIPOLYGON (((0 0, 0 1, 1 1, 1 0, 0 0)), ((5 5, 5 6, 6 6, 6 5, 5 5)))",
+      "GEOMETRYCOLLECTION (POINT (1 1), LINESTRING (0 0, 1 1))")
+
+    it("Passed round trip of every geometry type")
+    {
+      for (wkt <- wkts) {
+        val geometry = wktReader.read(wkt)
+        assert(roundTrip(geometry).equalsExact(geometry), wkt)
+      }
+    }
+
+    it("Passed serializing the same bytes as GeometrySerde")
+    {
+      for (wkt <- wkts) {
+        val geometry = wktReader.read(wkt)
+        assert(GeometrySerializer.serialize(geometry).sameElements(serializeWithGeometrySerde(geometry)), wkt)
+      }
+    }
+
+    it("Passed round trip of geometries with user data")
+    {
+      for (i <- 0 until 3) {
+        val point = wktReader.read("POINT (1 2)")
+        point.setUserData("myPointId" + i)
+        val polygon = wktReader.read("POLYGON ((0 0, 0 10, 10 10, 10 0, 0 0))")
+        polygon.setUserData("myPolygonId" + i)
+
+        for (geometry <- Seq(point, polygon)) {
+          val result = roundTrip(geometry)
+          assert(result.equalsExact(geometry))
+          assert(result.getUserData == geometry.getUserData)
+        }
+      }
+    }
+
+    it("Passed round trip of circles")
+    {
+      val circle = new Circle(wktReader.read("POINT (1 2)"), 0.5)
+      val result = roundTrip(circle).asInstanceOf[Circle]
+      assert(result.getRadius == circle.getRadius)
+      assert(result.getCenterGeometry.equalsExact(circle.getCenterGeometry))
+    }
+  }
+}